@@ -0,0 +1,81 @@
+package org.odk.collect.android.instrumented.external;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.external.ExternalDataReaderImpl;
+import org.odk.collect.android.external.ExternalDataUtil;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+
+import timber.log.Timber;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Imports a large synthetic CSV the way a form with search() does on first open and logs how
+ * many rows per second were imported. The timing is logged rather than asserted on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExternalDataImportBenchmarkTest {
+
+    private static final int ROWS = 100_000;
+
+    private File mediaDir;
+
+    @Before
+    public void setup() {
+        mediaDir = new File(ApplicationProvider.getApplicationContext().getCacheDir(), "import-benchmark-media");
+        mediaDir.mkdirs();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(mediaDir);
+    }
+
+    @Test
+    public void reportImportRowsPerSecond() throws Exception {
+        File csvFile = new File(mediaDir, "benchmark.csv");
+        writeCsv(csvFile, ROWS);
+
+        long start = System.currentTimeMillis();
+        new ExternalDataReaderImpl(null).doImport(Collections.singletonMap("benchmark", csvFile));
+        long millis = Math.max(System.currentTimeMillis() - start, 1);
+
+        File dbFile = new File(mediaDir, "benchmark.db");
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            assertThat(DatabaseUtils.queryNumEntries(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME), is((long) ROWS));
+        } finally {
+            db.close();
+        }
+
+        Timber.i("Imported %d rows (%d KB) in %d ms: %d rows/second",
+                ROWS, csvFile.length() / 1024, millis, ROWS * 1000L / millis);
+    }
+
+    private static void writeCsv(File csvFile, int rows) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), "UTF-8"))) {
+            writer.write("name,label,state_key,district,population\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write("name" + i + ",Label " + i + ",state" + (i % 37) + ",district" + (i % 541) + "," + (i * 7 % 100_000) + "\n");
+            }
+        }
+    }
+}
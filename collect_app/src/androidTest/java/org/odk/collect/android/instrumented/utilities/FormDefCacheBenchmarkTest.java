@@ -0,0 +1,85 @@
+package org.odk.collect.android.instrumented.utilities;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.CopyFormRule;
+import org.odk.collect.android.support.ResetStateRule;
+import org.odk.collect.android.utilities.FileUtils;
+import org.odk.collect.android.utilities.FormDefCache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import timber.log.Timber;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Compares loading large forms from the FormDef cache with loading them the way the cache used to
+ * be read (straight from an unbuffered file stream). Timings are logged rather than asserted on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FormDefCacheBenchmarkTest {
+
+    private static final String[] LARGE_FORMS = {"nigeria-wards.xml", "all-widgets.xml", "fieldlist-updates.xml"};
+    private static final int ITERATIONS = 3;
+
+    @Rule
+    public RuleChain copyFormChain = RuleChain
+            .outerRule(new ResetStateRule())
+            .around(new CopyFormRule(LARGE_FORMS[0]))
+            .around(new CopyFormRule(LARGE_FORMS[1]))
+            .around(new CopyFormRule(LARGE_FORMS[2]));
+
+    @Test
+    public void compareCachedFormLoadTimes() throws Exception {
+        String formsDirPath = new StoragePathProvider().getOdkDirPath(StorageSubdirectory.FORMS);
+
+        for (String formName : LARGE_FORMS) {
+            File formXml = new File(formsDirPath, formName);
+            FormDef formDef = XFormUtils.getFormFromFormXml(formXml.getAbsolutePath(), FileUtils.getOrCreateLastSavedSrc(formXml));
+            FormDefCache.writeCache(formDef, formXml.getAbsolutePath());
+
+            File unbufferedCacheFile = File.createTempFile("unbuffered", ".formdef");
+            try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(unbufferedCacheFile))) {
+                formDef.writeExternal(dos);
+            }
+
+            long unbufferedMillis = 0;
+            long cacheMillis = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.currentTimeMillis();
+                FileUtils.getMd5Hash(formXml); // the cache is keyed by the form's hash
+                FormDef unbufferedFormDef = new FormDef();
+                try (DataInputStream dis = new DataInputStream(new FileInputStream(unbufferedCacheFile))) {
+                    unbufferedFormDef.readExternal(dis, ExtUtil.defaultPrototypes());
+                }
+                unbufferedMillis += System.currentTimeMillis() - start;
+
+                start = System.currentTimeMillis();
+                FormDef cachedFormDef = FormDefCache.readCache(formXml);
+                cacheMillis += System.currentTimeMillis() - start;
+
+                assertThat(cachedFormDef.getTitle(), is(unbufferedFormDef.getTitle()));
+            }
+
+            Timber.i("%s (%d KB cached): unbuffered load %d ms, cache load %d ms (average of %d)",
+                    formName, unbufferedCacheFile.length() / 1024,
+                    unbufferedMillis / ITERATIONS, cacheMillis / ITERATIONS, ITERATIONS);
+            unbufferedCacheFile.delete();
+        }
+    }
+}
@@ -38,7 +38,6 @@ import android.view.ViewGroup.LayoutParams;
 import android.view.animation.Animation;
 import android.view.animation.Animation.AnimationListener;
 import android.widget.FrameLayout;
-import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -135,7 +134,9 @@ import org.odk.collect.android.logic.FormInfo;
 import org.odk.collect.android.logic.HierarchyElement;
 import org.odk.collect.android.logic.ImmutableDisplayableQuestion;
 import org.odk.collect.android.logic.PropertyManager;
+import org.odk.collect.android.logic.QuestionRefreshPlanner;
 import org.odk.collect.android.nexus_view.QuestionsAdapter;
+import org.odk.collect.android.nexus_view.ReusablePrompts;
 import org.odk.collect.android.permissions.PermissionsChecker;
 import org.odk.collect.android.preferences.keys.AdminKeys;
 import org.odk.collect.android.preferences.keys.GeneralKeys;
@@ -308,11 +309,9 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
 
     ViewModelAudioPlayer viewModelAudioPlayer;
 
-    private  ArrayList<QuestionWidget> widgets;
+    private QuestionsAdapter questionsAdapter;
 
-     private LinearLayout widgetsList;
-
-    private LinearLayout.LayoutParams layout;
+    private View questionsView;
 
     private  AudioHelper audioHelper;
 
@@ -472,13 +471,6 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
         loadForm();
         //refreshView(true);
 
-        widgets = new ArrayList<>();
-
-
-
-        layout = new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,
-                LinearLayout.LayoutParams.WRAP_CONTENT);
-
 
         //audioHelper = audioHelperFactory.create(this);
 
@@ -540,11 +532,25 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
         }
     }
 
+    private static boolean isQuestionOrGroup(int event) {
+        return event == FormEntryController.EVENT_QUESTION
+                || event == FormEntryController.EVENT_GROUP
+                || event == FormEntryController.EVENT_REPEAT;
+    }
+
     private boolean shouldShowRepeatGroupPicker() {
         return repeatGroupPickerIndex != null;
     }
 
     private void refreshView(boolean isGoingUp) {
+        refreshView(isGoingUp, null);
+    }
+
+    /**
+     * @param reusablePrompts if not null, questions and groups it can reuse the prompts of aren't
+     *                        walked again
+     */
+    private void refreshView(boolean isGoingUp, @Nullable ReusablePrompts reusablePrompts) {
         try {
             FormController formController = Collect.getInstance().getFormController();
 
@@ -604,6 +610,17 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
                     continue;
                 }
 
+                if (reusablePrompts != null && !shouldShowRepeatGroupPicker() && isQuestionOrGroup(event)
+                        && reusablePrompts.canReuse(currentRef)) {
+                    // Nothing that is shown for this question or group can have changed so keep
+                    // the questions on screen and skip over it
+                    elementsToDisplay.addAll(reusablePrompts.get(currentRef));
+                    event = event == FormEntryController.EVENT_QUESTION
+                            ? formController.stepToNextEvent(FormController.STEP_INTO_GROUP)
+                            : formController.stepOverGroup();
+                    continue;
+                }
+
                 switch (event) {
                     case FormEntryController.EVENT_QUESTION: {
                         // Nothing but repeat group instances should show up in the picker.
@@ -729,8 +746,9 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
 
 
             // Prevent a redundant middle screen (common on many forms
-            // that use presentation groups to display labels).
-            if (isDisplayingSingleGroup() && !screenIndex.isBeginningOfFormIndex()) {
+            // that use presentation groups to display labels). Elements aren't listed for the
+            // parts of the form that were skipped so this only applies to full walks.
+            if (reusablePrompts == null && isDisplayingSingleGroup() && !screenIndex.isBeginningOfFormIndex()) {
                 if (isGoingUp) {
                     // Back out once more.
                     goUpLevel();
@@ -741,7 +759,13 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
                 }
             }
 
-            backgroundLocationViewModel.questions.postValue(elementsToDisplay);
+            if (reusablePrompts != null) {
+                // Update the questions straight away so the ones that are still shown can be
+                // refreshed after
+                backgroundLocationViewModel.questions.setValue(elementsToDisplay);
+            } else {
+                backgroundLocationViewModel.questions.postValue(elementsToDisplay);
+            }
 
         } catch (Exception e) {
             Timber.e(e);
@@ -790,12 +814,14 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
         });
 
         backgroundLocationViewModel.questions.observe(this, questions -> {
-                    View recy = displayAllQuestionsInForm(questions);
-
-                    showView(recy, AnimationType.FADE);
+                    // Once the questions are showing, only rerender the ones that changed
+                    if (questionsAdapter != null && currentView == questionsView) {
+                        questionsAdapter.updatePrompts(questions);
+                    } else {
+                        questionsView = displayAllQuestionsInForm(questions);
+                        showView(questionsView, AnimationType.FADE);
+                    }
                 }
-
-
         );
         AudioClipViewModel.Factory factory = new AudioClipViewModel.Factory(MediaPlayer::new, scheduler);
 
@@ -1471,32 +1497,35 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
 
         );
 
-         widgetsList = questionsView.findViewById(R.id.widgets);
-
-        for(FormEntryPrompt question : questions) {
+        // Widgets are only created for the questions on screen so that large forms don't have to
+        // build (and hold) a widget for every question before anything is shown
+        questionsAdapter = new QuestionsAdapter(
+                questions,
+                question -> {
+                    QuestionWidget widget = widgetFactory.createWidgetFromPrompt(question, permissionsProvider);
+                    widget.setValueChangedListener(this);
+                    return widget;
+                },
+                this::saveRecycledAnswer
+        );
 
-            QuestionWidget qw = widgetFactory.createWidgetFromPrompt(question, permissionsProvider);
+        RecyclerView recycler = questionsView.findViewById(R.id.nexus_recycler);
+        recycler.setLayoutManager(new LinearLayoutManager(this));
+        recycler.setAdapter(questionsAdapter);
 
-            widgets.add(qw);
+        return questionsView;
 
-            widgetsList.addView(qw, layout);
+    }
 
+    private void saveRecycledAnswer(FormIndex index, IAnswerData answer) {
+        FormController formController = getFormController();
+        if (formController != null) {
+            try {
+                formController.saveOneScreenAnswer(index, answer, false);
+            } catch (JavaRosaException e) {
+                Timber.e(e);
+            }
         }
-
-
-
-//        QuestionsAdapter questionsAdapter;
-//
-//        questionsAdapter = new QuestionsAdapter(getApplicationContext(), questions);
-//
-//        RecyclerView recycler = questionsView.findViewById(R.id.nexus_recycler);
-//
-//        recycler.setLayoutManager(new LinearLayoutManager(this));
-//
-//        recycler.setAdapter(questionsAdapter);
-
-        return questionsView;
-
     }
 
     private View RcreateView(int event, boolean advancingPage) {
@@ -2982,6 +3011,53 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
      * The widget corresponding to the {@param lastChangedIndex} is never changed.
      */
     private void updateFieldListQuestions(FormIndex lastChangedIndex) throws FormDesignException {
+        QuestionRefreshPlanner planner = getFormController().getQuestionRefreshPlanner();
+        if (planner == null || questionsAdapter == null) {
+            updateFieldListQuestionsFromSnapshots(lastChangedIndex);
+            return;
+        }
+
+        QuestionRefreshPlanner.Plan plan = planner.plan(lastChangedIndex);
+        saveAnswersAffectedBy(plan, lastChangedIndex);
+        questionsAdapter.markUpToDate(lastChangedIndex);
+
+        List<FormEntryPrompt> shownPrompts = backgroundLocationViewModel.questions.getValue();
+        if (plan.mayChangeWhichQuestionsAreShown() && shownPrompts != null) {
+            // Walk the questions and groups whose relevance or repeat count can have changed
+            // again to find questions that became relevant or irrelevant. Only those questions
+            // are compared and rerendered.
+            refreshView(false, new ReusablePrompts(shownPrompts, plan));
+        }
+
+        questionsAdapter.refreshQuestions(index -> !index.equals(lastChangedIndex) && plan.shouldRebuild(index));
+    }
+
+    /**
+     * Saves the answers in the widgets that are about to be rebuilt and then the changed answer
+     * (last, so that anything calculated from it is recalculated).
+     */
+    private void saveAnswersAffectedBy(QuestionRefreshPlanner.Plan plan, FormIndex lastChangedIndex) {
+        HashMap<FormIndex, IAnswerData> answers = getAnswers();
+        try {
+            for (Map.Entry<FormIndex, IAnswerData> answer : answers.entrySet()) {
+                if (!answer.getKey().equals(lastChangedIndex) && plan.shouldRebuild(answer.getKey())) {
+                    getFormController().saveOneScreenAnswer(answer.getKey(), answer.getValue(), false);
+                }
+            }
+
+            if (answers.containsKey(lastChangedIndex)) {
+                getFormController().saveOneScreenAnswer(lastChangedIndex, answers.get(lastChangedIndex), false);
+            }
+        } catch (JavaRosaException e) {
+            Timber.e(e);
+        }
+    }
+
+    /**
+     * Used when the form's dependencies couldn't be read: compares every question on screen
+     * before and after saving to find the ones that changed.
+     */
+    private void updateFieldListQuestionsFromSnapshots(FormIndex lastChangedIndex) throws FormDesignException {
         // Save the user-visible state for all questions in this field-list
         FormEntryPrompt[] questionsBeforeSave = getFormController().getQuestionPrompts();
         List<ImmutableDisplayableQuestion> immutableQuestionsBeforeSave = new ArrayList<>();
@@ -3042,6 +3118,10 @@ public class FormEntryActivity extends CollectAbstractActivity implements Animat
     }
 
     private HashMap<FormIndex, IAnswerData> getAnswers() {
+        if (questionsAdapter != null) {
+            return questionsAdapter.getAnswers();
+        }
+
         //ODKView currentViewIfODKView = getCurrentViewIfODKView();
 
 //        if (currentViewIfODKView != null) {
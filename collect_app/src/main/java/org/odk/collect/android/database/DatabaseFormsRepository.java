@@ -1,8 +1,12 @@
 package org.odk.collect.android.database;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.net.Uri;
+import android.os.RemoteException;
 
 import org.jetbrains.annotations.NotNull;
 import org.odk.collect.android.application.Collect;
@@ -24,7 +28,9 @@ import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.BAS
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.CONTENT_URI;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DELETED_DATE;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DISPLAY_NAME;
+import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_LAST_MODIFIED;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_PATH;
+import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_SIZE;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_MEDIA_PATH;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.GEOMETRY_XPATH;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.JR_FORM_ID;
@@ -112,13 +118,7 @@ public class DatabaseFormsRepository implements FormsRepository {
 
     @Override
     public Form save(@NotNull Form form) {
-        final ContentValues values = getValuesFromFormObject(form, storagePathProvider);
-
-        if (form.isDeleted()) {
-            values.put(DELETED_DATE, 0L);
-        } else {
-            values.putNull(DELETED_DATE);
-        }
+        final ContentValues values = getValuesToSave(form);
 
         if (form.getId() == null) {
             Uri uri = Collect.getInstance().getContentResolver().insert(CONTENT_URI, values);
@@ -132,6 +132,31 @@ public class DatabaseFormsRepository implements FormsRepository {
         }
     }
 
+    @Override
+    public void saveAll(@NotNull List<Form> forms) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (Form form : forms) {
+            ContentValues values = getValuesToSave(form);
+
+            if (form.getId() == null) {
+                operations.add(ContentProviderOperation.newInsert(CONTENT_URI)
+                        .withValues(values)
+                        .build());
+            } else {
+                operations.add(ContentProviderOperation.newUpdate(CONTENT_URI)
+                        .withValues(values)
+                        .withSelection(_ID + "=?", new String[]{form.getId().toString()})
+                        .build());
+            }
+        }
+
+        try {
+            Collect.getInstance().getContentResolver().applyBatch(FormsProviderAPI.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            throw new SQLException("Failed to save forms", e);
+        }
+    }
+
     @Override
     public void delete(Long id) {
         String selection = _ID + "=?";
@@ -167,6 +192,26 @@ public class DatabaseFormsRepository implements FormsRepository {
         Collect.getInstance().getContentResolver().update(CONTENT_URI, values, _ID + "=?", new String[]{id.toString()});
     }
 
+    @Override
+    public void updateFileFingerprint(Long id, long fileSize, long lastModified) {
+        ContentValues values = new ContentValues();
+        values.put(FORM_FILE_SIZE, fileSize);
+        values.put(FORM_FILE_LAST_MODIFIED, lastModified);
+        Collect.getInstance().getContentResolver().update(CONTENT_URI, values, _ID + "=?", new String[]{id.toString()});
+    }
+
+    private ContentValues getValuesToSave(Form form) {
+        final ContentValues values = getValuesFromFormObject(form, storagePathProvider);
+
+        if (form.isDeleted()) {
+            values.put(DELETED_DATE, 0L);
+        } else {
+            values.putNull(DELETED_DATE);
+        }
+
+        return values;
+    }
+
     @Nullable
     private Form queryForForm(String selection, String[] selectionArgs) {
         List<Form> forms = queryForForms(selection, selectionArgs);
@@ -204,6 +249,8 @@ public class DatabaseFormsRepository implements FormsRepository {
         int submissionUriColumnIndex = cursor.getColumnIndex(SUBMISSION_URI);
         int base64RSAPublicKeyColumnIndex = cursor.getColumnIndex(BASE64_RSA_PUBLIC_KEY);
         int md5HashColumnIndex = cursor.getColumnIndex(FormsProviderAPI.FormsColumns.MD5_HASH);
+        int formFileSizeColumnIndex = cursor.getColumnIndex(FORM_FILE_SIZE);
+        int formFileLastModifiedColumnIndex = cursor.getColumnIndex(FORM_FILE_LAST_MODIFIED);
         int dateColumnIndex = cursor.getColumnIndex(FormsProviderAPI.FormsColumns.DATE);
         int jrCacheFilePathColumnIndex = cursor.getColumnIndex(FormsProviderAPI.FormsColumns.JRCACHE_FILE_PATH);
         int formMediaPathColumnIndex = cursor.getColumnIndex(FORM_MEDIA_PATH);
@@ -223,6 +270,8 @@ public class DatabaseFormsRepository implements FormsRepository {
                 .submissionUri(cursor.getString(submissionUriColumnIndex))
                 .base64RSAPublicKey(cursor.getString(base64RSAPublicKeyColumnIndex))
                 .md5Hash(cursor.getString(md5HashColumnIndex))
+                .formFileSize(getLongOrNull(cursor, formFileSizeColumnIndex))
+                .formFileLastModified(getLongOrNull(cursor, formFileLastModifiedColumnIndex))
                 .date(cursor.getLong(dateColumnIndex))
                 .jrCacheFilePath(storagePathProvider.getAbsoluteCacheFilePath(cursor.getString(jrCacheFilePathColumnIndex)))
                 .formMediaPath(storagePathProvider.getAbsoluteFormFilePath(cursor.getString(formMediaPathColumnIndex)))
@@ -234,6 +283,11 @@ public class DatabaseFormsRepository implements FormsRepository {
                 .build();
     }
 
+    @Nullable
+    private static Long getLongOrNull(Cursor cursor, int columnIndex) {
+        return columnIndex == -1 || cursor.isNull(columnIndex) ? null : cursor.getLong(columnIndex);
+    }
+
     private static ContentValues getValuesFromFormObject(Form form, StoragePathProvider storagePathProvider) {
         ContentValues values = new ContentValues();
         values.put(FormsProviderAPI.FormsColumns.DISPLAY_NAME, form.getDisplayName());
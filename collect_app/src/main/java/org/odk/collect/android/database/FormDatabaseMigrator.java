@@ -15,7 +15,9 @@ import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DEL
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DESCRIPTION;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DISPLAY_NAME;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DISPLAY_SUBTEXT;
+import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_LAST_MODIFIED;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_PATH;
+import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_SIZE;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_MEDIA_PATH;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.GEOMETRY_XPATH;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.JRCACHE_FILE_PATH;
@@ -38,6 +40,8 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
 
     public void onCreate(SQLiteDatabase db) {
         createFormsTableV10(db);
+        createFormsIndexesV11(db);
+        upgradeToVersion12(db);
     }
 
     @SuppressWarnings({"checkstyle:FallThrough"})
@@ -60,12 +64,18 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
                 upgradeToVersion9(db);
             case 9:
                 upgradeToVersion10(db);
+            case 10:
+                upgradeToVersion11(db);
+            case 11:
+                upgradeToVersion12(db);
         }
     }
 
     public void onDowngrade(SQLiteDatabase db) throws SQLException {
         SQLiteUtils.dropTable(db, FORMS_TABLE_NAME);
         createFormsTableV10(db);
+        createFormsIndexesV11(db);
+        upgradeToVersion12(db);
     }
 
     private void upgradeToVersion2(SQLiteDatabase db) {
@@ -236,6 +246,15 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
         SQLiteUtils.dropTable(db, temporaryTable);
     }
 
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        createFormsIndexesV11(db);
+    }
+
+    private void upgradeToVersion12(SQLiteDatabase db) {
+        SQLiteUtils.addColumn(db, FORMS_TABLE_NAME, FORM_FILE_SIZE, "integer");
+        SQLiteUtils.addColumn(db, FORMS_TABLE_NAME, FORM_FILE_LAST_MODIFIED, "integer");
+    }
+
     private void createFormsTableV4(SQLiteDatabase db, String tableName) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + tableName + " ("
                 + _ID + " integer primary key, "
@@ -318,4 +337,14 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
                 + GEOMETRY_XPATH + " text, "
                 + DELETED_DATE + " integer);");
     }
+
+    /**
+     * Indexes for the lookups done by {@link DatabaseFormsRepository}: by form id and version
+     * (optionally filtered on deletion), by hash and by file path.
+     */
+    private void createFormsIndexesV11(SQLiteDatabase db) {
+        SQLiteUtils.createIndex(db, "forms_jr_form_id_jr_version_idx", FORMS_TABLE_NAME, JR_FORM_ID, JR_VERSION, DELETED_DATE);
+        SQLiteUtils.createIndex(db, "forms_md5_hash_idx", FORMS_TABLE_NAME, MD5_HASH);
+        SQLiteUtils.createIndex(db, "forms_form_file_path_idx", FORMS_TABLE_NAME, FORM_FILE_PATH);
+    }
 }
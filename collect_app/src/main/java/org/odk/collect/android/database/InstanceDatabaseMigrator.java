@@ -37,6 +37,7 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
     public void onCreate(SQLiteDatabase db) {
         createInstancesTableV5(db, INSTANCES_TABLE_NAME);
         upgradeToVersion6(db, INSTANCES_TABLE_NAME);
+        upgradeToVersion7(db);
     }
 
     @SuppressWarnings({"checkstyle:FallThrough"})
@@ -52,6 +53,8 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
                 upgradeToVersion5(db);
             case 5:
                 upgradeToVersion6(db, INSTANCES_TABLE_NAME);
+            case 6:
+                upgradeToVersion7(db);
                 break;
             default:
                 Timber.i("Unknown version %d", oldVersion);
@@ -64,6 +67,7 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
         upgradeToVersion6(db, temporaryTableName);
 
         dropObsoleteColumns(db, CURRENT_VERSION_COLUMN_NAMES, temporaryTableName);
+        upgradeToVersion7(db);
     }
 
     private void upgradeToVersion2(SQLiteDatabase db) {
@@ -132,6 +136,16 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
         SQLiteUtils.addColumn(db, name, GEOMETRY_TYPE, "text");
     }
 
+    /**
+     * Upgrade to version 7. Adds indexes for the lookups done by {@link DatabaseInstancesRepository}:
+     * by status, by form id and version and by file path. The columns are unchanged.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        SQLiteUtils.createIndex(db, "instances_status_idx", INSTANCES_TABLE_NAME, STATUS);
+        SQLiteUtils.createIndex(db, "instances_jr_form_id_jr_version_idx", INSTANCES_TABLE_NAME, JR_FORM_ID, JR_VERSION);
+        SQLiteUtils.createIndex(db, "instances_instance_file_path_idx", INSTANCES_TABLE_NAME, INSTANCE_FILE_PATH);
+    }
+
     private void createInstancesTableV5(SQLiteDatabase db, String name) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + name + " ("
                 + _ID + " integer primary key, "
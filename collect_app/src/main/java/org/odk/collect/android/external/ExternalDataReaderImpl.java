@@ -25,7 +25,10 @@ import org.odk.collect.android.tasks.FormLoaderTask;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -37,9 +40,19 @@ import timber.log.Timber;
 public class ExternalDataReaderImpl implements ExternalDataReader {
 
     private final FormLoaderTask formLoaderTask;
+    private final Map<String, Set<String>> fullTextSearchColumns;
 
     public ExternalDataReaderImpl(FormLoaderTask formLoaderTask) {
+        this(formLoaderTask, Collections.emptyMap());
+    }
+
+    /**
+     * @param fullTextSearchColumns the safe names of the columns to build full-text indexes for
+     *                              keyed by (lower case) data set name
+     */
+    public ExternalDataReaderImpl(FormLoaderTask formLoaderTask, Map<String, Set<String>> fullTextSearchColumns) {
         this.formLoaderTask = formLoaderTask;
+        this.fullTextSearchColumns = fullTextSearchColumns;
     }
 
     @Override
@@ -59,9 +72,14 @@ public class ExternalDataReaderImpl implements ExternalDataReader {
     private boolean doImportDataSetAndContinue(String dataSetName, File dataSetFile) {
         File dbFile = new File(dataSetFile.getParentFile().getAbsolutePath(),
                 dataSetName + ".db");
+        Set<String> dataSetFullTextSearchColumns = fullTextSearchColumns.get(dataSetName.toLowerCase(Locale.US));
+        if (dataSetFullTextSearchColumns == null) {
+            dataSetFullTextSearchColumns = Collections.emptySet();
+        }
+
         if (dbFile.exists()) {
             // Determine if we need to reimport
-            if (ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, dataSetFile)) {
+            if (ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, dataSetFile, dataSetFullTextSearchColumns)) {
                 boolean deleted = dbFile.delete();
                 if (!deleted) {
                     Timber.e("%s has changed but we could not delete the previous DB at %s",
@@ -74,7 +92,7 @@ public class ExternalDataReaderImpl implements ExternalDataReader {
         }
         ExternalSQLiteOpenHelper externalSQLiteOpenHelper = new ExternalSQLiteOpenHelper(
                 dbFile);
-        externalSQLiteOpenHelper.importFromCSV(dataSetFile, this, formLoaderTask);
+        externalSQLiteOpenHelper.importFromCSV(dataSetFile, this, formLoaderTask, dataSetFullTextSearchColumns);
 
         if (formLoaderTask != null && formLoaderTask.isCancelled()) {
             Timber.w(
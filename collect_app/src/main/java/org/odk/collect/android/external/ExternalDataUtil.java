@@ -60,9 +60,18 @@ public final class ExternalDataUtil {
 
     public static final String EXTERNAL_DATA_TABLE_NAME = "externalData";
     public static final String EXTERNAL_METADATA_TABLE_NAME = "externalMetadata";
+    public static final String EXTERNAL_DATA_FTS_TABLE_NAME = "externalDataFts";
     public static final String SORT_COLUMN_NAME = "c_sortby";
     public static final String COLUMN_DATASET_FILENAME = "dataSetFilename";
     public static final String COLUMN_MD5_HASH = "md5Hash";
+    public static final String COLUMN_FILE_SIZE = "fileSize";
+    public static final String COLUMN_LAST_MODIFIED = "lastModified";
+
+    /**
+     * The longest token suffix that is put in the full-text index. See
+     * {@link #toFullTextDocument(String)}.
+     */
+    static final int MAX_FULL_TEXT_SUFFIX_LENGTH = 10;
 
     public static final Pattern SEARCH_FUNCTION_REGEX = Pattern.compile("search\\(.+\\)");
     private static final String COLUMN_SEPARATOR = ",";
@@ -328,6 +337,102 @@ public final class ExternalDataUtil {
         return fullRow;
     }
 
+    /**
+     * The full-text index uses SQLite's simple tokenizer, which only matches whole tokens or
+     * their prefixes. To find values containing a query anywhere, every suffix of each token
+     * is indexed as a token of its own: "Red apple" is indexed as
+     * "Red ed d apple pple ple le e".
+     *
+     * Suffixes only start at ASCII letters and digits as only those queries use the index (see
+     * {@link #canUseFullTextIndex(String)}).
+     *
+     * Indexing every suffix in full would make the index grow with the square of the token
+     * length (a 100 character token has 5050 characters of suffixes) so suffixes are cut to
+     * {@link #MAX_FULL_TEXT_SUFFIX_LENGTH} characters, which keeps it to at most that many times
+     * the size of the column. Longer queries are looked up by their first
+     * {@link #MAX_FULL_TEXT_SUFFIX_LENGTH} characters (see {@link #toFullTextQuery(String)}),
+     * which can find more rows than match, so the rows found are always checked with LIKE.
+     */
+    public static String toFullTextDocument(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        StringBuilder document = new StringBuilder();
+        int tokenStart = -1;
+        for (int i = 0; i <= value.length(); i++) {
+            if (i < value.length() && isFullTextTokenChar(value.charAt(i))) {
+                if (tokenStart == -1) {
+                    tokenStart = i;
+                }
+            } else if (tokenStart != -1) {
+                for (int suffixStart = tokenStart; suffixStart < i; suffixStart++) {
+                    if (suffixStart == tokenStart || isAsciiLetterOrDigit(value.charAt(suffixStart))) {
+                        if (document.length() > 0) {
+                            document.append(' ');
+                        }
+                        document.append(value, suffixStart, getSuffixEnd(value, suffixStart, i));
+                    }
+                }
+                tokenStart = -1;
+            }
+        }
+        return document.toString();
+    }
+
+    /**
+     * @return the MATCH argument that finds the rows that can contain the query (which
+     * {@link #canUseFullTextIndex(String)} must be true for)
+     */
+    public static String toFullTextQuery(String queriedValue) {
+        // Lower case so the value isn't read as an operator (OR, NOT...)
+        String query = queriedValue.toLowerCase(Locale.US);
+        if (query.length() > MAX_FULL_TEXT_SUFFIX_LENGTH) {
+            query = query.substring(0, MAX_FULL_TEXT_SUFFIX_LENGTH);
+        }
+        return query + '*';
+    }
+
+    private static int getSuffixEnd(String value, int suffixStart, int tokenEnd) {
+        int suffixEnd = Math.min(tokenEnd, suffixStart + MAX_FULL_TEXT_SUFFIX_LENGTH);
+
+        // Don't split a surrogate pair
+        if (suffixEnd < tokenEnd && Character.isHighSurrogate(value.charAt(suffixEnd - 1))) {
+            suffixEnd++;
+        }
+        return suffixEnd;
+    }
+
+    /**
+     * @return whether rows matching the query can be found with the full-text index. Queries
+     * with separators span more than one token so can't be, and only ASCII letters and digits
+     * are case folded the same way by the index and by LIKE.
+     */
+    public static boolean canUseFullTextIndex(String queriedValue) {
+        if (queriedValue == null || queriedValue.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < queriedValue.length(); i++) {
+            if (!isAsciiLetterOrDigit(queriedValue.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches the simple tokenizer: ASCII letters and digits and all non-ASCII characters are
+     * part of tokens, all other ASCII characters separate them.
+     */
+    private static boolean isFullTextTokenChar(char c) {
+        return c >= 0x80 || isAsciiLetterOrDigit(c);
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
     public static String nullSafe(String value) {
         return value == null ? "" : value;
     }
@@ -20,8 +20,11 @@ package org.odk.collect.android.external;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
@@ -39,9 +42,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import au.com.bytecode.opencsv.CSVReader;
 import timber.log.Timber;
@@ -61,6 +67,7 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
     private File dataSetFile;
     private ExternalDataReader externalDataReader;
     private FormLoaderTask formLoaderTask;
+    private Set<String> fullTextSearchColumns = Collections.emptySet();
 
     ExternalSQLiteOpenHelper(File dbFile) {
         super(new DatabaseContext(dbFile.getParentFile().getAbsolutePath()), dbFile.getName(), null, VERSION);
@@ -68,9 +75,18 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
 
     void importFromCSV(File dataSetFile, ExternalDataReader externalDataReader,
                        FormLoaderTask formLoaderTask) {
+        importFromCSV(dataSetFile, externalDataReader, formLoaderTask, Collections.emptySet());
+    }
+
+    /**
+     * @param fullTextSearchColumns safe names of the columns to build a full-text index for
+     */
+    void importFromCSV(File dataSetFile, ExternalDataReader externalDataReader,
+                       FormLoaderTask formLoaderTask, Set<String> fullTextSearchColumns) {
         this.dataSetFile = dataSetFile;
         this.externalDataReader = externalDataReader;
         this.formLoaderTask = formLoaderTask;
+        this.fullTextSearchColumns = fullTextSearchColumns;
 
         SQLiteDatabase writableDatabase = null;
         try {
@@ -111,6 +127,8 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
                 dataSetFile.getName(), ""));
 
         CSVReader reader = null;
+        SQLiteStatement insertStatement = null;
+        SQLiteStatement fullTextInsertStatement = null;
         try {
             reader = new CSVReader(new InputStreamReader(new FileInputStream(dataSetFile), "UTF-8"),
                     DELIMITING_CHAR, QUOTE_CHAR, ESCAPE_CHAR);
@@ -187,7 +205,56 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
                 }
             }
 
-            // populate the database
+            // populate the database with a single compiled insert. Each header's safe column name
+            // is worked out once and bound by its position in the statement rather than looked up
+            // for every cell. This all runs in the transaction SQLiteOpenHelper opens around
+            // onCreate so rows are committed together at the end.
+            String[] safeColumnNames = new String[headerRow.length];
+            int[] parameterIndexes = new int[headerRow.length];
+            List<String> insertColumns = new ArrayList<>();
+            for (int i = 0; i < headerRow.length; i++) {
+                String columnName = headerRow[i].trim();
+                if (columnName.length() == 0) {
+                    continue;
+                }
+                safeColumnNames[i] = ExternalDataUtil.toSafeColumnName(columnName, columnNamesCache);
+                insertColumns.add(safeColumnNames[i]);
+                parameterIndexes[i] = insertColumns.size();
+            }
+
+            int sortParameterIndex = -1;
+            if (!sortColumnAlreadyPresent) {
+                insertColumns.add(ExternalDataUtil.SORT_COLUMN_NAME);
+                sortParameterIndex = insertColumns.size();
+            }
+
+            insertStatement = db.compileStatement(createInsertSql(tableName, insertColumns));
+
+            // search() looks up values containing or starting with what's typed, which LIKE can
+            // only do by scanning every row. Columns the form searches that way get a full-text
+            // index that is filled in alongside the data table, sharing its row ids.
+            List<Integer> fullTextHeaderIndexes = new ArrayList<>();
+            List<String> fullTextColumns = new ArrayList<>();
+            for (int i = 0; i < headerRow.length; i++) {
+                if (safeColumnNames[i] != null && fullTextSearchColumns.contains(safeColumnNames[i])
+                        && !safeColumnNames[i].equals(ExternalDataUtil.SORT_COLUMN_NAME)) {
+                    fullTextHeaderIndexes.add(i);
+                    fullTextColumns.add(safeColumnNames[i]);
+                }
+            }
+
+            if (!fullTextColumns.isEmpty()) {
+                String createFullTextSql = "CREATE VIRTUAL TABLE " + ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME
+                        + " USING fts4(" + TextUtils.join(", ", fullTextColumns) + ", tokenize=simple);";
+                Timber.w("Creating full-text index for %s with query: %s", dataSetFile, createFullTextSql);
+                db.execSQL(createFullTextSql);
+
+                List<String> fullTextInsertColumns = new ArrayList<>();
+                fullTextInsertColumns.add("docid");
+                fullTextInsertColumns.addAll(fullTextColumns);
+                fullTextInsertStatement = db.compileStatement(createInsertSql(ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME, fullTextInsertColumns));
+            }
+
             String[] row = reader.readNext();
             int rowCount = 0;
             while (row != null && !isCancelled()) {
@@ -205,30 +272,45 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
                     row = ExternalDataUtil.fillUpNullValues(row, headerRow);
                 }
 
-                ContentValues values = new ContentValues();
-                if (!sortColumnAlreadyPresent) {
-                    values.put(ExternalDataUtil.SORT_COLUMN_NAME, rowCount + 1);
+                insertStatement.clearBindings();
+                if (sortParameterIndex != -1) {
+                    insertStatement.bindLong(sortParameterIndex, rowCount + 1);
                 }
 
                 for (int i = 0; i < row.length && i < headerRow.length; i++) {
-                    String columnName = headerRow[i].trim();
+                    String safeColumnName = safeColumnNames[i];
                     String columnValue = row[i];
-                    if (columnName.length() == 0) {
+                    if (safeColumnName == null) {
                         continue;
                     }
-                    String safeColumnName = ExternalDataUtil.toSafeColumnName(columnName,
-                            columnNamesCache);
                     if (safeColumnName.equals(ExternalDataUtil.SORT_COLUMN_NAME)) {
                         try {
-                            values.put(safeColumnName, Double.parseDouble(columnValue));
+                            insertStatement.bindDouble(parameterIndexes[i], Double.parseDouble(columnValue));
                         } catch (NumberFormatException e) {
                             throw new ExternalDataException(TranslationHandler.getString(Collect.getInstance(), R.string.ext_sortBy_numeric_error, columnValue));
                         }
+                    } else if (columnValue == null) {
+                        insertStatement.bindNull(parameterIndexes[i]);
                     } else {
-                        values.put(safeColumnName, columnValue);
+                        insertStatement.bindString(parameterIndexes[i], columnValue);
+                    }
+                }
+                long rowId = insertStatement.executeInsert();
+
+                if (fullTextInsertStatement != null) {
+                    fullTextInsertStatement.clearBindings();
+                    fullTextInsertStatement.bindLong(1, rowId);
+                    for (int i = 0; i < fullTextHeaderIndexes.size(); i++) {
+                        String document = ExternalDataUtil.toFullTextDocument(row[fullTextHeaderIndexes.get(i)]);
+                        if (document == null) {
+                            fullTextInsertStatement.bindNull(i + 2);
+                        } else {
+                            fullTextInsertStatement.bindString(i + 2, document);
+                        }
                     }
+                    fullTextInsertStatement.executeInsert();
                 }
-                db.insertOrThrow(tableName, null, values);
+
                 row = reader.readNext();
                 rowCount++;
                 if (rowCount % 100 == 0) {
@@ -254,6 +336,12 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
                 onProgress(TranslationHandler.getString(Collect.getInstance(), R.string.ext_import_completed_message));
             }
         } finally {
+            if (insertStatement != null) {
+                insertStatement.close();
+            }
+            if (fullTextInsertStatement != null) {
+                fullTextInsertStatement.close();
+            }
             if (reader != null) {
                 try {
                     reader.close();
@@ -264,28 +352,96 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
         }
     }
 
+    private static String createInsertSql(String tableName, List<String> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i != 0) {
+                sql.append(", ");
+                parameters.append(", ");
+            }
+            sql.append(columns.get(i));
+            parameters.append('?');
+        }
+        return sql.append(") VALUES (").append(parameters).append(");").toString();
+    }
+
     protected boolean isCancelled() {
         return formLoaderTask != null && formLoaderTask.isCancelled();
     }
 
-    // Create a metadata table with a single column that keeps track of the date of the last import
-    // of this data set.
+    // Create a metadata table that keeps track of the hash of the data set when it was last imported
+    // along with its size and last modified time (its fingerprint).
     static void createAndPopulateMetadataTable(SQLiteDatabase db, String metadataTableName, File dataSetFile) {
         final String dataSetFilenameColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_DATASET_FILENAME);
         final String md5HashColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_MD5_HASH);
+        final String fileSizeColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_FILE_SIZE);
+        final String lastModifiedColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_LAST_MODIFIED);
 
         List<String> columnDefinitions = new ArrayList<>();
         columnDefinitions.add(CustomSQLiteQueryBuilder.formatColumnDefinition(dataSetFilenameColumn, "TEXT"));
         columnDefinitions.add(CustomSQLiteQueryBuilder.formatColumnDefinition(md5HashColumn, "TEXT NOT NULL"));
+        columnDefinitions.add(CustomSQLiteQueryBuilder.formatColumnDefinition(fileSizeColumn, "INTEGER"));
+        columnDefinitions.add(CustomSQLiteQueryBuilder.formatColumnDefinition(lastModifiedColumn, "INTEGER"));
 
         CustomSQLiteQueryExecutor.begin(db).createTable(metadataTableName).columnsForCreate(columnDefinitions).end();
 
         ContentValues metadata = new ContentValues();
         metadata.put(ExternalDataUtil.COLUMN_DATASET_FILENAME, dataSetFile.getName());
         metadata.put(ExternalDataUtil.COLUMN_MD5_HASH, FileUtils.getMd5Hash(dataSetFile));
+        metadata.put(ExternalDataUtil.COLUMN_FILE_SIZE, dataSetFile.length());
+        metadata.put(ExternalDataUtil.COLUMN_LAST_MODIFIED, dataSetFile.lastModified());
         db.insertOrThrow(metadataTableName, null, metadata);
     }
 
+    /**
+     * @return whether the data set has the same size and last modified time as when it was last
+     * imported (or when its fingerprint was last updated). Metadata tables from before
+     * fingerprints were recorded never match.
+     */
+    static boolean hasSameFingerprint(SQLiteDatabase db, String metadataTableName, File dataSetFile) {
+        if (!SQLiteUtils.doesColumnExist(db, metadataTableName, ExternalDataUtil.COLUMN_FILE_SIZE)
+                || !SQLiteUtils.doesColumnExist(db, metadataTableName, ExternalDataUtil.COLUMN_LAST_MODIFIED)) {
+            return false;
+        }
+
+        final String dataSetFilenameColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_DATASET_FILENAME);
+        final String fileSizeColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_FILE_SIZE);
+        final String lastModifiedColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_LAST_MODIFIED);
+        final String dataSetFilenameLiteral = CustomSQLiteQueryBuilder.quoteStringLiteral(dataSetFile.getName());
+
+        String[] columns = {fileSizeColumn, lastModifiedColumn};
+        String selectionCriteria = CustomSQLiteQueryBuilder.formatCompareEquals(dataSetFilenameColumn, dataSetFilenameLiteral);
+        try (Cursor cursor = db.query(metadataTableName, columns, selectionCriteria, null, null, null, null)) {
+            return cursor.getCount() == 1
+                    && cursor.moveToFirst()
+                    && !cursor.isNull(0) && cursor.getLong(0) == dataSetFile.length()
+                    && !cursor.isNull(1) && cursor.getLong(1) == dataSetFile.lastModified();
+        }
+    }
+
+    /**
+     * Records the data set's current size and last modified time so that it doesn't need to be
+     * hashed again until it is touched.
+     */
+    static void updateFingerprint(SQLiteDatabase db, String metadataTableName, File dataSetFile) {
+        try {
+            SQLiteUtils.addColumn(db, metadataTableName, ExternalDataUtil.COLUMN_FILE_SIZE, "INTEGER");
+            SQLiteUtils.addColumn(db, metadataTableName, ExternalDataUtil.COLUMN_LAST_MODIFIED, "INTEGER");
+
+            ContentValues fingerprint = new ContentValues();
+            fingerprint.put(ExternalDataUtil.COLUMN_FILE_SIZE, dataSetFile.length());
+            fingerprint.put(ExternalDataUtil.COLUMN_LAST_MODIFIED, dataSetFile.lastModified());
+
+            final String dataSetFilenameColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_DATASET_FILENAME);
+            final String dataSetFilenameLiteral = CustomSQLiteQueryBuilder.quoteStringLiteral(dataSetFile.getName());
+            db.update(metadataTableName, fingerprint, CustomSQLiteQueryBuilder.formatCompareEquals(dataSetFilenameColumn, dataSetFilenameLiteral), null);
+        } catch (SQLException e) {
+            // The file will be hashed again next time
+            Timber.w(e);
+        }
+    }
+
     static String getLastMd5Hash(SQLiteDatabase db, String metadataTableName, File dataSetFile) {
         final String dataSetFilenameColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_DATASET_FILENAME);
         final String md5HashColumn = CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_MD5_HASH);
@@ -305,8 +461,18 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
     }
 
     static boolean shouldUpdateDBforDataSet(File dbFile, File dataSetFile) {
-        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
-        return shouldUpdateDBforDataSet(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME, ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME, dataSetFile);
+        return shouldUpdateDBforDataSet(dbFile, dataSetFile, Collections.emptySet());
+    }
+
+    static boolean shouldUpdateDBforDataSet(File dbFile, File dataSetFile, Set<String> fullTextSearchColumns) {
+        // Writable so the fingerprint can be updated
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            return shouldUpdateDBforDataSet(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME, ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME, dataSetFile)
+                    || isMissingFullTextSearchColumns(db, fullTextSearchColumns);
+        } finally {
+            db.close();
+        }
     }
 
     static boolean shouldUpdateDBforDataSet(SQLiteDatabase db, String dataTableName, String metadataTableName, File dataSetFile) {
@@ -316,10 +482,41 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
         if (!SQLiteUtils.doesTableExist(db, metadataTableName)) {
             return true;
         }
+        // Data sets can be hundreds of MB so avoid reading them if they haven't been touched
+        if (hasSameFingerprint(db, metadataTableName, dataSetFile)) {
+            return false;
+        }
+
         // Import if the CSV file has been updated
         String priorImportMd5 = getLastMd5Hash(db, metadataTableName, dataSetFile);
         String newFileMd5 = FileUtils.getMd5Hash(dataSetFile);
-        return newFileMd5 == null || !newFileMd5.equals(priorImportMd5);
+        if (newFileMd5 == null || !newFileMd5.equals(priorImportMd5)) {
+            return true;
+        }
+
+        // The file was touched (downloaded again for example) but has the same contents
+        if (!db.isReadOnly()) {
+            updateFingerprint(db, metadataTableName, dataSetFile);
+        }
+        return false;
+    }
+
+    /**
+     * @return whether any of the columns exist in the data table but aren't in the full-text
+     * index (because the form has been updated to search them for example)
+     */
+    static boolean isMissingFullTextSearchColumns(SQLiteDatabase db, Set<String> fullTextSearchColumns) {
+        if (fullTextSearchColumns.isEmpty()) {
+            return false;
+        }
+
+        Set<String> missingColumns = new HashSet<>(fullTextSearchColumns);
+        missingColumns.retainAll(SQLiteUtils.getColumnNames(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME));
+        missingColumns.remove(ExternalDataUtil.SORT_COLUMN_NAME);
+        if (SQLiteUtils.doesTableExist(db, ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME)) {
+            missingColumns.removeAll(SQLiteUtils.getColumnNames(db, ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME));
+        }
+        return !missingColumns.isEmpty();
     }
 
     @Override
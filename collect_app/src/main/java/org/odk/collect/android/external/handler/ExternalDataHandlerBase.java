@@ -51,6 +51,10 @@ public abstract class ExternalDataHandlerBase implements ExternalDataHandler {
      * @return the normalized data-set name.
      */
     protected String normalize(String dataSetName) {
+        return normalizeDataSetName(dataSetName);
+    }
+
+    static String normalizeDataSetName(String dataSetName) {
         dataSetName = dataSetName.toLowerCase(Locale.US);
         if (dataSetName.endsWith(".csv")) {
             dataSetName = dataSetName.substring(0, dataSetName.lastIndexOf(".csv"));
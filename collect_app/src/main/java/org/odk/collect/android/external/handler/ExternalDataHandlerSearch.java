@@ -21,9 +21,16 @@ package org.odk.collect.android.external.handler;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.IFormElement;
+import org.javarosa.core.model.QuestionDef;
 import org.javarosa.core.model.SelectChoice;
 import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.xpath.XPathParseTool;
+import org.javarosa.xpath.expr.XPathExpression;
 import org.javarosa.xpath.expr.XPathFuncExpr;
+import org.javarosa.xpath.expr.XPathStringLiteral;
+import org.javarosa.xpath.parser.XPathSyntaxException;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.exception.ExternalDataException;
@@ -31,13 +38,18 @@ import org.odk.collect.android.external.ExternalDataManager;
 import org.odk.collect.android.external.ExternalDataUtil;
 import org.odk.collect.android.external.ExternalSQLiteOpenHelper;
 import org.odk.collect.android.external.ExternalSelectChoice;
+import org.odk.collect.android.utilities.SQLiteUtils;
 import org.odk.collect.android.utilities.TranslationHandler;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
 
 import timber.log.Timber;
 
@@ -159,17 +171,17 @@ public class ExternalDataHandlerSearch extends ExternalDataHandlerBase {
             String[] selectionArgs;
 
             if (searchRows && useFilter) {
-                selection = "( " + createLikeExpression(queriedColumns) + " ) AND "
+                List<String> searchArgs = new ArrayList<>();
+                selection = "( " + createSearchExpression(db, queriedColumns, externalDataSearchType,
+                        queriedValue, searchArgs) + " ) AND "
                         + ExternalDataUtil.toSafeColumnName(filterColumn) + "=? ";
-                String[] likeArgs = externalDataSearchType.constructLikeArguments(queriedValue,
-                        queriedColumns.size());
-                selectionArgs = new String[likeArgs.length + 1];
-                System.arraycopy(likeArgs, 0, selectionArgs, 0, likeArgs.length);
-                selectionArgs[selectionArgs.length - 1] = filterValue;
+                searchArgs.add(filterValue);
+                selectionArgs = searchArgs.toArray(new String[searchArgs.size()]);
             } else if (searchRows) {
-                selection = createLikeExpression(queriedColumns);
-                selectionArgs = externalDataSearchType.constructLikeArguments(queriedValue,
-                        queriedColumns.size());
+                List<String> searchArgs = new ArrayList<>();
+                selection = createSearchExpression(db, queriedColumns, externalDataSearchType,
+                        queriedValue, searchArgs);
+                selectionArgs = searchArgs.toArray(new String[searchArgs.size()]);
             } else if (useFilter) {
                 selection = ExternalDataUtil.toSafeColumnName(filterColumn) + "=? ";
                 selectionArgs = new String[]{filterValue};
@@ -240,6 +252,110 @@ public class ExternalDataHandlerSearch extends ExternalDataHandlerBase {
         return selectChoices;
     }
 
+    /**
+     * Builds a LIKE expression for the queried columns and adds its arguments to selectionArgs.
+     * Columns with a full-text index are looked up in it first so that LIKE only checks the rows
+     * that can match rather than every row in the table.
+     */
+    private String createSearchExpression(SQLiteDatabase db, List<String> queriedColumns,
+            ExternalDataSearchType searchType, String queriedValue, List<String> selectionArgs) {
+        List<String> fullTextColumns = getFullTextColumns(db, searchType, queriedValue);
+        String likeArgument = searchType.constructLikeArguments(queriedValue, 1)[0];
+
+        StringBuilder sb = new StringBuilder();
+        for (String queriedColumn : queriedColumns) {
+            if (sb.length() > 0) {
+                sb.append(" OR ");
+            }
+            if (fullTextColumns.contains(queriedColumn)) {
+                sb.append("( rowid IN (SELECT docid FROM ")
+                        .append(ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME)
+                        .append(" WHERE ").append(queriedColumn).append(" MATCH ?) AND ")
+                        .append(queriedColumn).append(" LIKE ? ) ");
+                selectionArgs.add(ExternalDataUtil.toFullTextQuery(queriedValue));
+            } else {
+                sb.append(queriedColumn).append(" LIKE ? ");
+            }
+            selectionArgs.add(likeArgument);
+        }
+        return sb.toString();
+    }
+
+    private List<String> getFullTextColumns(SQLiteDatabase db, ExternalDataSearchType searchType,
+            String queriedValue) {
+        if (!searchType.isFullTextSearchable() || !ExternalDataUtil.canUseFullTextIndex(queriedValue)
+                || !SQLiteUtils.doesTableExist(db, ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME)) {
+            return Collections.emptyList();
+        }
+        return SQLiteUtils.getColumnNames(db, ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME);
+    }
+
+    /**
+     * @return the safe names of the columns that search() appearances in the form look up with
+     * contains or startsWith, keyed by normalized data set name. These get a full-text index
+     * when the data sets are imported. Appearances whose arguments aren't literals are skipped
+     * as their columns can't be known until the form is filled.
+     */
+    public static Map<String, Set<String>> getFullTextSearchColumns(FormDef formDef) {
+        Map<String, Set<String>> fullTextSearchColumns = new HashMap<>();
+        collectFullTextSearchColumns(formDef, fullTextSearchColumns);
+        return fullTextSearchColumns;
+    }
+
+    private static void collectFullTextSearchColumns(IFormElement element,
+            Map<String, Set<String>> fullTextSearchColumns) {
+        if (element instanceof QuestionDef) {
+            String appearance = ((QuestionDef) element).getAppearanceAttr();
+            Matcher matcher = appearance == null ? null : ExternalDataUtil.SEARCH_FUNCTION_REGEX.matcher(appearance);
+            if (matcher != null && matcher.find()) {
+                try {
+                    XPathExpression expression = XPathParseTool.parseXPath(matcher.group(0));
+                    if (expression instanceof XPathFuncExpr) {
+                        addFullTextSearchColumns((XPathFuncExpr) expression, fullTextSearchColumns);
+                    }
+                } catch (XPathSyntaxException e) {
+                    // The appearance's error is shown when the question is
+                    Timber.i(e);
+                }
+            }
+        }
+
+        List<IFormElement> children = element.getChildren();
+        if (children != null) {
+            for (IFormElement child : children) {
+                collectFullTextSearchColumns(child, fullTextSearchColumns);
+            }
+        }
+    }
+
+    private static void addFullTextSearchColumns(XPathFuncExpr search,
+            Map<String, Set<String>> fullTextSearchColumns) {
+        if (!search.id.name.equalsIgnoreCase(HANDLER_NAME)
+                || (search.args.length != 4 && search.args.length != 6)) {
+            return;
+        }
+
+        // The queried value is normally a reference to another question so isn't checked
+        for (int i = 0; i < 3; i++) {
+            if (!(search.args[i] instanceof XPathStringLiteral)) {
+                return;
+            }
+        }
+
+        ExternalDataSearchType searchType = ExternalDataSearchType.getByKeyword(
+                ((XPathStringLiteral) search.args[1]).s, ExternalDataSearchType.CONTAINS);
+        String queriedColumns = ((XPathStringLiteral) search.args[2]).s;
+        if (!searchType.isFullTextSearchable() || queriedColumns.trim().length() == 0) {
+            return;
+        }
+
+        String dataSetName = normalizeDataSetName(((XPathStringLiteral) search.args[0]).s);
+        if (!fullTextSearchColumns.containsKey(dataSetName)) {
+            fullTextSearchColumns.put(dataSetName, new HashSet<>());
+        }
+        fullTextSearchColumns.get(dataSetName).addAll(ExternalDataUtil.createListOfColumns(queriedColumns));
+    }
+
     protected String createLikeExpression(List<String> queriedColumns) {
         StringBuilder sb = new StringBuilder();
         for (String queriedColumn : queriedColumns) {
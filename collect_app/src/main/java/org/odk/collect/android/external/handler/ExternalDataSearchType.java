@@ -25,28 +25,28 @@ package org.odk.collect.android.external.handler;
  */
 enum ExternalDataSearchType {
 
-    CONTAINS("contains") {
+    CONTAINS("contains", true) {
         @Override
         protected String getSingleLikeArgument(String queriedValue) {
             return '%' + queriedValue + '%';
         }
     },
 
-    MATCHES("matches") {
+    MATCHES("matches", false) {
         @Override
         protected String getSingleLikeArgument(String queriedValue) {
             return queriedValue;
         }
     },
 
-    STARTS("startsWith") {
+    STARTS("startsWith", true) {
         @Override
         protected String getSingleLikeArgument(String queriedValue) {
             return queriedValue + '%';
         }
     },
 
-    ENDS("endsWith") {
+    ENDS("endsWith", false) {
         @Override
         protected String getSingleLikeArgument(String queriedValue) {
             return '%' + queriedValue;
@@ -54,15 +54,25 @@ enum ExternalDataSearchType {
     };
 
     private final String keyword;
+    private final boolean fullTextSearchable;
 
-    ExternalDataSearchType(String keyword) {
+    ExternalDataSearchType(String keyword, boolean fullTextSearchable) {
         this.keyword = keyword;
+        this.fullTextSearchable = fullTextSearchable;
     }
 
     public String getKeyword() {
         return keyword;
     }
 
+    /**
+     * @return whether the full-text index can narrow down the rows to check with LIKE. Ends
+     * can't be looked up by token prefix and matches compare whole values.
+     */
+    public boolean isFullTextSearchable() {
+        return fullTextSearchable;
+    }
+
     public static ExternalDataSearchType getByKeyword(String keyword,
             ExternalDataSearchType fallback) {
         if (keyword == null) {
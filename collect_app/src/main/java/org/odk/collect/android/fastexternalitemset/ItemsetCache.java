@@ -0,0 +1,112 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.SelectChoice;
+import org.javarosa.xpath.expr.XPathExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds what {@link ItemsetDao} works out for one form so selects don't redo it every time
+ * they're rendered: each itemset query's selection and parsed argument expressions, and the
+ * items the most recent queries returned.
+ *
+ * The itemsets table is only imported when the form is loaded so results can't go stale while
+ * a form is open. A new cache should be used for each form load.
+ */
+public class ItemsetCache {
+
+    private static final int MAX_CACHED_RESULTS = 64;
+
+    private final Map<String, CompiledQuery> queries = new HashMap<>();
+
+    private final Map<ResultKey, List<SelectChoice>> results = new LinkedHashMap<ResultKey, List<SelectChoice>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ResultKey, List<SelectChoice>> eldest) {
+            return size() > MAX_CACHED_RESULTS;
+        }
+    };
+
+    @Nullable
+    public synchronized CompiledQuery getQuery(String query) {
+        return queries.get(query);
+    }
+
+    public synchronized void putQuery(String query, CompiledQuery compiledQuery) {
+        queries.put(query, compiledQuery);
+    }
+
+    /**
+     * @return a copy of the items cached for the query with these arguments (in this language)
+     * or null if they aren't cached
+     */
+    @Nullable
+    public synchronized List<SelectChoice> getResult(String table, String selection, String[] selectionArgs, String language) {
+        List<SelectChoice> items = results.get(new ResultKey(table, selection, selectionArgs, language));
+        return items != null ? new ArrayList<>(items) : null;
+    }
+
+    public synchronized void putResult(String table, String selection, String[] selectionArgs, String language, List<SelectChoice> items) {
+        results.put(new ResultKey(table, selection, selectionArgs, language), new ArrayList<>(items));
+    }
+
+    /**
+     * An itemset query attribute broken down into the SQL selection and the expressions whose
+     * values are its arguments.
+     */
+    public static class CompiledQuery {
+
+        final String listName;
+        final String selection;
+        final List<XPathExpression> arguments;
+
+        CompiledQuery(String listName, String selection, List<XPathExpression> arguments) {
+            this.listName = listName;
+            this.selection = selection;
+            this.arguments = arguments;
+        }
+    }
+
+    private static class ResultKey {
+
+        private final String table;
+        private final String selection;
+        private final String[] selectionArgs;
+        private final String language;
+
+        ResultKey(String table, String selection, String[] selectionArgs, String language) {
+            this.table = table;
+            this.selection = selection;
+            this.selectionArgs = selectionArgs.clone();
+            this.language = language;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            ResultKey resultKey = (ResultKey) o;
+            return table.equals(resultKey.table)
+                    && selection.equals(resultKey.selection)
+                    && Arrays.equals(selectionArgs, resultKey.selectionArgs)
+                    && Objects.equals(language, resultKey.language);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(table, selection, Arrays.hashCode(selectionArgs), language);
+        }
+    }
+}
@@ -87,15 +87,53 @@ public class ItemsetDao {
     }
 
     public List<SelectChoice> getItems(FormEntryPrompt formEntryPrompt, XPathParseTool pathParseTool) throws FileNotFoundException, XPathSyntaxException {
+        FormController formController = Collect.getInstance().getFormController();
+        if (formController == null) {
+            Timber.w("Can't instantiate ItemsetWidget with a null FormController.");
+            return null;
+        }
+
+        // the query only needs to be parsed once per form. Questions in repeats share it.
+        ItemsetCache cache = formController.getItemsetCache();
         String nodesetString = getNodesetString(formEntryPrompt);
+        ItemsetCache.CompiledQuery query = cache.getQuery(nodesetString);
+        if (query == null) {
+            query = compileQuery(nodesetString, pathParseTool);
+            cache.putQuery(nodesetString, query);
+        }
+
+        String[] selectionArgs = getSelectionArgs(query, formController, formEntryPrompt);
 
+        return selectionArgs == null ? null : getItemsFromDatabase(query.selection, selectionArgs, formController, adapter, cache);
+    }
+
+    @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException")
+    private ItemsetCache.CompiledQuery compileQuery(String nodesetStr, XPathParseTool pathParseTool) throws XPathSyntaxException {
         List<String> arguments = new ArrayList<>();
-        String selectionString = getSelectionStringAndPopulateArguments(getQueryString(nodesetString), arguments);
+        String selectionString = getSelectionStringAndPopulateArguments(getQueryString(nodesetStr), arguments, new ArrayList<>());
 
-        FormController formController = Collect.getInstance().getFormController();
-        String[] selectionArgs = getSelectionArgs(arguments, nodesetString, formController, pathParseTool, formEntryPrompt);
+        // parse out the list name, between the ''
+        String listName = nodesetStr.substring(nodesetStr.indexOf('\'') + 1, nodesetStr.lastIndexOf('\''));
 
-        return selectionArgs == null ? null : getItemsFromDatabase(selectionString, selectionArgs, formController, adapter);
+        List<XPathExpression> argumentExpressions = new ArrayList<>();
+        for (String argument : arguments) {
+            try {
+                argumentExpressions.add(pathParseTool.parseXPath(argument));
+            } catch (XPathSyntaxException e) {
+                throw new XPathSyntaxException(argument);
+            }
+        }
+
+        return new ItemsetCache.CompiledQuery(listName, selectionString, argumentExpressions);
+    }
+
+    /**
+     * @return the itemset columns an itemset query attribute filters on, in the order they're used
+     */
+    public static List<String> getFilterColumns(String nodesetStr) {
+        List<String> columns = new ArrayList<>();
+        getSelectionStringAndPopulateArguments(getQueryString(nodesetStr), new ArrayList<>(), columns);
+        return columns;
     }
 
     private String getNodesetString(FormEntryPrompt formEntryPrompt) {
@@ -105,12 +143,12 @@ public class ItemsetDao {
         return formEntryPrompt.getQuestion().getAdditionalAttribute(null, "query");
     }
 
-    private String getQueryString(String nodesetStr) {
+    private static String getQueryString(String nodesetStr) {
         // isolate the string between between the [ ] characters
         return nodesetStr.substring(nodesetStr.indexOf('[') + 1, nodesetStr.lastIndexOf(']'));
     }
 
-    private String getSelectionStringAndPopulateArguments(String queryString, List<String> arguments) {
+    private static String getSelectionStringAndPopulateArguments(String queryString, List<String> arguments, List<String> columns) {
         StringBuilder selectionString = new StringBuilder();
         // add the list name as the first argument, which will always be there
         selectionString.append("list_name=?");
@@ -142,6 +180,7 @@ public class ItemsetDao {
                     arguments
                             .add(pair[1]
                                     .trim());
+                    columns.add(pair[0].trim());
                 }
                 // move string forward to after " and "
                 queryString = queryString.substring(andIndex + 5, queryString.length());
@@ -156,6 +195,7 @@ public class ItemsetDao {
                             .append(QUOTATION_MARK)
                             .append("=? or ");
                     arguments.add(pair[1].trim());
+                    columns.add(pair[0].trim());
                 }
                 // move string forward to after " or "
                 queryString = queryString.substring(orIndex + 4, queryString.length());
@@ -172,33 +212,20 @@ public class ItemsetDao {
                     .append(QUOTATION_MARK)
                     .append("=?");
             arguments.add(pair[1].trim());
+            columns.add(pair[0].trim());
         }
         return selectionString.toString();
     }
 
-    @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException")
-    private String[] getSelectionArgs(List<String> arguments, String nodesetStr, FormController formController, XPathParseTool pathParseTool, FormEntryPrompt formEntryPrompt) throws XPathSyntaxException {
+    private String[] getSelectionArgs(ItemsetCache.CompiledQuery query, FormController formController, FormEntryPrompt formEntryPrompt) {
         // +1 is for the list_name
-        String[] selectionArgs = new String[arguments.size() + 1];
+        String[] selectionArgs = new String[query.arguments.size() + 1];
 
-        // parse out the list name, between the ''
-        String listName = nodesetStr.substring(nodesetStr.indexOf('\'') + 1, nodesetStr.lastIndexOf('\''));
-
-        selectionArgs[0] = listName; // first argument is always listname
-
-        if (formController == null) {
-            Timber.w("Can't instantiate ItemsetWidget with a null FormController.");
-            return null;
-        }
+        selectionArgs[0] = query.listName; // first argument is always listname
 
         // loop through the arguments, evaluate any expressions and build the query string for the DB
-        for (int i = 0; i < arguments.size(); i++) {
-            XPathExpression xpr;
-            try {
-                xpr = pathParseTool.parseXPath(arguments.get(i));
-            } catch (XPathSyntaxException e) {
-                throw new XPathSyntaxException(arguments.get(i));
-            }
+        for (int i = 0; i < query.arguments.size(); i++) {
+            XPathExpression xpr = query.arguments.get(i);
 
             if (xpr != null) {
                 FormDef form = formController.getFormDef();
@@ -221,16 +248,29 @@ public class ItemsetDao {
         return selectionArgs;
     }
 
-    private List<SelectChoice> getItemsFromDatabase(String selection, String[] selectionArgs, FormController formController, ItemsetDbAdapter adapter) throws FileNotFoundException {
+    private List<SelectChoice> getItemsFromDatabase(String selection, String[] selectionArgs, FormController formController, ItemsetDbAdapter adapter, ItemsetCache cache) throws FileNotFoundException {
         List<SelectChoice> items = new ArrayList<>();
 
         File itemsetFile = getItemsetFile(formController.getMediaFolder().getAbsolutePath());
 
         if (itemsetFile.exists()) {
-            adapter.open();
-
             // name of the itemset table for this form
             String pathHash = ItemsetDbAdapter.getMd5FromString(itemsetFile.getAbsolutePath());
+
+            // try to get the value associated with the label:lang
+            // string if that doen't exist, then just use label
+            String lang = "";
+            if (formController.getLanguages() != null && formController.getLanguages().length > 0) {
+                lang = formController.getLanguage();
+            }
+
+            // cascades whose parent answers haven't changed get the same items again
+            List<SelectChoice> cachedItems = cache.getResult(pathHash, selection, selectionArgs, lang);
+            if (cachedItems != null) {
+                return cachedItems;
+            }
+
+            adapter.open();
             try {
                 Cursor c = adapter.query(pathHash, selection, selectionArgs);
                 if (c != null) {
@@ -240,13 +280,6 @@ public class ItemsetDao {
                         String label;
                         String val;
 
-                        // try to get the value associated with the label:lang
-                        // string if that doen't exist, then just use label
-                        String lang = "";
-                        if (formController.getLanguages() != null && formController.getLanguages().length > 0) {
-                            lang = formController.getLanguage();
-                        }
-
                         // apparently you only need the double quotes in the
                         // column name when creating the column with a : included
                         String labelLang = "label" + "::" + lang;
@@ -265,6 +298,7 @@ public class ItemsetDao {
                     }
                     c.close();
                 }
+                cache.putResult(pathHash, selection, selectionArgs, lang, items);
             } catch (SQLiteException e) {
                 Timber.i(e);
             } finally {
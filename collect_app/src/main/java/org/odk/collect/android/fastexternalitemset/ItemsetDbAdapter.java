@@ -5,14 +5,20 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
 import org.odk.collect.android.database.DatabaseContext;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.utilities.SQLiteUtils;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import timber.log.Timber;
 
@@ -21,24 +27,33 @@ public class ItemsetDbAdapter {
     private DatabaseHelper dbHelper;
     private SQLiteDatabase db;
 
+    private String addRowTable;
+    private SQLiteStatement addRowStatement;
+    private int[] addRowParameterIndexes;
+
     public static final String DATABASE_NAME = "itemsets.db";
     private static final String DATABASE_TABLE = "itemset_";
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
     private static final String ITEMSET_TABLE = "itemsets";
     public static final String KEY_ITEMSET_HASH = "hash";
     public static final String KEY_PATH = "path";
+    public static final String KEY_FILE_SIZE = "file_size";
+    public static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_LIST_NAME = "list_name";
 
     private static final String CREATE_ITEMSET_TABLE =
             "CREATE TABLE IF NOT EXISTS " + ITEMSET_TABLE + " (_id integer primary key autoincrement, "
                     + KEY_ITEMSET_HASH + " text, "
-                    + KEY_PATH + " text "
+                    + KEY_PATH + " text, "
+                    + KEY_FILE_SIZE + " integer, "
+                    + KEY_LAST_MODIFIED + " integer "
                     + ");";
 
     /**
      * This class helps open, create, and upgrade the database file.
      */
-    private static class DatabaseHelper extends SQLiteOpenHelper {
+    static class DatabaseHelper extends SQLiteOpenHelper {
         DatabaseHelper() {
             super(new DatabaseContext(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.METADATA)), DATABASE_NAME, null, DATABASE_VERSION);
         }
@@ -52,6 +67,13 @@ public class ItemsetDbAdapter {
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion == 2) {
+                // itemsets without a fingerprint are hashed on their next load as before
+                SQLiteUtils.addColumn(db, ITEMSET_TABLE, KEY_FILE_SIZE, "integer");
+                SQLiteUtils.addColumn(db, ITEMSET_TABLE, KEY_LAST_MODIFIED, "integer");
+                return;
+            }
+
             Timber.w("Upgrading database from version %d to %d, which will destroy all old data", oldVersion, newVersion);
             // first drop all of our generated itemset tables
             Cursor c = db.query(ITEMSET_TABLE, null, null, null, null, null, null);
@@ -86,6 +108,11 @@ public class ItemsetDbAdapter {
     }
 
     public void close() {
+        if (addRowStatement != null) {
+            addRowStatement.close();
+            addRowStatement = null;
+            addRowTable = null;
+        }
         dbHelper.close();
     }
 
@@ -124,26 +151,117 @@ public class ItemsetDbAdapter {
         return true;
     }
 
+    /**
+     * Inserts a row using a statement that is compiled on the first row added to a table and
+     * reused until the adapter is closed or rows are added to another table.
+     */
     public boolean addRow(String tableName, String[] columns, String[] newRow) {
-        ContentValues cv = new ContentValues();
+        if (addRowStatement == null || !tableName.equals(addRowTable)) {
+            compileAddRowStatement(tableName, columns);
+        }
 
-        // rows don't necessarily use all the columns
-        // but a column is guaranteed to exist for a row (or else blow up)
-        for (int i = 0; i < newRow.length; i++) {
-            if (!columns[i].isEmpty()) {
-                cv.put("\"" + columns[i] + "\"", newRow[i]);
+        // rows don't necessarily use all the columns. Missing values are left null
+        addRowStatement.clearBindings();
+        for (int i = 0; i < newRow.length && i < columns.length; i++) {
+            if (addRowParameterIndexes[i] != 0 && newRow[i] != null) {
+                addRowStatement.bindString(addRowParameterIndexes[i], newRow[i]);
             }
         }
-        db.insert(DATABASE_TABLE + tableName, null, cv);
+        addRowStatement.executeInsert();
         return true;
     }
 
+    private void compileAddRowStatement(String tableName, String[] columns) {
+        if (addRowStatement != null) {
+            addRowStatement.close();
+        }
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(DATABASE_TABLE).append(tableName).append(" (");
+        StringBuilder parameters = new StringBuilder();
+        addRowParameterIndexes = new int[columns.length];
+        int parameterCount = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].isEmpty()) {
+                if (parameterCount > 0) {
+                    sql.append(", ");
+                    parameters.append(", ");
+                }
+                sql.append('"').append(columns[i]).append('"');
+                parameters.append('?');
+                addRowParameterIndexes[i] = ++parameterCount;
+            }
+        }
+        sql.append(") VALUES (").append(parameters).append(");");
+
+        addRowStatement = db.compileStatement(sql.toString());
+        addRowTable = tableName;
+    }
+
+    /**
+     * Creates an index on list_name followed by the columns (if it doesn't already exist) so that
+     * itemset queries filtering on them are index seeks. Columns that aren't in the table are left
+     * out.
+     */
+    public void createIndex(String pathHash, List<String> columns) {
+        String table = DATABASE_TABLE + pathHash;
+        List<String> tableColumns = SQLiteUtils.getColumnNames(db, table);
+        if (!tableColumns.contains(KEY_LIST_NAME)) {
+            return;
+        }
+
+        List<String> indexColumns = new ArrayList<>();
+        indexColumns.add(KEY_LIST_NAME);
+        for (String column : columns) {
+            if (tableColumns.contains(column) && !indexColumns.contains(column)) {
+                indexColumns.add(column);
+            }
+        }
+
+        String index = table + "_" + getMd5FromString(TextUtils.join(",", indexColumns));
+        SQLiteUtils.createIndex(db, index, table, indexColumns.toArray(new String[0]));
+    }
+
+    /**
+     * @return whether the file has the same size and last modified time as when the itemsets at
+     * its path were last imported or checked
+     */
+    public boolean hasSameFingerprint(File file) {
+        try (Cursor c = getItemsets(file.getAbsolutePath())) {
+            return c.getCount() == 1
+                    && c.moveToFirst()
+                    && !c.isNull(c.getColumnIndex(KEY_FILE_SIZE))
+                    && c.getLong(c.getColumnIndex(KEY_FILE_SIZE)) == file.length()
+                    && !c.isNull(c.getColumnIndex(KEY_LAST_MODIFIED))
+                    && c.getLong(c.getColumnIndex(KEY_LAST_MODIFIED)) == file.lastModified();
+        }
+    }
+
+    public void updateFingerprint(File file) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_FILE_SIZE, file.length());
+        values.put(KEY_LAST_MODIFIED, file.lastModified());
+
+        String where = KEY_PATH + "=?";
+        String[] whereArgs = {
+                new StoragePathProvider().getRelativeFormPath(file.getAbsolutePath())
+        };
+        update(values, where, whereArgs);
+    }
+
     public void beginTransaction() {
-        db.execSQL("BEGIN");
+        db.beginTransaction();
+    }
+
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
     }
 
-    public void commit() {
-        db.execSQL("COMMIT");
+    /**
+     * Ends the transaction, which is committed if it was marked successful and rolled back
+     * otherwise.
+     */
+    public void endTransaction() {
+        db.endTransaction();
     }
 
     public Cursor query(String hash, String selection, String[] selectionArgs) throws SQLException {
@@ -10,24 +10,20 @@ import java.util.List;
 public class AsyncTaskAuditEventWriter implements AuditEventLogger.AuditEventWriter {
 
     private static AsyncTask saveTask;
-    private final File file;
-    private final boolean isLocationEnabled;
-    private final boolean isTrackingChangesEnabled;
-    private final boolean isUserRequired;
-    private final boolean isTrackChangesReasonEnabled;
+    private final AuditFileAppender appender;
 
     public AsyncTaskAuditEventWriter(@NonNull File file, boolean isLocationEnabled, boolean isTrackingChangesEnabled, boolean isUserRequired, boolean isTrackChangesReasonEnabled) {
-        this.file = file;
-        this.isLocationEnabled = isLocationEnabled;
-        this.isTrackingChangesEnabled = isTrackingChangesEnabled;
-        this.isUserRequired = isUserRequired;
-        this.isTrackChangesReasonEnabled = isTrackChangesReasonEnabled;
+        appender = new AuditFileAppender(file, isLocationEnabled, isTrackingChangesEnabled, isUserRequired, isTrackChangesReasonEnabled);
     }
 
+    /**
+     * Events are written by tasks on AsyncTask's serial executor so only one is written at a
+     * time, in order, through the same appender.
+     */
     @Override
     public void writeEvents(List<AuditEvent> auditEvents) {
         AuditEvent[] auditEventArray = auditEvents.toArray(new AuditEvent[0]);
-        saveTask = new AuditEventSaveTask(file, isLocationEnabled, isTrackingChangesEnabled, isUserRequired, isTrackChangesReasonEnabled).execute(auditEventArray);
+        saveTask = new AuditEventSaveTask(appender).execute(auditEventArray);
     }
 
     @Override
@@ -18,43 +18,53 @@ public class AuditEventCSVLine {
     }
 
     public static String toCSVLine(AuditEvent auditEvent, boolean isTrackingLocationsEnabled, boolean isTrackingChangesEnabled, boolean isTrackingChangesReasonEnabled) {
+        StringBuilder line = new StringBuilder();
+        appendCSVLine(line, auditEvent, isTrackingLocationsEnabled, isTrackingChangesEnabled, isTrackingChangesReasonEnabled);
+        return line.toString();
+    }
+
+    /**
+     * Appends the event's CSV line (without a line break) to the builder so that writers can
+     * encode many events into one buffer.
+     */
+    public static void appendCSVLine(StringBuilder line, AuditEvent auditEvent, boolean isTrackingLocationsEnabled, boolean isTrackingChangesEnabled, boolean isTrackingChangesReasonEnabled) {
         FormIndex formIndex = auditEvent.getFormIndex();
         AuditEvent.AuditEventType auditEventType = auditEvent.getAuditEventType();
         long start = auditEvent.getStart();
         long end = auditEvent.getEnd();
-        String latitude = auditEvent.getLatitude();
-        String longitude = auditEvent.getLongitude();
-        String accuracy = auditEvent.getAccuracy();
-        String oldValue = auditEvent.getOldValue();
-        String newValue = auditEvent.getNewValue();
         String user = auditEvent.getUser();
         String changeReason = auditEvent.getChangeReason();
 
         String node = formIndex == null || formIndex.getReference() == null ? "" : getXPathPath(formIndex);
 
-        String string = String.format("%s,%s,%s,%s", auditEventType.getValue(), node, start, end != 0 ? end : "");
+        line.append(auditEventType.getValue()).append(',')
+                .append(node).append(',')
+                .append(start).append(',');
+        if (end != 0) {
+            line.append(end);
+        }
 
         if (isTrackingLocationsEnabled) {
-            string += String.format(",%s,%s,%s", latitude, longitude, accuracy);
+            line.append(',').append(auditEvent.getLatitude())
+                    .append(',').append(auditEvent.getLongitude())
+                    .append(',').append(auditEvent.getAccuracy());
         }
 
         if (isTrackingChangesEnabled) {
-            string += String.format(",%s,%s", getEscapedValueForCsv(oldValue), getEscapedValueForCsv(newValue));
+            line.append(',').append(getEscapedValueForCsv(auditEvent.getOldValue()))
+                    .append(',').append(getEscapedValueForCsv(auditEvent.getNewValue()));
         }
 
         if (user != null) {
-            string += String.format(",%s", getEscapedValueForCsv(user));
+            line.append(',').append(getEscapedValueForCsv(user));
         }
 
         if (isTrackingChangesReasonEnabled) {
+            line.append(',');
             if (changeReason != null) {
-                string += String.format(",%s", getEscapedValueForCsv(changeReason));
-            } else {
-                string += ",";
+                line.append(getEscapedValueForCsv(changeReason));
             }
         }
-
-        return string;
     }
 
     /**
@@ -0,0 +1,167 @@
+package org.odk.collect.android.formentry.audit;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import timber.log.Timber;
+
+import static org.odk.collect.android.formentry.audit.AuditEventCSVLine.appendCSVLine;
+
+/**
+ * Appends events to an audit file through one stream that is kept open for the form session.
+ * Each batch of events is encoded into a reused buffer and written with a single write.
+ *
+ * Bringing the header up to date with the audit config (after an app update for example) means
+ * rewriting the file, so that happens once when the file is opened rather than on every write.
+ * The file is opened again if it has been changed or removed by something else.
+ */
+public class AuditFileAppender {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String DEFAULT_COLUMNS = "event,node,start,end";
+    private static final String LOCATION_COORDINATES_COLUMNS = ",latitude,longitude,accuracy";
+    private static final String ANSWER_VALUES_COLUMNS = ",old-value,new-value";
+    private static final String USER_COLUMNS = ",user";
+    private static final String CHANGE_REASON_COLUMNS = ",change-reason";
+
+    private final @NonNull File file;
+    private final boolean isLocationEnabled;
+    private final boolean isTrackingChangesEnabled;
+    private final boolean isUserRequired;
+    private final boolean isTrackChangesReasonEnabled;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private OutputStream outputStream;
+    private long fileLength;
+
+    public AuditFileAppender(@NonNull File file, boolean isLocationEnabled, boolean isTrackingChangesEnabled, boolean isUserRequired, boolean isTrackChangesReasonEnabled) {
+        this.file = file;
+        this.isLocationEnabled = isLocationEnabled;
+        this.isTrackingChangesEnabled = isTrackingChangesEnabled;
+        this.isUserRequired = isUserRequired;
+        this.isTrackChangesReasonEnabled = isTrackChangesReasonEnabled;
+    }
+
+    public synchronized void append(AuditEvent... events) {
+        try {
+            if (outputStream == null || !file.exists() || file.length() != fileLength) {
+                open();
+            }
+
+            buffer.setLength(0);
+            boolean exited = false;
+            for (AuditEvent event : events) {
+                appendCSVLine(buffer, event, isLocationEnabled, isTrackingChangesEnabled, isTrackChangesReasonEnabled);
+                buffer.append('\n');
+                exited |= event.getAuditEventType() == AuditEvent.AuditEventType.FORM_EXIT;
+            }
+
+            byte[] bytes = buffer.toString().getBytes(UTF_8);
+            outputStream.write(bytes);
+            outputStream.flush();
+            fileLength += bytes.length;
+            Timber.i("Logged %d audit events", events.length);
+
+            // The stream is opened again if the form is returned to
+            if (exited) {
+                close();
+            }
+        } catch (IOException e) {
+            Timber.e(e);
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                Timber.e(e);
+            }
+            outputStream = null;
+        }
+    }
+
+    private void open() throws IOException {
+        close();
+
+        if (!file.exists()) {
+            try (OutputStream headerStream = new FileOutputStream(file)) {
+                headerStream.write((getHeader() + "\n").getBytes(UTF_8));
+            }
+        } else {
+            updateHeaderIfNeeded();
+        }
+
+        outputStream = new FileOutputStream(file, true);
+        fileLength = file.length();
+    }
+
+    private void updateHeaderIfNeeded() throws IOException {
+        String header;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            header = reader.readLine();
+        }
+
+        if (!shouldHeaderBeUpdated(header)) {
+            return;
+        }
+
+        // Copy the events (everything after the old header) as bytes below the new header
+        File temporaryFile = new File(file.getParentFile().getAbsolutePath() + "/temporaryAudit.csv");
+        try (InputStream input = new FileInputStream(file);
+             OutputStream output = new FileOutputStream(temporaryFile)) {
+            output.write((getHeader() + "\n").getBytes(UTF_8));
+
+            int b = 0;
+            while (b != -1 && b != '\n') {
+                b = input.read();
+            }
+
+            byte[] copyBuffer = new byte[8192];
+            int read;
+            while ((read = input.read(copyBuffer)) != -1) {
+                output.write(copyBuffer, 0, read);
+            }
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            Timber.e("Failed to update the header of %s", file.getAbsolutePath());
+        }
+    }
+
+    private boolean shouldHeaderBeUpdated(String header) {
+        return header == null
+                || (isLocationEnabled && !header.contains(LOCATION_COORDINATES_COLUMNS))
+                || (isTrackingChangesEnabled && !header.contains(ANSWER_VALUES_COLUMNS))
+                || (isUserRequired && !header.contains(USER_COLUMNS));
+    }
+
+    private String getHeader() {
+        String header = DEFAULT_COLUMNS;
+        if (isLocationEnabled) {
+            header += LOCATION_COORDINATES_COLUMNS;
+        }
+        if (isTrackingChangesEnabled) {
+            header += ANSWER_VALUES_COLUMNS;
+        }
+        if (isUserRequired) {
+            header += USER_COLUMNS;
+        }
+        if (isTrackChangesReasonEnabled) {
+            header += CHANGE_REASON_COLUMNS;
+        }
+        return header;
+    }
+}
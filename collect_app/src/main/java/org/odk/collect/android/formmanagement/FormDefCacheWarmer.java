@@ -0,0 +1,96 @@
+package org.odk.collect.android.formmanagement;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.xform.util.XFormUtils;
+import org.odk.collect.android.forms.FormUtils;
+import org.odk.collect.android.utilities.FileUtils;
+import org.odk.collect.android.utilities.FormDefCache;
+import org.odk.collect.async.Scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import timber.log.Timber;
+
+/**
+ * Parses newly installed forms in the background and writes them to the {@link FormDefCache} so
+ * that opening a form for the first time is as fast as opening it again. Forms are parsed one at
+ * a time, in the order they were installed, so that installing many forms at once doesn't parse
+ * them all in parallel.
+ *
+ * Forms that declare external secondary instances are skipped: parsing them needs the shared
+ * ReferenceManager to be set up for the form, and doing that in the background could break a
+ * form that is being filled. They are cached when first opened instead. Other forms are still
+ * parsed while holding {@link FormUtils#PARSE_LOCK} as JavaRosa's parser isn't thread safe.
+ */
+public class FormDefCacheWarmer {
+
+    private final Scheduler scheduler;
+    private final Queue<File> pendingForms = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean warming = new AtomicBoolean();
+
+    public FormDefCacheWarmer(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void warm(File formFile) {
+        pendingForms.add(formFile);
+
+        if (warming.compareAndSet(false, true)) {
+            scheduler.immediate(this::warmPendingForms, ignored -> { });
+        }
+    }
+
+    private Void warmPendingForms() {
+        do {
+            File formFile = pendingForms.poll();
+            while (formFile != null) {
+                warmForm(formFile);
+                formFile = pendingForms.poll();
+            }
+
+            warming.set(false);
+
+            // A form could have been added after the queue was found empty but before the flag
+            // was cleared, in which case no one else would warm it
+        } while (!pendingForms.isEmpty() && warming.compareAndSet(false, true));
+
+        return null;
+    }
+
+    private void warmForm(File formFile) {
+        if (!formFile.exists() || FormDefCache.isCached(formFile)) {
+            return;
+        }
+
+        try {
+            if (FileUtils.declaresExternalInstances(formFile)) {
+                Timber.i("Not pre-caching %s as it has external instances", formFile.getName());
+                return;
+            }
+
+            final long start = System.currentTimeMillis();
+            String lastSavedSrc = FileUtils.getOrCreateLastSavedSrc(formFile);
+            FormDef formDef;
+            synchronized (FormUtils.PARSE_LOCK) {
+                // The form could have been opened (and cached) while waiting for the lock
+                if (FormDefCache.isCached(formFile)) {
+                    return;
+                }
+
+                formDef = XFormUtils.getFormFromFormXml(formFile.getAbsolutePath(), lastSavedSrc);
+            }
+
+            if (formDef != null) {
+                FormDefCache.writeCache(formDef, formFile.getPath());
+                Timber.i("Pre-cached %s in %.3f seconds.", formFile.getName(), (System.currentTimeMillis() - start) / 1000F);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The form will be parsed from XML when it is first opened instead
+            Timber.w(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.odk.collect.android.formmanagement;
 
 import org.javarosa.core.reference.ReferenceManager;
 import org.javarosa.core.reference.RootTranslator;
+import org.odk.collect.android.forms.FormUtils;
 import org.odk.collect.android.logic.FileReferenceFactory;
 import org.odk.collect.android.utilities.FileUtils;
 
@@ -29,21 +30,24 @@ public class FormMetadataParser {
         // when parsing a form definition with last-saved reference
         File tmpLastSaved = new File(mediaDir, LAST_SAVED_FILENAME);
         write(tmpLastSaved, STUB_XML.getBytes(StandardCharsets.UTF_8));
-        referenceManager.reset();
-        referenceManager.addReferenceFactory(new FileReferenceFactory(mediaDir.getAbsolutePath()));
-        referenceManager.addSessionRootTranslator(new RootTranslator("jr://file-csv/", "jr://file/"));
 
         HashMap<String, String> metadata;
-        try {
-            metadata = FileUtils.getMetadataFromFormDefinition(file);
-        } catch (Exception e) {
+        synchronized (FormUtils.PARSE_LOCK) {
+            referenceManager.reset();
+            referenceManager.addReferenceFactory(new FileReferenceFactory(mediaDir.getAbsolutePath()));
+            referenceManager.addSessionRootTranslator(new RootTranslator("jr://file-csv/", "jr://file/"));
+
+            try {
+                metadata = FileUtils.getMetadataFromFormDefinition(file);
+            } catch (Exception e) {
+                referenceManager.reset();
+                tmpLastSaved.delete();
+                Timber.e(e);
+
+                throw e;
+            }
             referenceManager.reset();
-            tmpLastSaved.delete();
-            Timber.e(e);
-
-            throw e;
         }
-        referenceManager.reset();
         tmpLastSaved.delete();
 
         Timber.d("FETCHED FIELDS %s", metadata.toString());
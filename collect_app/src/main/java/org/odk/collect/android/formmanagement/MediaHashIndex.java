@@ -0,0 +1,158 @@
+package org.odk.collect.android.formmanagement;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.odk.collect.android.utilities.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Remembers the MD5 hashes of the files in each form's media directory so that checking whether
+ * the files in a manifest are already on the device doesn't mean hashing all of them every time
+ * the form list is refreshed.
+ *
+ * There is one index file per media directory (kept outside of it so it isn't treated as media).
+ * Each file's hash is stored with the size and last modified time it had when it was hashed and is
+ * only worked out again if either of those has changed.
+ */
+public class MediaHashIndex {
+
+    private static final String INDEX_FILE_EXTENSION = ".hashes";
+
+    private final File indexDir;
+
+    public MediaHashIndex(File indexDir) {
+        this.indexDir = indexDir;
+    }
+
+    /**
+     * Returns the hashes of the given files, which should all be in {@code mediaDir}.
+     */
+    @NonNull
+    public synchronized Set<String> getHashes(File mediaDir, List<File> mediaFiles) {
+        File indexFile = getIndexFile(mediaDir);
+        Properties index = load(indexFile);
+        Properties updatedIndex = new Properties();
+        int hashedCount = 0;
+
+        Set<String> hashes = new HashSet<>();
+        for (File mediaFile : mediaFiles) {
+            if (!mediaFile.isFile()) {
+                continue;
+            }
+
+            String fileState = getFileState(mediaFile);
+            String entry = index.getProperty(mediaFile.getName());
+
+            String hash;
+            if (entry != null && entry.startsWith(fileState)) {
+                hash = entry.substring(fileState.length());
+            } else {
+                hash = FileUtils.getMd5Hash(mediaFile);
+                hashedCount++;
+
+                if (hash == null) {
+                    continue;
+                }
+            }
+
+            hashes.add(hash);
+            updatedIndex.setProperty(mediaFile.getName(), fileState + hash);
+        }
+
+        // Entries for files that have been removed are dropped as well
+        if (!updatedIndex.equals(index)) {
+            save(indexFile, updatedIndex);
+        }
+
+        Timber.d("Hashed %d of %d media files in %s", hashedCount, mediaFiles.size(), mediaDir.getAbsolutePath());
+        return hashes;
+    }
+
+    /**
+     * Returns the hash of one media file or null if it can't be read. Only that file's entry in
+     * its directory's index is updated.
+     */
+    @Nullable
+    public String getHash(File mediaFile) {
+        File indexFile = getIndexFile(mediaFile.getParentFile());
+        String fileState = getFileState(mediaFile);
+
+        String entry;
+        synchronized (this) {
+            entry = load(indexFile).getProperty(mediaFile.getName());
+        }
+
+        if (entry != null && entry.startsWith(fileState)) {
+            return entry.substring(fileState.length());
+        }
+
+        // Hashed without holding the lock so files in other directories can be checked meanwhile
+        String hash = FileUtils.getMd5Hash(mediaFile);
+        if (hash != null) {
+            synchronized (this) {
+                Properties index = load(indexFile);
+                index.setProperty(mediaFile.getName(), fileState + hash);
+                save(indexFile, index);
+            }
+        }
+
+        return hash;
+    }
+
+    private static String getFileState(File mediaFile) {
+        return mediaFile.length() + ":" + mediaFile.lastModified() + ":";
+    }
+
+    private File getIndexFile(File mediaDir) {
+        return new File(indexDir, mediaDir.getName() + INDEX_FILE_EXTENSION);
+    }
+
+    private static Properties load(File indexFile) {
+        Properties index = new Properties();
+        if (!indexFile.exists()) {
+            return index;
+        }
+
+        try (InputStream inputStream = new FileInputStream(indexFile)) {
+            index.load(inputStream);
+        } catch (IOException e) {
+            Timber.e(e);
+            return new Properties();
+        }
+
+        return index;
+    }
+
+    private void save(File indexFile, Properties index) {
+        if (!indexDir.exists() && !indexDir.mkdirs()) {
+            Timber.w("Failed to create %s", indexDir.getAbsolutePath());
+            return;
+        }
+
+        // Write a copy and rename it so a crash part way through can't leave a broken index
+        File temporaryFile = new File(indexDir, indexFile.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+            index.store(outputStream, null);
+        } catch (IOException e) {
+            Timber.e(e);
+            return;
+        }
+
+        if (!temporaryFile.renameTo(indexFile)) {
+            Timber.w("Failed to save %s", indexFile.getAbsolutePath());
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.odk.collect.android.listeners.FormDownloaderListener;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.FormNameUtils;
 import org.odk.collect.android.utilities.Validator;
+import org.odk.collect.android.utilities.ZipUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -20,9 +21,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
@@ -34,6 +44,9 @@ import static org.odk.collect.android.analytics.AnalyticsEvents.DOWNLOAD_SAME_FO
 
 public class ServerFormDownloader implements FormDownloader {
 
+    private static final int MAX_PARALLEL_MEDIA_DOWNLOADS = 4;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
     private final FormsRepository formsRepository;
     private final FormSource formSource;
     private final File cacheDir;
@@ -41,8 +54,10 @@ public class ServerFormDownloader implements FormDownloader {
     private final FormMetadataParser formMetadataParser;
 
     private final Analytics analytics;
+    private final FormDefCacheWarmer formDefCacheWarmer;
+    private final MediaHashIndex mediaHashIndex;
 
-    public ServerFormDownloader(FormSource formSource, FormsRepository formsRepository, File cacheDir, String formsDirPath, FormMetadataParser formMetadataParser, Analytics analytics) {
+    public ServerFormDownloader(FormSource formSource, FormsRepository formsRepository, File cacheDir, String formsDirPath, FormMetadataParser formMetadataParser, Analytics analytics, FormDefCacheWarmer formDefCacheWarmer, MediaHashIndex mediaHashIndex) {
         this.formSource = formSource;
         this.cacheDir = cacheDir;
         this.formsDirPath = formsDirPath;
@@ -50,6 +65,8 @@ public class ServerFormDownloader implements FormDownloader {
         this.formMetadataParser = formMetadataParser;
 
         this.analytics = analytics;
+        this.formDefCacheWarmer = formDefCacheWarmer;
+        this.mediaHashIndex = mediaHashIndex;
     }
 
     @Override
@@ -190,6 +207,7 @@ public class ServerFormDownloader implements FormDownloader {
 
             try {
                 moveMediaFiles(tempMediaPath, formMediaDir);
+                ZipUtils.extractZipFiles(formMediaDir);
             } catch (IOException e) {
                 Timber.e(e);
 
@@ -202,6 +220,7 @@ public class ServerFormDownloader implements FormDownloader {
             }
         }
 
+        formDefCacheWarmer.warm(formFile);
         return true;
     }
 
@@ -261,11 +280,11 @@ public class ServerFormDownloader implements FormDownloader {
 
         String fileName = getFormFileName(formName, formsDirPath);
         File tempFormFile = new File(tempDir + File.separator + fileName);
-        writeFile(xform, tempFormFile, tempDir, stateListener);
+        String md5Hash = writeFile(xform, tempFormFile, tempDir, stateListener);
 
         // we've downloaded the file, and we may have renamed it
         // make sure it's not the same as a file we already have
-        Form form = formsRepository.getOneByMd5Hash(FileUtils.getMd5Hash(tempFormFile));
+        Form form = formsRepository.getOneByMd5Hash(md5Hash);
         if (form != null) {
             // delete the file we just downloaded, because it's a duplicate
             FileUtils.deleteAndReport(tempFormFile);
@@ -279,12 +298,13 @@ public class ServerFormDownloader implements FormDownloader {
 
     /**
      * Common routine to take a downloaded document save the contents in the file
-     * 'file'. Shared by media file download and form file download.
+     * 'file'. Shared by media file download and form file download. Returns the MD5 hash of the
+     * contents which is worked out while they're written so the file doesn't need reading again.
      * <p>
      * SurveyCTO: The file is saved into a temp folder and is moved to the final place if everything
      * is okay, so that garbage is not left over on cancel.
      */
-    private void writeFile(InputStream inputStream, File destinationFile, File tempDir, FormDownloaderListener stateListener)
+    private String writeFile(InputStream inputStream, File destinationFile, File tempDir, FormDownloaderListener stateListener)
             throws IOException, InterruptedException {
 
         File tempFile = File.createTempFile(
@@ -293,6 +313,13 @@ public class ServerFormDownloader implements FormDownloader {
                 tempDir
         );
 
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
         // WiFi network connections can be renegotiated during a large form download sequence.
         // This will cause intermittent download failures.  Silently retry once after each
         // failure.  Only if there are two consecutive failures do we abort.
@@ -303,15 +330,17 @@ public class ServerFormDownloader implements FormDownloader {
             // write connection to file
             InputStream is = null;
             OutputStream os = null;
+            md5.reset();
 
             try {
                 is = inputStream;
                 os = new FileOutputStream(tempFile);
 
-                byte[] buf = new byte[4096];
+                byte[] buf = new byte[WRITE_BUFFER_SIZE];
                 int len;
                 while ((len = is.read(buf)) > 0 && (stateListener == null || !stateListener.isTaskCancelled())) {
                     os.write(buf, 0, len);
+                    md5.update(buf, 0, len);
                 }
                 os.flush();
                 success = true;
@@ -362,6 +391,13 @@ public class ServerFormDownloader implements FormDownloader {
 
         FileUtils.deleteAndReport(destinationFile);
 
+        // The temp file is next to the destination so it can just be renamed. Copying is only
+        // needed if that fails for some reason.
+        if (tempFile.renameTo(destinationFile)) {
+            Timber.d("Renamed %s to %s", tempFile.getAbsolutePath(), destinationFile.getAbsolutePath());
+            return FileUtils.getMd5Hash(md5);
+        }
+
         String errorMessage = FileUtils.copyFile(tempFile, destinationFile);
 
         if (destinationFile.exists()) {
@@ -372,43 +408,112 @@ public class ServerFormDownloader implements FormDownloader {
                     tempFile.getAbsolutePath(), destinationFile.getAbsolutePath(), errorMessage);
             throw new RuntimeException(msg);
         }
+
+        return FileUtils.getMd5Hash(md5);
     }
 
+    /**
+     * Downloads the media files that are new or have changed, up to
+     * {@link #MAX_PARALLEL_MEDIA_DOWNLOADS} at a time. If one fails (or the download is
+     * cancelled) the others that haven't started are skipped and, once the ones in progress have
+     * finished, the first failure is thrown. A download that doesn't match the hash in the
+     * manifest counts as a failure.
+     */
     private void downloadMediaFiles(String tempMediaPath, FormDownloaderListener stateListener, List<MediaFile> files, File tempDir, String formFileName) throws FormSourceException, IOException, InterruptedException {
         File tempMediaDir = new File(tempMediaPath);
         tempMediaDir.mkdir();
 
-        for (int i = 0; i < files.size(); i++) {
-            if (stateListener != null) {
-                stateListener.progressUpdate("", String.valueOf(i + 1), "");
+        String finalMediaPath = FileUtils.constructMediaPath(formsDirPath + File.separator + formFileName);
+
+        AtomicInteger startedCount = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Void>> downloads = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_MEDIA_DOWNLOADS, files.size()));
+        try {
+            for (MediaFile toDownload : files) {
+                downloads.add(executor.submit(() -> {
+                    if (failed.get()) {
+                        return null;
+                    }
+
+                    if (stateListener != null) {
+                        if (stateListener.isTaskCancelled()) {
+                            throw new InterruptedException();
+                        }
+
+                        // Report in order even though downloads run at the same time
+                        synchronized (startedCount) {
+                            stateListener.progressUpdate("", String.valueOf(startedCount.incrementAndGet()), "");
+                        }
+                    }
+
+                    try {
+                        downloadMediaFile(toDownload, tempMediaDir, new File(finalMediaPath, toDownload.getFilename()), tempDir, stateListener);
+                    } catch (Exception e) {
+                        // Set here rather than when the failure is collected below so that
+                        // downloads that haven't started yet are skipped straight away
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                }));
             }
 
-            MediaFile toDownload = files.get(i);
+            Throwable failure = null;
+            for (Future<Void> download : downloads) {
+                try {
+                    download.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
 
-            File tempMediaFile = new File(tempMediaDir, toDownload.getFilename());
-            String finalMediaPath = FileUtils.constructMediaPath(formsDirPath + File.separator + formFileName);
-            File finalMediaFile = new File(finalMediaPath, toDownload.getFilename());
+            if (failure instanceof FormSourceException) {
+                throw (FormSourceException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof InterruptedException) {
+                throw (InterruptedException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new IOException(failure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void downloadMediaFile(MediaFile toDownload, File tempMediaDir, File finalMediaFile, File tempDir, FormDownloaderListener stateListener) throws FormSourceException, IOException, InterruptedException {
+        File tempMediaFile = new File(tempMediaDir, toDownload.getFilename());
+        String downloadFileHash = getMd5HashWithoutPrefix(toDownload.getHash());
+
+        if (finalMediaFile.exists()) {
+            String currentFileHash = mediaHashIndex.getHash(finalMediaFile);
 
-            if (!finalMediaFile.exists()) {
-                InputStream mediaFile = formSource.fetchMediaFile(toDownload.getDownloadUrl());
-                writeFile(mediaFile, tempMediaFile, tempDir, stateListener);
+            if (currentFileHash != null && downloadFileHash != null && !currentFileHash.contentEquals(downloadFileHash)) {
+                // if the hashes match, it's the same file
+                // otherwise delete our current one and replace it with the new one
+                FileUtils.deleteAndReport(finalMediaFile);
             } else {
-                String currentFileHash = FileUtils.getMd5Hash(finalMediaFile);
-                String downloadFileHash = getMd5HashWithoutPrefix(toDownload.getHash());
-
-                if (currentFileHash != null && downloadFileHash != null && !currentFileHash.contentEquals(downloadFileHash)) {
-                    // if the hashes match, it's the same file
-                    // otherwise delete our current one and replace it with the new one
-                    FileUtils.deleteAndReport(finalMediaFile);
-                    InputStream mediaFile = formSource.fetchMediaFile(toDownload.getDownloadUrl());
-                    writeFile(mediaFile, tempMediaFile, tempDir, stateListener);
-                } else {
-                    // exists, and the hash is the same
-                    // no need to download it again
-                    Timber.i("Skipping media file fetch -- file hashes identical: %s", finalMediaFile.getAbsolutePath());
-                }
+                // exists, and the hash is the same
+                // no need to download it again
+                Timber.i("Skipping media file fetch -- file hashes identical: %s", finalMediaFile.getAbsolutePath());
+                return;
             }
         }
+
+        InputStream mediaFile = formSource.fetchMediaFile(toDownload.getDownloadUrl());
+        String writtenFileHash = writeFile(mediaFile, tempMediaFile, tempDir, stateListener);
+
+        if (downloadFileHash != null && !downloadFileHash.equals(writtenFileHash)) {
+            Timber.w("Downloaded %s has hash %s but the manifest says %s", toDownload.getFilename(), writtenFileHash, downloadFileHash);
+            FileUtils.deleteAndReport(tempMediaFile);
+            throw new FormSourceException.FetchError();
+        }
     }
 
     @NotNull
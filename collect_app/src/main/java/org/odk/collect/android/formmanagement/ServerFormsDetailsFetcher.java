@@ -24,12 +24,13 @@ import org.odk.collect.android.forms.FormUtils;
 import org.odk.collect.android.forms.FormsRepository;
 import org.odk.collect.android.forms.ManifestFile;
 import org.odk.collect.android.forms.MediaFile;
-import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.WebCredentialsUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -38,13 +39,16 @@ public class ServerFormsDetailsFetcher {
     private final FormsRepository formsRepository;
     private final FormSource formSource;
     private final DiskFormsSynchronizer diskFormsSynchronizer;
+    private final MediaHashIndex mediaHashIndex;
 
     public ServerFormsDetailsFetcher(FormsRepository formsRepository,
                                      FormSource formSource,
-                                     DiskFormsSynchronizer diskFormsSynchronizer) {
+                                     DiskFormsSynchronizer diskFormsSynchronizer,
+                                     MediaHashIndex mediaHashIndex) {
         this.formsRepository = formsRepository;
         this.formSource = formSource;
         this.diskFormsSynchronizer = diskFormsSynchronizer;
+        this.mediaHashIndex = mediaHashIndex;
     }
 
     public void updateUrl(String url) {
@@ -126,8 +130,12 @@ public class ServerFormsDetailsFetcher {
         List<File> localMediaFiles = FormUtils.getMediaFiles(existingForm);
 
         if (localMediaFiles != null) {
+            Set<String> localMediaHashes = existingForm.getFormMediaPath() != null
+                    ? mediaHashIndex.getHashes(new File(existingForm.getFormMediaPath()), localMediaFiles)
+                    : new HashSet<>();
+
             for (MediaFile newMediaFile : newMediaFiles) {
-                if (!isMediaFileAlreadyDownloaded(localMediaFiles, newMediaFile)) {
+                if (!isMediaFileAlreadyDownloaded(localMediaHashes, newMediaFile)) {
                     return true;
                 }
             }
@@ -138,7 +146,7 @@ public class ServerFormsDetailsFetcher {
         return false;
     }
 
-    private static boolean isMediaFileAlreadyDownloaded(List<File> localMediaFiles, MediaFile newMediaFile) {
+    private static boolean isMediaFileAlreadyDownloaded(Set<String> localMediaHashes, MediaFile newMediaFile) {
         // TODO Zip files are ignored we should find a way to take them into account too
         if (newMediaFile.getFilename().endsWith(".zip")) {
             return true;
@@ -146,12 +154,7 @@ public class ServerFormsDetailsFetcher {
 
         String mediaFileHash = newMediaFile.getHash();
         mediaFileHash = mediaFileHash.substring(4, mediaFileHash.length());
-        for (File localMediaFile : localMediaFiles) {
-            if (mediaFileHash.equals(FileUtils.getMd5Hash(localMediaFile))) {
-                return true;
-            }
-        }
-        return false;
+        return localMediaHashes.contains(mediaFileHash);
     }
 
     private String getMd5HashWithoutPrefix(String hash) {
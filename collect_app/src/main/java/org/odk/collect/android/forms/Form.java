@@ -36,6 +36,8 @@ public final class Form {
     private final String submissionUri;
     private final String base64RSAPublicKey;
     private final String md5Hash;
+    private final Long formFileSize;
+    private final Long formFileLastModified;
     private final Long date;
     private final String jrCacheFilePath;
     private final String formMediaPath;
@@ -55,6 +57,8 @@ public final class Form {
         submissionUri = builder.submissionUri;
         base64RSAPublicKey = builder.base64RSAPublicKey;
         md5Hash = builder.md5Hash;
+        formFileSize = builder.formFileSize;
+        formFileLastModified = builder.formFileLastModified;
         date = builder.date;
         jrCacheFilePath = builder.jrCacheFilePath;
         formMediaPath = builder.formMediaPath;
@@ -75,6 +79,8 @@ public final class Form {
         private String submissionUri;
         private String base64RSAPublicKey;
         private String md5Hash;
+        private Long formFileSize;
+        private Long formFileLastModified;
         private Long date;
         private String jrCacheFilePath;
         private String formMediaPath;
@@ -97,6 +103,8 @@ public final class Form {
             submissionUri = form.submissionUri;
             base64RSAPublicKey = form.base64RSAPublicKey;
             md5Hash = form.md5Hash;
+            formFileSize = form.formFileSize;
+            formFileLastModified = form.formFileLastModified;
             date = form.date;
             jrCacheFilePath = form.jrCacheFilePath;
             formMediaPath = form.formMediaPath;
@@ -152,6 +160,16 @@ public final class Form {
             return this;
         }
 
+        public Builder formFileSize(Long formFileSize) {
+            this.formFileSize = formFileSize;
+            return this;
+        }
+
+        public Builder formFileLastModified(Long formFileLastModified) {
+            this.formFileLastModified = formFileLastModified;
+            return this;
+        }
+
         public Builder date(Long date) {
             this.date = date;
             return this;
@@ -235,6 +253,23 @@ public final class Form {
         return md5Hash;
     }
 
+    /**
+     * @return the size of the form file at the time its MD5 hash was computed, or null if unknown
+     */
+    @Nullable
+    public Long getFormFileSize() {
+        return formFileSize;
+    }
+
+    /**
+     * @return the last modified time of the form file at the time its MD5 hash was computed, or
+     * null if unknown
+     */
+    @Nullable
+    public Long getFormFileLastModified() {
+        return formFileLastModified;
+    }
+
     public Long getDate() {
         return date;
     }
@@ -12,6 +12,15 @@ import java.util.List;
 
 public class FormUtils {
 
+    /**
+     * JavaRosa's form parser and the global {@link ReferenceManager} it resolves external
+     * instances through aren't safe to use from more than one thread. Setting up the
+     * ReferenceManager for a form and parsing (or deserializing) it has to be done while holding
+     * this lock so that loading a form, syncing the forms folder and downloading forms don't
+     * interfere with each other.
+     */
+    public static final Object PARSE_LOCK = new Object();
+
     private FormUtils() {
         
     }
@@ -31,6 +31,12 @@ public interface FormsRepository {
 
     Form save(@NotNull Form form);
 
+    /**
+     * Saves each of the given forms as {@link #save(Form)} would, but all together: either every
+     * form is saved or, if any save fails, none of them are.
+     */
+    void saveAll(@NotNull List<Form> forms);
+
     void delete(Long id);
 
     void softDelete(Long id);
@@ -40,4 +46,10 @@ public interface FormsRepository {
     void deleteAll();
 
     void restore(Long id);
+
+    /**
+     * Records the size and last modified time of a form's file without rehashing it. Used when
+     * the file was touched but its contents (and so its MD5 hash) are unchanged.
+     */
+    void updateFileFingerprint(Long id, long fileSize, long lastModified);
 }
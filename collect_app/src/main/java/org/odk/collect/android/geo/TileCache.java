@@ -0,0 +1,57 @@
+package org.odk.collect.android.geo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of tile data that is bounded by the total number
+ * of bytes held rather than by the number of tiles.
+ */
+class TileCache {
+    private final long maxBytes;
+    private final LinkedHashMap<String, TileHttpServer.Response> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes;
+
+    TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static String getKey(String sourceKey, int zoom, int x, int y) {
+        return sourceKey + "/" + zoom + "/" + x + "/" + y;
+    }
+
+    synchronized TileHttpServer.Response get(String key) {
+        return tiles.get(key);
+    }
+
+    synchronized void put(String key, TileHttpServer.Response response) {
+        if (response.data.length > maxBytes) {
+            return;  // never worth evicting everything else for a single tile
+        }
+        TileHttpServer.Response previous = tiles.put(key, response);
+        if (previous != null) {
+            sizeBytes -= previous.data.length;
+        }
+        sizeBytes += response.data.length;
+
+        Iterator<Map.Entry<String, TileHttpServer.Response>> eldest = tiles.entrySet().iterator();
+        while (sizeBytes > maxBytes && eldest.hasNext()) {
+            sizeBytes -= eldest.next().getValue().data.length;
+            eldest.remove();
+        }
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        sizeBytes = 0;
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    synchronized int getTileCount() {
+        return tiles.size();
+    }
+}
@@ -1,5 +1,6 @@
 package org.odk.collect.android.geo;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
@@ -7,23 +8,69 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.BindException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
-import java.util.HashMap;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import timber.log.Timber;
 
-/** A minimal HTTP server that serves tiles from a set of TileSources. */
+/**
+ * A minimal HTTP/1.1 server that serves tiles from a set of TileSources.
+ * Connections are kept alive between requests, so a map panning over an
+ * offline layer reuses a handful of connections instead of opening one per
+ * tile.  Idle connections are watched by a single selector thread and are
+ * only handed to one of a fixed pool of worker threads when a request
+ * arrives, so a client holding many connections open can't starve the others.
+ * Connections beyond a fixed limit are refused with a 503.  Recently served
+ * tiles are kept in a byte-bounded LRU cache in front of the TileSources.
+ */
 class TileHttpServer {
     private static final int PORT_MIN = 8000;
     private static final int PORT_MAX = 8999;
+    static final int WORKER_COUNT = 8;
+    static final int MAX_CONNECTIONS = 64;
+    private static final int KEEP_ALIVE_TIMEOUT_MS = 5000;
+    private static final int REQUEST_TIMEOUT_MS = 5000;
+    private static final int IDLE_CHECK_INTERVAL_MS = 1000;
+    private static final long CACHE_SIZE_BYTES = 8 * 1024 * 1024;
 
-    private final Map<String, TileSource> sources = new HashMap<>();
+    private final Map<String, TileSource> sources = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final TileCache cache = new TileCache(CACHE_SIZE_BYTES);
+
+    // Each connection is queued at most once, so the queue never needs to hold more than them all
+    private final ExecutorService workers = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+        0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_CONNECTIONS));
     private final ServerThread server;
-    private final ServerSocket socket;
+    private final IdleConnectionWatcher watcher;
+    private final ServerSocketChannel socket;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong tilesServed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
 
     TileHttpServer() throws IOException {
         socket = createBoundSocket(PORT_MIN, PORT_MAX);
@@ -31,9 +78,11 @@ class TileHttpServer {
             throw new IOException("Could not find an available port");
         }
         server = new ServerThread(socket);
+        watcher = new IdleConnectionWatcher(Selector.open());
     }
 
     public void start() {
+        watcher.start();
         server.start();
     }
 
@@ -43,7 +92,7 @@ class TileHttpServer {
      */
     public String getUrlTemplate(String key) {
         return String.format(
-            Locale.US, "http://localhost:%d/%s/{z}/{x}/{y}", socket.getLocalPort(), key);
+            Locale.US, "http://localhost:%d/%s/{z}/{x}/{y}", socket.socket().getLocalPort(), key);
     }
 
     /**
@@ -52,7 +101,37 @@ class TileHttpServer {
      * Closeable, it will be closed when this server is finalized with destroy().
      */
     public void addSource(String key, TileSource source) {
-        sources.put(key, source);
+        if (sources.put(key, source) != null) {
+            cache.clear();  // cached tiles may belong to the replaced source
+        }
+    }
+
+    /** Returns the number of tile requests answered from the cache. */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /** Returns the number of tile requests that had to be read from a TileSource. */
+    public long getCacheMissCount() {
+        return cacheMisses.get();
+    }
+
+    /** Returns the fraction of tile requests answered from the cache, or 0 if there were none. */
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** Returns the number of tiles sent to clients. */
+    public long getTilesServedCount() {
+        return tilesServed.get();
+    }
+
+    /** Returns the mean time taken to look up and send a tile, in milliseconds. */
+    public double getAverageTileLatencyMillis() {
+        long served = tilesServed.get();
+        return served == 0 ? 0 : totalLatencyNanos.get() / 1e6 / served;
     }
 
     /** Permanently closes all sockets and closeable TileSources. */
@@ -61,6 +140,13 @@ class TileHttpServer {
             socket.close();
         } catch (IOException e) { /* ignore */ }
         server.interrupt();
+        watcher.close();
+        workers.shutdownNow();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        Timber.i("Served %d tiles, cache hit rate %.2f, average latency %.2f ms",
+            getTilesServedCount(), getCacheHitRate(), getAverageTileLatencyMillis());
         for (TileSource source : sources.values()) {
             if (source instanceof Closeable) {
                 try {
@@ -70,13 +156,15 @@ class TileHttpServer {
         }
     }
 
-    /** Finds an available port and binds a ServerSocket to it. */
-    protected static ServerSocket createBoundSocket(int portMin, int portMax) throws IOException {
+    /** Finds an available port and binds a ServerSocketChannel to it. */
+    protected static ServerSocketChannel createBoundSocket(int portMin, int portMax) throws IOException {
         for (int port = portMin; port <= portMax; port++) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
             try {
-                return new ServerSocket(port);
+                channel.socket().bind(new InetSocketAddress(port));
+                return channel;
             } catch (BindException e) {
-                continue;  // this port is in use; try another one
+                channel.close();  // this port is in use; try another one
             }
         }
         Timber.e("No ports available from %d to %d", portMin, portMax);
@@ -84,20 +172,25 @@ class TileHttpServer {
     }
 
     class ServerThread extends Thread {
-        final ServerSocket socket;
+        final ServerSocketChannel socket;
 
-        ServerThread(ServerSocket socket) {
+        ServerThread(ServerSocketChannel socket) {
             this.socket = socket;
         }
 
         public void run() {
             try {
-                socket.setReuseAddress(true);
-                Timber.i("Ready for requests on port %d", socket.getLocalPort());
+                Timber.i("Ready for requests on port %d", socket.socket().getLocalPort());
                 while (!isInterrupted()) {
-                    Socket connection = socket.accept();
-                    Timber.i("Accepted a client connection");
-                    new ResponseThread(connection).start();
+                    Connection connection = new Connection(socket.accept());
+                    if (connections.size() >= MAX_CONNECTIONS) {
+                        Timber.w("Refusing a client connection: %d already open", connections.size());
+                        connection.refuse();
+                    } else {
+                        Timber.i("Accepted a client connection");
+                        connections.add(connection);
+                        watcher.watch(connection);
+                    }
                 }
                 Timber.i("Server thread interrupted");
             } catch (IOException e) {
@@ -106,33 +199,203 @@ class TileHttpServer {
         }
     }
 
-    class ResponseThread extends Thread {
-        final Socket connection;
+    /**
+     * Waits for requests on connections that aren't being served, hands each
+     * connection with a request waiting to a worker, and closes connections
+     * that have been idle for longer than the keep-alive timeout.
+     */
+    class IdleConnectionWatcher extends Thread {
+        final Selector selector;
+        final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+
+        IdleConnectionWatcher(Selector selector) {
+            this.selector = selector;
+        }
+
+        /** Starts watching a connection that has no request being served. */
+        void watch(Connection connection) {
+            connection.idleSince = System.currentTimeMillis();
+            pending.add(connection);
+            selector.wakeup();
+        }
+
+        void close() {
+            interrupt();
+            try {
+                selector.close();
+            } catch (IOException e) { /* ignore */ }
+        }
+
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    selector.select(IDLE_CHECK_INTERVAL_MS);
+
+                    // Channels can only be registered from this thread while it isn't selecting
+                    for (Connection connection = pending.poll(); connection != null; connection = pending.poll()) {
+                        try {
+                            connection.channel.configureBlocking(false);
+                            connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+
+                    List<Connection> ready = new ArrayList<>();
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        key.cancel();
+                        ready.add((Connection) key.attachment());
+                    }
+
+                    long now = System.currentTimeMillis();
+                    for (SelectionKey key : selector.keys()) {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && now - connection.idleSince > KEEP_ALIVE_TIMEOUT_MS) {
+                            Timber.d("Closing idle connection");
+                            connection.close();
+                        }
+                    }
+
+                    // Deregisters the cancelled keys so their channels can block again
+                    selector.selectNow();
+                    for (Connection connection : ready) {
+                        dispatch(connection);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                Timber.i("Idle connection watcher stopped: %s", e.getMessage());
+            }
+        }
+
+        private void dispatch(Connection connection) {
+            try {
+                connection.channel.configureBlocking(true);
+                workers.execute(connection);
+            } catch (IOException | RejectedExecutionException e) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Serves the requests waiting on one connection and then gives it back to
+     * the watcher, unless the client closed it or asked for it to be closed.
+     * Pipelined requests are answered in the order they were received, and the
+     * output is only flushed once no further requests are waiting.
+     */
+    class Connection implements Runnable {
+        final SocketChannel channel;
+        final BufferedReader reader;
+        final OutputStream output;
+        volatile long idleSince;
 
-        ResponseThread(Socket connection) {
-            this.connection = connection;
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            Socket socket = channel.socket();
+            socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            output = new BufferedOutputStream(socket.getOutputStream());
         }
 
         public void run() {
-            try (Socket connection = this.connection) {
-                InputStreamReader reader = new InputStreamReader(connection.getInputStream());
-                String request = new BufferedReader(reader).readLine();
-                Timber.i("Received request: %s", request);
+            try {
+                if (serveWaitingRequests()) {
+                    watcher.watch(this);
+                } else {
+                    close();
+                }
+            } catch (SocketTimeoutException e) {
+                Timber.d("Timed out reading a request");
+                close();
+            } catch (IOException e) {
+                Timber.i("Connection closed: %s", e.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * Serves requests until there are none left to read without blocking.
+         * Returns whether the connection should be kept open.
+         */
+        private boolean serveWaitingRequests() throws IOException {
+            do {
+                String request = reader.readLine();
                 if (request == null) {
-                    return;
+                    return false;
+                }
+                if (request.isEmpty()) {
+                    continue;  // tolerate stray line breaks between requests
                 }
-                long start = System.currentTimeMillis();
+                boolean keepAlive = readHeadersAndCheckKeepAlive(request, reader);
+
+                long start = System.nanoTime();
                 Response response = getResponse(request);
-                if (response == null) {
+                sendResponse(output, response, keepAlive);
+                if (response != null) {
+                    long latency = System.nanoTime() - start;
+                    tilesServed.incrementAndGet();
+                    totalLatencyNanos.addAndGet(latency);
+                    Timber.d("%s: Served %d bytes in %d us", request, response.data.length, latency / 1000);
+                } else {
                     Timber.i("%s: No tile at these coordinates", request);
-                    return;
                 }
-                sendResponse(connection, response);
-                long finish = System.currentTimeMillis();
-                Timber.i("%s: Served %d bytes in %d ms", request, response.data.length, finish - start);
+
+                if (!keepAlive) {
+                    output.flush();
+                    return false;
+                }
+            } while (reader.ready());
+
+            output.flush();
+            return true;
+        }
+
+        /** Tells the client the server is too busy and closes the connection. */
+        void refuse() {
+            try {
+                output.write(("HTTP/1.1 503 Service Unavailable\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n").getBytes("ISO-8859-1"));
+                output.flush();
             } catch (IOException e) {
-                Timber.e(e, "Unable to read request from socket");
+                Timber.i("Connection closed: %s", e.getMessage());
             }
+            close();
+        }
+
+        void close() {
+            connections.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) { /* ignore */ }
+        }
+
+        /**
+         * Consumes the request headers and decides whether the connection
+         * should stay open: HTTP/1.1 connections persist unless the client
+         * sends "Connection: close", older ones only with "Connection: keep-alive".
+         */
+        protected boolean readHeadersAndCheckKeepAlive(String request, BufferedReader reader) throws IOException {
+            boolean keepAlive = request.endsWith("HTTP/1.1");
+            String header = reader.readLine();
+            while (header != null && !header.isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Connection")) {
+                    String value = header.substring(colon + 1).trim();
+                    if (value.equalsIgnoreCase("close")) {
+                        keepAlive = false;
+                    } else if (value.equalsIgnoreCase("keep-alive")) {
+                        keepAlive = true;
+                    }
+                }
+                header = reader.readLine();
+            }
+            return keepAlive && header != null;
         }
 
         protected Response getResponse(String request) {
@@ -145,15 +408,10 @@ class TileHttpServer {
                         int zoom = Integer.parseInt(parts[1]);
                         int x = Integer.parseInt(parts[2]);
                         int y = Integer.parseInt(parts[3]);
-                        TileSource source = sources.get(key);
-                        if (source != null) {
-                            byte[] data = source.getTileBlob(zoom, x, y);
-                            if (data != null) {
-                                return new Response(data, source.getContentType(), source.getContentEncoding());
-                            }
-                        }
+                        return getTile(key, zoom, x, y);
                     } catch (NumberFormatException e) {
                         Timber.w(e, "Bad request %s", request);
+                        return null;
                     } catch (UnsupportedEncodingException e) { /* cannot happen because UTF-8 is built in */ }
                 }
             }
@@ -161,25 +419,60 @@ class TileHttpServer {
             return null;
         }
 
-        protected void sendResponse(Socket connection, Response response) {
-            String headers = String.format(
-                Locale.US,
-                "HTTP/1.0 200\r\n" +
-                    "Content-Type: %s\r\n" +
-                    "Content-Encoding: %s\r\n" +
-                    "Content-Length: %d\r\n" +
-                    "\r\n",
-                response.contentType,
-                response.contentEncoding,
-                response.data.length
-            );
-
-            try (OutputStream output = connection.getOutputStream()) {
-                output.write(headers.getBytes());
+        protected Response getTile(String key, int zoom, int x, int y) {
+            String cacheKey = TileCache.getKey(key, zoom, x, y);
+            Response response = cache.get(cacheKey);
+            if (response != null) {
+                cacheHits.incrementAndGet();
+                return response;
+            }
+
+            cacheMisses.incrementAndGet();
+            TileSource source = sources.get(key);
+            if (source != null) {
+                byte[] data = source.getTileBlob(zoom, x, y);
+                if (data != null) {
+                    response = new Response(data, source.getContentType(), source.getContentEncoding());
+                    cache.put(cacheKey, response);
+                    return response;
+                }
+            }
+            return null;
+        }
+
+        protected void sendResponse(OutputStream output, Response response, boolean keepAlive) throws IOException {
+            String connectionHeader = keepAlive ? "keep-alive" : "close";
+            String headers;
+            if (response != null) {
+                headers = String.format(
+                    Locale.US,
+                    "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: %s\r\n" +
+                        "Content-Encoding: %s\r\n" +
+                        "Content-Length: %d\r\n" +
+                        "Connection: %s\r\n" +
+                        "\r\n",
+                    response.contentType,
+                    response.contentEncoding,
+                    response.data.length,
+                    connectionHeader
+                );
+            } else {
+                // A reply is needed even when there is no tile, otherwise
+                // the responses to any pipelined requests would be misread.
+                headers = String.format(
+                    Locale.US,
+                    "HTTP/1.1 404 Not Found\r\n" +
+                        "Content-Length: 0\r\n" +
+                        "Connection: %s\r\n" +
+                        "\r\n",
+                    connectionHeader
+                );
+            }
+
+            output.write(headers.getBytes("ISO-8859-1"));
+            if (response != null) {
                 output.write(response.data);
-                output.flush();
-            } catch (IOException e) {
-                Timber.e(e, "Unable to write response to socket");
             }
         }
     }
@@ -52,8 +52,10 @@ import org.odk.collect.android.formentry.media.ScreenContextAudioHelperFactory;
 import org.odk.collect.android.formentry.saving.DiskFormSaver;
 import org.odk.collect.android.formentry.saving.FormSaveViewModel;
 import org.odk.collect.android.formmanagement.DiskFormsSynchronizer;
+import org.odk.collect.android.formmanagement.FormDefCacheWarmer;
 import org.odk.collect.android.formmanagement.FormDownloader;
 import org.odk.collect.android.formmanagement.FormMetadataParser;
+import org.odk.collect.android.formmanagement.MediaHashIndex;
 import org.odk.collect.android.formmanagement.ServerFormDownloader;
 import org.odk.collect.android.formmanagement.ServerFormsDetailsFetcher;
 import org.odk.collect.android.formmanagement.matchexactly.ServerFormsSynchronizer;
@@ -155,11 +157,12 @@ public class AppDependencyModule {
 
     @Provides
     @Singleton
-    public OpenRosaHttpInterface provideHttpInterface(MimeTypeMap mimeTypeMap, UserAgentProvider userAgentProvider) {
+    public OpenRosaHttpInterface provideHttpInterface(MimeTypeMap mimeTypeMap, UserAgentProvider userAgentProvider, SettingsProvider settingsProvider) {
         return new OkHttpConnection(
                 new OkHttpOpenRosaServerClientProvider(new OkHttpClient()),
                 new CollectThenSystemContentTypeMapper(mimeTypeMap),
-                userAgentProvider.getUserAgent()
+                userAgentProvider.getUserAgent(),
+                () -> settingsProvider.getGeneralSettings().getBoolean(GeneralKeys.KEY_COMPRESS_SUBMISSIONS)
         );
     }
 
@@ -169,8 +172,14 @@ public class AppDependencyModule {
     }
 
     @Provides
-    public FormDownloader providesFormDownloader(FormSource formSource, FormsRepository formsRepository, StoragePathProvider storagePathProvider, Analytics analytics) {
-        return new ServerFormDownloader(formSource, formsRepository, new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.CACHE)), storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS), new FormMetadataParser(ReferenceManager.instance()), analytics);
+    public FormDownloader providesFormDownloader(FormSource formSource, FormsRepository formsRepository, StoragePathProvider storagePathProvider, Analytics analytics, FormDefCacheWarmer formDefCacheWarmer, MediaHashIndex mediaHashIndex) {
+        return new ServerFormDownloader(formSource, formsRepository, new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.CACHE)), storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS), new FormMetadataParser(ReferenceManager.instance()), analytics, formDefCacheWarmer, mediaHashIndex);
+    }
+
+    @Provides
+    @Singleton
+    public FormDefCacheWarmer providesFormDefCacheWarmer(Scheduler scheduler) {
+        return new FormDefCacheWarmer(scheduler);
     }
 
     @Provides
@@ -375,8 +384,14 @@ public class AppDependencyModule {
     }
 
     @Provides
-    public ServerFormsDetailsFetcher providesServerFormDetailsFetcher(FormsRepository formsRepository, FormSource formSource, DiskFormsSynchronizer diskFormsSynchronizer) {
-        return new ServerFormsDetailsFetcher(formsRepository, formSource, diskFormsSynchronizer);
+    @Singleton
+    public MediaHashIndex providesMediaHashIndex(StoragePathProvider storagePathProvider) {
+        return new MediaHashIndex(new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.CACHE), "media-hashes"));
+    }
+
+    @Provides
+    public ServerFormsDetailsFetcher providesServerFormDetailsFetcher(FormsRepository formsRepository, FormSource formSource, DiskFormsSynchronizer diskFormsSynchronizer, MediaHashIndex mediaHashIndex) {
+        return new ServerFormsDetailsFetcher(formsRepository, formSource, diskFormsSynchronizer, mediaHashIndex);
     }
 
     @Provides
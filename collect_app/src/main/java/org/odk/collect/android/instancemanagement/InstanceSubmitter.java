@@ -24,6 +24,7 @@ import org.odk.collect.android.preferences.keys.GeneralKeys;
 import org.odk.collect.android.preferences.source.SettingsProvider;
 import org.odk.collect.android.upload.InstanceServerUploader;
 import org.odk.collect.android.upload.InstanceUploader;
+import org.odk.collect.android.upload.ParallelInstanceUploader;
 import org.odk.collect.android.upload.UploadException;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.InstanceUploaderUtils;
@@ -32,9 +33,11 @@ import org.odk.collect.android.utilities.WebCredentialsUtils;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import timber.log.Timber;
 
@@ -76,9 +79,10 @@ public class InstanceSubmitter {
         String protocol = settingsProvider.getGeneralSettings().getString(GeneralKeys.KEY_PROTOCOL);
 
         InstanceUploader uploader;
-        Map<String, String> resultMessagesByInstanceId = new HashMap<>();
+        Map<String, String> resultMessagesByInstanceId = Collections.synchronizedMap(new HashMap<>());
         String deviceId = null;
-        boolean anyFailure = false;
+        int parallelism;
+        AtomicBoolean anyFailure = new AtomicBoolean(false);
 
         if (protocol.equals(TranslationHandler.getString(Collect.getInstance(), R.string.protocol_google_sheets))) {
             if (permissionsProvider.isGetAccountsPermissionGranted()) {
@@ -88,25 +92,30 @@ public class InstanceSubmitter {
                 }
                 googleAccountsManager.selectAccount(googleUsername);
                 uploader = new InstanceGoogleSheetsUploader(googleApiProvider.getDriveApi(googleUsername), googleApiProvider.getSheetsApi(googleUsername));
+                // The Sheets uploader isn't safe to use from several threads
+                parallelism = 1;
             } else {
                 throw new SubmitException(Type.GOOGLE_ACCOUNT_NOT_PERMITTED);
             }
         } else {
             OpenRosaHttpInterface httpInterface = Collect.getInstance().getComponent().openRosaHttpInterface();
-            uploader = new InstanceServerUploader(httpInterface, new WebCredentialsUtils(settingsProvider.getGeneralSettings()), new HashMap<>(), settingsProvider);
+            uploader = new InstanceServerUploader(httpInterface, new WebCredentialsUtils(settingsProvider.getGeneralSettings()), settingsProvider);
             deviceId = new PropertyManager().getSingularProperty(PropertyManager.PROPMGR_DEVICE_ID);
+            parallelism = settingsProvider.getGeneralSettings().getInt(GeneralKeys.KEY_MAX_PARALLEL_SUBMISSIONS);
         }
 
-        for (Instance instance : toUpload) {
+        InstanceUploader finalUploader = uploader;
+        String finalDeviceId = deviceId;
+        new ParallelInstanceUploader(parallelism).uploadAll(toUpload, instance -> {
             try {
-                String destinationUrl = uploader.getUrlToSubmitTo(instance, deviceId, null, null);
+                String destinationUrl = finalUploader.getUrlToSubmitTo(instance, finalDeviceId, null, null);
                 if (protocol.equals(TranslationHandler.getString(Collect.getInstance(), R.string.protocol_google_sheets))
                         && !InstanceUploaderUtils.doesUrlRefersToGoogleSheetsFile(destinationUrl)) {
-                    anyFailure = true;
+                    anyFailure.set(true);
                     resultMessagesByInstanceId.put(instance.getId().toString(), SPREADSHEET_UPLOADED_TO_GOOGLE_DRIVE);
-                    continue;
+                    return false;
                 }
-                String customMessage = uploader.uploadOneSubmission(instance, destinationUrl);
+                String customMessage = finalUploader.uploadOneSubmission(instance, destinationUrl);
                 resultMessagesByInstanceId.put(instance.getId().toString(), customMessage != null ? customMessage : TranslationHandler.getString(Collect.getInstance(), R.string.success));
 
                 // If the submission was successful, delete the instance if either the app-level
@@ -129,15 +138,17 @@ public class InstanceSubmitter {
                     String submissionEndpointHash = FileUtils.getMd5Hash(new ByteArrayInputStream(submissionEndpoint.getBytes()));
                     analytics.logEvent(CUSTOM_ENDPOINT_SUB, submissionEndpointHash);
                 }
+                return true;
             } catch (UploadException e) {
                 Timber.d(e);
-                anyFailure = true;
+                anyFailure.set(true);
                 resultMessagesByInstanceId.put(instance.getId().toString(),
                         e.getDisplayMessage());
+                return false;
             }
-        }
+        }, (position, total) -> { }, () -> false);
 
-        return new Pair<>(anyFailure, InstanceUploaderUtils.getUploadResultMessage(instancesRepository, Collect.getInstance(), resultMessagesByInstanceId));
+        return new Pair<>(anyFailure.get(), InstanceUploaderUtils.getUploadResultMessage(instancesRepository, Collect.getInstance(), resultMessagesByInstanceId));
     }
 
     /**
@@ -44,10 +44,12 @@ import org.javarosa.xpath.XPathParseTool;
 import org.javarosa.xpath.expr.XPathExpression;
 import org.odk.collect.android.exception.JavaRosaException;
 import org.odk.collect.android.external.ExternalDataUtil;
+import org.odk.collect.android.fastexternalitemset.ItemsetCache;
 import org.odk.collect.android.formentry.audit.AsyncTaskAuditEventWriter;
 import org.odk.collect.android.formentry.audit.AuditConfig;
 import org.odk.collect.android.formentry.audit.AuditEventLogger;
 import org.odk.collect.android.forms.FormDesignException;
+import org.odk.collect.android.logic.QuestionRefreshPlanner;
 import org.odk.collect.android.utilities.Appearances;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.FormNameUtils;
@@ -59,6 +61,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Supplier;
 
 import timber.log.Timber;
 
@@ -121,6 +124,11 @@ public class FormController {
     private File instanceFile;
     private final FormEntryController formEntryController;
     private FormIndex indexWaitingForData;
+    @Nullable
+    private Supplier<QuestionRefreshPlanner> questionRefreshPlannerLoader;
+    private QuestionRefreshPlanner questionRefreshPlanner;
+    private boolean questionRefreshPlannerLoaded;
+    private final ItemsetCache itemsetCache = new ItemsetCache();
 
     public FormController(File mediaFolder, FormEntryController fec, File instanceFile) {
         this.mediaFolder = mediaFolder;
@@ -163,6 +171,32 @@ public class FormController {
         return indexWaitingForData;
     }
 
+    /**
+     * @param questionRefreshPlannerLoader loads the form's planner. It is only called the first
+     *                                     time the planner is needed as most forms never need it.
+     */
+    public void setQuestionRefreshPlannerLoader(Supplier<QuestionRefreshPlanner> questionRefreshPlannerLoader) {
+        this.questionRefreshPlannerLoader = questionRefreshPlannerLoader;
+    }
+
+    /**
+     * @return a planner for working out which questions can change when an answer changes, or
+     * null if one couldn't be built for this form
+     */
+    @Nullable
+    public QuestionRefreshPlanner getQuestionRefreshPlanner() {
+        if (!questionRefreshPlannerLoaded && questionRefreshPlannerLoader != null) {
+            questionRefreshPlanner = questionRefreshPlannerLoader.get();
+            questionRefreshPlannerLoaded = true;
+        }
+
+        return questionRefreshPlanner;
+    }
+
+    public ItemsetCache getItemsetCache() {
+        return itemsetCache;
+    }
+
     public AuditEventLogger getAuditEventLogger() {
         if (auditEventLogger == null) {
             AuditConfig auditConfig = getSubmissionMetadata().auditConfig;
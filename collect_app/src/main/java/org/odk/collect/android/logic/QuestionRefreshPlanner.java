@@ -0,0 +1,550 @@
+package org.odk.collect.android.logic;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+import org.javarosa.model.xform.XPathReference;
+import org.javarosa.xpath.XPathConditional;
+import org.javarosa.xpath.parser.XPathSyntaxException;
+import org.kxml2.io.KXmlParser;
+import org.kxml2.kdom.Document;
+import org.kxml2.kdom.Element;
+import org.kxml2.kdom.Node;
+import org.odk.collect.android.external.ExternalDataUtil;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out which questions can change when an answer changes so that only their widgets need
+ * to be rebuilt. This uses the same dependencies JavaRosa uses to decide which triggerables to
+ * evaluate: the references in each bind's expressions, plus those in label and hint outputs
+ * (of questions, choices and groups), itemset nodesets and database-driven external data
+ * (search() appearances and query attributes), which JavaRosa evaluates when a question is
+ * displayed. Questions that set the value of another when they change (with setvalue actions
+ * on xforms-value-changed) affect the question they set.
+ *
+ * All references are generic (without multiplicities) so answers in one repeat instance are
+ * treated as affecting questions in every instance.
+ *
+ * Forms with anything in their body that isn't read here get no planner so that every question
+ * is compared instead.
+ */
+public class QuestionRefreshPlanner {
+
+    /**
+     * Bind attributes whose expressions can change what a question shows. Constraints are left
+     * out as they are only shown when saving.
+     */
+    private static final List<String> DISPLAYED_BIND_ATTRIBUTES = Arrays.asList("calculate", "readonly", "required");
+    private static final Pattern ITEXT_ID = Pattern.compile("itext\\(\\s*'([^']*)'\\s*\\)");
+
+    private static final List<String> CONTROLS = Arrays.asList("input", "textarea", "secret", "select", "select1",
+            "rank", "range", "upload", "trigger");
+    private static final List<String> ACTIONS = Arrays.asList("setvalue", "setgeopoint", "recordaudio");
+
+    /**
+     * Events that actions can be triggered by other than a question's value changing. They only
+     * happen when a form is loaded or a repeat is added, which means walking the form again
+     * anyway.
+     */
+    private static final List<String> LOAD_EVENTS = Arrays.asList("odk-instance-first-load", "odk-instance-load",
+            "odk-new-repeat", "xforms-ready");
+    private static final String VALUE_CHANGED_EVENT = "xforms-value-changed";
+
+    /**
+     * References used in expressions mapped to the references those expressions are for.
+     */
+    private final Map<TreeReference, Set<TreeReference>> dependents = new HashMap<>();
+
+    /**
+     * References whose relevance or repeat count is computed. A change to them can change which
+     * questions are shown rather than just what a question shows.
+     */
+    private final Set<TreeReference> structuralTargets = new HashSet<>();
+
+    private final Map<String, List<String>> itextOutputs = new HashMap<>();
+    private final Map<String, TreeReference> bindNodesets = new HashMap<>();
+
+    /**
+     * @return a planner for the form or null if the form uses an expression that can't be parsed
+     * (in which case there's no way of knowing what it depends on) or something else the planner
+     * doesn't read
+     */
+    @Nullable
+    public static QuestionRefreshPlanner fromFormXml(File formXml) throws IOException, XmlPullParserException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(formXml), "UTF-8")) {
+            return fromFormXml(reader);
+        }
+    }
+
+    @Nullable
+    public static QuestionRefreshPlanner fromFormXml(Reader formXml) throws IOException, XmlPullParserException {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(formXml);
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+
+        Document document = new Document();
+        document.parse(parser);
+
+        try {
+            QuestionRefreshPlanner planner = new QuestionRefreshPlanner();
+            planner.readForm(document.getRootElement());
+            return planner;
+        } catch (XPathSyntaxException | UnsupportedFormException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private QuestionRefreshPlanner() {
+    }
+
+    /**
+     * Reads a planner written by {@link #writeExternal(DataOutputStream)}.
+     */
+    public static QuestionRefreshPlanner readExternal(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
+        QuestionRefreshPlanner planner = new QuestionRefreshPlanner();
+
+        int structuralCount = in.readInt();
+        for (int i = 0; i < structuralCount; i++) {
+            planner.structuralTargets.add(readReference(in, pf));
+        }
+
+        int dependentsCount = in.readInt();
+        for (int i = 0; i < dependentsCount; i++) {
+            TreeReference trigger = readReference(in, pf);
+            int targetCount = in.readInt();
+            Set<TreeReference> targets = new HashSet<>();
+            for (int j = 0; j < targetCount; j++) {
+                targets.add(readReference(in, pf));
+            }
+            planner.dependents.put(trigger, targets);
+        }
+
+        return planner;
+    }
+
+    /**
+     * Writes the dependencies read from the form so the planner can be cached along with the
+     * form's FormDef rather than being read from the form XML every time the form is opened.
+     */
+    public void writeExternal(DataOutputStream out) throws IOException {
+        out.writeInt(structuralTargets.size());
+        for (TreeReference target : structuralTargets) {
+            target.writeExternal(out);
+        }
+
+        out.writeInt(dependents.size());
+        for (Map.Entry<TreeReference, Set<TreeReference>> entry : dependents.entrySet()) {
+            entry.getKey().writeExternal(out);
+            out.writeInt(entry.getValue().size());
+            for (TreeReference target : entry.getValue()) {
+                target.writeExternal(out);
+            }
+        }
+    }
+
+    private static TreeReference readReference(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
+        TreeReference reference = new TreeReference();
+        reference.readExternal(in, pf);
+        return reference;
+    }
+
+    public Plan plan(FormIndex changedIndex) {
+        return plan(changedIndex.getReference());
+    }
+
+    /**
+     * @return every reference whose value, relevance or display can change as a result of the
+     * answer at changedRef changing
+     */
+    public Plan plan(TreeReference changedRef) {
+        Set<TreeReference> affected = new HashSet<>();
+        Deque<TreeReference> toVisit = new ArrayDeque<>();
+        toVisit.add(changedRef.genericize());
+
+        while (!toVisit.isEmpty()) {
+            // Expressions can refer to a group containing the reference (count() of a repeat for
+            // example) as well as to the reference itself
+            for (TreeReference ref = toVisit.remove(); ref != null; ref = ref.getParentRef()) {
+                Set<TreeReference> targets = dependents.get(ref);
+                if (targets == null) {
+                    continue;
+                }
+
+                for (TreeReference target : targets) {
+                    if (affected.add(target)) {
+                        toVisit.add(target);
+                    }
+                }
+            }
+        }
+
+        Set<TreeReference> structuralChanges = new HashSet<>(affected);
+        structuralChanges.retainAll(structuralTargets);
+        return new Plan(affected, structuralChanges);
+    }
+
+    private void readForm(Element root) throws XPathSyntaxException, UnsupportedFormException {
+        Element head = getChild(root, "head");
+        Element body = getChild(root, "body");
+        Element model = head != null ? getChild(head, "model") : null;
+
+        if (model != null) {
+            readItext(model);
+            readBinds(model);
+
+            for (String action : ACTIONS) {
+                for (Element element : getChildren(model, action)) {
+                    readAction(element, null, TreeReference.rootRef());
+                }
+            }
+        }
+
+        if (body != null) {
+            readControls(body, TreeReference.rootRef());
+        }
+    }
+
+    private void readItext(Element model) {
+        Element itext = getChild(model, "itext");
+        if (itext == null) {
+            return;
+        }
+
+        for (Element translation : getChildren(itext, "translation")) {
+            for (Element text : getChildren(translation, "text")) {
+                List<String> outputs = new ArrayList<>();
+                for (Element value : getChildren(text, "value")) {
+                    collectOutputs(value, outputs);
+                }
+
+                String id = text.getAttributeValue(null, "id");
+                if (id != null && !outputs.isEmpty()) {
+                    if (!itextOutputs.containsKey(id)) {
+                        itextOutputs.put(id, new ArrayList<>());
+                    }
+                    itextOutputs.get(id).addAll(outputs);
+                }
+            }
+        }
+    }
+
+    private void readBinds(Element model) throws XPathSyntaxException {
+        for (Element bind : getChildren(model, "bind")) {
+            String nodeset = bind.getAttributeValue(null, "nodeset");
+            if (nodeset == null) {
+                continue;
+            }
+
+            TreeReference target = resolve(nodeset, TreeReference.rootRef());
+
+            String id = bind.getAttributeValue(null, "id");
+            if (id != null) {
+                bindNodesets.put(id, target);
+            }
+
+            String relevant = bind.getAttributeValue(null, "relevant");
+            if (relevant != null) {
+                addDependencies(relevant, target);
+                structuralTargets.add(target);
+            }
+
+            for (String attribute : DISPLAYED_BIND_ATTRIBUTES) {
+                String expression = bind.getAttributeValue(null, attribute);
+                if (expression != null) {
+                    addDependencies(expression, target);
+                }
+            }
+        }
+    }
+
+    private void readControls(Element parent, TreeReference context) throws XPathSyntaxException, UnsupportedFormException {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            if (parent.getType(i) != Node.ELEMENT) {
+                continue;
+            }
+
+            Element element = parent.getElement(i);
+            String name = element.getName();
+
+            if (isGroup(element)) {
+                TreeReference ref = getBoundReference(element, name.equals("repeat") ? "nodeset" : "ref", context);
+                TreeReference groupContext = ref != null ? ref : context;
+
+                String count = element.getAttributeValue(null, "count");
+                if (count != null && ref != null) {
+                    addDependencies(count, groupContext);
+                    structuralTargets.add(groupContext);
+                }
+
+                for (Element label : getChildren(element, "label")) {
+                    readText(label, groupContext);
+                }
+
+                readControls(element, groupContext);
+            } else if (ACTIONS.contains(name)) {
+                readAction(element, null, context);
+            } else if (CONTROLS.contains(name)) {
+                TreeReference target = getBoundReference(element, "ref", context);
+                if (target == null) {
+                    throw new UnsupportedFormException(name + " without a ref or bind");
+                }
+
+                readControl(element, target, context);
+            } else if (!name.equals("label") || !isGroup(parent)) {
+                // Groups' labels are read along with the group
+                throw new UnsupportedFormException(name);
+            }
+        }
+    }
+
+    private void readControl(Element control, TreeReference target, TreeReference context) throws XPathSyntaxException, UnsupportedFormException {
+        for (int i = 0; i < control.getChildCount(); i++) {
+            if (control.getType(i) != Node.ELEMENT) {
+                continue;
+            }
+
+            Element child = control.getElement(i);
+            switch (child.getName()) {
+                case "label":
+                case "hint":
+                    readText(child, target);
+                    break;
+                case "item":
+                    for (Element label : getChildren(child, "label")) {
+                        readText(label, target);
+                    }
+                    break;
+                case "itemset":
+                    String nodeset = child.getAttributeValue(null, "nodeset");
+                    if (nodeset != null) {
+                        addDependencies(nodeset, target);
+                    }
+                    break;
+                default:
+                    if (!ACTIONS.contains(child.getName())) {
+                        throw new UnsupportedFormException(child.getName() + " in " + control.getName());
+                    }
+
+                    readAction(child, target, context);
+            }
+        }
+
+        String query = control.getAttributeValue(null, "query");
+        if (query != null && !query.isEmpty()) {
+            addDependencies(query, target);
+        }
+
+        String appearance = control.getAttributeValue(null, "appearance");
+        if (appearance != null) {
+            Matcher search = ExternalDataUtil.SEARCH_FUNCTION_REGEX.matcher(appearance);
+            if (search.find()) {
+                addDependencies(search.group(), target);
+            }
+        }
+    }
+
+    /**
+     * Reads a setvalue (or similar) action. One that is triggered by a question's value changing
+     * makes the question it sets depend on that question.
+     *
+     * @param control the question the action is in or null if it isn't in one
+     */
+    private void readAction(Element action, @Nullable TreeReference control, TreeReference context) throws UnsupportedFormException {
+        String events = action.getAttributeValue(null, "event");
+        if (events == null) {
+            throw new UnsupportedFormException(action.getName() + " without an event");
+        }
+
+        for (String event : events.trim().split("\\s+")) {
+            if (event.equals(VALUE_CHANGED_EVENT)) {
+                TreeReference target = getBoundReference(action, "ref", context);
+                if (control == null || target == null) {
+                    throw new UnsupportedFormException(action.getName() + " on " + event + " outside a question");
+                }
+
+                addDependency(control, target);
+            } else if (!LOAD_EVENTS.contains(event)) {
+                throw new UnsupportedFormException(action.getName() + " on " + event);
+            }
+        }
+    }
+
+    private void readText(Element text, TreeReference target) throws XPathSyntaxException {
+        List<String> outputs = new ArrayList<>();
+        collectOutputs(text, outputs);
+
+        String ref = text.getAttributeValue(null, "ref");
+        if (ref != null) {
+            Matcher itextId = ITEXT_ID.matcher(ref);
+            if (itextId.find() && itextOutputs.containsKey(itextId.group(1))) {
+                outputs.addAll(itextOutputs.get(itextId.group(1)));
+            }
+        }
+
+        for (String output : outputs) {
+            addDependencies(output, target);
+        }
+    }
+
+    private void addDependencies(String expression, TreeReference target) throws XPathSyntaxException {
+        Set<TreeReference> triggers = new XPathConditional(expression).getExprsTriggers(target);
+        for (TreeReference trigger : triggers) {
+            addDependency(trigger, target);
+        }
+    }
+
+    private void addDependency(TreeReference trigger, TreeReference target) {
+        TreeReference genericTrigger = trigger.genericize();
+        if (!dependents.containsKey(genericTrigger)) {
+            dependents.put(genericTrigger, new HashSet<>());
+        }
+        dependents.get(genericTrigger).add(target);
+    }
+
+    /**
+     * @return the reference the element's ref (or nodeset) attribute or bind attribute points to,
+     * or null if it has neither
+     */
+    @Nullable
+    private TreeReference getBoundReference(Element element, String refAttribute, TreeReference context) throws UnsupportedFormException {
+        String ref = element.getAttributeValue(null, refAttribute);
+        if (ref != null) {
+            return resolve(ref, context);
+        }
+
+        String bind = element.getAttributeValue(null, "bind");
+        if (bind != null) {
+            TreeReference nodeset = bindNodesets.get(bind);
+            if (nodeset == null) {
+                throw new UnsupportedFormException("unknown bind " + bind);
+            }
+            return nodeset;
+        }
+
+        return null;
+    }
+
+    private static boolean isGroup(Element element) {
+        return element.getName().equals("group") || element.getName().equals("repeat");
+    }
+
+    private static void collectOutputs(Element element, List<String> outputs) {
+        for (int i = 0; i < element.getChildCount(); i++) {
+            if (element.getType(i) == Node.ELEMENT) {
+                Element child = element.getElement(i);
+                if (child.getName().equals("output") && child.getAttributeValue(null, "value") != null) {
+                    outputs.add(child.getAttributeValue(null, "value"));
+                } else {
+                    collectOutputs(child, outputs);
+                }
+            }
+        }
+    }
+
+    private static TreeReference resolve(String ref, TreeReference context) {
+        TreeReference reference = XPathReference.getPathExpr(ref).getReference();
+        return (reference.isAbsolute() ? reference : reference.anchor(context)).genericize();
+    }
+
+    @Nullable
+    private static Element getChild(Element parent, String name) {
+        List<Element> children = getChildren(parent, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static List<Element> getChildren(Element parent, String name) {
+        List<Element> children = new ArrayList<>();
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            if (parent.getType(i) == Node.ELEMENT && parent.getElement(i).getName().equals(name)) {
+                children.add(parent.getElement(i));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Thrown when the form uses something the planner doesn't read, so it can't tell what
+     * depends on what.
+     */
+    private static class UnsupportedFormException extends Exception {
+
+        UnsupportedFormException(String message) {
+            super(message);
+        }
+    }
+
+    public static class Plan {
+
+        private final Set<TreeReference> affected;
+        private final Set<TreeReference> structuralChanges;
+
+        Plan(Set<TreeReference> affected, Set<TreeReference> structuralChanges) {
+            this.affected = affected;
+            this.structuralChanges = structuralChanges;
+        }
+
+        /**
+         * @return whether the change can make questions relevant or irrelevant or add or
+         * remove repeat instances
+         */
+        public boolean mayChangeWhichQuestionsAreShown() {
+            return !structuralChanges.isEmpty();
+        }
+
+        /**
+         * @return whether the change can make the question or group at ref relevant or
+         * irrelevant, or do that to (or add or remove repeat instances of) anything in it. If not,
+         * the questions shown for it stay the same.
+         */
+        public boolean mayChangeWhichQuestionsAreShownIn(TreeReference ref) {
+            TreeReference genericRef = ref.genericize();
+            for (TreeReference target : structuralChanges) {
+                if (target.isParentOf(genericRef, false) || genericRef.isParentOf(target, false)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public boolean shouldRebuild(FormIndex index) {
+            return shouldRebuild(index.getReference());
+        }
+
+        /**
+         * @return whether the question (or a group it is in) can be affected by the change
+         */
+        public boolean shouldRebuild(TreeReference questionRef) {
+            for (TreeReference ref = questionRef.genericize(); ref != null; ref = ref.getParentRef()) {
+                if (affected.contains(ref)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
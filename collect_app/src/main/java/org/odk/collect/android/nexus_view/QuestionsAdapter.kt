@@ -1,60 +1,322 @@
 package org.odk.collect.android.nexus_view
 
-import android.content.Context
-import android.view.*
-import android.widget.TextView
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.ListUpdateCallback
 import androidx.recyclerview.widget.RecyclerView
+import org.javarosa.core.model.FormIndex
+import org.javarosa.core.model.data.IAnswerData
 import org.javarosa.form.api.FormEntryPrompt
-import org.odk.collect.android.R
+import org.odk.collect.android.logic.ImmutableDisplayableQuestion
+import org.odk.collect.android.widgets.QuestionWidget
 import java.util.*
 
-private const val TAG = "MembersForTeamAdapter"
-
+/**
+ * Shows every question in a form in one list, only creating [QuestionWidget]s for the questions
+ * that are on screen. Widgets build their state from their prompt when they are created so they
+ * can't be rebound to another question: each holder is a container that gets its question's widget
+ * when it is bound. When a holder is recycled its widget is kept (up to [MAX_DETACHED_WIDGETS] of
+ * them) and put back if its question is bound again rather than built again.
+ *
+ * Answers are held here rather than in the widgets. When a widget is recycled its answer is kept
+ * and passed to [AnswerSaver] so that it is in the form (and shown again) when the question is
+ * scrolled back to.
+ *
+ * When the form is walked again (after navigating or a change in relevance for example) the new
+ * questions are passed to [updatePrompts], which only rerenders the questions that changed.
+ */
 class QuestionsAdapter(
-    private val context: Context,
-    private val dataSource: List<FormEntryPrompt>,
+    private var prompts: List<FormEntryPrompt>,
+    private val widgetCreator: WidgetCreator,
+    private val answerSaver: AnswerSaver
 ) : RecyclerView.Adapter<QuestionsAdapter.ViewHolder>() {
 
-    override fun onCreateViewHolder(
-        parent: ViewGroup,
-        viewType: Int
-    ): ViewHolder {
+    interface WidgetCreator {
+        fun createWidget(prompt: FormEntryPrompt): QuestionWidget
+    }
+
+    interface AnswerSaver {
+        fun saveAnswer(index: FormIndex, answer: IAnswerData?)
+    }
+
+    private val viewTypes = HashMap<String, Int>()
+    private val boundWidgets = HashMap<FormIndex, QuestionWidget>()
+    private val detachedWidgets = object : LinkedHashMap<FormIndex, QuestionWidget>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<FormIndex, QuestionWidget>?): Boolean {
+            return size > MAX_DETACHED_WIDGETS
+        }
+    }
+    private val answers = HashMap<FormIndex, IAnswerData?>()
+    private val changedQuestions = HashSet<FormIndex>()
+    private var shownQuestions = snapshot(prompts)
+    private var shownIndexes = indexes(prompts)
+
+    override fun getItemCount(): Int = prompts.size
+
+    /**
+     * Replaces the questions being shown, notifying the RecyclerView of the questions that were
+     * inserted, removed or changed so that questions that are unchanged keep their widgets.
+     *
+     * Prompts that are the same objects as ones being shown (because only part of the form was
+     * walked again, see [ReusablePrompts]) are taken to be unchanged: only the runs of other
+     * prompts are compared, and the updates for each run are dispatched separately. Questions
+     * that keep their prompt but whose answer or text can have changed should be refreshed with
+     * [refreshQuestions].
+     */
+    fun updatePrompts(newPrompts: List<FormEntryPrompt>) {
+        val ranges = changedRanges(prompts, newPrompts)
 
-        val view = LayoutInflater.from(parent.context)
-            .inflate(R.layout.nexus_recycler_item, parent, false)
+        val diffs = ranges.map { range ->
+            val callback = QuestionsDiffCallback(
+                shownQuestions.subList(range.oldStart, range.oldEnd),
+                newPrompts.subList(range.newStart, range.newEnd)
+            )
+            Pair(DiffUtil.calculateDiff(callback), callback.changedQuestions)
+        }
 
+        // A changed question's widget needs to be rebuilt from the form so it shows the answer in
+        // the form (which may have been recalculated) rather than the one the old widget had
+        for ((_, changed) in diffs) {
+            for (index in changed) {
+                if (boundWidgets.containsKey(index)) {
+                    changedQuestions.add(index)
+                } else {
+                    answers.remove(index)
+                    detachedWidgets.remove(index)
+                }
+            }
+        }
 
-        return ViewHolder(view)
+        shownQuestions = snapshot(newPrompts, ranges)
+        prompts = newPrompts
+        shownIndexes = indexes(newPrompts)
 
+        // A question that is shown again later (because it is relevant again for example) could
+        // have a different answer by then
+        detachedWidgets.keys.retainAll(shownIndexes)
+
+        // Dispatched from the last run back so that the positions of earlier runs still hold
+        for (i in ranges.indices.reversed()) {
+            diffs[i].first.dispatchUpdatesTo(OffsetListUpdateCallback(this, ranges[i].oldStart))
+        }
     }
 
-    override fun getItemCount(): Int = dataSource.size
+    /**
+     * Rebuilds the widgets of the questions being shown that match [shouldRefresh] from the form.
+     * Their answers should already have been saved as the widgets' answers are discarded.
+     */
+    fun refreshQuestions(shouldRefresh: (FormIndex) -> Boolean) {
+        val refreshed = ArrayList<ImmutableDisplayableQuestion>(shownQuestions.size)
+        for ((position, prompt) in prompts.withIndex()) {
+            if (shouldRefresh(prompt.index)) {
+                refreshed.add(ImmutableDisplayableQuestion(prompt))
+                if (boundWidgets.containsKey(prompt.index)) {
+                    changedQuestions.add(prompt.index)
+                    notifyItemChanged(position)
+                } else {
+                    answers.remove(prompt.index)
+                    detachedWidgets.remove(prompt.index)
+                }
+            } else {
+                refreshed.add(shownQuestions[position])
+            }
+        }
 
+        shownQuestions = refreshed
+    }
+
+    /**
+     * Records that the question's widget already shows what is in the form (because its answer
+     * was just saved from it for example) so it isn't rebuilt by the next [updatePrompts].
+     */
+    fun markUpToDate(index: FormIndex) {
+        val position = prompts.indexOfFirst { it.index == index }
+        if (position != -1) {
+            shownQuestions = shownQuestions.toMutableList().also {
+                it[position] = ImmutableDisplayableQuestion(prompts[position])
+            }
+        }
+    }
+
+    /**
+     * Questions that get the same kind of widget share a view type so that holders are recycled
+     * between questions of similar size.
+     */
+    override fun getItemViewType(position: Int): Int {
+        val prompt = prompts[position]
+        val key = "${prompt.controlType}:${prompt.dataType}:${prompt.appearanceHint}"
+        return viewTypes.getOrPut(key) { viewTypes.size }
+    }
+
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
+        val container = FrameLayout(parent.context)
+        container.layoutParams = RecyclerView.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.WRAP_CONTENT
+        )
+        return ViewHolder(container)
+    }
 
     override fun onBindViewHolder(holder: ViewHolder, position: Int) {
-        holder.pQuestionText.text = dataSource[position].questionText
+        val prompt = prompts[position]
+        val changed = changedQuestions.remove(prompt.index)
+        val showingPrompt = holder.widget?.formEntryPrompt?.index == prompt.index
+        if (showingPrompt && !changed) {
+            return
+        }
+
+        releaseWidget(holder, !showingPrompt)
 
-        holder.pHelperText.text = dataSource[position].helpText
+        val detachedWidget = detachedWidgets.remove(prompt.index)
+        val widget = if (detachedWidget != null && !changed) detachedWidget else widgetCreator.createWidget(prompt)
+        holder.container.addView(widget)
+        holder.widget = widget
+        boundWidgets[prompt.index] = widget
+    }
 
-        holder.pInputType.text = dataSource[position].dataType.toString()
+    override fun onViewRecycled(holder: ViewHolder) {
+        releaseWidget(holder, true)
+    }
 
+    /**
+     * @return the answers to every question that has been shown, in form order. Questions that
+     * have never been on screen can't have been changed so aren't included.
+     */
+    fun getAnswers(): HashMap<FormIndex, IAnswerData?> {
+        val currentAnswers = LinkedHashMap<FormIndex, IAnswerData?>()
+        for (prompt in prompts) {
+            val widget = boundWidgets[prompt.index]
+            if (widget != null) {
+                currentAnswers[prompt.index] = widget.answer
+            } else if (answers.containsKey(prompt.index)) {
+                currentAnswers[prompt.index] = answers[prompt.index]
+            }
+        }
 
+        return currentAnswers
     }
 
-    inner class ViewHolder(mView: View) : RecyclerView.ViewHolder(mView) {
+    private fun releaseWidget(holder: ViewHolder, keepAnswer: Boolean) {
+        val widget = holder.widget ?: return
+        val index = widget.formEntryPrompt.index
 
-        val pQuestionText: TextView = mView.findViewById(R.id.question_text)
+        boundWidgets.remove(index)
+        widget.cancelLongPress()
+        holder.container.removeView(widget)
+        holder.widget = null
 
-        val pHelperText: TextView = mView.findViewById(R.id.question_help_text)
+        // Questions that are no longer shown (because they are no longer relevant for example)
+        // shouldn't be answered
+        if (keepAnswer && shownIndexes.contains(index)) {
+            val answer = widget.answer
+            answers[index] = answer
+            answerSaver.saveAnswer(index, answer)
+            detachedWidgets[index] = widget
+        } else {
+            answers.remove(index)
+        }
+    }
+
+    private fun snapshot(prompts: List<FormEntryPrompt>): List<ImmutableDisplayableQuestion> {
+        return prompts.map { ImmutableDisplayableQuestion(it) }
+    }
 
-        val pInputType: TextView = mView.findViewById(R.id.question_help_text)
+    /**
+     * Snapshots the prompts in the changed ranges and reuses the snapshots of the others.
+     */
+    private fun snapshot(newPrompts: List<FormEntryPrompt>, ranges: List<ChangedRange>): List<ImmutableDisplayableQuestion> {
+        val snapshots = ArrayList<ImmutableDisplayableQuestion>(newPrompts.size)
+        var oldPosition = 0
+        for (range in ranges) {
+            snapshots.addAll(shownQuestions.subList(oldPosition, oldPosition + range.newStart - snapshots.size))
+            newPrompts.subList(range.newStart, range.newEnd).mapTo(snapshots) { ImmutableDisplayableQuestion(it) }
+            oldPosition = range.oldEnd
+        }
+        snapshots.addAll(shownQuestions.subList(oldPosition, shownQuestions.size))
+
+        return snapshots
+    }
 
+    private fun indexes(prompts: List<FormEntryPrompt>): Set<FormIndex> {
+        return prompts.mapTo(HashSet()) { it.index }
     }
 
-    override fun getItemId(position: Int): Long {
-        //TODO should return userName for member
-        return position.toLong()
+    class ViewHolder(val container: FrameLayout) : RecyclerView.ViewHolder(container) {
+        var widget: QuestionWidget? = null
+    }
+
+    /**
+     * A run of prompts in the old list ([oldStart] to [oldEnd], exclusive) that was replaced by
+     * one in the new list.
+     */
+    data class ChangedRange(val oldStart: Int, val oldEnd: Int, val newStart: Int, val newEnd: Int)
+
+    private class OffsetListUpdateCallback(
+        private val adapter: RecyclerView.Adapter<*>,
+        private val offset: Int
+    ) : ListUpdateCallback {
+
+        override fun onInserted(position: Int, count: Int) {
+            adapter.notifyItemRangeInserted(position + offset, count)
+        }
+
+        override fun onRemoved(position: Int, count: Int) {
+            adapter.notifyItemRangeRemoved(position + offset, count)
+        }
+
+        override fun onMoved(fromPosition: Int, toPosition: Int) {
+            adapter.notifyItemMoved(fromPosition + offset, toPosition + offset)
+        }
+
+        override fun onChanged(position: Int, count: Int, payload: Any?) {
+            adapter.notifyItemRangeChanged(position + offset, count, payload)
+        }
     }
 
+    companion object {
+
+        /**
+         * Widgets can hold on to images and other media so only the most recently recycled ones
+         * are kept for reuse.
+         */
+        const val MAX_DETACHED_WIDGETS = 10
+
+        /**
+         * Finds the runs of prompts that differ between the lists. Prompts that are the same
+         * objects (in the same order) in both lists separate the runs.
+         */
+        @JvmStatic
+        fun changedRanges(oldPrompts: List<FormEntryPrompt>, newPrompts: List<FormEntryPrompt>): List<ChangedRange> {
+            val oldPositions = IdentityHashMap<FormEntryPrompt, Int>()
+            for ((position, prompt) in oldPrompts.withIndex()) {
+                oldPositions[prompt] = position
+            }
 
-}
\ No newline at end of file
+            val ranges = ArrayList<ChangedRange>()
+            var oldPosition = 0
+            var newPosition = 0
+            while (oldPosition < oldPrompts.size || newPosition < newPrompts.size) {
+                if (oldPosition < oldPrompts.size && newPosition < newPrompts.size &&
+                    oldPrompts[oldPosition] === newPrompts[newPosition]
+                ) {
+                    oldPosition++
+                    newPosition++
+                    continue
+                }
+
+                // The run ends at the next new prompt that is also further on in the old list
+                val oldStart = oldPosition
+                val newStart = newPosition
+                while (newPosition < newPrompts.size && (oldPositions[newPrompts[newPosition]] ?: -1) < oldStart) {
+                    newPosition++
+                }
+
+                oldPosition = if (newPosition < newPrompts.size) oldPositions[newPrompts[newPosition]]!! else oldPrompts.size
+                ranges.add(ChangedRange(oldStart, oldPosition, newStart, newPosition))
+            }
+
+            return ranges
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.odk.collect.android.nexus_view
+
+import androidx.recyclerview.widget.DiffUtil
+import org.javarosa.core.model.FormIndex
+import org.javarosa.form.api.FormEntryPrompt
+import org.odk.collect.android.logic.ImmutableDisplayableQuestion
+
+/**
+ * Compares the questions that were last shown with a fresh walk of the form. Questions are the
+ * same item if they are at the same [FormIndex] and have the same content
+ * if everything the user can see (text, answer, choices etc) is unchanged, so only questions that
+ * became relevant or irrelevant, were added or removed with a repeat, or were affected by an
+ * answer need to be rerendered.
+ */
+class QuestionsDiffCallback(
+    private val oldQuestions: List<ImmutableDisplayableQuestion>,
+    private val newQuestions: List<FormEntryPrompt>
+) : DiffUtil.Callback() {
+
+    /**
+     * The questions that are in both lists but whose content changed. Only filled in once the
+     * diff has been calculated.
+     */
+    val changedQuestions = HashSet<FormIndex>()
+
+    override fun getOldListSize(): Int = oldQuestions.size
+
+    override fun getNewListSize(): Int = newQuestions.size
+
+    override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+        return oldQuestions[oldItemPosition].formIndex == newQuestions[newItemPosition].index
+    }
+
+    override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+        val oldQuestion = oldQuestions[oldItemPosition]
+        val same = oldQuestion.sameAs(newQuestions[newItemPosition])
+        if (!same) {
+            changedQuestions.add(oldQuestion.formIndex)
+        }
+
+        return same
+    }
+}
@@ -0,0 +1,50 @@
+package org.odk.collect.android.nexus_view
+
+import org.javarosa.core.model.instance.TreeReference
+import org.javarosa.form.api.FormEntryPrompt
+import org.odk.collect.android.logic.QuestionRefreshPlanner
+
+/**
+ * The questions on screen, looked up by the question or group they are in. When an answer change
+ * can show or hide questions, the form is walked again but the questions and groups that [plan]
+ * says the change can't affect are skipped and keep their prompts from here. The prompts are the
+ * same objects so [QuestionsAdapter.updatePrompts] only compares the questions that were walked.
+ */
+class ReusablePrompts(
+    private val shownPrompts: List<FormEntryPrompt>,
+    private val plan: QuestionRefreshPlanner.Plan
+) {
+
+    /**
+     * The first and last (exclusive) positions of the questions in each question or group. Shown
+     * questions are in form order so a group's questions are next to each other.
+     */
+    private val ranges = HashMap<TreeReference, IntArray>()
+
+    init {
+        for ((position, prompt) in shownPrompts.withIndex()) {
+            var ref: TreeReference? = prompt.index.reference
+            while (ref != null) {
+                val range = ranges.getOrPut(ref) { intArrayOf(position, position) }
+                range[1] = position + 1
+                ref = ref.parentRef
+            }
+        }
+    }
+
+    /**
+     * @return whether the questions shown for the question or group at ref can't have changed
+     */
+    fun canReuse(ref: TreeReference): Boolean {
+        return !plan.mayChangeWhichQuestionsAreShownIn(ref)
+    }
+
+    /**
+     * @return the questions on screen for the question or group at ref, which are none if it
+     * isn't relevant
+     */
+    fun get(ref: TreeReference): List<FormEntryPrompt> {
+        val range = ranges[ref] ?: return emptyList()
+        return shownPrompts.subList(range[0], range[1])
+    }
+}
@@ -37,6 +37,7 @@ public class CollectThenSystemContentTypeMapper implements OpenRosaHttpInterface
 
     private enum CollectContentTypeMappings {
         AMR("amr",  "audio/amr"),
+        GEOJSON("geojson", "application/geo+json"),
         OGA("oga",  "audio/ogg"),
         OGV("ogv",  "video/ogg"),
         WEBM("webm", "video/webm");
@@ -0,0 +1,195 @@
+package org.odk.collect.android.openrosa;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Properties;
+
+import timber.log.Timber;
+
+/**
+ * How far the upload of a submission that is too big for one request has got. Every request but
+ * the last is marked {@code *isIncomplete*} and the server adds its attachments to the submission
+ * it already has, so once a request is acknowledged its attachments don't need to be sent again.
+ *
+ * The state is kept in a hidden file next to the submission (hidden files aren't uploaded) so an
+ * upload that fails can carry on from the first unacknowledged request the next time it's tried.
+ * It only applies to the same "plan": if the attachments, the destination or the size limit that
+ * decide how the submission is split up change, the upload starts again from the beginning.
+ */
+public class SubmissionUploadState {
+
+    private static final String KEY_PLAN = "plan";
+    private static final String KEY_NEXT_FILE_INDEX = "nextFileIndex";
+    private static final String KEY_ACKNOWLEDGED_REQUESTS = "acknowledgedRequests";
+    private static final String KEY_BYTES_SENT = "bytesSent";
+    private static final String KEY_ELAPSED_MILLIS = "elapsedMillis";
+    private static final String KEY_FAILED_ATTEMPTS = "failedAttempts";
+
+    private final File stateFile;
+    private final String plan;
+
+    private int nextFileIndex;
+    private int acknowledgedRequests;
+    private long bytesSent;
+    private long elapsedMillis;
+    private int failedAttempts;
+
+    private SubmissionUploadState(File stateFile, String plan) {
+        this.stateFile = stateFile;
+        this.plan = plan;
+    }
+
+    /**
+     * Returns the saved state for uploading this submission with this plan or a new state if
+     * there isn't one.
+     */
+    @NonNull
+    public static SubmissionUploadState load(File submissionFile, String plan) {
+        SubmissionUploadState state = new SubmissionUploadState(getStateFile(submissionFile), plan);
+        if (!state.stateFile.exists()) {
+            return state;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(state.stateFile)) {
+            properties.load(inputStream);
+        } catch (IOException e) {
+            Timber.e(e);
+            return state;
+        }
+
+        if (plan.equals(properties.getProperty(KEY_PLAN))) {
+            try {
+                state.nextFileIndex = Integer.parseInt(properties.getProperty(KEY_NEXT_FILE_INDEX, "0"));
+                state.acknowledgedRequests = Integer.parseInt(properties.getProperty(KEY_ACKNOWLEDGED_REQUESTS, "0"));
+                state.bytesSent = Long.parseLong(properties.getProperty(KEY_BYTES_SENT, "0"));
+                state.elapsedMillis = Long.parseLong(properties.getProperty(KEY_ELAPSED_MILLIS, "0"));
+                state.failedAttempts = Integer.parseInt(properties.getProperty(KEY_FAILED_ATTEMPTS, "0"));
+            } catch (NumberFormatException e) {
+                Timber.e(e);
+                return new SubmissionUploadState(state.stateFile, plan);
+            }
+        }
+
+        return state;
+    }
+
+    /**
+     * Describes everything that decides how a submission is split into requests so that saved
+     * progress is only used for a submission that will be split the same way. Files are described
+     * by their name, size and last modified time so that progress isn't used for a file that was
+     * replaced by another one of the same size.
+     */
+    public static String getPlan(List<File> fileList, File submissionFile, URI uri, long contentLength) {
+        StringBuilder plan = new StringBuilder()
+                .append(uri).append('|')
+                .append(contentLength).append('|');
+        appendFile(plan, submissionFile);
+
+        for (File file : fileList) {
+            plan.append('|');
+            appendFile(plan, file);
+        }
+
+        return plan.toString();
+    }
+
+    private static void appendFile(StringBuilder plan, File file) {
+        plan.append(file.getName()).append(':')
+                .append(file.length()).append(':')
+                .append(file.lastModified());
+    }
+
+    public static File getStateFile(File submissionFile) {
+        return new File(submissionFile.getParentFile(), "." + submissionFile.getName() + ".upload");
+    }
+
+    /**
+     * Records that the server acknowledged a request and that the next one starts with the
+     * attachment at {@code nextFileIndex}.
+     */
+    public void acknowledgeRequest(int nextFileIndex, long bytes, long elapsedMillis) {
+        this.nextFileIndex = nextFileIndex;
+        acknowledgedRequests++;
+        bytesSent += bytes;
+        this.elapsedMillis += elapsedMillis;
+        save();
+    }
+
+    public void recordFailedAttempt(long elapsedMillis) {
+        failedAttempts++;
+        this.elapsedMillis += elapsedMillis;
+        save();
+    }
+
+    /**
+     * Removes the saved state once the whole submission has been accepted.
+     */
+    public void complete(long bytes, long elapsedMillis) {
+        acknowledgedRequests++;
+        bytesSent += bytes;
+        this.elapsedMillis += elapsedMillis;
+
+        if (stateFile.exists() && !stateFile.delete()) {
+            Timber.w("Failed to delete %s", stateFile.getAbsolutePath());
+        }
+    }
+
+    public int getNextFileIndex() {
+        return nextFileIndex;
+    }
+
+    public int getAcknowledgedRequests() {
+        return acknowledgedRequests;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getBytesPerSecond() {
+        return elapsedMillis > 0 ? bytesSent * 1000 / elapsedMillis : bytesSent;
+    }
+
+    /**
+     * Returns how many earlier attempts to upload this submission failed.
+     */
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    private void save() {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_PLAN, plan);
+        properties.setProperty(KEY_NEXT_FILE_INDEX, String.valueOf(nextFileIndex));
+        properties.setProperty(KEY_ACKNOWLEDGED_REQUESTS, String.valueOf(acknowledgedRequests));
+        properties.setProperty(KEY_BYTES_SENT, String.valueOf(bytesSent));
+        properties.setProperty(KEY_ELAPSED_MILLIS, String.valueOf(elapsedMillis));
+        properties.setProperty(KEY_FAILED_ATTEMPTS, String.valueOf(failedAttempts));
+
+        // Write a copy and rename it so a crash part way through can't leave a broken state file
+        File temporaryFile = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+            properties.store(outputStream, null);
+        } catch (IOException e) {
+            Timber.e(e);
+            return;
+        }
+
+        if (!temporaryFile.renameTo(stateFile)) {
+            Timber.w("Failed to save %s", stateFile.getAbsolutePath());
+        }
+    }
+}
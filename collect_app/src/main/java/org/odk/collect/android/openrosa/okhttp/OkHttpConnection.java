@@ -12,18 +12,24 @@ import org.odk.collect.android.openrosa.HttpHeadResult;
 import org.odk.collect.android.openrosa.HttpPostResult;
 import org.odk.collect.android.openrosa.OpenRosaHttpInterface;
 import org.odk.collect.android.openrosa.OpenRosaServerClient;
+import org.odk.collect.android.openrosa.SubmissionUploadState;
 import org.odk.collect.android.utilities.FileUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import okhttp3.Headers;
 import okhttp3.MediaType;
@@ -32,11 +38,18 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
 import timber.log.Timber;
 
 public class OkHttpConnection implements OpenRosaHttpInterface {
 
     private static final String HTTP_CONTENT_TYPE_TEXT_XML = "text/xml";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String GZIP = "gzip";
 
     private final OkHttpOpenRosaServerClientProvider clientFactory;
 
@@ -46,10 +59,26 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
     @NonNull
     private final String userAgent;
 
+    @NonNull
+    private final Supplier<Boolean> compressSubmissions;
+
+    // Origins (scheme, host and port) whose HEAD responses said they accept gzip encoded requests
+    // (RFC 7694)
+    private final Set<String> gzipAcceptingOrigins = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
     public OkHttpConnection(@NonNull OkHttpOpenRosaServerClientProvider clientFactory, @NonNull FileToContentTypeMapper fileToContentTypeMapper, @NonNull String userAgent) {
+        this(clientFactory, fileToContentTypeMapper, userAgent, () -> false);
+    }
+
+    /**
+     * @param compressSubmissions whether submission requests that are mostly text should be sent
+     *                            gzip encoded to servers that have said they accept it
+     */
+    public OkHttpConnection(@NonNull OkHttpOpenRosaServerClientProvider clientFactory, @NonNull FileToContentTypeMapper fileToContentTypeMapper, @NonNull String userAgent, @NonNull Supplier<Boolean> compressSubmissions) {
         this.clientFactory = clientFactory;
         this.fileToContentTypeMapper = fileToContentTypeMapper;
         this.userAgent = userAgent;
+        this.compressSubmissions = compressSubmissions;
     }
 
     @NonNull
@@ -129,6 +158,14 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
 
         if (statusCode == HttpURLConnection.HTTP_NO_CONTENT) {
             responseHeaders = new OkHttpCaseInsensitiveHeaders(response.headers());
+
+            // The latest answer wins so a server (or proxy) that stops accepting gzip is respected
+            String acceptEncoding = response.header(ACCEPT_ENCODING_HEADER);
+            if (acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ENGLISH).contains(GZIP)) {
+                gzipAcceptingOrigins.add(getOrigin(uri));
+            } else {
+                gzipAcceptingOrigins.remove(getOrigin(uri));
+            }
         }
 
         discardEntityBytes(response);
@@ -140,33 +177,45 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
     @Override
     public HttpPostResult uploadSubmissionFile(@NonNull List<File> fileList, @NonNull File submissionFile, @NonNull URI uri, @Nullable HttpCredentialsInterface credentials, @NonNull long contentLength) throws Exception {
         HttpPostResult postResult = null;
+        boolean compress = compressSubmissions.get() && gzipAcceptingOrigins.contains(getOrigin(uri));
+
+        // Carry on after the requests the server has already acknowledged if an earlier attempt
+        // to upload this submission failed part way through
+        SubmissionUploadState uploadState = SubmissionUploadState.load(submissionFile, SubmissionUploadState.getPlan(fileList, submissionFile, uri, contentLength));
+        int fileIndex = uploadState.getNextFileIndex() < fileList.size() ? uploadState.getNextFileIndex() : 0;
+        if (fileIndex > 0) {
+            Timber.i("Resuming upload of %s from attachment %d after %d acknowledged requests and %d failed attempts",
+                    submissionFile.getName(), fileIndex, uploadState.getAcknowledgedRequests(), uploadState.getFailedAttempts());
+        }
 
         boolean first = true;
-        int fileIndex = 0;
         int lastFileIndex;
         while (fileIndex < fileList.size() || first) {
             lastFileIndex = fileIndex;
             first = false;
             long byteCount = 0L;
-
-            RequestBody requestBody = RequestBody.create(MediaType.parse(HTTP_CONTENT_TYPE_TEXT_XML), submissionFile);
+            long compressibleByteCount = 0L;
+            long requestStart = System.currentTimeMillis();
 
             MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
                     .setType(MultipartBody.FORM)
-                    .addPart(MultipartBody.Part.createFormData("xml_submission_file", submissionFile.getName(), requestBody));
+                    .addPart(createFilePart("xml_submission_file", submissionFile, HTTP_CONTENT_TYPE_TEXT_XML));
 
             Timber.i("added xml_submission_file: %s", submissionFile.getName());
             byteCount += submissionFile.length();
+            compressibleByteCount += submissionFile.length();
 
             for (; fileIndex < fileList.size(); fileIndex++) {
                 File file = fileList.get(fileIndex);
 
                 String contentType = fileToContentTypeMapper.map(file.getName());
 
-                RequestBody fileRequestBody = RequestBody.create(MediaType.parse(contentType), file);
-                multipartBuilder.addPart(MultipartBody.Part.createFormData(file.getName(), file.getName(), fileRequestBody));
+                multipartBuilder.addPart(createFilePart(file.getName(), file, contentType));
 
                 byteCount += file.length();
+                if (isCompressible(contentType)) {
+                    compressibleByteCount += file.length();
+                }
                 Timber.i("added file of type '%s' %s", contentType, file.getName());
 
                 // we've added at least one attachment to the request...
@@ -182,27 +231,81 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
                 }
             }
 
-            MultipartBody multipartBody = multipartBuilder.build();
-            postResult = executePostRequest(uri, credentials, multipartBody);
+            // Media is already compressed so gzipping a request that is mostly media isn't worth it
+            RequestBody requestBody = multipartBuilder.build();
+            boolean gzipped = compress && compressibleByteCount * 2 >= byteCount;
+            if (gzipped) {
+                requestBody = new GzipRequestBody(requestBody);
+            }
+
+            try {
+                postResult = executePostRequest(uri, credentials, requestBody, gzipped);
+            } catch (Exception e) {
+                uploadState.recordFailedAttempt(System.currentTimeMillis() - requestStart);
+                throw e;
+            }
 
             if (postResult.getResponseCode() != HttpURLConnection.HTTP_CREATED &&
                     postResult.getResponseCode() != HttpURLConnection.HTTP_ACCEPTED) {
+                uploadState.recordFailedAttempt(System.currentTimeMillis() - requestStart);
                 return postResult;
             }
 
+            if (fileIndex < fileList.size()) {
+                uploadState.acknowledgeRequest(fileIndex, byteCount, System.currentTimeMillis() - requestStart);
+            } else {
+                uploadState.complete(byteCount, System.currentTimeMillis() - requestStart);
+            }
         }
 
+        Timber.i("Uploaded %s: %d bytes in %d requests over %d ms (%d bytes/s) after %d failed attempts",
+                submissionFile.getName(), uploadState.getBytesSent(), uploadState.getAcknowledgedRequests(),
+                uploadState.getElapsedMillis(), uploadState.getBytesPerSecond(), uploadState.getFailedAttempts());
+
         return postResult;
     }
 
+    private static MultipartBody.Part createFilePart(String name, File file, String contentType) {
+        return MultipartBody.Part.createFormData(name, file.getName(), RequestBody.create(MediaType.parse(contentType), file));
+    }
+
+    /**
+     * Returns whether the content type is one that compresses well (XML, CSV, JSON and other text).
+     */
+    private static boolean isCompressible(String contentType) {
+        String type = contentType.toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/")
+                || type.endsWith("/xml") || type.endsWith("+xml")
+                || type.endsWith("/json") || type.endsWith("+json");
+    }
+
+    /**
+     * Returns the scheme, host and port of the URI, which are what identify the server that
+     * handles requests to it.
+     */
+    private static String getOrigin(URI uri) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ENGLISH) : "";
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ENGLISH) : "";
+
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+
+        return scheme + "://" + host + ":" + port;
+    }
+
     @NonNull
-    private HttpPostResult executePostRequest(@NonNull URI uri, @Nullable HttpCredentialsInterface credentials, MultipartBody multipartBody) throws Exception {
+    private HttpPostResult executePostRequest(@NonNull URI uri, @Nullable HttpCredentialsInterface credentials, RequestBody requestBody, boolean gzipped) throws Exception {
         OpenRosaServerClient httpClient = clientFactory.get(uri.getScheme(), userAgent, credentials);
         HttpPostResult postResult;
-        Request request = new Request.Builder()
+        Request.Builder requestBuilder = new Request.Builder()
                 .url(uri.toURL())
-                .post(multipartBody)
-                .build();
+                .post(requestBody);
+        if (gzipped) {
+            requestBuilder.header(CONTENT_ENCODING_HEADER, GZIP);
+        }
+        Request request = requestBuilder.build();
         Response response = httpClient.makeRequest(request, new Date());
 
         if (response.code() == 204) {
@@ -238,4 +341,40 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
             }
         }
     }
+
+    /**
+     * Gzips a whole request body in memory before it's sent so its length is known and the request
+     * doesn't have to be chunked. Only requests that are mostly text are compressed so the
+     * compressed copy is small.
+     */
+    private static class GzipRequestBody extends RequestBody {
+
+        private final MediaType contentType;
+        private final Buffer gzipped = new Buffer();
+
+        GzipRequestBody(RequestBody body) throws IOException {
+            contentType = body.contentType();
+            try (BufferedSink gzipSink = Okio.buffer(new GzipSink(gzipped))) {
+                body.writeTo(gzipSink);
+            }
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return gzipped.size();
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            // Written from a clone, which shares the buffer's segments rather than copying them,
+            // so the body can be written again if the request is retried
+            sink.writeAll(gzipped.clone());
+        }
+    }
 }
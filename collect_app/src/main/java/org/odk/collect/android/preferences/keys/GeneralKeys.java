@@ -72,6 +72,9 @@ public final class GeneralKeys {
     public static final String KEY_BACKGROUND_LOCATION = "background_location";
     public static final String KEY_BACKGROUND_RECORDING = "background_recording";
 
+    // not shown in settings, only set by imported settings
+    public static final String KEY_MAX_PARALLEL_SUBMISSIONS = "max_parallel_submissions";
+
     // values
     public static final String NAVIGATION_SWIPE = "swipe";
     public static final String NAVIGATION_BUTTONS = "buttons";
@@ -94,6 +97,7 @@ public final class GeneralKeys {
     // experimental
     public static final String KEY_MAGENTA_THEME = "magenta";
     public static final String KEY_EXTERNAL_APP_RECORDING = "external_app_recording";
+    public static final String KEY_COMPRESS_SUBMISSIONS = "compress_submissions";
 
     private static HashMap<String, Object> getHashMap() {
         HashMap<String, Object> hashMap = new HashMap<>();
@@ -116,6 +120,7 @@ public final class GeneralKeys {
         hashMap.put(KEY_BACKGROUND_LOCATION, true);
         hashMap.put(KEY_BACKGROUND_RECORDING, true);
         hashMap.put(KEY_FORM_UPDATE_MODE, "manual");
+        hashMap.put(KEY_MAX_PARALLEL_SUBMISSIONS, 3);
         // form_metadata_preferences.xml
         hashMap.put(KEY_METADATA_USERNAME, "");
         hashMap.put(KEY_METADATA_PHONENUMBER, "");
@@ -139,6 +144,7 @@ public final class GeneralKeys {
         hashMap.put(KEY_SPLASH_PATH, Collect.getInstance().getString(R.string.default_splash_path));
         hashMap.put(KEY_MAGENTA_THEME, false);
         hashMap.put(KEY_EXTERNAL_APP_RECORDING, true);
+        hashMap.put(KEY_COMPRESS_SUBMISSIONS, false);
         // map_preferences.xml
         hashMap.put(KEY_BASEMAP_SOURCE, BASEMAP_SOURCE_GOOGLE);
         hashMap.put(KEY_CARTO_MAP_STYLE, "positron");
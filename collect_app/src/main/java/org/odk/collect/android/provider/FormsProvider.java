@@ -15,8 +15,11 @@
 package org.odk.collect.android.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -37,6 +40,7 @@ import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.utilities.Clock;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -193,8 +197,7 @@ public class FormsProvider extends ContentProvider {
             if (values.containsKey(FormsColumns.MD5_HASH)) {
                 values.remove(FormsColumns.MD5_HASH);
             }
-            String md5 = FileUtils.getMd5Hash(form);
-            values.put(FormsColumns.MD5_HASH, md5);
+            String md5 = putMd5HashAndFingerprint(values, form);
 
             if (!values.containsKey(FormsColumns.JRCACHE_FILE_PATH)) {
                 values.put(FormsColumns.JRCACHE_FILE_PATH, storagePathProvider.getRelativeCachePath(md5 + ".formdef"));
@@ -238,6 +241,49 @@ public class FormsProvider extends ContentProvider {
         throw new SQLException("Failed to insert into the forms database.");
     }
 
+    /**
+     * Applies all of the operations in one database transaction so that a batch of forms is
+     * either recorded completely or not at all. This is synchronized like {@link #insert} so
+     * that an insert on another thread can't block waiting on the transaction while holding
+     * the provider's lock.
+     */
+    @NonNull
+    @Override
+    public synchronized ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = getDbHelper().getWritableDatabase();
+        ContentProviderResult[] results;
+
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Observers notified during the batch may have queried before it was committed
+        getContext().getContentResolver().notifyChange(FormsColumns.CONTENT_URI, null);
+        getContext().getContentResolver().notifyChange(FormsColumns.CONTENT_NEWEST_FORMS_BY_FORMID_URI, null);
+        return results;
+    }
+
+    /**
+     * Hashes the form file and records the hash along with the file's size and last modified
+     * time, so later disk syncs can skip rehashing files that haven't changed. The fingerprint
+     * is read before hashing so that a concurrent write can only make it look stale.
+     *
+     * @return the MD5 hash of the form file
+     */
+    private static String putMd5HashAndFingerprint(ContentValues values, File formFile) {
+        values.put(FormsColumns.FORM_FILE_SIZE, formFile.length());
+        values.put(FormsColumns.FORM_FILE_LAST_MODIFIED, formFile.lastModified());
+
+        String md5 = FileUtils.getMd5Hash(formFile);
+        values.put(FormsColumns.MD5_HASH, md5);
+        return md5;
+    }
+
     private void deleteFileOrDir(String fileName) {
         File file = new File(fileName);
         if (file.exists()) {
@@ -375,8 +421,7 @@ public class FormsProvider extends ContentProvider {
                     if (values.containsKey(FormsColumns.FORM_FILE_PATH)) {
                         String formFile = storagePathProvider.getAbsoluteFormFilePath(values
                                 .getAsString(FormsColumns.FORM_FILE_PATH));
-                        values.put(FormsColumns.MD5_HASH,
-                                FileUtils.getMd5Hash(new File(formFile)));
+                        putMd5HashAndFingerprint(values, new File(formFile));
                     }
 
                     Cursor c = null;
@@ -456,9 +501,7 @@ public class FormsProvider extends ContentProvider {
                                 deleteFileOrDir(storagePathProvider.getAbsoluteCacheFilePath(update
                                         .getString(update
                                                 .getColumnIndex(FormsColumns.JRCACHE_FILE_PATH))));
-                                String newMd5 = FileUtils
-                                        .getMd5Hash(new File(formFile));
-                                values.put(FormsColumns.MD5_HASH, newMd5);
+                                String newMd5 = putMd5HashAndFingerprint(values, new File(formFile));
                                 values.put(FormsColumns.JRCACHE_FILE_PATH,
                                         storagePathProvider.getRelativeCachePath(newMd5 + ".formdef"));
                             }
@@ -520,6 +563,8 @@ public class FormsProvider extends ContentProvider {
         sFormsProjectionMap.put(FormsColumns.SUBMISSION_URI, FormsColumns.SUBMISSION_URI);
         sFormsProjectionMap.put(FormsColumns.BASE64_RSA_PUBLIC_KEY, FormsColumns.BASE64_RSA_PUBLIC_KEY);
         sFormsProjectionMap.put(FormsColumns.MD5_HASH, FormsColumns.MD5_HASH);
+        sFormsProjectionMap.put(FormsColumns.FORM_FILE_SIZE, FormsColumns.FORM_FILE_SIZE);
+        sFormsProjectionMap.put(FormsColumns.FORM_FILE_LAST_MODIFIED, FormsColumns.FORM_FILE_LAST_MODIFIED);
         sFormsProjectionMap.put(FormsColumns.DATE, FormsColumns.DATE);
         sFormsProjectionMap.put(FormsColumns.FORM_MEDIA_PATH, FormsColumns.FORM_MEDIA_PATH);
         sFormsProjectionMap.put(FormsColumns.FORM_FILE_PATH, FormsColumns.FORM_FILE_PATH);
@@ -75,6 +75,9 @@ public final class FormsProviderAPI {
         public static final String MAX_DATE = "MAX(date)"; // used only to get latest forms for each form_id
         public static final String JRCACHE_FILE_PATH = "jrcacheFilePath";
         public static final String FORM_MEDIA_PATH = "formMediaPath";
+        // size and last modified time of the form file when MD5_HASH was computed
+        public static final String FORM_FILE_SIZE = "formFileSize";
+        public static final String FORM_FILE_LAST_MODIFIED = "formFileLastModified";
 
         // this is null on create, and can only be set on an update.
         public static final String LANGUAGE = "language";
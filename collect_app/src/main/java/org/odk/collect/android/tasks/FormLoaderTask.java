@@ -21,6 +21,8 @@ import android.os.AsyncTask;
 
 import org.javarosa.core.model.FormDef;
 import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.IFormElement;
+import org.javarosa.core.model.QuestionDef;
 import org.javarosa.core.model.instance.InstanceInitializationFactory;
 import org.javarosa.core.model.instance.TreeElement;
 import org.javarosa.core.model.instance.TreeReference;
@@ -33,6 +35,7 @@ import org.javarosa.xform.util.XFormUtils;
 import org.javarosa.xpath.XPathTypeMismatchException;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.fastexternalitemset.ItemsetDao;
 import org.odk.collect.android.fastexternalitemset.ItemsetDbAdapter;
 import org.odk.collect.android.external.ExternalAnswerResolver;
 import org.odk.collect.android.external.ExternalDataHandler;
@@ -41,20 +44,27 @@ import org.odk.collect.android.external.ExternalDataManagerImpl;
 import org.odk.collect.android.external.ExternalDataReader;
 import org.odk.collect.android.external.ExternalDataReaderImpl;
 import org.odk.collect.android.external.handler.ExternalDataHandlerPull;
+import org.odk.collect.android.external.handler.ExternalDataHandlerSearch;
+import org.odk.collect.android.forms.FormUtils;
 import org.odk.collect.android.listeners.FormLoaderListener;
+import org.odk.collect.android.logic.QuestionRefreshPlanner;
 import org.odk.collect.android.javarosawrapper.FormController;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.FormDefCache;
 import org.odk.collect.android.utilities.TranslationHandler;
 import org.odk.collect.android.utilities.ZipUtils;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import au.com.bytecode.opencsv.CSVReader;
 import timber.log.Timber;
@@ -131,11 +141,12 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         final File formXml = new File(formPath);
         final File formMediaDir = FileUtils.getFormMediaDir(formXml);
 
-        setupReferenceManagerForForm(ReferenceManager.instance(), formMediaDir);
-
         FormDef formDef = null;
         try {
-            formDef = createFormDefFromCacheOrXml(formPath, formXml);
+            synchronized (FormUtils.PARSE_LOCK) {
+                setupReferenceManagerForForm(ReferenceManager.instance(), formMediaDir);
+                formDef = createFormDefFromCacheOrXml(formPath, formXml);
+            }
         } catch (StackOverflowError e) {
             Timber.e(e);
             errorMsg = TranslationHandler.getString(Collect.getInstance(), R.string.too_complex_form);
@@ -158,7 +169,7 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         formDef.getEvaluationContext().addFunctionHandler(externalDataHandlerPull);
 
         try {
-            loadExternalData(formMediaDir);
+            loadExternalData(formMediaDir, ExternalDataHandlerSearch.getFullTextSearchColumns(formDef));
         } catch (Exception e) {
             Timber.e(e, "Exception thrown while loading external data");
             errorMsg = e.getMessage();
@@ -197,7 +208,7 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
             }
         }
 
-        processItemSets(formMediaDir);
+        processItemSets(formMediaDir, formDef);
 
         final FormController fc = new FormController(formMediaDir, fec, instancePath == null ? null
                 : new File(instancePath));
@@ -215,10 +226,37 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
                 fc.setIndexWaitingForData(idx);
             }
         }
+
+        fc.setQuestionRefreshPlannerLoader(() -> loadQuestionRefreshPlanner(formXml));
         data = new FECWrapper(fc, usedSavepoint);
         return data;
     }
 
+    /**
+     * Reads the form's dependencies so that changing an answer only rebuilds the questions it can
+     * affect. Without a planner every question on screen is compared before and after saving.
+     * This means parsing the form XML again so the planner is cached along with the FormDef.
+     */
+    private static QuestionRefreshPlanner loadQuestionRefreshPlanner(File formXml) {
+        QuestionRefreshPlanner planner = FormDefCache.readPlannerCache(formXml);
+        if (planner != null) {
+            return planner;
+        }
+
+        try {
+            planner = QuestionRefreshPlanner.fromFormXml(formXml);
+        } catch (IOException | XmlPullParserException e) {
+            Timber.w(e);
+            return null;
+        }
+
+        if (planner != null) {
+            FormDefCache.writePlannerCache(planner, formXml);
+        }
+
+        return planner;
+    }
+
     private FormDef createFormDefFromCacheOrXml(String formPath, File formXml) {
         publishProgress(
                 TranslationHandler.getString(Collect.getInstance(), R.string.survey_loading_reading_form_message));
@@ -253,41 +291,86 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         return null;
     }
 
-    private void processItemSets(File formMediaDir) {
+    private void processItemSets(File formMediaDir, FormDef formDef) {
         // for itemsets.csv, we only check to see if the itemset file has been
-        // updated
+        // updated. It's only hashed if its size or last modified time has changed
         final File csv = new File(formMediaDir.getAbsolutePath() + "/" + ITEMSETS_CSV);
         String csvmd5 = null;
         if (csv.exists()) {
-            csvmd5 = FileUtils.getMd5Hash(csv);
+            final String pathHash = ItemsetDbAdapter.getMd5FromString(csv.getAbsolutePath());
             boolean readFile = false;
             final ItemsetDbAdapter ida = new ItemsetDbAdapter();
             ida.open();
-            // get the database entry (if exists) for this itemsets.csv, based
-            // on the path
-            final Cursor c = ida.getItemsets(csv.getAbsolutePath());
-            if (c != null) {
-                if (c.getCount() == 1) {
-                    c.moveToFirst(); // should be only one, ever, if any
-                    final String oldmd5 = c.getString(c.getColumnIndex("hash"));
-                    if (oldmd5.equals(csvmd5)) {
-                        // they're equal, do nothing
+            if (!ida.hasSameFingerprint(csv)) {
+                csvmd5 = FileUtils.getMd5Hash(csv);
+                // get the database entry (if exists) for this itemsets.csv, based
+                // on the path
+                final Cursor c = ida.getItemsets(csv.getAbsolutePath());
+                if (c != null) {
+                    if (c.getCount() == 1) {
+                        c.moveToFirst(); // should be only one, ever, if any
+                        final String oldmd5 = c.getString(c.getColumnIndex("hash"));
+                        if (oldmd5.equals(csvmd5)) {
+                            // they're equal, just remember that so it isn't hashed next time
+                            ida.updateFingerprint(csv);
+                        } else {
+                            // the csv has been updated, delete the old entries
+                            ida.dropTable(pathHash, csv.getAbsolutePath());
+                            // and read the new
+                            readFile = true;
+                        }
                     } else {
-                        // the csv has been updated, delete the old entries
-                        ida.dropTable(ItemsetDbAdapter.getMd5FromString(csv.getAbsolutePath()),
-                                csv.getAbsolutePath());
-                        // and read the new
+                        // new csv, add it
                         readFile = true;
                     }
-                } else {
-                    // new csv, add it
-                    readFile = true;
+                    c.close();
                 }
-                c.close();
             }
             ida.close();
             if (readFile) {
-                readCSV(csv, csvmd5, ItemsetDbAdapter.getMd5FromString(csv.getAbsolutePath()));
+                readCSV(csv, csvmd5, pathHash);
+            }
+
+            createItemsetIndexes(formDef, pathHash);
+        }
+    }
+
+    /**
+     * Indexes the itemsets table on list_name and the columns each of the form's itemset queries
+     * filter on so looking up a cascade's items doesn't scan every row. This runs on every load
+     * (indexes that exist are left alone) so that an updated form gets indexes for new queries.
+     */
+    private void createItemsetIndexes(FormDef formDef, String pathHash) {
+        Set<List<String>> indexes = new HashSet<>();
+        collectItemsetFilterColumns(formDef, indexes);
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        ItemsetDbAdapter ida = new ItemsetDbAdapter();
+        ida.open();
+        try {
+            for (List<String> columns : indexes) {
+                ida.createIndex(pathHash, columns);
+            }
+        } catch (SQLException e) {
+            Timber.w(e);
+        } finally {
+            ida.close();
+        }
+    }
+
+    private void collectItemsetFilterColumns(IFormElement element, Set<List<String>> indexes) {
+        if (element instanceof QuestionDef) {
+            String query = ((QuestionDef) element).getAdditionalAttribute(null, "query");
+            if (query != null && query.indexOf('[') != -1 && query.lastIndexOf(']') > query.indexOf('[')) {
+                indexes.add(ItemsetDao.getFilterColumns(query));
+            }
+        }
+
+        if (element.getChildren() != null) {
+            for (IFormElement child : element.getChildren()) {
+                collectItemsetFilterColumns(child, indexes);
             }
         }
     }
@@ -340,24 +423,10 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
     }
 
     @SuppressWarnings("unchecked")
-    private void loadExternalData(File mediaFolder) {
-        // SCTO-594
-        File[] zipFiles = mediaFolder.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File file) {
-                return file.getName().toLowerCase(Locale.US).endsWith(".zip");
-            }
-        });
-
-        if (zipFiles != null) {
-            ZipUtils.unzip(zipFiles);
-            for (File zipFile : zipFiles) {
-                boolean deleted = zipFile.delete();
-                if (!deleted) {
-                    Timber.w("Cannot delete %s. It will be re-unzipped next time. :(", zipFile.toString());
-                }
-            }
-        }
+    private void loadExternalData(File mediaFolder, Map<String, Set<String>> fullTextSearchColumns) {
+        // Zip files are normally extracted when the form is downloaded. This is for forms that were
+        // copied onto the device (and is a no-op for archives that have already been extracted)
+        ZipUtils.extractZipFiles(mediaFolder);
 
         File[] csvFiles = mediaFolder.listFiles(new FileFilter() {
             @Override
@@ -383,7 +452,7 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
                 publishProgress(Collect.getInstance()
                         .getString(R.string.survey_loading_reading_csv_message));
 
-                ExternalDataReader externalDataReader = new ExternalDataReaderImpl(this);
+                ExternalDataReader externalDataReader = new ExternalDataReaderImpl(this, fullTextSearchColumns);
                 externalDataReader.doImport(externalDataMap);
             }
         }
@@ -523,15 +592,13 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
     }
 
     private void readCSV(File csv, String formHash, String pathHash) {
-
-        CSVReader reader;
         ItemsetDbAdapter ida = new ItemsetDbAdapter();
         ida.open();
-        boolean withinTransaction = false;
-
-        try {
-            reader = new CSVReader(new FileReader(csv));
 
+        // the table, its rows and its fingerprint are added in one transaction so an import that
+        // fails part way is rolled back and tried again on the next load
+        ida.beginTransaction();
+        try (CSVReader reader = new CSVReader(new FileReader(csv))) {
             String[] nextLine;
             String[] columnHeaders = null;
             int lineNumber = 0;
@@ -546,21 +613,17 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
                 }
                 // add the rest of the lines to the specified database
                 // nextLine[] is an array of values from the line
-                // System.out.println(nextLine[4] + "etc...");
-                if (lineNumber == 2) {
-                    // start a transaction for the inserts
-                    withinTransaction = true;
-                    ida.beginTransaction();
-                }
                 ida.addRow(pathHash, columnHeaders, nextLine);
+            }
 
+            if (columnHeaders != null) {
+                ida.updateFingerprint(csv);
             }
+            ida.setTransactionSuccessful();
         } catch (IOException | SQLException e) {
             warningMsg = e.getMessage();
         } finally {
-            if (withinTransaction) {
-                ida.commit();
-            }
+            ida.endTransaction();
             ida.close();
         }
     }
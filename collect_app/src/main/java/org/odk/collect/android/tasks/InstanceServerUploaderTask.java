@@ -20,13 +20,14 @@ import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.instances.Instance;
 import org.odk.collect.android.openrosa.OpenRosaHttpInterface;
 import org.odk.collect.android.logic.PropertyManager;
+import org.odk.collect.android.preferences.keys.GeneralKeys;
 import org.odk.collect.android.upload.InstanceServerUploader;
+import org.odk.collect.android.upload.ParallelInstanceUploader;
 import org.odk.collect.android.upload.UploadAuthRequestedException;
 import org.odk.collect.android.upload.UploadException;
 import org.odk.collect.android.utilities.TranslationHandler;
 import org.odk.collect.android.utilities.WebCredentialsUtils;
 
-import java.util.HashMap;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -62,37 +63,40 @@ public class InstanceServerUploaderTask extends InstanceUploaderTask {
     public Outcome doInBackground(Long... instanceIdsToUpload) {
         Outcome outcome = new Outcome();
 
-        InstanceServerUploader uploader = new InstanceServerUploader(httpInterface, webCredentialsUtils, new HashMap<>(), settingsProvider);
+        InstanceServerUploader uploader = new InstanceServerUploader(httpInterface, webCredentialsUtils, settingsProvider);
         List<Instance> instancesToUpload = uploader.getInstancesFromIds(instanceIdsToUpload);
 
         String deviceId = new PropertyManager().getSingularProperty(PropertyManager.PROPMGR_DEVICE_ID);
 
-        for (int i = 0; i < instancesToUpload.size(); i++) {
-            if (isCancelled()) {
-                return outcome;
-            }
-            Instance instance = instancesToUpload.get(i);
-
-            publishProgress(i + 1, instancesToUpload.size());
-
+        int parallelism = settingsProvider.getGeneralSettings().getInt(GeneralKeys.KEY_MAX_PARALLEL_SUBMISSIONS);
+        new ParallelInstanceUploader(parallelism).uploadAll(instancesToUpload, instance -> {
             try {
                 String destinationUrl = uploader.getUrlToSubmitTo(instance, deviceId, completeDestinationUrl, null);
                 String customMessage = uploader.uploadOneSubmission(instance, destinationUrl);
-                outcome.messagesByInstanceId.put(instance.getId().toString(),
-                        customMessage != null ? customMessage : TranslationHandler.getString(Collect.getInstance(), R.string.success));
+                synchronized (outcome) {
+                    outcome.messagesByInstanceId.put(instance.getId().toString(),
+                            customMessage != null ? customMessage : TranslationHandler.getString(Collect.getInstance(), R.string.success));
+                }
 
                 analytics.logEvent(SUBMISSION, "HTTP", Collect.getFormIdentifierHash(instance.getJrFormId(), instance.getJrVersion()));
+                return true;
             } catch (UploadAuthRequestedException e) {
-                outcome.authRequestingServer = e.getAuthRequestingServer();
+                synchronized (outcome) {
+                    outcome.authRequestingServer = e.getAuthRequestingServer();
+                }
                 // Don't add the instance that caused an auth request to the map because we want to
                 // retry. Items present in the map are considered already attempted and won't be
                 // retried.
+                return false;
             } catch (UploadException e) {
-                outcome.messagesByInstanceId.put(instance.getId().toString(),
-                        e.getDisplayMessage());
+                synchronized (outcome) {
+                    outcome.messagesByInstanceId.put(instance.getId().toString(),
+                            e.getDisplayMessage());
+                }
+                return false;
             }
-        }
-        
+        }, (position, total) -> publishProgress(position, total), this::isCancelled);
+
         return outcome;
     }
 
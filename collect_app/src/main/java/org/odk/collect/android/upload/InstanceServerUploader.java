@@ -40,6 +40,7 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -50,15 +51,17 @@ public class InstanceServerUploader extends InstanceUploader {
 
     private final OpenRosaHttpInterface httpInterface;
     private final WebCredentialsUtils webCredentialsUtils;
-    private final Map<Uri, Uri> uriRemap;
     private final SettingsProvider settingsProvider;
 
+    // What HEAD requests found out about each submission URI so they're only made once
+    private final Map<Uri, SubmissionEndpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<Uri, Object> probeLocks = new ConcurrentHashMap<>();
+
     public InstanceServerUploader(OpenRosaHttpInterface httpInterface,
                                   WebCredentialsUtils webCredentialsUtils,
-                                  Map<Uri, Uri> uriRemap, SettingsProvider settingsProvider) {
+                                  SettingsProvider settingsProvider) {
         this.httpInterface = httpInterface;
         this.webCredentialsUtils = webCredentialsUtils;
-        this.uriRemap = uriRemap;
         this.settingsProvider = settingsProvider;
     }
 
@@ -70,94 +73,19 @@ public class InstanceServerUploader extends InstanceUploader {
      */
     @Override
     public String uploadOneSubmission(Instance instance, String urlString) throws UploadException {
-        Uri submissionUri = Uri.parse(urlString);
-
-        long contentLength = 10000000L;
+        SubmissionEndpoint endpoint;
+        try {
+            endpoint = getSubmissionEndpoint(Uri.parse(urlString), urlString);
+        } catch (UploadException e) {
+            saveFailedStatusToDatabase(instance);
+            throw e;
+        }
 
-        // We already issued a head request and got a response, so we know it was an
-        // OpenRosa-compliant server. We also know the proper URL to send the submission to and
-        // the proper scheme.
-        if (uriRemap.containsKey(submissionUri)) {
-            submissionUri = uriRemap.get(submissionUri);
+        Uri submissionUri = endpoint.uri;
+        long contentLength = endpoint.acceptContentLength;
+        if (!submissionUri.toString().equals(urlString)) {
             Timber.i("Using Uri remap for submission %s. Now: %s", instance.getId(),
                     submissionUri.toString());
-        } else {
-            if (submissionUri.getHost() == null) {
-                saveFailedStatusToDatabase(instance);
-                throw new UploadException(FAIL + "Host name may not be null");
-            }
-
-            URI uri;
-            try {
-                uri = URI.create(submissionUri.toString());
-            } catch (IllegalArgumentException e) {
-                saveFailedStatusToDatabase(instance);
-                Timber.d(e.getMessage() != null ? e.getMessage() : e.toString());
-                throw new UploadException(TranslationHandler.getString(Collect.getInstance(), R.string.url_error));
-            }
-
-            HttpHeadResult headResult;
-            CaseInsensitiveHeaders responseHeaders;
-            try {
-                headResult = httpInterface.executeHeadRequest(uri, webCredentialsUtils.getCredentials(uri));
-                responseHeaders = headResult.getHeaders();
-
-                if (responseHeaders.containsHeader(OpenRosaConstants.ACCEPT_CONTENT_LENGTH_HEADER)) {
-                    String contentLengthString = responseHeaders.getAnyValue(OpenRosaConstants.ACCEPT_CONTENT_LENGTH_HEADER);
-                    try {
-                        contentLength = Long.parseLong(contentLengthString);
-                    } catch (Exception e) {
-                        Timber.e(e, "Exception thrown parsing contentLength %s", contentLengthString);
-                    }
-                }
-
-            } catch (Exception e) {
-                saveFailedStatusToDatabase(instance);
-                throw new UploadException(FAIL
-                        + (e.getMessage() != null ? e.getMessage() : e.toString()));
-            }
-
-            if (headResult.getStatusCode() == HttpsURLConnection.HTTP_UNAUTHORIZED) {
-                saveFailedStatusToDatabase(instance);
-                throw new UploadAuthRequestedException(TranslationHandler.getString(Collect.getInstance(), R.string.server_auth_credentials, submissionUri.getHost()),
-                        submissionUri);
-            } else if (headResult.getStatusCode() == HttpsURLConnection.HTTP_NO_CONTENT) {
-                // Redirect header received
-                if (responseHeaders.containsHeader("Location")) {
-                    try {
-                        Uri newURI = Uri.parse(URLDecoder.decode(responseHeaders.getAnyValue("Location"), "utf-8"));
-                        // Allow redirects within same host. This could be redirecting to HTTPS.
-                        if (submissionUri.getHost().equalsIgnoreCase(newURI.getHost())) {
-                            // Re-add params if server didn't respond with params
-                            if (newURI.getQuery() == null) {
-                                newURI = newURI.buildUpon()
-                                        .encodedQuery(submissionUri.getEncodedQuery())
-                                        .build();
-                            }
-                            uriRemap.put(submissionUri, newURI);
-                            submissionUri = newURI;
-                        } else {
-                            // Don't follow a redirection attempt to a different host.
-                            // We can't tell if this is a spoof or not.
-                            saveFailedStatusToDatabase(instance);
-                            throw new UploadException(FAIL
-                                    + "Unexpected redirection attempt to a different host: "
-                                    + newURI.toString());
-                        }
-                    } catch (Exception e) {
-                        saveFailedStatusToDatabase(instance);
-                        throw new UploadException(FAIL + urlString + " " + e.toString());
-                    }
-                }
-            } else {
-                if (headResult.getStatusCode() >= HttpsURLConnection.HTTP_OK
-                        && headResult.getStatusCode() < HttpsURLConnection.HTTP_MULT_CHOICE) {
-                    saveFailedStatusToDatabase(instance);
-                    throw new UploadException("Failed to send to " + uri + ". Is this an OpenRosa " +
-                            "submission endpoint? If you have a web proxy you may need to log in to " +
-                            "your network.\n\nHEAD request result status code: " + headResult.getStatusCode());
-                }
-            }
         }
 
         // When encrypting submissions, there is a failure window that may mark the submission as
@@ -234,6 +162,103 @@ public class InstanceServerUploader extends InstanceUploader {
         return null;
     }
 
+    /**
+     * Returns where submissions to this URI should go and how big they can be. The HEAD request
+     * that finds this out is only made once per URI, even if several submissions are being
+     * uploaded at the same time: the first one probes while the others wait for its result.
+     * Failed probes aren't remembered so the next submission will try again.
+     */
+    private SubmissionEndpoint getSubmissionEndpoint(Uri submissionUri, String urlString) throws UploadException {
+        SubmissionEndpoint endpoint = endpoints.get(submissionUri);
+        if (endpoint != null) {
+            return endpoint;
+        }
+
+        synchronized (probeLocks.computeIfAbsent(submissionUri, uri -> new Object())) {
+            endpoint = endpoints.get(submissionUri);
+            if (endpoint == null) {
+                endpoint = probeSubmissionEndpoint(submissionUri, urlString);
+                endpoints.put(submissionUri, endpoint);
+            }
+            return endpoint;
+        }
+    }
+
+    private SubmissionEndpoint probeSubmissionEndpoint(Uri submissionUri, String urlString) throws UploadException {
+        long contentLength = 10000000L;
+
+        if (submissionUri.getHost() == null) {
+            throw new UploadException(FAIL + "Host name may not be null");
+        }
+
+        URI uri;
+        try {
+            uri = URI.create(submissionUri.toString());
+        } catch (IllegalArgumentException e) {
+            Timber.d(e.getMessage() != null ? e.getMessage() : e.toString());
+            throw new UploadException(TranslationHandler.getString(Collect.getInstance(), R.string.url_error));
+        }
+
+        HttpHeadResult headResult;
+        CaseInsensitiveHeaders responseHeaders;
+        try {
+            headResult = httpInterface.executeHeadRequest(uri, webCredentialsUtils.getCredentials(uri));
+            responseHeaders = headResult.getHeaders();
+
+            if (responseHeaders.containsHeader(OpenRosaConstants.ACCEPT_CONTENT_LENGTH_HEADER)) {
+                String contentLengthString = responseHeaders.getAnyValue(OpenRosaConstants.ACCEPT_CONTENT_LENGTH_HEADER);
+                try {
+                    contentLength = Long.parseLong(contentLengthString);
+                } catch (Exception e) {
+                    Timber.e(e, "Exception thrown parsing contentLength %s", contentLengthString);
+                }
+            }
+
+        } catch (Exception e) {
+            throw new UploadException(FAIL
+                    + (e.getMessage() != null ? e.getMessage() : e.toString()));
+        }
+
+        if (headResult.getStatusCode() == HttpsURLConnection.HTTP_UNAUTHORIZED) {
+            throw new UploadAuthRequestedException(TranslationHandler.getString(Collect.getInstance(), R.string.server_auth_credentials, submissionUri.getHost()),
+                    submissionUri);
+        } else if (headResult.getStatusCode() == HttpsURLConnection.HTTP_NO_CONTENT) {
+            // Redirect header received
+            if (responseHeaders.containsHeader("Location")) {
+                try {
+                    Uri newURI = Uri.parse(URLDecoder.decode(responseHeaders.getAnyValue("Location"), "utf-8"));
+                    // Allow redirects within same host. This could be redirecting to HTTPS.
+                    if (submissionUri.getHost().equalsIgnoreCase(newURI.getHost())) {
+                        // Re-add params if server didn't respond with params
+                        if (newURI.getQuery() == null) {
+                            newURI = newURI.buildUpon()
+                                    .encodedQuery(submissionUri.getEncodedQuery())
+                                    .build();
+                        }
+                        return new SubmissionEndpoint(newURI, contentLength);
+                    } else {
+                        // Don't follow a redirection attempt to a different host.
+                        // We can't tell if this is a spoof or not.
+                        throw new UploadException(FAIL
+                                + "Unexpected redirection attempt to a different host: "
+                                + newURI.toString());
+                    }
+                } catch (Exception e) {
+                    throw new UploadException(FAIL + urlString + " " + e.toString());
+                }
+            }
+        } else {
+            if (headResult.getStatusCode() >= HttpsURLConnection.HTTP_OK
+                    && headResult.getStatusCode() < HttpsURLConnection.HTTP_MULT_CHOICE) {
+                throw new UploadException("Failed to send to " + uri + ". Is this an OpenRosa " +
+                        "submission endpoint? If you have a web proxy you may need to log in to " +
+                        "your network.\n\nHEAD request result status code: " + headResult.getStatusCode());
+            }
+        }
+
+        return new SubmissionEndpoint(submissionUri, contentLength);
+    }
+
     private List<File> getFilesInParentDirectory(File instanceFile, File submissionFile) {
         List<File> files = new ArrayList<>();
 
@@ -309,4 +334,15 @@ public class InstanceServerUploader extends InstanceUploader {
 
         return serverBase + submissionPath;
     }
+
+    private static class SubmissionEndpoint {
+
+        final Uri uri;
+        final long acceptContentLength;
+
+        SubmissionEndpoint(Uri uri, long acceptContentLength) {
+            this.uri = uri;
+            this.acceptContentLength = acceptContentLength;
+        }
+    }
 }
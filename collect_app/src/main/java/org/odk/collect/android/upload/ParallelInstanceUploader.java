@@ -0,0 +1,150 @@
+package org.odk.collect.android.upload;
+
+import org.odk.collect.android.instances.Instance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Runs the upload of several instances with a bounded number of them in flight at once.
+ * Uploads to the same server go through the same HTTP client so they share its pooled
+ * connections, and {@link InstanceServerUploader} only probes each submission endpoint once.
+ *
+ * Each instance's upload (and the status it writes) happens entirely on one thread so callers
+ * only need to make recording the outcome of an upload thread safe.
+ */
+public class ParallelInstanceUploader {
+
+    private final int parallelism;
+
+    public ParallelInstanceUploader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Uploads all instances and blocks until they are done. Instances that haven't started when
+     * {@code cancellation} reports the work as cancelled are skipped.
+     */
+    public Stats uploadAll(List<Instance> instances, Upload upload, Progress progress, Cancellation cancellation) {
+        long start = System.currentTimeMillis();
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger uploaded = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, instances.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Instance instance : instances) {
+                futures.add(executor.submit(() -> {
+                    if (cancellation.isCancelled()) {
+                        return;
+                    }
+
+                    progress.onUploadStarted(started.incrementAndGet(), instances.size());
+                    // measured first because a successful upload can delete the instance
+                    long size = getSubmissionSize(instance);
+                    if (upload.upload(instance)) {
+                        uploaded.incrementAndGet();
+                        bytes.addAndGet(size);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Timber.e(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Stats stats = new Stats(uploaded.get(), bytes.get(), System.currentTimeMillis() - start);
+        Timber.i("Uploaded %d submissions (%d bytes) in %d ms with up to %d at once: %d bytes/s",
+                stats.getSubmissionCount(), stats.getBytes(), stats.getElapsedMillis(), parallelism, stats.getBytesPerSecond());
+        return stats;
+    }
+
+    private static long getSubmissionSize(Instance instance) {
+        String instanceFilePath = instance.getInstanceFilePath();
+        if (instanceFilePath == null) {
+            return 0;
+        }
+
+        File instanceDir = new File(instance.getAbsoluteInstanceFilePath()).getParentFile();
+        File[] files = instanceDir != null ? instanceDir.listFiles() : null;
+        if (files == null) {
+            return 0;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    public interface Upload {
+        /**
+         * Uploads one instance and records its outcome. Called from a worker thread.
+         *
+         * @return whether the instance was uploaded
+         */
+        boolean upload(Instance instance);
+    }
+
+    public interface Progress {
+        void onUploadStarted(int position, int total);
+    }
+
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    /**
+     * How much was uploaded successfully by one {@link #uploadAll} call and how long it took
+     * overall.
+     */
+    public static class Stats {
+
+        private final int submissionCount;
+        private final long bytes;
+        private final long elapsedMillis;
+
+        Stats(int submissionCount, long bytes, long elapsedMillis) {
+            this.submissionCount = submissionCount;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getSubmissionCount() {
+            return submissionCount;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getBytesPerSecond() {
+            return elapsedMillis > 0 ? bytes * 1000 / elapsedMillis : bytes;
+        }
+    }
+}
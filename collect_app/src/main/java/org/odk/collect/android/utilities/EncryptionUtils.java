@@ -36,15 +36,16 @@ import org.odk.collect.android.provider.FormsProviderAPI.FormsColumns;
 import org.odk.collect.android.provider.InstanceProviderAPI.InstanceColumns;
 import org.odk.collect.android.storage.StoragePathProvider;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
@@ -57,10 +58,14 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
@@ -84,6 +89,8 @@ public class EncryptionUtils {
     public static final int SYMMETRIC_KEY_LENGTH = 256;
     public static final int IV_BYTE_LENGTH = 16;
 
+    private static final int ENCRYPTION_BUFFER_SIZE = 64 * 1024;
+
     // tags in the submission manifest
 
     private static final String XML_ENCRYPTED_TAG_NAMESPACE =
@@ -179,8 +186,11 @@ public class EncryptionUtils {
         }
 
         public void appendFileSignatureSource(File file) {
-            String md5Hash = FileUtils.getMd5Hash(file);
-            appendElementSignatureSource(file.getName() + "::" + md5Hash);
+            appendFileSignatureSource(file.getName(), FileUtils.getMd5Hash(file));
+        }
+
+        public void appendFileSignatureSource(String fileName, String md5Hash) {
+            appendElementSignatureSource(fileName + "::" + md5Hash);
         }
 
         public String getBase64EncryptedElementSignature() {
@@ -363,51 +373,98 @@ public class EncryptionUtils {
 
     private static void encryptFile(File file, EncryptedFormInformation formInfo)
             throws IOException, EncryptionException {
-        File encryptedFile = new File(file.getParentFile(), file.getName()
-                + ".enc");
-
-        if (encryptedFile.exists() && !encryptedFile.delete()) {
-            throw new IOException("Cannot overwrite " + encryptedFile.getAbsolutePath()
-                    + ". Perhaps the file is locked?");
-        }
+        String md5Hash = new EncryptionTask(file, getCipher(file, formInfo)).call();
 
         // add elementSignatureSource for this file...
-        formInfo.appendFileSignatureSource(file);
+        formInfo.appendFileSignatureSource(file.getName(), md5Hash);
+    }
 
-        RandomAccessFile randomAccessFile = null;
-        CipherOutputStream cipherOutputStream = null;
+    /**
+     * Takes the next cipher from {@link EncryptedFormInformation}. Taking the ciphers in file order
+     * on one thread means each file gets the same IV it would get if the files were encrypted
+     * sequentially, so the encryption itself can be run on any thread.
+     */
+    private static Cipher getCipher(File file, EncryptedFormInformation formInfo) throws EncryptionException {
         try {
-            Cipher c = formInfo.getCipher();
+            return formInfo.getCipher();
+        } catch (GeneralSecurityException e) {
+            String msg = "Error encrypting: " + file.getName() + " -> " + file.getName() + ".enc";
+            Timber.e(e, "%s due to %s ", msg, e.getMessage());
+            throw new EncryptionException(msg, e);
+        }
+    }
 
-            randomAccessFile = new RandomAccessFile(encryptedFile, "rws");
-            ByteArrayOutputStream encryptedData = new ByteArrayOutputStream();
-            cipherOutputStream = new CipherOutputStream(encryptedData, c);
-            InputStream fin = new FileInputStream(file);
-            byte[] buffer = new byte[2048];
-            int len = fin.read(buffer);
-            while (len != -1) {
-                cipherOutputStream.write(buffer, 0, len);
-                len = fin.read(buffer);
+    /**
+     * Encrypts a single file into a {@code .enc} file next to it with the given cipher.
+     */
+    private static final class EncryptionTask implements Callable<String> {
+        private final File file;
+        private final File encryptedFile;
+        private final Cipher cipher;
+
+        EncryptionTask(File file, Cipher cipher) throws IOException {
+            this.file = file;
+            this.cipher = cipher;
+            encryptedFile = new File(file.getParentFile(), file.getName() + ".enc");
+
+            if (encryptedFile.exists() && !encryptedFile.delete()) {
+                throw new IOException("Cannot overwrite " + encryptedFile.getAbsolutePath()
+                        + ". Perhaps the file is locked?");
             }
-            fin.close();
-            cipherOutputStream.flush();
-            cipherOutputStream.close();
+        }
 
-            randomAccessFile.write(encryptedData.toByteArray());
+        /**
+         * @return the md5 hash of the plaintext file
+         */
+        @Override
+        public String call() throws EncryptionException {
+            try {
+                String md5Hash = encryptFile(file, encryptedFile, cipher);
+                Timber.i("Encrpyted:%s -> %s", file.getName(), encryptedFile.getName());
+                return md5Hash;
+            } catch (Exception e) {
+                throw encryptionError(e);
+            }
+        }
 
-            Timber.i("Encrpyted:%s -> %s", file.getName(), encryptedFile.getName());
-        } catch (Exception e) {
+        private EncryptionException encryptionError(Exception e) {
             String msg = "Error encrypting: " + file.getName() + " -> "
                     + encryptedFile.getName();
             Timber.e(e, "%s due to %s ", msg, e.getMessage());
-            throw new EncryptionException(msg, e);
-        } finally {
-            IOUtils.closeQuietly(cipherOutputStream);
+            return new EncryptionException(msg, e);
+        }
+    }
 
-            if (randomAccessFile != null) {
-                randomAccessFile.close();
+    /**
+     * Streams the plaintext file through the cipher into the encrypted file, computing the md5
+     * hash of the plaintext in the same pass. Only one buffer's worth of data is held in memory
+     * at a time and the encrypted file is synced to disk once, after the last block is written.
+     *
+     * @return the md5 hash of the plaintext file, as used in the element signature
+     */
+    static String encryptFile(File file, File encryptedFile, Cipher cipher)
+            throws IOException, GeneralSecurityException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        byte[] buffer = new byte[ENCRYPTION_BUFFER_SIZE];
+        byte[] cipherBuffer = new byte[cipher.getOutputSize(ENCRYPTION_BUFFER_SIZE + cipher.getBlockSize())];
+
+        try (InputStream fin = new FileInputStream(file);
+             FileOutputStream fout = new FileOutputStream(encryptedFile)) {
+            OutputStream out = new BufferedOutputStream(fout, ENCRYPTION_BUFFER_SIZE);
+
+            int len = fin.read(buffer);
+            while (len != -1) {
+                md.update(buffer, 0, len);
+                out.write(cipherBuffer, 0, cipher.update(buffer, 0, len, cipherBuffer));
+                len = fin.read(buffer);
             }
+            out.write(cipherBuffer, 0, cipher.doFinal(cipherBuffer, 0));
+
+            out.flush();
+            fout.getChannel().force(true);
         }
+
+        return FileUtils.getMd5Hash(md);
     }
 
     public static boolean deletePlaintextFiles(File instanceXml, @Nullable File lastSaved) {
@@ -442,8 +499,48 @@ public class EncryptionUtils {
         return allSuccessful;
     }
 
+    /**
+     * Encrypts each file with the cipher at the same position in {@code ciphers} on up to
+     * {@code parallelism} threads.
+     *
+     * @return the md5 hashes of the plaintext files, in the same order as {@code files}
+     * @throws EncryptionException for the first file (in order) that couldn't be encrypted
+     */
+    static List<String> encryptFiles(List<File> files, List<Cipher> ciphers, int parallelism)
+            throws IOException, EncryptionException {
+        List<EncryptionTask> tasks = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            tasks.add(new EncryptionTask(files.get(i), ciphers.get(i)));
+        }
+
+        return runEncryptionTasks(tasks, parallelism);
+    }
+
+    private static List<String> runEncryptionTasks(List<EncryptionTask> tasks, int parallelism)
+            throws EncryptionException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            List<String> md5Hashes = new ArrayList<>();
+            for (Future<String> future : executor.invokeAll(tasks)) {
+                md5Hashes.add(future.get());
+            }
+            return md5Hashes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EncryptionException("Interrupted while encrypting submission attachments", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EncryptionException) {
+                throw (EncryptionException) e.getCause();
+            }
+            throw new EncryptionException("Error encrypting submission attachments", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private static List<File> encryptSubmissionFiles(File instanceXml,
-                                                     File submissionXml, EncryptedFormInformation formInfo)
+                                                     File submissionXml, EncryptedFormInformation formInfo,
+                                                     int parallelism)
             throws IOException, EncryptionException {
         // NOTE: assume the directory containing the instanceXml contains ONLY
         // files related to this one instance.
@@ -473,8 +570,21 @@ public class EncryptionUtils {
             }
         }
         // encrypt here...
-        for (File f : filesToProcess) {
-            encryptFile(f, formInfo);
+        if (parallelism > 1 && filesToProcess.size() > 1) {
+            List<Cipher> ciphers = new ArrayList<>();
+            for (File f : filesToProcess) {
+                ciphers.add(getCipher(f, formInfo));
+            }
+
+            // the signature must list the files in the same order as the manifest
+            List<String> md5Hashes = encryptFiles(filesToProcess, ciphers, parallelism);
+            for (int i = 0; i < filesToProcess.size(); i++) {
+                formInfo.appendFileSignatureSource(filesToProcess.get(i).getName(), md5Hashes.get(i));
+            }
+        } else {
+            for (File f : filesToProcess) {
+                encryptFile(f, formInfo);
+            }
         }
 
         // encrypt the submission.xml as the last file...
@@ -492,6 +602,20 @@ public class EncryptionUtils {
     public static void generateEncryptedSubmission(File instanceXml,
                                                    File submissionXml, EncryptedFormInformation formInfo)
             throws IOException, EncryptionException {
+        generateEncryptedSubmission(instanceXml, submissionXml, formInfo,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Same as {@link #generateEncryptedSubmission(File, File, EncryptedFormInformation)} but
+     * encrypts the media files on up to {@code parallelism} threads. The manifest and element
+     * signature are always assembled in the same order, so the output does not depend on the
+     * parallelism used.
+     */
+    public static void generateEncryptedSubmission(File instanceXml,
+                                                   File submissionXml, EncryptedFormInformation formInfo,
+                                                   int parallelism)
+            throws IOException, EncryptionException {
         // submissionXml is the submission data to be published to Aggregate
         if (!submissionXml.exists() || !submissionXml.isFile()) {
             throw new IOException("No submission.xml found");
@@ -501,7 +625,7 @@ public class EncryptionUtils {
 
         // Step 1: encrypt the submission and all the media files...
         List<File> mediaFiles = encryptSubmissionFiles(instanceXml,
-                submissionXml, formInfo);
+                submissionXml, formInfo, parallelism);
 
         // Step 2: build the encrypted-submission manifest (overwrites
         // submission.xml)...
@@ -55,6 +55,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import timber.log.Timber;
 
@@ -85,6 +86,8 @@ public class FileUtils {
     /** Valid XML stub that can be parsed without error. */
     public static final String STUB_XML = "<?xml version='1.0' ?><stub />";
 
+    private static final Pattern EXTERNAL_INSTANCE_PATTERN = Pattern.compile("<(\\w+:)?instance\\b[^>]*\\ssrc\\s*=");
+
     static int bufSize = 16 * 1024; // May be set by unit test
 
     private FileUtils() {
@@ -139,13 +142,8 @@ public class FileUtils {
                 md.update(buffer, 0, result);
             }
 
-            StringBuilder md5 = new StringBuilder(new BigInteger(1, md.digest()).toString(16));
-            while (md5.length() < 32) {
-                md5.insert(0, "0");
-            }
-
             is.close();
-            return md5.toString();
+            return getMd5Hash(md);
 
         } catch (NoSuchAlgorithmException e) {
             Timber.e(e);
@@ -157,6 +155,19 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Completes the given MD5 digest and returns it as a zero-padded 32-character hex string,
+     * in the same format as {@link #getMd5Hash(File)}.
+     */
+    public static String getMd5Hash(MessageDigest md) {
+        StringBuilder md5 = new StringBuilder(new BigInteger(1, md.digest()).toString(16));
+        while (md5.length() < 32) {
+            md5.insert(0, "0");
+        }
+
+        return md5.toString();
+    }
+
     public static Bitmap getBitmapScaledToDisplay(File file, int screenHeight, int screenWidth) {
         return getBitmapScaledToDisplay(file, screenHeight, screenWidth, false);
     }
@@ -275,8 +286,22 @@ public class FileUtils {
      * public key, auto-delete and auto-send may be included.
      */
     public static HashMap<String, String> getMetadataFromFormDefinition(File formDefinitionXml) {
-        FormDef formDef = XFormUtils.getFormFromFormXml(formDefinitionXml.getAbsolutePath(), "jr://file/" + LAST_SAVED_FILENAME);
+        return getMetadataFromFormDef(parseFormDefinition(formDefinitionXml));
+    }
 
+    /**
+     * Parses the form definition the same way it is parsed when the form is opened so the
+     * resulting FormDef can also be written to the {@link FormDefCache}.
+     */
+    public static FormDef parseFormDefinition(File formDefinitionXml) {
+        return XFormUtils.getFormFromFormXml(formDefinitionXml.getAbsolutePath(), "jr://file/" + LAST_SAVED_FILENAME);
+    }
+
+    /**
+     * The same as {@link #getMetadataFromFormDefinition(File)} for a form that has already been
+     * parsed.
+     */
+    public static HashMap<String, String> getMetadataFromFormDef(FormDef formDef) {
         final HashMap<String, String> fields = new HashMap<>();
 
         fields.put(TITLE, formDef.getTitle());
@@ -303,6 +328,16 @@ public class FileUtils {
         return fields;
     }
 
+    /**
+     * Whether the form definition declares an instance with a src (including the last-saved
+     * instance). Those are resolved through the global ReferenceManager while parsing so need it
+     * to be set up for the form.
+     */
+    public static boolean declaresExternalInstances(File formDefinitionXml) {
+        String formXml = new String(read(formDefinitionXml), Charset.forName("ISO-8859-1"));
+        return EXTERNAL_INSTANCE_PATTERN.matcher(formXml).find();
+    }
+
     /**
      * Returns an XPath path representing the first geopoint of this form definition or null if the
      * definition does not contain any field of type geopoint.
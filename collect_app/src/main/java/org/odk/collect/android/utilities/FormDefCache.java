@@ -1,22 +1,59 @@
 package org.odk.collect.android.utilities;
 
 import org.javarosa.core.model.FormDef;
+import org.javarosa.core.util.externalizable.DeserializationException;
 import org.javarosa.core.util.externalizable.ExtUtil;
+import org.odk.collect.android.BuildConfig;
+import org.odk.collect.android.logic.QuestionRefreshPlanner;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 import timber.log.Timber;
 
-/** Methods for reading from and writing to the FormDef cache */
+/**
+ * Methods for reading from and writing to the FormDef cache. Each cache file starts with a
+ * header identifying the cache format and JavaRosa version it was written with, along with the
+ * length and checksum of the serialized FormDef that follows. Files from other versions are
+ * rejected from the header alone so they never cost a failed deserialization. A form's
+ * {@link QuestionRefreshPlanner} is cached the same way, under the same key.
+ */
 public class FormDefCache {
 
+    /** "ODKF" */
+    static final int MAGIC = 0x4F444B46;
+
+    /**
+     * Must be incremented whenever the layout of cache files changes or a change in Collect makes
+     * previously serialized FormDefs incompatible.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    static final long MAX_CACHE_SIZE_BYTES = 64L * 1024 * 1024;
+
+    private static final String CACHE_FILE_EXTENSION = ".formdef";
+    private static final String PLANNER_CACHE_FILE_EXTENSION = ".planner";
+
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+    private static final AtomicLong REJECTED_COUNT = new AtomicLong();
+    private static final AtomicLong TOTAL_LOAD_TIME_MILLIS = new AtomicLong();
+
     private FormDefCache() {
         // Private constructor
     }
@@ -24,7 +61,8 @@ public class FormDefCache {
     /**
      * Serializes a FormDef and saves it in the cache. To avoid problems from two callers
      * trying to cache the same file at the same time, we serialize into a temporary file,
-     * and rename it when done.
+     * and rename it when done. If the cache has grown past {@link #MAX_CACHE_SIZE_BYTES}, the
+     * least recently used forms are then removed from it.
      *
      * @param formDef  - The FormDef to be cached
      * @param formPath - The form XML file
@@ -32,16 +70,14 @@ public class FormDefCache {
     public static void writeCache(FormDef formDef, String formPath) throws IOException {
         final long formSaveStart = System.currentTimeMillis();
         File cachedFormDefFile = FormDefCache.getCacheFile(new File(formPath));
-        final File tempCacheFile = File.createTempFile("cache", null,
-                new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.CACHE)));
+        File cacheDir = cachedFormDefFile.getParentFile();
+        final File tempCacheFile = File.createTempFile("cache", null, cacheDir);
         Timber.i("Started saving %s to the cache via temp file %s",
                 formDef.getTitle(), tempCacheFile.getName());
 
         Exception caughtException = null;
         try {
-            DataOutputStream dos = new DataOutputStream(new FileOutputStream(tempCacheFile));
-            formDef.writeExternal(dos);
-            dos.close();
+            writeCacheFile(formDef, tempCacheFile);
         } catch (IOException exception) {
             caughtException = exception;
         }
@@ -61,6 +97,7 @@ public class FormDefCache {
                         tempCacheFile.getName(), cachedFormDefFile.getName());
                 Timber.i("Caching %s took %.3f seconds.", formDef.getTitle(),
                         (System.currentTimeMillis() - formSaveStart) / 1000F);
+                evictLeastRecentlyUsed(cacheDir, MAX_CACHE_SIZE_BYTES);
             } else {
                 Timber.e("Unable to rename temporary file %s to cache file %s",
                         tempCacheFile.toString(), cachedFormDefFile.toString());
@@ -73,7 +110,8 @@ public class FormDefCache {
     }
 
     /**
-     * If a form is present in the cache, deserializes and returns it as as FormDef.
+     * If a form is present in the cache, deserializes and returns it as as FormDef. Cache files
+     * that are stale or corrupt are deleted.
      * @param formXml a File containing the XML version of the form
      * @return a FormDef, or null if the form is not present in the cache
      */
@@ -84,38 +122,277 @@ public class FormDefCache {
             final long start = System.currentTimeMillis();
 
             try {
-                final FormDef deserializedFormDef = deserializeFormDef(cachedForm);
+                final FormDef deserializedFormDef = readCacheFile(cachedForm);
                 if (deserializedFormDef != null) {
-                    Timber.i("Loaded in %.3f seconds.", (System.currentTimeMillis() - start) / 1000F);
+                    long loadTime = System.currentTimeMillis() - start;
+                    HIT_COUNT.incrementAndGet();
+                    TOTAL_LOAD_TIME_MILLIS.addAndGet(loadTime);
+
+                    // Eviction goes by last modified time so record that this form was used
+                    cachedForm.setLastModified(System.currentTimeMillis());
+
+                    Timber.i("Loaded in %.3f seconds. Cache hits: %d, misses: %d, rejected: %d, average load time: %d ms.",
+                            loadTime / 1000F, getHitCount(), getMissCount(), getRejectedCount(), getAverageLoadTimeMillis());
                     return deserializedFormDef;
                 }
+
+                // New .formdef will be created from XML
+                Timber.w("Cache file is from another version or corrupt. Deleting: %s", cachedForm.getAbsolutePath());
             } catch (Exception e) {
                 // New .formdef will be created from XML
                 Timber.w("Deserialization FAILED! Deleting cache file: %s", cachedForm.getAbsolutePath());
                 Timber.w(e);
-                cachedForm.delete();
             }
+
+            REJECTED_COUNT.incrementAndGet();
+            cachedForm.delete();
+        }
+
+        MISS_COUNT.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Saves the form's {@link QuestionRefreshPlanner} next to its cached FormDef. It is written to
+     * a temporary file and renamed like the FormDef is.
+     */
+    public static void writePlannerCache(QuestionRefreshPlanner planner, File formXml) {
+        File cacheFile = getCacheFile(formXml, PLANNER_CACHE_FILE_EXTENSION);
+        File tempCacheFile = null;
+        try {
+            tempCacheFile = File.createTempFile("planner", null, cacheFile.getParentFile());
+            writePlannerCacheFile(planner, tempCacheFile);
+            if (!tempCacheFile.renameTo(cacheFile)) {
+                Timber.e("Unable to rename temporary file %s to cache file %s", tempCacheFile, cacheFile);
+                tempCacheFile.delete();
+            }
+        } catch (IOException e) {
+            Timber.e(e);
+            if (tempCacheFile != null) {
+                tempCacheFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the form's cached {@link QuestionRefreshPlanner} or null if it hasn't been cached.
+     * Cache files that are stale or corrupt are deleted.
+     */
+    public static QuestionRefreshPlanner readPlannerCache(File formXml) {
+        File cacheFile = getCacheFile(formXml, PLANNER_CACHE_FILE_EXTENSION);
+        if (!cacheFile.exists()) {
+            return null;
+        }
+
+        try {
+            QuestionRefreshPlanner planner = readPlannerCacheFile(cacheFile);
+            if (planner != null) {
+                cacheFile.setLastModified(System.currentTimeMillis());
+                return planner;
+            }
+
+            Timber.w("Planner cache file is from another version or corrupt. Deleting: %s", cacheFile.getAbsolutePath());
+        } catch (Exception e) {
+            Timber.w(e);
         }
+
+        cacheFile.delete();
         return null;
     }
 
+    /**
+     * @param formXml a File containing the XML version of the form
+     * @return whether there is a cache file for the form. The file might still turn out to be
+     * stale when read.
+     */
+    public static boolean isCached(File formXml) {
+        return getCacheFile(formXml).exists();
+    }
+
+    /**
+     * @return the number of forms that were loaded from the cache
+     */
+    public static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    /**
+     * @return the number of forms that had to be parsed from XML, including those whose cache
+     * file was rejected
+     */
+    public static long getMissCount() {
+        return MISS_COUNT.get();
+    }
+
+    /**
+     * @return the number of cache files that were deleted because they were stale or corrupt
+     */
+    public static long getRejectedCount() {
+        return REJECTED_COUNT.get();
+    }
+
+    public static long getAverageLoadTimeMillis() {
+        long hits = HIT_COUNT.get();
+        return hits == 0 ? 0 : TOTAL_LOAD_TIME_MILLIS.get() / hits;
+    }
+
     /**
      * Builds and returns a File object for the cached version of a form.
      * @param formXml the File containing the XML form
      * @return a File object
      */
     private static File getCacheFile(File formXml) {
+        return getCacheFile(formXml, CACHE_FILE_EXTENSION);
+    }
+
+    private static File getCacheFile(File formXml, String extension) {
         return new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.CACHE) + File.separator +
-                FileUtils.getMd5Hash(formXml) + ".formdef");
+                FileUtils.getMd5Hash(formXml) + extension);
+    }
+
+    static void writeCacheFile(FormDef formDef, File cacheFile) throws IOException {
+        writeWithHeader(formDef::writeExternal, cacheFile);
+    }
+
+    /**
+     * Deserializes a FormDef from a cache file. The serialized FormDef is read into memory in one
+     * go and deserialized from there: JavaRosa reads it a few bytes at a time, which is very
+     * slow when each of those reads goes to the file system.
+     *
+     * @return the FormDef or null if the file was written with a different cache format or
+     * JavaRosa version, is truncated or doesn't match its checksum
+     */
+    static FormDef readCacheFile(File cacheFile) throws IOException, DeserializationException {
+        byte[] payload = readWithoutHeader(cacheFile);
+        return payload != null ? deserializeFormDef(payload) : null;
+    }
+
+    static void writePlannerCacheFile(QuestionRefreshPlanner planner, File cacheFile) throws IOException {
+        writeWithHeader(planner::writeExternal, cacheFile);
+    }
+
+    /**
+     * @return the planner or null if the file doesn't pass the same checks as
+     * {@link #readCacheFile(File)}
+     */
+    static QuestionRefreshPlanner readPlannerCacheFile(File cacheFile) throws IOException, DeserializationException {
+        byte[] payload = readWithoutHeader(cacheFile);
+        return payload != null
+                ? QuestionRefreshPlanner.readExternal(new DataInputStream(new ByteArrayInputStream(payload)), ExtUtil.defaultPrototypes())
+                : null;
+    }
+
+    /**
+     * Streams the payload straight to the file behind a header so it is never held in memory as
+     * a whole. The payload's length and checksum aren't known until it has been written so they
+     * are written as placeholders and filled in afterwards.
+     */
+    private static void writeWithHeader(PayloadWriter payloadWriter, File cacheFile) throws IOException {
+        CRC32 checksum = new CRC32();
+        long lengthPosition;
+        long payloadPosition;
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeUTF(BuildConfig.JAVAROSA_VERSION);
+            lengthPosition = dos.size();
+            dos.writeLong(0);
+            dos.writeLong(0);
+            payloadPosition = dos.size();
+
+            DataOutputStream payloadStream = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(dos, checksum)));
+            payloadWriter.write(payloadStream);
+            payloadStream.flush();
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.seek(lengthPosition);
+            file.writeLong(file.length() - payloadPosition);
+            file.writeLong(checksum.getValue());
+        }
+    }
+
+    /**
+     * @return the payload of a cache file or null if its header doesn't match this version of
+     * Collect and JavaRosa or the payload doesn't match the length and checksum in the header
+     */
+    private static byte[] readWithoutHeader(File cacheFile) throws IOException {
+        byte[] payload;
+        try (FileInputStream fis = new FileInputStream(cacheFile)) {
+            DataInputStream header = new DataInputStream(fis);
+            if (header.readInt() != MAGIC
+                    || header.readInt() != FORMAT_VERSION
+                    || !header.readUTF().equals(BuildConfig.JAVAROSA_VERSION)) {
+                return null;
+            }
+
+            long payloadLength = header.readLong();
+            long expectedChecksum = header.readLong();
+            if (cacheFile.length() - fis.getChannel().position() != payloadLength
+                    || payloadLength > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            payload = new byte[(int) payloadLength];
+            header.readFully(payload);
+
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            if (checksum.getValue() != expectedChecksum) {
+                return null;
+            }
+        }
+
+        return payload;
+    }
+
+    /**
+     * Deserializes a FormDef from the serialized bytes (without the cache header).
+     */
+    private static FormDef deserializeFormDef(byte[] serializedFormDef) throws IOException, DeserializationException {
+        FormDef formDef = new FormDef();
+        formDef.readExternal(new DataInputStream(new ByteArrayInputStream(serializedFormDef)), ExtUtil.defaultPrototypes());
+        return formDef;
     }
 
-    private static FormDef deserializeFormDef(File serializedFormDef) throws Exception {
-        FormDef fd;
-        try (DataInputStream dis = new DataInputStream(new FileInputStream(serializedFormDef))) {
-            fd = new FormDef();
-            fd.readExternal(dis, ExtUtil.defaultPrototypes());
+    /**
+     * Deletes the least recently used cache files (FormDefs and planners) in the directory until
+     * the ones left take up no more than maxBytes.
+     */
+    static void evictLeastRecentlyUsed(File cacheDir, long maxBytes) {
+        File[] cacheFiles = cacheDir.listFiles((dir, name) -> name.endsWith(CACHE_FILE_EXTENSION)
+                || name.endsWith(PLANNER_CACHE_FILE_EXTENSION));
+        if (cacheFiles == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        Map<File, Long> lastUsed = new HashMap<>();
+        for (File cacheFile : cacheFiles) {
+            totalBytes += cacheFile.length();
+            lastUsed.put(cacheFile, cacheFile.lastModified());
+        }
+
+        if (totalBytes <= maxBytes) {
+            return;
         }
 
-        return fd;
+        Arrays.sort(cacheFiles, (a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+        for (File cacheFile : cacheFiles) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+
+            long length = cacheFile.length();
+            if (cacheFile.delete()) {
+                Timber.i("Evicted %s from the form cache", cacheFile.getName());
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream payloadStream) throws IOException;
     }
 }
@@ -2,22 +2,29 @@ package org.odk.collect.android.utilities;
 
 import android.database.SQLException;
 
+import org.javarosa.core.model.FormDef;
 import org.javarosa.core.reference.ReferenceManager;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.database.DatabaseFormsRepository;
 import org.odk.collect.android.formmanagement.DiskFormsSynchronizer;
 import org.odk.collect.android.forms.Form;
+import org.odk.collect.android.forms.FormUtils;
 import org.odk.collect.android.forms.FormsRepository;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import timber.log.Timber;
 
@@ -25,6 +32,12 @@ import static org.odk.collect.android.forms.FormUtils.setupReferenceManagerForFo
 
 public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
 
+    /**
+     * Hashing and preparing form files is I/O bound but the number of files worked on at once
+     * is still capped even on devices with many cores.
+     */
+    private static final int MAX_THREADS = 4;
+
     private static int counter;
 
     private final FormsRepository formsRepository;
@@ -61,25 +74,20 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
 
                 // Step 2: quickly run through and figure out what files we need to
                 // parse and update; this is quick, as we only calculate the md5
-                // and see if it has changed.
-                List<IdFile> uriToUpdate = new ArrayList<>();
+                // of files whose size or last modified time has changed since the
+                // stored md5 was computed, and see if it has changed.
+                List<FormFile> formFilesToHash = new ArrayList<>();
                 List<Form> forms = formsRepository.getAll();
                 for (Form form : forms) {
                     // For each element in the provider, see if the file already exists
-                    String sqlFilename = form.getFormFilePath();
-                    String md5 = form.getMD5Hash();
-
-                    File sqlFile = new File(sqlFilename);
+                    File sqlFile = new File(form.getFormFilePath());
                     if (sqlFile.exists()) {
                         // remove it from the list of forms (we only want forms
                         // we haven't added at the end)
                         formsToAdd.remove(sqlFile);
-                        String md5Computed = FileUtils.getMd5Hash(sqlFile);
-                        if (md5Computed == null || md5 == null || !md5Computed.equals(md5)) {
-                            // Probably someone overwrite the file on the sdcard
-                            // So re-parse it and update it's information
-                            Long id = form.getId();
-                            uriToUpdate.add(new IdFile(id, sqlFile));
+                        FormFile formFile = new FormFile(form, sqlFile);
+                        if (form.getMD5Hash() == null || !isFingerprintUnchanged(form, formFile.fileSize, formFile.lastModified)) {
+                            formFilesToHash.add(formFile);
                         }
                     } else {
                         //File not found in sdcard but file path found in database
@@ -91,45 +99,35 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
                     }
                 }
 
-                //Delete the forms not found in sdcard from the database
-                for (Long id : idsToDelete) {
-                    formsRepository.delete(id);
-                }
+                // Hashing doesn't touch JavaRosa so the files are hashed several at a time
+                List<String> computedMd5s = inParallel(formFilesToHash, formFile -> FileUtils.getMd5Hash(formFile.file));
 
-                // Step3: go through uriToUpdate to parse and update each in turn.
-                // Note: buildContentValues calls getMetadataFromFormDefinition which parses the
-                // form XML. This takes time for large forms and/or slow devices.
-                Collections.shuffle(uriToUpdate); // Big win if multiple DiskSyncTasks running
-                for (IdFile entry : uriToUpdate) {
-                    File formDefFile = entry.file;
-                    // Probably someone overwrite the file on the sdcard
-                    // So re-parse it and update it's information
-                    Form form;
-
-                    try {
-                        form = parseForm(formDefFile);
-                    } catch (IllegalArgumentException e) {
-                        errors.append(e.getMessage()).append("\r\n");
-                        File badFile = new File(formDefFile.getParentFile(),
-                                formDefFile.getName() + ".bad");
-                        badFile.delete();
-                        formDefFile.renameTo(badFile);
-                        continue;
+                List<IdFile> uriToUpdate = new ArrayList<>();
+                for (int i = 0; i < formFilesToHash.size(); i++) {
+                    FormFile formFile = formFilesToHash.get(i);
+                    String md5 = formFile.form.getMD5Hash();
+                    String md5Computed = computedMd5s.get(i);
+
+                    if (md5Computed == null || md5 == null || !md5Computed.equals(md5)) {
+                        // Probably someone overwrite the file on the sdcard
+                        // So re-parse it and update it's information
+                        Long id = formFile.form.getId();
+                        uriToUpdate.add(new IdFile(id, formFile.file));
+                    } else {
+                        // The file was touched but its contents are the same
+                        formsRepository.updateFileFingerprint(formFile.form.getId(), formFile.fileSize, formFile.lastModified);
                     }
-
-                    formsRepository.save(new Form.Builder(form)
-                            .id(entry.id)
-                            .build());
                 }
-                uriToUpdate.clear();
 
-                // Step 4: go through the newly-discovered files in xFormsToAdd and add them.
-                // This is slow because buildContentValues(...) is slow.
-                //
-                Collections.shuffle(formsToAdd); // Big win if multiple DiskSyncTasks running
-                while (!formsToAdd.isEmpty()) {
-                    File formDefFile = formsToAdd.remove(0);
+                //Delete the forms not found in sdcard from the database
+                for (Long id : idsToDelete) {
+                    formsRepository.delete(id);
+                }
 
+                // Step 3: go through uriToUpdate and the newly-discovered files in formsToAdd
+                // and parse them.
+                List<IdFile> formsToParse = new ArrayList<>(uriToUpdate);
+                for (File formDefFile : formsToAdd) {
                     // Since parsing is so slow, if there are multiple tasks,
                     // they may have already updated the database.
                     // Skip this file if that is the case.
@@ -138,29 +136,13 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
                         continue;
                     }
 
-                    // Parse it for the first time...
-                    Form form;
-
-                    try {
-                        form = parseForm(formDefFile);
-                    } catch (IllegalArgumentException e) {
-                        errors.append(e.getMessage()).append("\r\n");
-                        File badFile = new File(formDefFile.getParentFile(),
-                                formDefFile.getName() + ".bad");
-                        badFile.delete();
-                        formDefFile.renameTo(badFile);
-                        continue;
-                    }
-
-                    // insert into content provider
-                    try {
-                        // insert failures are OK and expected if multiple
-                        // DiskSync scanners are active.
-                        formsRepository.save(form);
-                    } catch (SQLException e) {
-                        Timber.i("[%d] %s", instance, e.toString());
-                    }
+                    formsToParse.add(new IdFile(null, formDefFile));
                 }
+
+                List<Form> parsedForms = parseForms(formsToParse, errors);
+
+                // Step 4: record all of the parsed forms (updated and new) together
+                saveForms(parsedForms, instance);
             }
             if (errors.length() != 0) {
                 statusMessage = errors.toString();
@@ -196,19 +178,132 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
         return !ignoredFile && (xmlFile || xhtmlFile);
     }
 
+    private static boolean isFingerprintUnchanged(Form form, long fileSize, long lastModified) {
+        return form.getFormFileSize() != null && form.getFormFileSize() == fileSize
+                && form.getFormFileLastModified() != null && form.getFormFileLastModified() == lastModified;
+    }
+
+    /**
+     * Parses the given form files. Forms that fail to parse are renamed to .bad and reported in
+     * errors. The forms that were parsed successfully are returned in the same order as the files,
+     * with the ids of the matching {@link IdFile}s.
+     *
+     * Each form's last-saved instance only touches that form's media folder so those are set up
+     * several at a time first. Parsing goes through JavaRosa's shared parser and ReferenceManager
+     * so the forms are then parsed one at a time, holding {@link FormUtils#PARSE_LOCK}.
+     */
+    private List<Form> parseForms(List<IdFile> formFiles, StringBuilder errors) {
+        inParallel(formFiles, entry -> {
+            try {
+                return FileUtils.getOrCreateLastSavedSrc(entry.file);
+            } catch (RuntimeException e) {
+                // Reported when the form is parsed
+                return null;
+            }
+        });
+
+        List<Form> parsedForms = new ArrayList<>();
+        for (IdFile entry : formFiles) {
+            try {
+                parsedForms.add(new Form.Builder(parseForm(entry.file))
+                        .id(entry.id)
+                        .build());
+            } catch (IllegalArgumentException e) {
+                errors.append(e.getMessage()).append("\r\n");
+                File badFile = new File(entry.file.getParentFile(),
+                        entry.file.getName() + ".bad");
+                badFile.delete();
+                entry.file.renameTo(badFile);
+            }
+        }
+
+        return parsedForms;
+    }
+
+    /**
+     * Applies the function to each item using a bounded pool of threads and returns the results
+     * in the same order as the items. If the sync is interrupted the results that are missing
+     * are null.
+     */
+    private static <T, R> List<R> inParallel(List<T> items, Function<T, R> function) {
+        List<R> results = new ArrayList<>();
+        if (items.isEmpty()) {
+            return results;
+        }
+
+        int threadCount = Math.min(Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS), items.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<R>> futures = new ArrayList<>();
+            for (T item : items) {
+                futures.add(executor.submit(() -> function.apply(item)));
+            }
+
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            while (results.size() < items.size()) {
+                results.add(null);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    private void saveForms(List<Form> forms, int instance) {
+        if (forms.isEmpty()) {
+            return;
+        }
+
+        try {
+            formsRepository.saveAll(forms);
+        } catch (SQLException e) {
+            // insert failures are OK and expected if multiple DiskSync scanners are
+            // active, but they roll back the whole batch so save the forms one by one
+            Timber.i("[%d] %s", instance, e.toString());
+
+            for (Form form : forms) {
+                try {
+                    formsRepository.save(form);
+                } catch (SQLException saveException) {
+                    Timber.i("[%d] %s", instance, saveException.toString());
+                }
+            }
+        }
+    }
+
     private Form parseForm(File formDefFile) throws IllegalArgumentException {
         // Probably someone overwrite the file on the sdcard
         // So re-parse it and update it's information
         Form.Builder builder = new Form.Builder();
 
+        FormDef formDef;
         HashMap<String, String> fields;
         try {
-            // If the form definition includes external secondary instances, they need to be resolved
-            final File formMediaDir = FileUtils.getFormMediaDir(formDefFile);
-            setupReferenceManagerForForm(ReferenceManager.instance(), formMediaDir);
-
             FileUtils.getOrCreateLastSavedSrc(formDefFile);
-            fields = FileUtils.getMetadataFromFormDefinition(formDefFile);
+
+            synchronized (FormUtils.PARSE_LOCK) {
+                // If the form definition includes external secondary instances, they need to be resolved
+                final File formMediaDir = FileUtils.getFormMediaDir(formDefFile);
+                setupReferenceManagerForForm(ReferenceManager.instance(), formMediaDir);
+
+                formDef = FileUtils.parseFormDefinition(formDefFile);
+            }
+
+            fields = FileUtils.getMetadataFromFormDef(formDef);
         } catch (RuntimeException e) {
             throw new IllegalArgumentException(formDefFile.getName() + " :: " + e.toString());
         }
@@ -260,9 +355,34 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
         // update will automatically update the .md5 and the cache path.
         builder.formFilePath(formDefFile.getAbsolutePath());
         builder.formMediaPath(FileUtils.constructMediaPath(formDefFile.getAbsolutePath()));
+
+        // The form has just been parsed so it's cached now rather than parsed again when it is
+        // first opened
+        if (!FormDefCache.isCached(formDefFile)) {
+            try {
+                FormDefCache.writeCache(formDef, formDefFile.getPath());
+            } catch (IOException e) {
+                Timber.e(e);
+            }
+        }
+
         return builder.build();
     }
 
+    private static class FormFile {
+        public final Form form;
+        public final File file;
+        public final long fileSize;
+        public final long lastModified;
+
+        FormFile(Form form, File file) {
+            this.form = form;
+            this.file = file;
+            this.fileSize = file.length();
+            this.lastModified = file.lastModified();
+        }
+    }
+
     private static class IdFile {
         public final Long id;
         public final File file;
@@ -49,9 +49,10 @@ public class ImageConverter {
             Timber.w(e);
         }
 
-        rotateImageIfNeeded(imagePath);
-        scaleDownImageIfNeeded(imagePath, questionWidget, context, imageSizeMode);
-        
+        int degrees = exif != null ? getRotationDegrees(exif) : 0;
+        Integer maxPixels = getMaxPixels(questionWidget, context, imageSizeMode);
+        convertImage(imagePath, degrees, maxPixels != null && maxPixels > 0 ? maxPixels : 0);
+
         if (exif != null) {
             try {
                 exif.saveAttributes();
@@ -61,8 +62,8 @@ public class ImageConverter {
         }
     }
 
-    private static void scaleDownImageIfNeeded(String imagePath, QuestionWidget questionWidget, Context context, String imageSizeMode) {
-        Integer maxPixels;
+    private static Integer getMaxPixels(QuestionWidget questionWidget, Context context, String imageSizeMode) {
+        Integer maxPixels = null;
 
         if (questionWidget != null) {
             maxPixels = getMaxPixelsFromFormIfDefined(questionWidget);
@@ -70,11 +71,9 @@ public class ImageConverter {
             if (maxPixels == null) {
                 maxPixels = getMaxPixelsFromSettings(context, imageSizeMode);
             }
-
-            if (maxPixels != null && maxPixels > 0) {
-                scaleDownImage(imagePath, maxPixels);
-            }
         }
+
+        return maxPixels;
     }
 
     private static Integer getMaxPixelsFromFormIfDefined(QuestionWidget questionWidget) {
@@ -109,70 +108,97 @@ public class ImageConverter {
     }
 
     /**
-     * This method is used to reduce an original picture size.
-     * maxPixels refers to the max pixels of the long edge, the short edge is scaled proportionately.
+     * Sometimes an image might be taken up sideways.
+     * https://github.com/getodk/collect/issues/36
      */
-    private static void scaleDownImage(String imagePath, int maxPixels) {
-        Bitmap image = FileUtils.getBitmap(imagePath, new BitmapFactory.Options());
+    private static int getRotationDegrees(ExifInterface exif) {
+        int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
 
-        if (image != null) {
-            double originalWidth = image.getWidth();
-            double originalHeight = image.getHeight();
+    /**
+     * Rotates the image by the given degrees and then reduces it so that its long edge is at most
+     * maxPixels (0 means no limit), the short edge being scaled proportionately.
+     *
+     * Only the image bounds are read up front. The image is then decoded once, subsampled as far
+     * as possible without going below the target size, and rotated and scaled with a single
+     * matrix so that at most two bitmaps close to the output size are in memory at any time.
+     */
+    private static void convertImage(String imagePath, int degrees, int maxPixels) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return;
+        }
 
-            if (originalWidth > originalHeight && originalWidth > maxPixels) {
-                int newHeight = (int) (originalHeight / (originalWidth / maxPixels));
+        boolean swapsEdges = degrees == 90 || degrees == 270;
+        double originalWidth = swapsEdges ? bounds.outHeight : bounds.outWidth;
+        double originalHeight = swapsEdges ? bounds.outWidth : bounds.outHeight;
 
-                image = Bitmap.createScaledBitmap(image, maxPixels, newHeight, false);
-                FileUtils.saveBitmapToFile(image, imagePath);
+        int newWidth = (int) originalWidth;
+        int newHeight = (int) originalHeight;
+        if (maxPixels > 0) {
+            if (originalWidth > originalHeight && originalWidth > maxPixels) {
+                newWidth = maxPixels;
+                newHeight = (int) (originalHeight / (originalWidth / maxPixels));
             } else if (originalHeight > maxPixels) {
-                int newWidth = (int) (originalWidth / (originalHeight / maxPixels));
-
-                image = Bitmap.createScaledBitmap(image, newWidth, maxPixels, false);
-                FileUtils.saveBitmapToFile(image, imagePath);
+                newWidth = (int) (originalWidth / (originalHeight / maxPixels));
+                newHeight = maxPixels;
             }
         }
-    }
 
-    /**
-     * Sometimes an image might be taken up sideways.
-     * https://github.com/getodk/collect/issues/36
-     */
-    private static void rotateImageIfNeeded(String imagePath) {
-        ExifInterface exif = null;
-        try {
-            exif = new ExifInterface(imagePath);
-        } catch (IOException e) {
-            Timber.w(e);
+        if (degrees == 0 && newWidth == (int) originalWidth && newHeight == (int) originalHeight) {
+            return;
         }
 
-        if (exif != null) {
-            Bitmap image = FileUtils.getBitmap(imagePath, new BitmapFactory.Options());
-
-            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                    rotateBitmap(image, 90, imagePath);
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                    rotateBitmap(image, 180, imagePath);
-                    break;
-
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                    rotateBitmap(image, 270, imagePath);
-                    break;
-            }
+        // target size in the orientation the image is stored in
+        int targetWidth = swapsEdges ? newHeight : newWidth;
+        int targetHeight = swapsEdges ? newWidth : newHeight;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, targetWidth, targetHeight);
+        Bitmap image = FileUtils.getBitmap(imagePath, options);
+        if (image == null) {
+            return;
         }
-    }
 
-    private static void rotateBitmap(Bitmap image, int degrees, String imagePath) {
         try {
             Matrix matrix = new Matrix();
+            matrix.postScale((float) targetWidth / image.getWidth(), (float) targetHeight / image.getHeight());
             matrix.postRotate(degrees);
-            image = Bitmap.createBitmap(image, 0, 0, image.getWidth(), image.getHeight(), matrix, true);
+            Bitmap converted = Bitmap.createBitmap(image, 0, 0, image.getWidth(), image.getHeight(), matrix, true);
+            if (converted != image) {
+                image.recycle();
+                image = converted;
+            }
         } catch (OutOfMemoryError e) {
             Timber.w(e);
         }
+
         FileUtils.saveBitmapToFile(image, imagePath);
+        image.recycle();
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps the decoded image at least as large
+     * as the target size so that the final scaling step only ever has to shrink the image.
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
     }
 
     public static Bitmap scaleImageToNewWidth(Bitmap bitmap, int newWidth) {
@@ -70,4 +70,17 @@ public class SQLiteUtils {
             .dropIfExists(table)
             .end();
     }
+
+    public static void createIndex(SQLiteDatabase db, String index, String table, String... columns) {
+        StringBuilder quotedColumns = new StringBuilder();
+        for (String column : columns) {
+            if (quotedColumns.length() > 0) {
+                quotedColumns.append(", ");
+            }
+            quotedColumns.append(CustomSQLiteQueryBuilder.quoteIdentifier(column));
+        }
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + CustomSQLiteQueryBuilder.quoteIdentifier(index)
+                + " ON " + CustomSQLiteQueryBuilder.quoteIdentifier(table) + " (" + quotedColumns + ");");
+    }
 }
@@ -18,12 +18,20 @@
 
 package org.odk.collect.android.utilities;
 
-import org.apache.commons.io.IOUtils;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -36,25 +44,100 @@ import timber.log.Timber;
  */
 public final class ZipUtils {
 
+    /**
+     * Records the size, last modified time and hash of each zip file that has been extracted into
+     * a media folder and the files that were extracted from it, so an archive is only extracted
+     * again if it changes. There is one manifest per media folder, kept in the cache folder so
+     * that it isn't treated as media.
+     */
+    static final String MANIFEST_FILE_EXTENSION = ".zip-manifest";
+    private static final String MANIFEST_DIR_NAME = "zip-manifests";
+
+    private static final String ENTRIES_SUFFIX = ".entries";
+    private static final String ENTRY_SEPARATOR = "/";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private ZipUtils() {
 
     }
 
-    public static void unzip(File[] zipFiles) {
+    /**
+     * Extracts the zip files in a form's media folder into the same folder and deletes them.
+     * Archives that the manifest shows were already extracted (and whose files are all still
+     * there) are skipped, so an archive that couldn't be deleted isn't extracted on every form
+     * open.
+     */
+    public static void extractZipFiles(File mediaFolder) {
+        extractZipFiles(mediaFolder, new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.CACHE), MANIFEST_DIR_NAME));
+    }
+
+    static void extractZipFiles(File mediaFolder, File manifestDir) {
+        // SCTO-594
+        File[] zipFiles = mediaFolder.listFiles(file -> file.getName().toLowerCase(Locale.US).endsWith(".zip"));
+        if (zipFiles == null || zipFiles.length == 0) {
+            return;
+        }
+
+        File manifestFile = new File(manifestDir, mediaFolder.getName() + MANIFEST_FILE_EXTENSION);
+        Properties manifest = readManifest(manifestFile);
+        boolean manifestChanged = false;
+
         for (File zipFile : zipFiles) {
-            try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zipFile))) {
-                ZipEntry zipEntry;
-                while ((zipEntry = zipInputStream.getNextEntry()) != null) {
-                    doExtractInTheSameFolder(zipFile, zipInputStream, zipEntry);
+            // Only hash archives whose size or last modified time has changed since they were
+            // extracted (an archive copied onto the device again for example)
+            String fileState = zipFile.length() + ":" + zipFile.lastModified() + ":";
+            String recorded = manifest.getProperty(zipFile.getName(), "");
+            String hash = recorded.startsWith(fileState) ? recorded.substring(fileState.length()) : FileUtils.getMd5Hash(zipFile);
+
+            if (hash != null && isExtracted(manifest, zipFile, hash)) {
+                Timber.i("%s has already been extracted", zipFile.getName());
+                if (!recorded.equals(fileState + hash)) {
+                    manifest.setProperty(zipFile.getName(), fileState + hash);
+                    manifestChanged = true;
                 }
-            } catch (Exception e) {
-                Timber.e(e);
+            } else {
+                List<String> entries = unzip(zipFile);
+                if (entries != null && hash != null) {
+                    manifest.setProperty(zipFile.getName(), fileState + hash);
+                    manifest.setProperty(zipFile.getName() + ENTRIES_SUFFIX, joinEntries(entries));
+                    manifestChanged = true;
+                }
+            }
+
+            if (!zipFile.delete()) {
+                Timber.w("Cannot delete %s. It won't be extracted again unless it changes.", zipFile.toString());
             }
         }
+
+        if (manifestChanged) {
+            writeManifest(manifestFile, manifest);
+        }
     }
 
-    private static void doExtractInTheSameFolder(File zipFile, ZipInputStream zipInputStream,
-                                                 ZipEntry zipEntry) throws IOException {
+    /**
+     * @return the names of the files extracted or null if the archive couldn't be read
+     */
+    static List<String> unzip(File zipFile) {
+        List<String> entries = new ArrayList<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile), BUFFER_SIZE))) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (doExtractInTheSameFolder(zipFile, zipInputStream, zipEntry, buffer)) {
+                    entries.add(zipEntry.getName());
+                }
+            }
+        } catch (Exception e) {
+            Timber.e(e);
+            return null;
+        }
+
+        return entries;
+    }
+
+    private static boolean doExtractInTheSameFolder(File zipFile, ZipInputStream zipInputStream,
+                                                    ZipEntry zipEntry, byte[] buffer) throws IOException {
         File targetFile;
         String fileName = zipEntry.getName();
 
@@ -63,15 +146,78 @@ public final class ZipUtils {
         if (fileName.contains("/") || fileName.contains("\\")) {
             // that means that this is a directory of a file inside a directory, so ignore it
             Timber.w("Ignored: %s", fileName);
-            return;
+            return false;
         }
 
         // extract the new file
         targetFile = new File(zipFile.getParentFile(), fileName);
-        try (FileOutputStream fileOutputStream = new FileOutputStream(targetFile)) {
-            IOUtils.copy(zipInputStream, fileOutputStream);
+        try (OutputStream outputStream = new FileOutputStream(targetFile)) {
+            copy(zipInputStream, outputStream, buffer);
         }
 
         Timber.i("Extracted file \"%s\" out of %s", fileName, zipFile.getName());
+        return true;
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream, byte[] buffer) throws IOException {
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+    }
+
+    private static boolean isExtracted(Properties manifest, File zipFile, String hash) {
+        String recorded = manifest.getProperty(zipFile.getName(), "");
+        if (!recorded.substring(recorded.lastIndexOf(':') + 1).equals(hash)) {
+            return false;
+        }
+
+        String entries = manifest.getProperty(zipFile.getName() + ENTRIES_SUFFIX, "");
+        for (String entry : entries.split(ENTRY_SEPARATOR)) {
+            if (!entry.isEmpty() && !new File(zipFile.getParentFile(), entry).exists()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String joinEntries(List<String> entries) {
+        StringBuilder joined = new StringBuilder();
+        for (String entry : entries) {
+            if (joined.length() > 0) {
+                joined.append(ENTRY_SEPARATOR);
+            }
+            joined.append(entry);
+        }
+        return joined.toString();
+    }
+
+    private static Properties readManifest(File manifestFile) {
+        Properties manifest = new Properties();
+        if (manifestFile.exists()) {
+            try (InputStream inputStream = new FileInputStream(manifestFile)) {
+                manifest.load(inputStream);
+            } catch (IOException | IllegalArgumentException e) {
+                // Everything will be extracted again
+                Timber.w(e);
+                manifest.clear();
+            }
+        }
+        return manifest;
+    }
+
+    private static void writeManifest(File manifestFile, Properties manifest) {
+        File manifestDir = manifestFile.getParentFile();
+        if (!manifestDir.exists() && !manifestDir.mkdirs()) {
+            Timber.w("Failed to create %s", manifestDir.getAbsolutePath());
+            return;
+        }
+
+        try (OutputStream outputStream = new FileOutputStream(manifestFile)) {
+            manifest.store(outputStream, null);
+        } catch (IOException e) {
+            Timber.w(e);
+        }
     }
 }
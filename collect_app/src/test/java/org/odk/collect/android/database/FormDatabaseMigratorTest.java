@@ -16,6 +16,7 @@ import java.util.List;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.odk.collect.android.database.DatabaseConstants.FORMS_TABLE_NAME;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.AUTO_DELETE;
@@ -25,7 +26,9 @@ import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DAT
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DELETED_DATE;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DESCRIPTION;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.DISPLAY_NAME;
+import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_LAST_MODIFIED;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_PATH;
+import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_FILE_SIZE;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.FORM_MEDIA_PATH;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.GEOMETRY_XPATH;
 import static org.odk.collect.android.provider.FormsProviderAPI.FormsColumns.JRCACHE_FILE_PATH;
@@ -42,13 +45,13 @@ public class FormDatabaseMigratorTest {
     public static final List<String> CURRENT_VERSION_COLUMNS = asList(_ID, DISPLAY_NAME, DESCRIPTION,
             JR_FORM_ID, JR_VERSION, MD5_HASH, DATE, FORM_MEDIA_PATH, FORM_FILE_PATH, LANGUAGE,
             SUBMISSION_URI, BASE64_RSA_PUBLIC_KEY, JRCACHE_FILE_PATH, AUTO_SEND, AUTO_DELETE,
-            GEOMETRY_XPATH, DELETED_DATE);
+            GEOMETRY_XPATH, DELETED_DATE, FORM_FILE_SIZE, FORM_FILE_LAST_MODIFIED);
 
     private SQLiteDatabase database;
 
     @Before
     public void setup() {
-        assertThat("Test expects different Forms DB version", DatabaseConstants.FORMS_DATABASE_VERSION, is(10));
+        assertThat("Test expects different Forms DB version", DatabaseConstants.FORMS_DATABASE_VERSION, is(12));
         database = SQLiteDatabase.create(null);
     }
 
@@ -57,6 +60,49 @@ public class FormDatabaseMigratorTest {
         database.close();
     }
 
+    @Test
+    public void onUpgrade_fromVersion10_addsIndexesUsedForFormLookups() {
+        createVersion10Database(database);
+
+        new FormDatabaseMigrator().onUpgrade(database, 10);
+
+        assertThat(getQueryPlan("SELECT * FROM " + FORMS_TABLE_NAME + " WHERE " + JR_FORM_ID + "=? AND " + JR_VERSION + "=?", "id", "1"),
+                containsString("USING INDEX forms_jr_form_id_jr_version_idx"));
+        assertThat(getQueryPlan("SELECT * FROM " + FORMS_TABLE_NAME + " WHERE " + DELETED_DATE + " IS NULL AND " + JR_FORM_ID + "=? AND " + JR_VERSION + " IS NULL", "id"),
+                containsString("USING INDEX forms_jr_form_id_jr_version_idx"));
+        assertThat(getQueryPlan("SELECT * FROM " + FORMS_TABLE_NAME + " WHERE " + MD5_HASH + "=?", "hash"),
+                containsString("USING INDEX forms_md5_hash_idx"));
+        assertThat(getQueryPlan("SELECT * FROM " + FORMS_TABLE_NAME + " WHERE " + FORM_FILE_PATH + "=?", "path"),
+                containsString("USING INDEX forms_form_file_path_idx"));
+    }
+
+    @Test
+    public void onUpgrade_fromVersion11_addsFileFingerprintColumns() {
+        createVersion10Database(database);
+        ContentValues contentValues = createVersion8Form();
+        contentValues.remove("lastDetectedFormVersionHash");
+        database.insert(FORMS_TABLE_NAME, null, contentValues);
+
+        new FormDatabaseMigrator().onUpgrade(database, 11);
+
+        try (Cursor cursor = database.rawQuery("SELECT * FROM " + FORMS_TABLE_NAME + ";", new String[]{})) {
+            assertThat(asList(cursor.getColumnNames()), is(CURRENT_VERSION_COLUMNS));
+            assertThat(cursor.getCount(), is(1));
+
+            cursor.moveToFirst();
+            assertThat(cursor.isNull(cursor.getColumnIndex(FORM_FILE_SIZE)), is(true));
+            assertThat(cursor.isNull(cursor.getColumnIndex(FORM_FILE_LAST_MODIFIED)), is(true));
+        }
+    }
+
+    @Test
+    public void onCreate_addsIndexesUsedForFormLookups() {
+        new FormDatabaseMigrator().onCreate(database);
+
+        assertThat(getQueryPlan("SELECT * FROM " + FORMS_TABLE_NAME + " WHERE " + MD5_HASH + "=?", "hash"),
+                containsString("USING INDEX forms_md5_hash_idx"));
+    }
+
     @Test
     public void onUpgrade_fromVersion9() {
         createVersion9Database(database);
@@ -66,7 +112,7 @@ public class FormDatabaseMigratorTest {
         new FormDatabaseMigrator().onUpgrade(database, 9);
 
         try (Cursor cursor = database.rawQuery("SELECT * FROM " + FORMS_TABLE_NAME + ";", new String[]{})) {
-            assertThat(cursor.getColumnCount(), is(17));
+            assertThat(cursor.getColumnCount(), is(19));
             assertThat(cursor.getCount(), is(1));
 
             cursor.moveToFirst();
@@ -98,7 +144,7 @@ public class FormDatabaseMigratorTest {
         new FormDatabaseMigrator().onUpgrade(database, 8);
 
         try (Cursor cursor = database.rawQuery("SELECT * FROM " + FORMS_TABLE_NAME + ";", new String[]{})) {
-            assertThat(cursor.getColumnCount(), is(17));
+            assertThat(cursor.getColumnCount(), is(19));
             assertThat(cursor.getCount(), is(1));
 
             cursor.moveToFirst();
@@ -130,7 +176,7 @@ public class FormDatabaseMigratorTest {
         new FormDatabaseMigrator().onUpgrade(database, 7);
 
         try (Cursor cursor = database.rawQuery("SELECT * FROM " + FORMS_TABLE_NAME + ";", new String[]{})) {
-            assertThat(cursor.getColumnCount(), is(17));
+            assertThat(cursor.getColumnCount(), is(19));
             assertThat(cursor.getCount(), is(1));
 
             cursor.moveToFirst();
@@ -165,7 +211,7 @@ public class FormDatabaseMigratorTest {
         formDatabaseMigrator.onDowngrade(database);
 
         try (Cursor cursor = database.rawQuery("SELECT * FROM " + FORMS_TABLE_NAME + ";", new String[]{})) {
-            assertThat(cursor.getColumnCount(), is(17));
+            assertThat(cursor.getColumnCount(), is(19));
             assertThat(cursor.getCount(), is(0));
             assertThat(asList(cursor.getColumnNames()), is(CURRENT_VERSION_COLUMNS));
         }
@@ -200,12 +246,22 @@ public class FormDatabaseMigratorTest {
         formDatabaseMigrator.onDowngrade(database);
 
         try (Cursor cursor = database.rawQuery("SELECT * FROM " + FORMS_TABLE_NAME + ";", new String[]{})) {
-            assertThat(cursor.getColumnCount(), is(17));
+            assertThat(cursor.getColumnCount(), is(19));
             assertThat(cursor.getCount(), is(0));
             assertThat(asList(cursor.getColumnNames()), is(CURRENT_VERSION_COLUMNS));
         }
     }
 
+    private String getQueryPlan(String query, String... args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, args)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
     private ContentValues createVersion8Form() {
         ContentValues contentValues = new ContentValues();
         contentValues.put(DISPLAY_NAME, "DisplayName");
@@ -329,4 +385,25 @@ public class FormDatabaseMigratorTest {
                 + GEOMETRY_XPATH + " text, "
                 + "deleted" + " boolean default(0));");
     }
-}
\ No newline at end of file
+
+    private void createVersion10Database(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + FORMS_TABLE_NAME + " ("
+                + _ID + " integer primary key, "
+                + DISPLAY_NAME + " text not null, "
+                + DESCRIPTION + " text, "
+                + JR_FORM_ID + " text not null, "
+                + JR_VERSION + " text, "
+                + MD5_HASH + " text not null, "
+                + DATE + " integer not null, " // milliseconds
+                + FORM_MEDIA_PATH + " text not null, "
+                + FORM_FILE_PATH + " text not null, "
+                + LANGUAGE + " text, "
+                + SUBMISSION_URI + " text, "
+                + BASE64_RSA_PUBLIC_KEY + " text, "
+                + JRCACHE_FILE_PATH + " text not null, "
+                + AUTO_SEND + " text, "
+                + AUTO_DELETE + " text, "
+                + GEOMETRY_XPATH + " text, "
+                + DELETED_DATE + " integer);");
+    }
+}
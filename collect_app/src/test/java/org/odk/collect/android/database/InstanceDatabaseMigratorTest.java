@@ -0,0 +1,87 @@
+package org.odk.collect.android.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.odk.collect.android.database.DatabaseConstants.INSTANCES_TABLE_NAME;
+import static org.odk.collect.android.provider.InstanceProviderAPI.InstanceColumns.DELETED_DATE;
+import static org.odk.collect.android.provider.InstanceProviderAPI.InstanceColumns.INSTANCE_FILE_PATH;
+import static org.odk.collect.android.provider.InstanceProviderAPI.InstanceColumns.JR_FORM_ID;
+import static org.odk.collect.android.provider.InstanceProviderAPI.InstanceColumns.JR_VERSION;
+import static org.odk.collect.android.provider.InstanceProviderAPI.InstanceColumns.STATUS;
+
+@RunWith(AndroidJUnit4.class)
+public class InstanceDatabaseMigratorTest {
+
+    private SQLiteDatabase database;
+
+    @Before
+    public void setup() {
+        assertThat("Test expects different Instances DB version", DatabaseConstants.INSTANCES_DATABASE_VERSION, is(7));
+        database = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void teardown() {
+        database.close();
+    }
+
+    @Test
+    public void onCreate_addsIndexesUsedForInstanceLookups() {
+        new InstanceDatabaseMigrator().onCreate(database);
+
+        assertIndexesAreUsed();
+    }
+
+    @Test
+    public void onUpgrade_fromVersion6_addsIndexesUsedForInstanceLookups() {
+        InstanceDatabaseMigrator migrator = new InstanceDatabaseMigrator();
+        migrator.onCreate(database);
+        database.execSQL("DROP INDEX instances_status_idx;");
+        database.execSQL("DROP INDEX instances_jr_form_id_jr_version_idx;");
+        database.execSQL("DROP INDEX instances_instance_file_path_idx;");
+
+        migrator.onUpgrade(database, 6);
+
+        assertIndexesAreUsed();
+    }
+
+    @Test
+    public void onDowngrade_keepsIndexesUsedForInstanceLookups() {
+        InstanceDatabaseMigrator migrator = new InstanceDatabaseMigrator();
+        migrator.onCreate(database);
+
+        migrator.onDowngrade(database);
+
+        assertIndexesAreUsed();
+    }
+
+    private void assertIndexesAreUsed() {
+        assertThat(getQueryPlan("SELECT * FROM " + INSTANCES_TABLE_NAME + " WHERE " + STATUS + "=? or " + STATUS + "=?", "complete", "submissionFailed"),
+                containsString("instances_status_idx"));
+        assertThat(getQueryPlan("SELECT * FROM " + INSTANCES_TABLE_NAME + " WHERE " + JR_FORM_ID + " = ? AND " + JR_VERSION + " = ? AND " + DELETED_DATE + " IS NULL", "id", "1"),
+                containsString("USING INDEX instances_jr_form_id_jr_version_idx"));
+        assertThat(getQueryPlan("SELECT * FROM " + INSTANCES_TABLE_NAME + " WHERE " + INSTANCE_FILE_PATH + "=?", "path"),
+                containsString("USING INDEX instances_instance_file_path_idx"));
+    }
+
+    private String getQueryPlan(String query, String... args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, args)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
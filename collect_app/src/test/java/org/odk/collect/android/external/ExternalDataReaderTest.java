@@ -1,5 +1,6 @@
 package org.odk.collect.android.external;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Environment;
@@ -25,8 +26,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -34,6 +37,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.odk.collect.android.external.ExternalDataUtil.COLUMN_DATASET_FILENAME;
 import static org.odk.collect.android.external.ExternalDataUtil.COLUMN_MD5_HASH;
+import static org.odk.collect.android.external.ExternalDataUtil.EXTERNAL_DATA_FTS_TABLE_NAME;
 import static org.odk.collect.android.external.ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME;
 import static org.odk.collect.android.external.ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME;
 
@@ -215,6 +219,80 @@ public class ExternalDataReaderTest {
         assertThat("expected zero rows of data after reimporting unchanged file", cursor.getCount(), is(0));
     }
 
+    @Test
+    public void shouldUpdateDBforDataSet_whenFileHasNotBeenTouchedSinceImport_doesNotCompareHashes() {
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(null);
+        externalDataReader.doImport(formDefToCsvMedia);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READWRITE);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_MD5_HASH, "not the hash");
+        db.update(EXTERNAL_METADATA_TABLE_NAME, values, null, null);
+        db.close();
+
+        assertThat(ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, csvFile), is(false));
+    }
+
+    @Test
+    public void shouldUpdateDBforDataSet_whenFileIsTouchedButUnchanged_updatesFingerprint() {
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(null);
+        externalDataReader.doImport(formDefToCsvMedia);
+
+        csvFile.setLastModified(csvFile.lastModified() + 60_000);
+        assertThat(ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, csvFile), is(false));
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertThat(ExternalSQLiteOpenHelper.hasSameFingerprint(db, EXTERNAL_METADATA_TABLE_NAME, csvFile), is(true));
+        db.close();
+    }
+
+    @Test
+    public void doImport_withFullTextSearchColumns_indexesRowsByTokenSuffix() {
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(null, fullTextSearchColumns("c_name"));
+        externalDataReader.doImport(formDefToCsvMedia);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertThat(SQLiteUtils.doesTableExist(db, EXTERNAL_DATA_FTS_TABLE_NAME), is(true));
+
+        Cursor cursor = db.rawQuery("SELECT c_name FROM " + EXTERNAL_DATA_TABLE_NAME + " WHERE rowid IN "
+                + "(SELECT docid FROM " + EXTERNAL_DATA_FTS_TABLE_NAME + " WHERE c_name MATCH ?)", new String[]{"ang*"});
+        assertThat(cursor.getCount(), is(1));
+        cursor.moveToFirst();
+        assertThat(cursor.getString(0), is("Mango"));
+        cursor.close();
+        db.close();
+    }
+
+    @Test
+    public void doImport_withoutFullTextSearchColumns_doesNotCreateFullTextIndex() {
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(null);
+        externalDataReader.doImport(formDefToCsvMedia);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertThat(SQLiteUtils.doesTableExist(db, EXTERNAL_DATA_FTS_TABLE_NAME), is(false));
+        db.close();
+    }
+
+    @Test
+    public void shouldUpdateDBforDataSet_whenSearchedColumnIsMissingFromFullTextIndex_returnsTrue() {
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(null);
+        externalDataReader.doImport(formDefToCsvMedia);
+
+        assertThat(ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, csvFile, Collections.singleton("c_name")), is(true));
+    }
+
+    @Test
+    public void shouldUpdateDBforDataSet_whenSearchedColumnIsNotInDataSet_returnsFalse() {
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(null);
+        externalDataReader.doImport(formDefToCsvMedia);
+
+        assertThat(ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, csvFile, Collections.singleton("c_color")), is(false));
+    }
+
+    private static Map<String, Set<String>> fullTextSearchColumns(String column) {
+        return Collections.singletonMap(SIMPLE_SEARCH_EXTERNAL_CSV_NAME, Collections.singleton(column));
+    }
+
     private static Map<String, File> makeExternalDataMap() {
         Map<String, File> externalDataMap = new HashMap<>();
         externalDataMap.put(SIMPLE_SEARCH_EXTERNAL_CSV_NAME, csvFile);
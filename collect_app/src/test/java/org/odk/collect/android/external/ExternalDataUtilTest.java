@@ -26,4 +26,44 @@ public class ExternalDataUtilTest {
         Assert.assertEquals("c_new_line", ExternalDataUtil.toSafeColumnName("new\nline"));
         Assert.assertEquals("c_double_quote", ExternalDataUtil.toSafeColumnName("double\"quote"));
     }
+
+    @Test
+    public void toFullTextDocument_indexesEverySuffixOfEveryToken() {
+        Assert.assertEquals("Red ed d apple pple ple le e", ExternalDataUtil.toFullTextDocument("Red apple"));
+        Assert.assertEquals("a1 1 b b", ExternalDataUtil.toFullTextDocument("(a1)-b,b"));
+        Assert.assertEquals("", ExternalDataUtil.toFullTextDocument(""));
+    }
+
+    @Test
+    public void toFullTextDocument_onlyStartsSuffixesAtAsciiLettersAndDigits() {
+        Assert.assertEquals("caf\u00e9s af\u00e9s f\u00e9s s", ExternalDataUtil.toFullTextDocument("caf\u00e9s"));
+    }
+
+    @Test
+    public void toFullTextDocument_cutsLongSuffixes() {
+        Assert.assertEquals("abcdefghij bcdefghijk cdefghijkl defghijkl efghijkl fghijkl ghijkl hijkl ijkl jkl kl l",
+                ExternalDataUtil.toFullTextDocument("abcdefghijkl"));
+    }
+
+    @Test
+    public void toFullTextDocument_doesNotSplitSurrogatePairsWhenCuttingSuffixes() {
+        String value = "abcdefghi\uD83C\uDF4E";
+
+        Assert.assertEquals("abcdefghi\uD83C\uDF4E", ExternalDataUtil.toFullTextDocument(value).split(" ")[0]);
+    }
+
+    @Test
+    public void toFullTextQuery_isLowerCasePrefixOfAtMostTheLongestIndexedSuffix() {
+        Assert.assertEquals("mango*", ExternalDataUtil.toFullTextQuery("Mango"));
+        Assert.assertEquals("abcdefghij*", ExternalDataUtil.toFullTextQuery("ABCDEFGHIJKLMNOP"));
+    }
+
+    @Test
+    public void canUseFullTextIndex_onlyForAsciiLettersAndDigits() {
+        Assert.assertTrue(ExternalDataUtil.canUseFullTextIndex("Mango42"));
+        Assert.assertFalse(ExternalDataUtil.canUseFullTextIndex(""));
+        Assert.assertFalse(ExternalDataUtil.canUseFullTextIndex("red apple"));
+        Assert.assertFalse(ExternalDataUtil.canUseFullTextIndex("mango*"));
+        Assert.assertFalse(ExternalDataUtil.canUseFullTextIndex("caf\u00e9"));
+    }
 }
@@ -0,0 +1,58 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import org.javarosa.core.model.SelectChoice;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ItemsetCacheTest {
+
+    private final ItemsetCache cache = new ItemsetCache();
+
+    @Test
+    public void getResult_matchesOnArgumentValues() {
+        SelectChoice choice = new SelectChoice(null, "Seattle", "seattle", false);
+        cache.putResult("table", "list_name=? and \"state\"=?", new String[]{"cities", "washington"}, "English", Collections.singletonList(choice));
+
+        assertThat(cache.getResult("table", "list_name=? and \"state\"=?", new String[]{"cities", "washington"}, "English"), contains(choice));
+        assertThat(cache.getResult("table", "list_name=? and \"state\"=?", new String[]{"cities", "oregon"}, "English"), is(nullValue()));
+        assertThat(cache.getResult("table", "list_name=? and \"state\"=?", new String[]{"cities", "washington"}, "French"), is(nullValue()));
+    }
+
+    @Test
+    public void getResult_whenLanguageIsNull_matchesNull() {
+        SelectChoice choice = new SelectChoice(null, "Seattle", "seattle", false);
+        cache.putResult("table", "list_name=?", new String[]{"cities"}, null, Collections.singletonList(choice));
+
+        assertThat(cache.getResult("table", "list_name=?", new String[]{"cities"}, null), contains(choice));
+    }
+
+    @Test
+    public void getResult_returnsCopyOfCachedItems() {
+        SelectChoice choice = new SelectChoice(null, "Seattle", "seattle", false);
+        List<SelectChoice> items = new ArrayList<>(Collections.singletonList(choice));
+        cache.putResult("table", "list_name=?", new String[]{"cities"}, "", items);
+
+        items.clear();
+        cache.getResult("table", "list_name=?", new String[]{"cities"}, "").clear();
+
+        assertThat(cache.getResult("table", "list_name=?", new String[]{"cities"}, ""), contains(choice));
+    }
+
+    @Test
+    public void putResult_evictsLeastRecentlyUsedResults() {
+        for (int i = 0; i < 100; i++) {
+            cache.putResult("table", "list_name=?", new String[]{"list" + i}, "", Collections.emptyList());
+        }
+
+        assertThat(cache.getResult("table", "list_name=?", new String[]{"list0"}, ""), is(nullValue()));
+        assertThat(cache.getResult("table", "list_name=?", new String[]{"list99"}, ""), is(Collections.<SelectChoice>emptyList()));
+    }
+}
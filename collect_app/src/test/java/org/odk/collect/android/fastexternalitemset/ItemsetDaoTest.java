@@ -0,0 +1,22 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class ItemsetDaoTest {
+
+    @Test
+    public void getFilterColumns_returnsColumnsInQueryOrder() {
+        String query = "instance('cities')/root/item[state=/data/state and county= /data/county or district=/data/district]";
+
+        assertThat(ItemsetDao.getFilterColumns(query), contains("state", "county", "district"));
+    }
+
+    @Test
+    public void getFilterColumns_whenQueryOnlyFiltersOnListName_returnsNoColumns() {
+        assertThat(ItemsetDao.getFilterColumns("instance('states')/root/item[]"), empty());
+    }
+}
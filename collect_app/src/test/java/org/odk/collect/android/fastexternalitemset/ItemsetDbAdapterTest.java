@@ -0,0 +1,271 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.storage.StorageInitializer;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.RobolectricHelpers;
+import org.odk.collect.android.utilities.SQLiteUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public class ItemsetDbAdapterTest {
+
+    private static final String[] COLUMNS = {"list_name", "name", "state"};
+
+    private File metadataDir;
+    private File csv;
+    private ItemsetDbAdapter adapter;
+
+    @Before
+    public void setup() throws IOException {
+        RobolectricHelpers.mountExternalStorage();
+        new StorageInitializer().createOdkDirsOnStorage();
+
+        StoragePathProvider storagePathProvider = new StoragePathProvider();
+        metadataDir = new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.METADATA));
+        new File(metadataDir, ItemsetDbAdapter.DATABASE_NAME).delete();
+
+        File mediaDir = new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS), "form-media");
+        mediaDir.mkdirs();
+        csv = new File(mediaDir, "itemsets.csv");
+        write(csv, "list_name,name,state\ncities,seattle,washington\n");
+
+        adapter = new ItemsetDbAdapter().open();
+    }
+
+    @After
+    public void teardown() {
+        adapter.close();
+    }
+
+    @Test
+    public void addRow_leavesMissingValuesNull() {
+        adapter.createTable("hash", "table", COLUMNS, csv.getAbsolutePath());
+        adapter.addRow("table", COLUMNS, new String[]{"cities", "seattle", "washington"});
+        adapter.addRow("table", COLUMNS, new String[]{"cities", "portland"});
+
+        try (Cursor c = adapter.query("table", "name=?", new String[]{"portland"})) {
+            assertThat(c.getCount(), is(1));
+            c.moveToFirst();
+            assertThat(c.getString(c.getColumnIndex("list_name")), is("cities"));
+            assertThat(c.getString(c.getColumnIndex("state")), is(nullValue()));
+        }
+
+        try (Cursor c = adapter.query("table", "name=?", new String[]{"seattle"})) {
+            assertThat(c.getCount(), is(1));
+            c.moveToFirst();
+            assertThat(c.getString(c.getColumnIndex("state")), is("washington"));
+        }
+    }
+
+    @Test
+    public void addRow_skipsValuesInColumnsWithoutAHeader() {
+        String[] columns = {"list_name", "", "name"};
+        adapter.createTable("hash", "table", columns, csv.getAbsolutePath());
+        adapter.addRow("table", columns, new String[]{"cities", "ignored", "seattle"});
+
+        try (Cursor c = adapter.query("table", null, null)) {
+            assertThat(asList(c.getColumnNames()), contains("_id", "list_name", "name"));
+            assertThat(c.getCount(), is(1));
+            c.moveToFirst();
+            assertThat(c.getString(c.getColumnIndex("name")), is("seattle"));
+        }
+    }
+
+    @Test
+    public void createIndex_indexesListNameFollowedByTheFilterColumnsInTheTable() {
+        adapter.createTable("hash", "table", COLUMNS, csv.getAbsolutePath());
+
+        adapter.createIndex("table", asList("state", "county", "state"));
+
+        assertThat(getIndexedColumns("itemset_table"), contains(asList("list_name", "state")));
+    }
+
+    @Test
+    public void createIndex_whenTableHasNoListName_doesNotCreateAnIndex() {
+        adapter.createTable("hash", "table", new String[]{"name", "state"}, csv.getAbsolutePath());
+
+        adapter.createIndex("table", asList("state"));
+
+        assertThat(getIndexedColumns("itemset_table"), is(empty()));
+    }
+
+    @Test
+    public void hasSameFingerprint_isOnlyTrueWhileTheFileIsUnchangedSinceItWasUpdated() throws IOException {
+        adapter.createTable("hash", "table", COLUMNS, csv.getAbsolutePath());
+        assertThat(adapter.hasSameFingerprint(csv), is(false));
+
+        adapter.updateFingerprint(csv);
+        assertThat(adapter.hasSameFingerprint(csv), is(true));
+
+        write(csv, "list_name,name,state\ncities,seattle,washington\ncities,portland,oregon\n");
+        assertThat(adapter.hasSameFingerprint(csv), is(false));
+
+        adapter.updateFingerprint(csv);
+        assertThat(csv.setLastModified(csv.lastModified() - 60_000), is(true));
+        assertThat(adapter.hasSameFingerprint(csv), is(false));
+    }
+
+    @Test
+    public void hasSameFingerprint_whenFileWasNeverImported_isFalse() {
+        assertThat(adapter.hasSameFingerprint(csv), is(false));
+    }
+
+    @Test
+    public void endTransaction_whenNotSuccessful_rollsBackTheTableAndItsItemsetsEntry() {
+        adapter.beginTransaction();
+        adapter.createTable("hash", "table", COLUMNS, csv.getAbsolutePath());
+        adapter.addRow("table", COLUMNS, new String[]{"cities", "seattle", "washington"});
+        adapter.updateFingerprint(csv);
+        adapter.endTransaction();
+
+        try (Cursor c = adapter.getItemsets(csv.getAbsolutePath())) {
+            assertThat(c.getCount(), is(0));
+        }
+        assertThat(adapter.hasSameFingerprint(csv), is(false));
+        assertThat(getTables(), contains("itemsets"));
+    }
+
+    @Test
+    public void endTransaction_whenSuccessful_commitsTheTableAndItsItemsetsEntry() {
+        adapter.beginTransaction();
+        adapter.createTable("hash", "table", COLUMNS, csv.getAbsolutePath());
+        adapter.addRow("table", COLUMNS, new String[]{"cities", "seattle", "washington"});
+        adapter.updateFingerprint(csv);
+        adapter.setTransactionSuccessful();
+        adapter.endTransaction();
+
+        assertThat(adapter.hasSameFingerprint(csv), is(true));
+        try (Cursor c = adapter.query("table", null, null)) {
+            assertThat(c.getCount(), is(1));
+        }
+    }
+
+    @Test
+    public void onUpgrade_fromVersion2_keepsItemsetsAndAddsFingerprintColumns() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            database.execSQL("CREATE TABLE itemsets (_id integer primary key autoincrement, hash text, path text);");
+            database.execSQL("CREATE TABLE itemset_table (_id integer primary key autoincrement, list_name text);");
+            ContentValues values = new ContentValues();
+            values.put("hash", "hash");
+            values.put("path", "form-media/itemsets.csv");
+            database.insert("itemsets", null, values);
+
+            new ItemsetDbAdapter.DatabaseHelper().onUpgrade(database, 2, 3);
+
+            assertThat(SQLiteUtils.getColumnNames(database, "itemsets"),
+                    contains("_id", "hash", "path", "file_size", "last_modified"));
+            assertThat(SQLiteUtils.getColumnNames(database, "itemset_table"), contains("_id", "list_name"));
+            try (Cursor c = database.query("itemsets", null, null, null, null, null, null)) {
+                assertThat(c.getCount(), is(1));
+                c.moveToFirst();
+                assertThat(c.getString(c.getColumnIndex("hash")), is("hash"));
+                assertThat(c.isNull(c.getColumnIndex("file_size")), is(true));
+                assertThat(c.isNull(c.getColumnIndex("last_modified")), is(true));
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void onUpgrade_fromVersion1_dropsItemsetTables() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            database.execSQL("CREATE TABLE itemsets (_id integer primary key autoincrement, hash text, path text);");
+            database.execSQL("CREATE TABLE itemset_hash (_id integer primary key autoincrement, list_name text);");
+            ContentValues values = new ContentValues();
+            values.put("hash", "hash");
+            values.put("path", "form-media/itemsets.csv");
+            database.insert("itemsets", null, values);
+
+            new ItemsetDbAdapter.DatabaseHelper().onUpgrade(database, 1, 3);
+
+            assertThat(getTables(database), contains("itemsets"));
+            try (Cursor c = database.query("itemsets", null, null, null, null, null, null)) {
+                assertThat(c.getCount(), is(0));
+                assertThat(asList(c.getColumnNames()), contains("_id", "hash", "path", "file_size", "last_modified"));
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * @return the columns of each index on the table, read through a separate connection to the
+     * adapter's database
+     */
+    private List<List<String>> getIndexedColumns(String table) {
+        SQLiteDatabase database = openDatabase();
+        try {
+            List<List<String>> indexes = new ArrayList<>();
+            try (Cursor c = database.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=?", new String[]{table})) {
+                while (c.moveToNext()) {
+                    List<String> columns = new ArrayList<>();
+                    try (Cursor info = database.rawQuery("PRAGMA index_info(\"" + c.getString(0) + "\")", null)) {
+                        while (info.moveToNext()) {
+                            columns.add(info.getString(info.getColumnIndex("name")));
+                        }
+                    }
+                    indexes.add(columns);
+                }
+            }
+            return indexes;
+        } finally {
+            database.close();
+        }
+    }
+
+    private List<String> getTables() {
+        SQLiteDatabase database = openDatabase();
+        try {
+            return getTables(database);
+        } finally {
+            database.close();
+        }
+    }
+
+    private SQLiteDatabase openDatabase() {
+        return SQLiteDatabase.openDatabase(new File(metadataDir, ItemsetDbAdapter.DATABASE_NAME).getAbsolutePath(),
+                null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    private static List<String> getTables(SQLiteDatabase database) {
+        List<String> tables = new ArrayList<>();
+        try (Cursor c = database.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null)) {
+            while (c.moveToNext()) {
+                tables.add(c.getString(0));
+            }
+        }
+        return tables;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(contents);
+        }
+    }
+}
@@ -300,6 +300,37 @@ public class AsyncTaskAuditEventWriterTest {
         assertEquals(expectedData4, expectedAuditContent);
     }
 
+    @Test
+    public void whenEventsAreWrittenInBatches_appendsEachBatchOnce() throws Exception {
+        AsyncTaskAuditEventWriter writer = new AsyncTaskAuditEventWriter(auditFile, false, false, false, true);
+        writer.writeEvents(asList(new AuditEvent(1548108900606L, FORM_RESUME, null, null, null, null)));
+        writer.writeEvents(asList(new AuditEvent(1548108900607L, CHANGE_REASON, null, null, null, "A good reason")));
+        writer.writeEvents(asList(new AuditEvent(1548108900608L, FORM_EXIT, null, null, null, null)));
+        writer.writeEvents(asList(new AuditEvent(1548108900609L, FORM_RESUME, null, null, null, null)));
+
+        String auditContent = FileUtils.readFileToString(auditFile);
+        String expectedData = "event,node,start,end,change-reason\n" +
+                "form resume,,1548108900606,,\n" +
+                "change reason,,1548108900607,,A good reason\n" +
+                "form exit,,1548108900608,,\n" +
+                "form resume,,1548108900609,,\n";
+        assertEquals(expectedData, auditContent);
+    }
+
+    @Test
+    public void whenFileIsDeletedBetweenWrites_startsNewFileWithHeader() throws Exception {
+        AsyncTaskAuditEventWriter writer = new AsyncTaskAuditEventWriter(auditFile, false, false, false, true);
+        writer.writeEvents(asList(new AuditEvent(1548108900606L, FORM_RESUME, null, null, null, null)));
+
+        auditFile.delete();
+        writer.writeEvents(asList(new AuditEvent(1548108900607L, CHANGE_REASON, null, null, null, "A good reason")));
+
+        String auditContent = FileUtils.readFileToString(auditFile);
+        String expectedData = "event,node,start,end,change-reason\n" +
+                "change reason,,1548108900607,,A good reason\n";
+        assertEquals(expectedData, auditContent);
+    }
+
     private List<AuditEvent> getSampleAuditEventsWithUser() {
         List<AuditEvent> auditEvents = getSampleAuditEventsWithoutLocations();
         for (AuditEvent event : auditEvents) {
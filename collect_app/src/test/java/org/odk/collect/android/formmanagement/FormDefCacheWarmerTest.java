@@ -0,0 +1,80 @@
+package org.odk.collect.android.formmanagement;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.storage.StorageInitializer;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.RobolectricHelpers;
+import org.odk.collect.android.utilities.FileUtils;
+import org.odk.collect.android.utilities.FormDefCache;
+import org.odk.collect.testshared.FakeScheduler;
+
+import java.io.File;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.odk.collect.android.support.FormUtils.createXFormBody;
+
+@RunWith(AndroidJUnit4.class)
+public class FormDefCacheWarmerTest {
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private File formsDir;
+
+    @Before
+    public void setup() {
+        RobolectricHelpers.mountExternalStorage();
+        new StorageInitializer().createOdkDirsOnStorage();
+        formsDir = new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.FORMS));
+    }
+
+    @Test
+    public void warm_cachesFormInTheBackground() {
+        File formFile = writeForm("one", createXFormBody("one", "1"));
+
+        FormDefCacheWarmer warmer = new FormDefCacheWarmer(scheduler);
+        warmer.warm(formFile);
+        assertThat(FormDefCache.isCached(formFile), is(false));
+
+        scheduler.runBackground();
+        assertThat(FormDefCache.isCached(formFile), is(true));
+        assertThat(FormDefCache.readCache(formFile).getTitle(), is("Form"));
+    }
+
+    @Test
+    public void warm_whenCalledForMultipleFormsBeforeBackgroundRuns_cachesAllOfThem() {
+        File formOne = writeForm("one", createXFormBody("one", "1", "Form one"));
+        File formTwo = writeForm("two", createXFormBody("two", "1", "Form two"));
+
+        FormDefCacheWarmer warmer = new FormDefCacheWarmer(scheduler);
+        warmer.warm(formOne);
+        warmer.warm(formTwo);
+        scheduler.runBackground();
+
+        assertThat(FormDefCache.isCached(formOne), is(true));
+        assertThat(FormDefCache.isCached(formTwo), is(true));
+    }
+
+    @Test
+    public void warm_whenFormHasExternalInstance_doesNotCacheIt() {
+        String xform = createXFormBody("external", "1")
+                .replace("</model>", "<instance id=\"fruits\" src=\"jr://file-csv/fruits.csv\"/></model>");
+        File formFile = writeForm("external", xform);
+
+        FormDefCacheWarmer warmer = new FormDefCacheWarmer(scheduler);
+        warmer.warm(formFile);
+        scheduler.runBackground();
+
+        assertThat(FormDefCache.isCached(formFile), is(false));
+    }
+
+    private File writeForm(String name, String xform) {
+        File formFile = new File(formsDir, name + ".xml");
+        FileUtils.write(formFile, xform.getBytes());
+        return formFile;
+    }
+}
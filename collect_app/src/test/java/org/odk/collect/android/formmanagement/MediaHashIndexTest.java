@@ -0,0 +1,142 @@
+package org.odk.collect.android.formmanagement;
+
+import org.junit.Test;
+import org.odk.collect.testshared.TempFiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.odk.collect.android.utilities.FileUtils.getMd5Hash;
+
+public class MediaHashIndexTest {
+
+    private final File indexDir = TempFiles.createTempDir();
+    private final File mediaDir = TempFiles.createTempDir();
+    private final MediaHashIndex mediaHashIndex = new MediaHashIndex(indexDir);
+
+    @Test
+    public void getHashes_returnsHashOfEachFile() throws Exception {
+        File file1 = createMediaFile("file1.csv", "contents1");
+        File file2 = createMediaFile("file2.csv", "contents2");
+
+        Set<String> hashes = mediaHashIndex.getHashes(mediaDir, asList(file1, file2));
+        assertThat(hashes, containsInAnyOrder(md5("contents1"), md5("contents2")));
+    }
+
+    @Test
+    public void getHashes_whenFileHasNotChangedSizeOrModifiedTime_doesNotHashItAgain() throws Exception {
+        File file = createMediaFile("file.csv", "contents1");
+        long lastModified = file.lastModified();
+        mediaHashIndex.getHashes(mediaDir, singletonList(file));
+
+        write(file, "contents2");
+        file.setLastModified(lastModified);
+
+        Set<String> hashes = new MediaHashIndex(indexDir).getHashes(mediaDir, singletonList(file));
+        assertThat(hashes, contains(md5("contents1")));
+    }
+
+    @Test
+    public void getHashes_whenFileHasBeenModified_hashesItAgain() throws Exception {
+        File file = createMediaFile("file.csv", "contents1");
+        long lastModified = file.lastModified();
+        mediaHashIndex.getHashes(mediaDir, singletonList(file));
+
+        write(file, "contents2");
+        file.setLastModified(lastModified + 1000);
+
+        Set<String> hashes = mediaHashIndex.getHashes(mediaDir, singletonList(file));
+        assertThat(hashes, contains(md5("contents2")));
+    }
+
+    @Test
+    public void getHashes_ignoresDirectories() throws Exception {
+        File file = createMediaFile("file.csv", "contents");
+        File dir = new File(mediaDir, "dir");
+        dir.mkdir();
+
+        Set<String> hashes = mediaHashIndex.getHashes(mediaDir, asList(file, dir));
+        assertThat(hashes, contains(md5("contents")));
+    }
+
+    @Test
+    public void getHash_returnsHashOfFile() throws Exception {
+        File file = createMediaFile("file.csv", "contents");
+
+        assertThat(mediaHashIndex.getHash(file), is(md5("contents")));
+    }
+
+    @Test
+    public void getHash_whenFileHasNotChangedSizeOrModifiedTime_doesNotHashItAgain() throws Exception {
+        File file = createMediaFile("file.csv", "contents1");
+        long lastModified = file.lastModified();
+        mediaHashIndex.getHash(file);
+
+        write(file, "contents2");
+        file.setLastModified(lastModified);
+
+        assertThat(new MediaHashIndex(indexDir).getHash(file), is(md5("contents1")));
+    }
+
+    @Test
+    public void getHash_whenFileHasBeenModified_hashesItAgain() throws Exception {
+        File file = createMediaFile("file.csv", "contents1");
+        long lastModified = file.lastModified();
+        mediaHashIndex.getHashes(mediaDir, singletonList(file));
+
+        write(file, "contents2");
+        file.setLastModified(lastModified + 1000);
+
+        assertThat(mediaHashIndex.getHash(file), is(md5("contents2")));
+    }
+
+    @Test
+    public void getHash_keepsTheEntriesForOtherFiles() throws Exception {
+        File file1 = createMediaFile("file1.csv", "contents1");
+        File file2 = createMediaFile("file2.csv", "contents2");
+        long lastModified = file2.lastModified();
+        mediaHashIndex.getHashes(mediaDir, asList(file1, file2));
+
+        write(file1, "contents3");
+        file1.setLastModified(file1.lastModified() + 1000);
+        mediaHashIndex.getHash(file1);
+
+        write(file2, "contents4");
+        file2.setLastModified(lastModified);
+
+        Set<String> hashes = new MediaHashIndex(indexDir).getHashes(mediaDir, asList(file1, file2));
+        assertThat(hashes, containsInAnyOrder(md5("contents3"), md5("contents2")));
+    }
+
+    @Test
+    public void getHash_whenFileDoesNotExist_returnsNull() {
+        assertThat(mediaHashIndex.getHash(new File(mediaDir, "missing.csv")), is(nullValue()));
+    }
+
+    private File createMediaFile(String name, String contents) throws IOException {
+        File file = new File(mediaDir, name);
+        write(file, contents);
+        return file;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(contents.getBytes());
+        }
+    }
+
+    private static String md5(String contents) {
+        return getMd5Hash(new ByteArrayInputStream(contents.getBytes()));
+    }
+}
@@ -23,6 +23,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static java.util.Arrays.asList;
@@ -33,6 +34,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -50,6 +52,8 @@ public class ServerFormDownloaderTest {
     private final FormsRepository formsRepository = new InMemFormsRepository();
     private final File cacheDir = Files.createTempDir();
     private final File formsDir = Files.createTempDir();
+    private final FormDefCacheWarmer formDefCacheWarmer = mock(FormDefCacheWarmer.class);
+    private final MediaHashIndex mediaHashIndex = new MediaHashIndex(Files.createTempDir());
 
     @Test
     public void downloadsAndSavesForm() throws Exception {
@@ -67,7 +71,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
 
         List<Form> allForms = formsRepository.getAll();
@@ -80,6 +84,29 @@ public class ServerFormDownloaderTest {
         assertThat(new String(read(formFile)), is(xform));
     }
 
+    @Test
+    public void afterDownloadingForm_warmsFormDefCacheForIt() throws Exception {
+        String xform = createXFormBody("id", "version");
+        ServerFormDetails serverFormDetails = new ServerFormDetails(
+                "Form",
+                "http://downloadUrl",
+                "id",
+                "version",
+                "md5:" + FileUtils.getMd5Hash(new ByteArrayInputStream(xform.getBytes())),
+                true,
+                false,
+                null);
+
+        FormSource formSource = mock(FormSource.class);
+        when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
+
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
+        downloader.downloadForm(serverFormDetails, null, null);
+
+        Form form = formsRepository.getAll().get(0);
+        verify(formDefCacheWarmer).warm(new File(getAbsoluteFilePath(formsDir.getAbsolutePath(), form.getFormFilePath())));
+    }
+
     @Test
     public void whenFormToDownloadIsUpdate_savesNewVersionAlongsideOldVersion() throws Exception {
         String xform = createXFormBody("id", "version");
@@ -96,7 +123,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
 
         String xformUpdate = createXFormBody("id", "updated");
@@ -137,7 +164,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
 
         String xformUpdate = FormUtils.createXFormBody("id", "version", "A different title");
@@ -174,8 +201,8 @@ public class ServerFormDownloaderTest {
                 true,
                 false,
                 new ManifestFile("", asList(
-                        new MediaFile("file1", "hash-1", "http://file1"),
-                        new MediaFile("file2", "hash-2", "http://file2")
+                        new MediaFile("file1", md5Hash("contents1"), "http://file1"),
+                        new MediaFile("file2", md5Hash("contents2"), "http://file2")
                 )));
 
         FormSource formSource = mock(FormSource.class);
@@ -183,7 +210,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("contents1".getBytes()));
         when(formSource.fetchMediaFile("http://file2")).thenReturn(new ByteArrayInputStream("contents2".getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
 
         List<Form> allForms = formsRepository.getAll();
@@ -204,6 +231,50 @@ public class ServerFormDownloaderTest {
         assertThat(new String(read(mediaFile2)), is("contents2"));
     }
 
+    @Test
+    public void whenFormHasManyMediaFiles_downloadsSomeAtOnceAndSavesAllOfThem() throws Exception {
+        String xform = createXFormBody("id", "version");
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            mediaFiles.add(new MediaFile("file" + i, md5Hash("contents of file" + i), "http://file" + i));
+        }
+
+        ServerFormDetails serverFormDetails = new ServerFormDetails(
+                "Form",
+                "http://downloadUrl",
+                "id",
+                "version",
+                "md5:" + FileUtils.getMd5Hash(new ByteArrayInputStream(xform.getBytes())),
+                true,
+                false,
+                new ManifestFile("", mediaFiles));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        FormSource formSource = mock(FormSource.class);
+        when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
+        for (MediaFile mediaFile : mediaFiles) {
+            when(formSource.fetchMediaFile(mediaFile.getDownloadUrl())).thenAnswer(invocation -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                return new ByteArrayInputStream(("contents of " + mediaFile.getFilename()).getBytes());
+            });
+        }
+
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
+        downloader.downloadForm(serverFormDetails, null, null);
+
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(4));
+
+        Form form = formsRepository.getAll().get(0);
+        for (MediaFile mediaFile : mediaFiles) {
+            File file = new File(form.getFormMediaPath() + "/" + mediaFile.getFilename());
+            assertThat(new String(read(file)), is("contents of " + mediaFile.getFilename()));
+        }
+    }
+
     /**
      * Form parsing might need access to media files (external secondary instances) for example
      * so we need to make sure we've got those files in the right place before we parse.
@@ -220,8 +291,8 @@ public class ServerFormDownloaderTest {
                 true,
                 false,
                 new ManifestFile("", asList(
-                        new MediaFile("file1", "hash-1", "http://file1"),
-                        new MediaFile("file2", "hash-2", "http://file2")
+                        new MediaFile("file1", md5Hash("contents1"), "http://file1"),
+                        new MediaFile("file2", md5Hash("contents2"), "http://file2")
                 )));
 
         FormSource formSource = mock(FormSource.class);
@@ -240,7 +311,7 @@ public class ServerFormDownloaderTest {
             }
         };
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), formMetadataParser, mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), formMetadataParser, mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
     }
 
@@ -256,14 +327,14 @@ public class ServerFormDownloaderTest {
                 true,
                 false,
                 new ManifestFile("", asList(
-                        new MediaFile("file1", "hash-1", "http://file1")
+                        new MediaFile("file1", md5Hash("contents1"), "http://file1")
                 )));
 
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
         when(formSource.fetchMediaFile("http://file1")).thenThrow(new FormSourceException.FetchError());
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
 
         try {
             downloader.downloadForm(serverFormDetails, null, null);
@@ -287,7 +358,7 @@ public class ServerFormDownloaderTest {
                 true,
                 false,
                 new ManifestFile("", asList(
-                        new MediaFile("file1", "hash-1", "http://file1")
+                        new MediaFile("file1", md5Hash("contents1"), "http://file1")
                 )));
 
         FormSource formSource = mock(FormSource.class);
@@ -297,7 +368,38 @@ public class ServerFormDownloaderTest {
         // Create file where media dir would go
         assertThat(new File(formsDir, "Form-media").createNewFile(), is(true));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
+
+        try {
+            downloader.downloadForm(serverFormDetails, null, null);
+            fail("Expected exception");
+        } catch (FormDownloadException e) {
+            assertThat(formsRepository.getAll(), is(empty()));
+            assertThat(asList(new File(getCacheFilesPath()).listFiles()), is(empty()));
+            assertThat(asList(new File(getFormFilesPath()).listFiles()), is(empty()));
+        }
+    }
+
+    @Test
+    public void whenFormHasMediaFiles_andMediaFileDoesNotMatchManifestHash_throwsFormDownloadExceptionAndDoesNotSaveAnything() throws Exception {
+        String xform = createXFormBody("id", "version");
+        ServerFormDetails serverFormDetails = new ServerFormDetails(
+                "Form",
+                "http://downloadUrl",
+                "id",
+                "version",
+                "md5:" + FileUtils.getMd5Hash(new ByteArrayInputStream(xform.getBytes())),
+                true,
+                false,
+                new ManifestFile("", asList(
+                        new MediaFile("file1", md5Hash("contents1"), "http://file1")
+                )));
+
+        FormSource formSource = mock(FormSource.class);
+        when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
+        when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("truncated".getBytes()));
+
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
 
         try {
             downloader.downloadForm(serverFormDetails, null, null);
@@ -309,6 +411,52 @@ public class ServerFormDownloaderTest {
         }
     }
 
+    @Test
+    public void whenFormHasMediaFiles_andOneFails_doesNotStartTheDownloadsThatHaveNotStarted() throws Exception {
+        String xform = createXFormBody("id", "version");
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            mediaFiles.add(new MediaFile("file" + i, md5Hash("contents of file" + i), "http://file" + i));
+        }
+
+        ServerFormDetails serverFormDetails = new ServerFormDetails(
+                "Form",
+                "http://downloadUrl",
+                "id",
+                "version",
+                "md5:" + FileUtils.getMd5Hash(new ByteArrayInputStream(xform.getBytes())),
+                true,
+                false,
+                new ManifestFile("", mediaFiles));
+
+        AtomicInteger fetchCount = new AtomicInteger();
+
+        FormSource formSource = mock(FormSource.class);
+        when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
+        when(formSource.fetchMediaFile("http://file0")).thenAnswer(invocation -> {
+            fetchCount.incrementAndGet();
+            throw new FormSourceException.FetchError();
+        });
+        for (MediaFile mediaFile : mediaFiles.subList(1, mediaFiles.size())) {
+            when(formSource.fetchMediaFile(mediaFile.getDownloadUrl())).thenAnswer(invocation -> {
+                fetchCount.incrementAndGet();
+                Thread.sleep(50);
+                return new ByteArrayInputStream(("contents of " + mediaFile.getFilename()).getBytes());
+            });
+        }
+
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
+
+        try {
+            downloader.downloadForm(serverFormDetails, null, null);
+            fail("Expected exception");
+        } catch (FormDownloadException e) {
+            // Only the downloads that were already running when the first one failed
+            assertThat(fetchCount.get(), lessThanOrEqualTo(4));
+            assertThat(formsRepository.getAll(), is(empty()));
+        }
+    }
+
     @Test
     public void beforeDownloadingEachMediaFile_reportsProgress() throws Exception {
         String xform = createXFormBody("id", "version");
@@ -321,8 +469,8 @@ public class ServerFormDownloaderTest {
                 true,
                 false,
                 new ManifestFile("", asList(
-                        new MediaFile("file1", "hash-1", "http://file1"),
-                        new MediaFile("file2", "hash-2", "http://file2")
+                        new MediaFile("file1", md5Hash("contents"), "http://file1"),
+                        new MediaFile("file2", md5Hash("contents"), "http://file2")
                 )));
 
         FormSource formSource = mock(FormSource.class);
@@ -330,7 +478,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("contents".getBytes()));
         when(formSource.fetchMediaFile("http://file2")).thenReturn(new ByteArrayInputStream("contents".getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         RecordingProgressReporter progressReporter = new RecordingProgressReporter();
         downloader.downloadForm(serverFormDetails, progressReporter, null);
 
@@ -359,7 +507,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
         assertThat(formsRepository.get(1L).isDeleted(), is(false));
     }
@@ -391,7 +539,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform2.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
         assertThat(formsRepository.get(1L).isDeleted(), is(true));
         assertThat(formsRepository.get(2L).isDeleted(), is(false));
@@ -422,7 +570,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform2.getBytes()));
 
         Analytics mockAnalytics = mock(Analytics.class);
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mockAnalytics);
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mockAnalytics, formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
 
         String formIdentifier = form.getDisplayName() + " " + form.getJrFormId();
@@ -455,7 +603,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
         Analytics mockAnalytics = mock(Analytics.class);
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mockAnalytics);
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mockAnalytics, formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
         verifyNoInteractions(mockAnalytics);
     }
@@ -483,7 +631,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl/draft.xml")).thenReturn(new ByteArrayInputStream(xform2.getBytes()));
 
         Analytics mockAnalytics = mock(Analytics.class);
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mockAnalytics);
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mockAnalytics, formDefCacheWarmer, mediaHashIndex);
         downloader.downloadForm(serverFormDetails, null, null);
 
         verifyNoInteractions(mockAnalytics);
@@ -506,7 +654,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
 
         // Initial download
         downloader.downloadForm(serverFormDetails, null, null);
@@ -551,7 +699,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
         when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("contents".getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
 
         // Initial download
         downloader.downloadForm(serverFormDetails, null, null);
@@ -600,7 +748,7 @@ public class ServerFormDownloaderTest {
                 null);
 
         CancelAfterFormDownloadFormSource formListApi = new CancelAfterFormDownloadFormSource(xform);
-        ServerFormDownloader downloader = new ServerFormDownloader(formListApi, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formListApi, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
 
         try {
             downloader.downloadForm(serverFormDetails, null, formListApi);
@@ -624,12 +772,12 @@ public class ServerFormDownloaderTest {
                 true,
                 false,
                 new ManifestFile("", asList(
-                        new MediaFile("file1", "hash-1", "http://file1"),
-                        new MediaFile("file2", "hash-2", "http://file2")
+                        new MediaFile("file1", md5Hash("contents"), "http://file1"),
+                        new MediaFile("file2", md5Hash("contents"), "http://file2")
                 )));
 
         CancelAfterMediaFileDownloadFormSource formListApi = new CancelAfterMediaFileDownloadFormSource(xform);
-        ServerFormDownloader downloader = new ServerFormDownloader(formListApi, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class));
+        ServerFormDownloader downloader = new ServerFormDownloader(formListApi, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(ReferenceManager.instance()), mock(Analytics.class), formDefCacheWarmer, mediaHashIndex);
 
         try {
             downloader.downloadForm(serverFormDetails, null, formListApi);
@@ -641,6 +789,10 @@ public class ServerFormDownloaderTest {
         }
     }
 
+    private static String md5Hash(String contents) {
+        return "md5:" + FileUtils.getMd5Hash(new ByteArrayInputStream(contents.getBytes()));
+    }
+
     private String getFormFilesPath() {
         return formsDir.getAbsolutePath();
     }
@@ -53,7 +53,7 @@ public class ServerFormsDetailsFetcherTest {
         );
 
         DiskFormsSynchronizer diskFormsSynchronizer = mock(DiskFormsSynchronizer.class);
-        fetcher = new ServerFormsDetailsFetcher(formsRepository, formSource, diskFormsSynchronizer);
+        fetcher = new ServerFormsDetailsFetcher(formsRepository, formSource, diskFormsSynchronizer, new MediaHashIndex(TempFiles.createTempDir()));
     }
 
     @Test
@@ -7,12 +7,14 @@ import org.odk.collect.utilities.Clock;
 import java.io.File;
 import java.util.List;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.odk.collect.android.support.FormUtils.buildForm;
@@ -158,6 +160,31 @@ public abstract class FormsRepositoryTest {
         assertThat(formsRepository.get(1L).getMD5Hash(), equalTo(expectedHash));
     }
 
+    @Test
+    public void save_addsFileFingerprintBasedOnFormFile() {
+        FormsRepository formsRepository = buildSubject();
+        Form form = buildForm("id", "version", getFormFilesPath()).build();
+
+        formsRepository.save(form);
+
+        File formFile = new File(form.getFormFilePath());
+        assertThat(formsRepository.get(1L).getFormFileSize(), equalTo(formFile.length()));
+        assertThat(formsRepository.get(1L).getFormFileLastModified(), equalTo(formFile.lastModified()));
+    }
+
+    @Test
+    public void updateFileFingerprint_updatesFingerprintAndKeepsHash() {
+        FormsRepository formsRepository = buildSubject();
+        Form form = formsRepository.save(buildForm("id", "version", getFormFilesPath()).build());
+
+        formsRepository.updateFileFingerprint(form.getId(), 42L, 1234L);
+
+        Form updatedForm = formsRepository.get(form.getId());
+        assertThat(updatedForm.getFormFileSize(), equalTo(42L));
+        assertThat(updatedForm.getFormFileLastModified(), equalTo(1234L));
+        assertThat(updatedForm.getMD5Hash(), equalTo(form.getMD5Hash()));
+    }
+
     @Test(expected = Exception.class)
     public void save_whenNoFormFilePath_explodes() {
         FormsRepository formsRepository = buildSubject();
@@ -183,6 +210,42 @@ public abstract class FormsRepositoryTest {
         assertThat(formsRepository.get(originalForm.getId()).getDisplayName(), is("changed"));
     }
 
+    @Test
+    public void saveAll_addsNewFormsAndUpdatesExisting() {
+        FormsRepository formsRepository = buildSubject();
+        Form existingForm = formsRepository.save(buildForm("id1", "version", getFormFilesPath())
+                .displayName("original")
+                .build());
+
+        formsRepository.saveAll(asList(
+                new Form.Builder(existingForm).displayName("changed").build(),
+                buildForm("id2", "version", getFormFilesPath()).build()
+        ));
+
+        assertThat(formsRepository.getAll().size(), is(2));
+        assertThat(formsRepository.get(existingForm.getId()).getDisplayName(), is("changed"));
+        Form newForm = formsRepository.getAllByFormId("id2").get(0);
+        assertThat(newForm.getMD5Hash(), equalTo(FileUtils.getMd5Hash(new File(newForm.getFormFilePath()))));
+    }
+
+    @Test
+    public void saveAll_whenAFormCannotBeSaved_savesNone() {
+        FormsRepository formsRepository = buildSubject();
+        Form validForm = buildForm("id1", "version", getFormFilesPath()).build();
+        Form invalidForm = new Form.Builder(buildForm("id2", "version", getFormFilesPath()).build())
+                .formFilePath(null)
+                .build();
+
+        try {
+            formsRepository.saveAll(asList(validForm, invalidForm));
+            fail("Saving a form without a file path should have failed");
+        } catch (Exception ignored) {
+            // expected
+        }
+
+        assertThat(formsRepository.getAll().size(), is(0));
+    }
+
     @Test
     public void delete_deletesFiles() {
         FormsRepository formsRepository = buildSubject();
@@ -0,0 +1,174 @@
+package org.odk.collect.android.geo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+public class TileHttpServerTest {
+
+    private TileHttpServer server;
+    private int port;
+
+    @Before
+    public void setup() throws IOException {
+        server = new TileHttpServer();
+        server.addSource("layer", new FakeTileSource());
+        server.start();
+        port = Integer.parseInt(server.getUrlTemplate("layer").split("[:/]")[4]);
+    }
+
+    @After
+    public void teardown() {
+        server.destroy();
+    }
+
+    @Test
+    public void pipelinedRequestsOnOneConnection_areAllAnsweredInOrder() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream output = socket.getOutputStream();
+            output.write(("GET /layer/1/2/3 HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                    "GET /layer/9/9/9 HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                    "GET /layer/4/5/6 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+            output.flush();
+
+            String responses = readAll(socket.getInputStream());
+            String[] statusLines = responses.split("HTTP/1.1 ");
+            assertThat(statusLines.length, is(4));
+            assertThat(statusLines[1].startsWith("200 OK"), is(true));
+            assertThat(statusLines[1].endsWith("1/2/3"), is(true));
+            assertThat(statusLines[2].startsWith("404 Not Found"), is(true));
+            assertThat(statusLines[3].startsWith("200 OK"), is(true));
+            assertThat(statusLines[3].contains("Connection: close"), is(true));
+            assertThat(statusLines[3].endsWith("4/5/6"), is(true));
+        }
+    }
+
+    @Test
+    public void repeatedRequestsForATile_areServedFromTheCache() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.getOutputStream().write("GET /layer/1/2/3 HTTP/1.0\r\n\r\n".getBytes("ISO-8859-1"));
+                readAll(socket.getInputStream());
+            }
+        }
+
+        assertThat(server.getCacheMissCount(), is(1L));
+        assertThat(server.getCacheHitCount(), is(2L));
+        assertThat(server.getTilesServedCount(), is(3L));
+    }
+
+    @Test
+    public void moreKeepAliveClientsThanWorkers_areAllServedWhileTheOthersStayOpen() throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < TileHttpServer.WORKER_COUNT * 2; i++) {
+                Socket socket = new Socket("localhost", port);
+                // Shorter than the keep-alive timeout so a client waiting for a busy worker fails
+                socket.setSoTimeout(2000);
+                sockets.add(socket);
+
+                assertThat(request(socket, "/layer/1/2/" + i), startsWith("HTTP/1.1 200 OK"));
+            }
+
+            for (int i = 0; i < sockets.size(); i++) {
+                String response = request(sockets.get(i), "/layer/4/5/" + i);
+                assertThat(response, startsWith("HTTP/1.1 200 OK"));
+                assertThat(response, endsWith("4/5/" + i));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void whenTooManyConnectionsAreOpen_refusesMoreWith503() throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < TileHttpServer.MAX_CONNECTIONS; i++) {
+                Socket socket = new Socket("localhost", port);
+                socket.setSoTimeout(2000);
+                sockets.add(socket);
+                request(socket, "/layer/1/2/3");
+            }
+
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(2000);
+                assertThat(readAll(socket.getInputStream()), startsWith("HTTP/1.1 503 Service Unavailable"));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    /** Sends one keep-alive request and reads its response, leaving the connection open. */
+    private static String request(Socket socket, String path) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("ISO-8859-1"));
+        output.flush();
+
+        InputStream input = socket.getInputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (!bytes.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+            int b = input.read();
+            if (b == -1) {
+                throw new IOException("Connection closed before the response headers ended");
+            }
+            bytes.write(b);
+        }
+
+        String headers = bytes.toString("ISO-8859-1");
+        int contentLength = Integer.parseInt(headers.split("Content-Length: ")[1].split("\r\n")[0]);
+        for (int i = 0; i < contentLength; i++) {
+            bytes.write(input.read());
+        }
+        return bytes.toString("ISO-8859-1");
+    }
+
+    private static String readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count = input.read(buffer);
+        while (count != -1) {
+            bytes.write(buffer, 0, count);
+            count = input.read(buffer);
+        }
+        return bytes.toString("ISO-8859-1");
+    }
+
+    private static class FakeTileSource implements TileSource {
+        @Override
+        public byte[] getTileBlob(int zoom, int x, int y) {
+            if (zoom == 9) {
+                return null;
+            }
+            return (zoom + "/" + x + "/" + y).getBytes();
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return "identity";
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.odk.collect.android.logic;
+
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.model.xform.XPathReference;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class QuestionRefreshPlannerTest {
+
+    private static final String FORM = "<?xml version=\"1.0\"?>\n"
+            + "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\" xmlns:jr=\"http://openrosa.org/javarosa\">\n"
+            + "    <h:head>\n"
+            + "        <h:title>Dependencies</h:title>\n"
+            + "        <model>\n"
+            + "            <itext>\n"
+            + "                <translation lang=\"English\">\n"
+            + "                    <text id=\"/data/greeting:label\">\n"
+            + "                        <value>Hello <output value=\"/data/name\"/></value>\n"
+            + "                    </text>\n"
+            + "                </translation>\n"
+            + "            </itext>\n"
+            + "            <instance>\n"
+            + "                <data id=\"dependencies\">\n"
+            + "                    <age/><double_age/><summary/><name/><greeting/><adult/><unrelated/>\n"
+            + "                    <group><inside/></group>\n"
+            + "                    <state/><city/>\n"
+            + "                    <bound/><set_from/><set_to/><choice/>\n"
+            + "                    <section><section_question/></section>\n"
+            + "                </data>\n"
+            + "            </instance>\n"
+            + "            <bind nodeset=\"/data/age\" type=\"int\"/>\n"
+            + "            <bind nodeset=\"/data/double_age\" calculate=\"/data/age * 2\"/>\n"
+            + "            <bind nodeset=\"/data/adult\" relevant=\"/data/age &gt;= 18\"/>\n"
+            + "            <bind nodeset=\"/data/group\" relevant=\"/data/name != ''\"/>\n"
+            + "            <bind nodeset=\"/data/unrelated\" constraint=\"/data/age &gt; 0\"/>\n"
+            + "            <bind id=\"bound_bind\" nodeset=\"/data/bound\" calculate=\"/data/age + 1\"/>\n"
+            + "        </model>\n"
+            + "    </h:head>\n"
+            + "    <h:body>\n"
+            + "        <input ref=\"/data/age\"><label>Age</label></input>\n"
+            + "        <input ref=\"/data/summary\"><label>Double your age is <output value=\"/data/double_age\"/></label></input>\n"
+            + "        <input ref=\"/data/name\"><label>Name</label></input>\n"
+            + "        <input ref=\"/data/greeting\"><label ref=\"jr:itext('/data/greeting:label')\"/></input>\n"
+            + "        <input ref=\"/data/adult\"><label>Adult</label></input>\n"
+            + "        <input ref=\"/data/unrelated\"><label>Unrelated</label></input>\n"
+            + "        <group ref=\"/data/group\"><input ref=\"inside\"><label>Inside</label></input></group>\n"
+            + "        <input ref=\"/data/state\"><label>State</label></input>\n"
+            + "        <select1 ref=\"/data/city\">\n"
+            + "            <label>City</label>\n"
+            + "            <itemset nodeset=\"instance('cities')/root/item[state = /data/state]\"><value ref=\"name\"/><label ref=\"label\"/></itemset>\n"
+            + "        </select1>\n"
+            + "        <input bind=\"bound_bind\"><label>Bound</label></input>\n"
+            + "        <input ref=\"/data/set_from\">\n"
+            + "            <label>From</label>\n"
+            + "            <setvalue event=\"xforms-value-changed\" ref=\"/data/set_to\" value=\"now()\"/>\n"
+            + "        </input>\n"
+            + "        <input ref=\"/data/set_to\"><label>To</label></input>\n"
+            + "        <select1 ref=\"/data/choice\">\n"
+            + "            <label>Choice</label>\n"
+            + "            <item><label>Like <output value=\"/data/name\"/></label><value>like</value></item>\n"
+            + "        </select1>\n"
+            + "        <group ref=\"/data/section\">\n"
+            + "            <label>About <output value=\"/data/age\"/></label>\n"
+            + "            <input ref=\"section_question\"><label>Question</label></input>\n"
+            + "        </group>\n"
+            + "    </h:body>\n"
+            + "</h:html>";
+
+    @Test
+    public void plan_includesQuestionsShowingCalculationsOfTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/age"));
+
+        assertThat(plan.shouldRebuild(ref("/data/double_age")), is(true));
+        assertThat(plan.shouldRebuild(ref("/data/summary")), is(true));
+        assertThat(plan.shouldRebuild(ref("/data/name")), is(false));
+    }
+
+    @Test
+    public void plan_doesNotIncludeQuestionsWhoseConstraintsUseTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/age"));
+
+        assertThat(plan.shouldRebuild(ref("/data/unrelated")), is(false));
+    }
+
+    @Test
+    public void plan_includesQuestionsWithItextOutputsOfTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/name"));
+
+        assertThat(plan.shouldRebuild(ref("/data/greeting")), is(true));
+        assertThat(plan.shouldRebuild(ref("/data/summary")), is(false));
+    }
+
+    @Test
+    public void plan_includesQuestionsWithItemsetsFilteredOnTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/state"));
+
+        assertThat(plan.shouldRebuild(ref("/data/city")), is(true));
+        assertThat(plan.mayChangeWhichQuestionsAreShown(), is(false));
+    }
+
+    @Test
+    public void plan_whenChangedAnswerIsUsedInRelevance_mayChangeWhichQuestionsAreShown() throws Exception {
+        QuestionRefreshPlanner planner = createPlanner();
+
+        assertThat(planner.plan(ref("/data/age")).mayChangeWhichQuestionsAreShown(), is(true));
+        assertThat(planner.plan(ref("/data/unrelated")).mayChangeWhichQuestionsAreShown(), is(false));
+    }
+
+    @Test
+    public void plan_includesQuestionsInGroupsWhoseRelevanceUsesTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/name"));
+
+        assertThat(plan.shouldRebuild(ref("/data/group/inside")), is(true));
+    }
+
+    @Test
+    public void plan_mayChangeWhichQuestionsAreShownIn_onlyIncludesTheAffectedQuestionsAndGroupsAndTheirParents() throws Exception {
+        QuestionRefreshPlanner.Plan namePlan = createPlanner().plan(ref("/data/name"));
+        assertThat(namePlan.mayChangeWhichQuestionsAreShownIn(ref("/data/group")), is(true));
+        assertThat(namePlan.mayChangeWhichQuestionsAreShownIn(ref("/data/group/inside")), is(true));
+        assertThat(namePlan.mayChangeWhichQuestionsAreShownIn(ref("/data")), is(true));
+        assertThat(namePlan.mayChangeWhichQuestionsAreShownIn(ref("/data/greeting")), is(false));
+        assertThat(namePlan.mayChangeWhichQuestionsAreShownIn(ref("/data/adult")), is(false));
+
+        QuestionRefreshPlanner.Plan agePlan = createPlanner().plan(ref("/data/age"));
+        assertThat(agePlan.mayChangeWhichQuestionsAreShownIn(ref("/data/adult")), is(true));
+        assertThat(agePlan.mayChangeWhichQuestionsAreShownIn(ref("/data/group")), is(false));
+    }
+
+    @Test
+    public void plan_includesQuestionsBoundWithBindAttributesToCalculationsOfTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/age"));
+
+        assertThat(plan.shouldRebuild(ref("/data/bound")), is(true));
+    }
+
+    @Test
+    public void plan_includesQuestionsSetWhenTheChangedAnswerChanges() throws Exception {
+        QuestionRefreshPlanner planner = createPlanner();
+
+        assertThat(planner.plan(ref("/data/set_from")).shouldRebuild(ref("/data/set_to")), is(true));
+        assertThat(planner.plan(ref("/data/set_to")).shouldRebuild(ref("/data/set_from")), is(false));
+    }
+
+    @Test
+    public void plan_includesQuestionsWithChoiceLabelOutputsOfTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/name"));
+
+        assertThat(plan.shouldRebuild(ref("/data/choice")), is(true));
+    }
+
+    @Test
+    public void plan_includesQuestionsInGroupsWithLabelOutputsOfTheChangedAnswer() throws Exception {
+        QuestionRefreshPlanner.Plan plan = createPlanner().plan(ref("/data/age"));
+
+        assertThat(plan.shouldRebuild(ref("/data/section/section_question")), is(true));
+        assertThat(plan.mayChangeWhichQuestionsAreShownIn(ref("/data/section")), is(false));
+    }
+
+    @Test
+    public void fromFormXml_whenBodyHasAnElementThatIsNotRead_returnsNull() throws Exception {
+        String form = FORM.replace("<h:body>", "<h:body><h:p>Note</h:p>");
+
+        assertThat(QuestionRefreshPlanner.fromFormXml(new StringReader(form)), is(nullValue()));
+    }
+
+    @Test
+    public void fromFormXml_whenAnActionIsTriggeredByAnotherEvent_returnsNull() throws Exception {
+        String form = FORM.replace("event=\"xforms-value-changed\"", "event=\"xforms-focus\"");
+
+        assertThat(QuestionRefreshPlanner.fromFormXml(new StringReader(form)), is(nullValue()));
+    }
+
+    @Test
+    public void fromFormXml_whenAQuestionUsesABindThatDoesNotExist_returnsNull() throws Exception {
+        String form = FORM.replace("<input bind=\"bound_bind\">", "<input bind=\"missing\">");
+
+        assertThat(QuestionRefreshPlanner.fromFormXml(new StringReader(form)), is(nullValue()));
+    }
+
+    @Test
+    public void fromFormXml_whenAnExpressionCannotBeParsed_returnsNull() throws Exception {
+        String form = FORM.replace("calculate=\"/data/age * 2\"", "calculate=\"/data/age * \"");
+
+        assertThat(QuestionRefreshPlanner.fromFormXml(new StringReader(form)), is(nullValue()));
+    }
+
+    @Test
+    public void readExternal_returnsPlannerThatPlansTheSameAsTheOneWritten() throws Exception {
+        PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+        PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            createPlanner().writeExternal(out);
+        }
+        QuestionRefreshPlanner planner = QuestionRefreshPlanner.readExternal(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), ExtUtil.defaultPrototypes());
+
+        QuestionRefreshPlanner.Plan agePlan = planner.plan(ref("/data/age"));
+        assertThat(agePlan.shouldRebuild(ref("/data/summary")), is(true));
+        assertThat(agePlan.shouldRebuild(ref("/data/unrelated")), is(false));
+        assertThat(agePlan.mayChangeWhichQuestionsAreShown(), is(true));
+
+        assertThat(planner.plan(ref("/data/state")).shouldRebuild(ref("/data/city")), is(true));
+        assertThat(planner.plan(ref("/data/name")).shouldRebuild(ref("/data/group/inside")), is(true));
+    }
+
+    private QuestionRefreshPlanner createPlanner() throws Exception {
+        return QuestionRefreshPlanner.fromFormXml(new StringReader(FORM));
+    }
+
+    private static TreeReference ref(String xpath) {
+        return XPathReference.getPathExpr(xpath).getReference();
+    }
+}
@@ -0,0 +1,386 @@
+package org.odk.collect.android.nexus_view;
+
+import android.widget.FrameLayout;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.javarosa.core.model.Constants;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.QuestionDef;
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.form.api.FormEntryPrompt;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.formentry.questions.QuestionDetails;
+import org.odk.collect.android.support.MockFormEntryPromptBuilder;
+import org.odk.collect.android.support.TestScreenContextActivity;
+import org.odk.collect.android.widgets.QuestionWidget;
+import org.odk.collect.android.widgets.TriggerWidget;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.odk.collect.android.widgets.support.QuestionWidgetHelpers.widgetTestActivity;
+
+@RunWith(RobolectricTestRunner.class)
+public class QuestionsAdapterTest {
+
+    private final List<FormEntryPrompt> createdFor = new ArrayList<>();
+    private final QuestionsAdapter.AnswerSaver answerSaver = mock(QuestionsAdapter.AnswerSaver.class);
+
+    private TestScreenContextActivity activity;
+    private FrameLayout parent;
+
+    @Before
+    public void setup() {
+        activity = widgetTestActivity();
+        parent = new FrameLayout(activity);
+    }
+
+    @Test
+    public void getItemViewType_isTheSameForQuestionsThatGetTheSameKindOfWidget() {
+        FormEntryPrompt text1 = prompt(Constants.CONTROL_INPUT, Constants.DATATYPE_TEXT, null);
+        FormEntryPrompt text2 = prompt(Constants.CONTROL_INPUT, Constants.DATATYPE_TEXT, null);
+        FormEntryPrompt number = prompt(Constants.CONTROL_INPUT, Constants.DATATYPE_INTEGER, null);
+        FormEntryPrompt multiline = prompt(Constants.CONTROL_INPUT, Constants.DATATYPE_TEXT, "multiline");
+        FormEntryPrompt select = prompt(Constants.CONTROL_SELECT_ONE, Constants.DATATYPE_CHOICE, null);
+
+        QuestionsAdapter adapter = createAdapter(asList(text1, text2, number, multiline, select));
+
+        assertThat(adapter.getItemViewType(0), equalTo(adapter.getItemViewType(1)));
+        assertThat(adapter.getItemViewType(2), not(equalTo(adapter.getItemViewType(0))));
+        assertThat(adapter.getItemViewType(3), not(equalTo(adapter.getItemViewType(0))));
+        assertThat(adapter.getItemViewType(4), not(equalTo(adapter.getItemViewType(0))));
+    }
+
+    @Test
+    public void whenAWidgetIsRecycled_itsAnswerIsSavedAndKept() {
+        FormEntryPrompt prompt = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 0);
+        ((TriggerWidget) holder.getWidget()).getCheckBox().setChecked(true);
+        adapter.onViewRecycled(holder);
+
+        assertThat(holder.getWidget(), nullValue());
+        verify(answerSaver).saveAnswer(eq(prompt.getIndex()), any(IAnswerData.class));
+        assertThat(adapter.getAnswers().get(prompt.getIndex()).getDisplayText(), equalTo("OK"));
+    }
+
+    @Test
+    public void whenARecycledQuestionIsBoundAgain_reusesItsWidget() {
+        FormEntryPrompt prompt = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 0);
+        QuestionWidget widget = holder.getWidget();
+        ((TriggerWidget) widget).getCheckBox().setChecked(true);
+        adapter.onViewRecycled(holder);
+
+        QuestionsAdapter.ViewHolder newHolder = bind(adapter, 0);
+        assertThat(createdFor.size(), is(1));
+        assertThat(newHolder.getWidget(), is(widget));
+        assertThat(adapter.getAnswers().get(prompt.getIndex()).getDisplayText(), equalTo("OK"));
+    }
+
+    @Test
+    public void whenMoreWidgetsThanAreKeptAreRecycled_theOldestAreBuiltAgain() {
+        List<FormEntryPrompt> prompts = new ArrayList<>();
+        for (int i = 0; i <= QuestionsAdapter.MAX_DETACHED_WIDGETS; i++) {
+            prompts.add(prompt());
+        }
+        QuestionsAdapter adapter = createAdapter(prompts);
+
+        for (int i = 0; i < prompts.size(); i++) {
+            adapter.onViewRecycled(bind(adapter, i));
+        }
+
+        QuestionsAdapter.ViewHolder newest = bind(adapter, prompts.size() - 1);
+        QuestionsAdapter.ViewHolder oldest = bind(adapter, 0);
+        assertThat(createdFor.size(), is(prompts.size() + 1));
+        assertThat(createdFor.get(createdFor.size() - 1), is(prompts.get(0)));
+        assertThat(newest.getWidget().getFormEntryPrompt(), is(prompts.get(prompts.size() - 1)));
+        assertThat(oldest.getWidget().getFormEntryPrompt(), is(prompts.get(0)));
+    }
+
+    @Test
+    public void getAnswers_returnsAnswersOfShownQuestionsInFormOrder() {
+        FormEntryPrompt prompt1 = prompt();
+        FormEntryPrompt prompt2 = prompt();
+        FormEntryPrompt neverShown = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt1, prompt2, neverShown));
+
+        QuestionsAdapter.ViewHolder holder2 = bind(adapter, 1);
+        ((TriggerWidget) holder2.getWidget()).getCheckBox().setChecked(true);
+        QuestionsAdapter.ViewHolder holder1 = bind(adapter, 0);
+        adapter.onViewRecycled(holder1);
+
+        Map<FormIndex, IAnswerData> answers = adapter.getAnswers();
+        assertThat(new ArrayList<>(answers.keySet()), contains(prompt1.getIndex(), prompt2.getIndex()));
+        assertThat(answers.get(prompt1.getIndex()), nullValue());
+        assertThat(answers.get(prompt2.getIndex()).getDisplayText(), equalTo("OK"));
+    }
+
+    @Test
+    public void whenRecycledWidgetIsNoLongerShown_itsAnswerIsNotSaved() {
+        FormEntryPrompt prompt1 = prompt();
+        FormEntryPrompt prompt2 = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt1, prompt2));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 1);
+        adapter.updatePrompts(asList(prompt1));
+        adapter.onViewRecycled(holder);
+
+        verify(answerSaver, never()).saveAnswer(any(), any());
+        assertThat(adapter.getAnswers().containsKey(prompt2.getIndex()), is(false));
+    }
+
+    @Test
+    public void updatePrompts_whenAShownQuestionChanged_rebuildsItsWidgetOnNextBind() {
+        FormEntryPrompt prompt = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 0);
+        QuestionWidget oldWidget = holder.getWidget();
+
+        FormEntryPrompt recalculated = walkedAgain(prompt);
+        when(recalculated.getAnswerText()).thenReturn("recalculated");
+        adapter.updatePrompts(asList(recalculated));
+        adapter.onBindViewHolder(holder, 0);
+
+        assertThat(createdFor, contains(prompt, recalculated));
+        assertThat(holder.getWidget(), not(oldWidget));
+    }
+
+    @Test
+    public void updatePrompts_whenNothingChanged_keepsWidgets() {
+        FormEntryPrompt prompt = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 0);
+        QuestionWidget oldWidget = holder.getWidget();
+
+        adapter.updatePrompts(asList(walkedAgain(prompt)));
+        adapter.onBindViewHolder(holder, 0);
+
+        assertThat(createdFor.size(), is(1));
+        assertThat(holder.getWidget(), is(oldWidget));
+    }
+
+    @Test
+    public void updatePrompts_whenARecycledQuestionChanged_buildsItsWidgetAgain() {
+        FormEntryPrompt prompt = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt));
+
+        adapter.onViewRecycled(bind(adapter, 0));
+
+        FormEntryPrompt recalculated = walkedAgain(prompt);
+        when(recalculated.getAnswerText()).thenReturn("recalculated");
+        adapter.updatePrompts(asList(recalculated));
+        bind(adapter, 0);
+
+        assertThat(createdFor, contains(prompt, recalculated));
+    }
+
+    @Test
+    public void updatePrompts_whenARecycledQuestionIsHiddenAndShownAgain_buildsItsWidgetAgain() {
+        FormEntryPrompt prompt1 = prompt();
+        FormEntryPrompt prompt2 = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt1, prompt2));
+
+        adapter.onViewRecycled(bind(adapter, 1));
+
+        adapter.updatePrompts(asList(prompt1));
+        adapter.updatePrompts(asList(prompt1, prompt2));
+        bind(adapter, 1);
+
+        assertThat(createdFor, contains(prompt2, prompt2));
+    }
+
+    @Test
+    public void markUpToDate_stopsTheNextUpdateFromRebuildingTheWidget() {
+        FormEntryPrompt prompt = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 0);
+        QuestionWidget oldWidget = holder.getWidget();
+
+        // The widget's answer was saved into the form so the form now shows what the widget does
+        when(prompt.getAnswerText()).thenReturn("OK");
+        adapter.markUpToDate(prompt.getIndex());
+
+        FormEntryPrompt walkedAgain = walkedAgain(prompt);
+        when(walkedAgain.getAnswerText()).thenReturn("OK");
+        adapter.updatePrompts(asList(walkedAgain));
+        adapter.onBindViewHolder(holder, 0);
+
+        assertThat(createdFor.size(), is(1));
+        assertThat(holder.getWidget(), is(oldWidget));
+    }
+
+    @Test
+    public void refreshQuestions_rebuildsMatchingBoundWidgets_andDropsKeptAnswersAndWidgetsOfMatchingUnboundOnes() {
+        FormEntryPrompt prompt1 = prompt();
+        FormEntryPrompt prompt2 = prompt();
+        FormEntryPrompt prompt3 = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt1, prompt2, prompt3));
+
+        QuestionsAdapter.ViewHolder holder1 = bind(adapter, 0);
+        QuestionsAdapter.ViewHolder holder2 = bind(adapter, 1);
+        QuestionsAdapter.ViewHolder holder3 = bind(adapter, 2);
+        ((TriggerWidget) holder3.getWidget()).getCheckBox().setChecked(true);
+        adapter.onViewRecycled(holder3);
+
+        QuestionWidget widget2 = holder2.getWidget();
+        adapter.refreshQuestions(index -> index != prompt2.getIndex());
+        adapter.onBindViewHolder(holder1, 0);
+        adapter.onBindViewHolder(holder2, 1);
+
+        assertThat(createdFor, contains(prompt1, prompt2, prompt3, prompt1));
+        assertThat(holder2.getWidget(), is(widget2));
+        assertThat(adapter.getAnswers().containsKey(prompt3.getIndex()), is(false));
+
+        bind(adapter, 2);
+        assertThat(createdFor, contains(prompt1, prompt2, prompt3, prompt1, prompt3));
+    }
+
+    @Test
+    public void changedRanges_findsTheRunsOfPromptsThatAreNotInBothLists() {
+        FormEntryPrompt a = prompt();
+        FormEntryPrompt b = prompt();
+        FormEntryPrompt c = prompt();
+        FormEntryPrompt d = prompt();
+        FormEntryPrompt e = prompt();
+        FormEntryPrompt x = prompt();
+        FormEntryPrompt y = prompt();
+
+        List<QuestionsAdapter.ChangedRange> ranges = QuestionsAdapter.changedRanges(asList(a, b, c, d, e), asList(a, x, c, e, y));
+
+        assertThat(ranges, contains(
+                new QuestionsAdapter.ChangedRange(1, 2, 1, 2),
+                new QuestionsAdapter.ChangedRange(3, 4, 3, 3),
+                new QuestionsAdapter.ChangedRange(5, 5, 4, 5)
+        ));
+    }
+
+    @Test
+    public void changedRanges_whenNoPromptsAreReused_returnsOneRangeForEverything() {
+        List<QuestionsAdapter.ChangedRange> ranges = QuestionsAdapter.changedRanges(asList(prompt(), prompt()), asList(prompt(), prompt(), prompt()));
+
+        assertThat(ranges, contains(new QuestionsAdapter.ChangedRange(0, 2, 0, 3)));
+    }
+
+    @Test
+    public void updatePrompts_dispatchesUpdatesForEachChangedRange() {
+        FormEntryPrompt prompt1 = prompt();
+        FormEntryPrompt prompt2 = prompt();
+        FormEntryPrompt prompt3 = prompt();
+        FormEntryPrompt prompt4 = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(prompt1, prompt2, prompt3));
+
+        List<String> updates = new ArrayList<>();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updates.add("inserted " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updates.add("removed " + positionStart + " " + itemCount);
+            }
+        });
+
+        adapter.updatePrompts(asList(prompt1, prompt3, prompt4));
+
+        assertThat(updates, contains("inserted 3 1", "removed 1 1"));
+        assertThat(adapter.getItemCount(), is(3));
+    }
+
+    @Test
+    public void updatePrompts_doesNotCompareReusedPrompts() {
+        FormEntryPrompt reused = prompt();
+        FormEntryPrompt replaced = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(reused, replaced));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 0);
+        QuestionWidget widget = holder.getWidget();
+
+        clearInvocations(reused);
+        adapter.updatePrompts(asList(reused, prompt()));
+        adapter.onBindViewHolder(holder, 0);
+
+        verify(reused, never()).getAnswerText();
+        assertThat(holder.getWidget(), is(widget));
+    }
+
+    @Test
+    public void updatePrompts_whenAWalkedAgainQuestionChanged_rebuildsItsWidgetOnNextBind() {
+        FormEntryPrompt reused = prompt();
+        FormEntryPrompt walked = prompt();
+        QuestionsAdapter adapter = createAdapter(asList(reused, walked));
+
+        QuestionsAdapter.ViewHolder holder = bind(adapter, 1);
+
+        FormEntryPrompt walkedAgain = walkedAgain(walked);
+        when(walkedAgain.getAnswerText()).thenReturn("recalculated");
+        adapter.updatePrompts(asList(reused, walkedAgain));
+        adapter.onBindViewHolder(holder, 1);
+
+        assertThat(createdFor, contains(walked, walkedAgain));
+    }
+
+    private QuestionsAdapter createAdapter(List<FormEntryPrompt> prompts) {
+        return new QuestionsAdapter(prompts, prompt -> {
+            createdFor.add(prompt);
+            return new TriggerWidget(activity, new QuestionDetails(prompt, "formAnalyticsID"));
+        }, answerSaver);
+    }
+
+    private QuestionsAdapter.ViewHolder bind(QuestionsAdapter adapter, int position) {
+        QuestionsAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, adapter.getItemViewType(position));
+        adapter.onBindViewHolder(holder, position);
+        return holder;
+    }
+
+    /**
+     * @return a new prompt for the same question, as if that part of the form had been walked
+     * again. Prompts that are the same objects are never compared by updatePrompts.
+     */
+    private static FormEntryPrompt walkedAgain(FormEntryPrompt prompt) {
+        FormEntryPrompt walkedAgain = prompt();
+        when(walkedAgain.getIndex()).thenReturn(prompt.getIndex());
+        return walkedAgain;
+    }
+
+    private static FormEntryPrompt prompt() {
+        return prompt(Constants.CONTROL_TRIGGER, Constants.DATATYPE_TEXT, null);
+    }
+
+    private static FormEntryPrompt prompt(int controlType, int dataType, String appearance) {
+        FormEntryPrompt prompt = new MockFormEntryPromptBuilder()
+                .withControlType(controlType)
+                .withAppearance(appearance)
+                .withQuestion(mock(QuestionDef.class))
+                .build();
+        when(prompt.getDataType()).thenReturn(dataType);
+        return prompt;
+    }
+}
@@ -0,0 +1,93 @@
+package org.odk.collect.android.nexus_view;
+
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.form.api.FormEntryPrompt;
+import org.javarosa.model.xform.XPathReference;
+import org.junit.Test;
+import org.odk.collect.android.logic.QuestionRefreshPlanner;
+import org.odk.collect.android.support.MockFormEntryPromptBuilder;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+
+public class ReusablePromptsTest {
+
+    private static final String FORM = "<?xml version=\"1.0\"?>\n"
+            + "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\">\n"
+            + "    <h:head>\n"
+            + "        <h:title>Reuse</h:title>\n"
+            + "        <model>\n"
+            + "            <instance>\n"
+            + "                <data id=\"reuse\">\n"
+            + "                    <name/><age/>\n"
+            + "                    <details><email/><phone/></details>\n"
+            + "                    <adult><job/></adult>\n"
+            + "                </data>\n"
+            + "            </instance>\n"
+            + "            <bind nodeset=\"/data/adult\" relevant=\"/data/age &gt;= 18\"/>\n"
+            + "        </model>\n"
+            + "    </h:head>\n"
+            + "    <h:body>\n"
+            + "        <input ref=\"/data/name\"><label>Name</label></input>\n"
+            + "        <input ref=\"/data/age\"><label>Age</label></input>\n"
+            + "        <group ref=\"/data/details\">\n"
+            + "            <input ref=\"email\"><label>Email</label></input>\n"
+            + "            <input ref=\"phone\"><label>Phone</label></input>\n"
+            + "        </group>\n"
+            + "        <group ref=\"/data/adult\">\n"
+            + "            <input ref=\"job\"><label>Job</label></input>\n"
+            + "        </group>\n"
+            + "    </h:body>\n"
+            + "</h:html>";
+
+    private final FormEntryPrompt name = prompt("/data/name");
+    private final FormEntryPrompt age = prompt("/data/age");
+    private final FormEntryPrompt email = prompt("/data/details/email");
+    private final FormEntryPrompt phone = prompt("/data/details/phone");
+    private final List<FormEntryPrompt> shown = asList(name, age, email, phone);
+
+    @Test
+    public void canReuse_isFalseForQuestionsAndGroupsWhoseRelevanceCanHaveChanged() throws Exception {
+        ReusablePrompts reusablePrompts = new ReusablePrompts(shown, plan("/data/age"));
+
+        assertThat(reusablePrompts.canReuse(ref("/data/adult")), is(false));
+        assertThat(reusablePrompts.canReuse(ref("/data/name")), is(true));
+        assertThat(reusablePrompts.canReuse(ref("/data/details")), is(true));
+    }
+
+    @Test
+    public void get_returnsTheShownQuestionsInAGroupInOrder() throws Exception {
+        ReusablePrompts reusablePrompts = new ReusablePrompts(shown, plan("/data/age"));
+
+        assertThat(reusablePrompts.get(ref("/data/details")), contains(email, phone));
+        assertThat(reusablePrompts.get(ref("/data/name")), contains(name));
+    }
+
+    @Test
+    public void get_whenNothingIsShownForAGroup_returnsNothing() throws Exception {
+        ReusablePrompts reusablePrompts = new ReusablePrompts(shown, plan("/data/age"));
+
+        assertThat(reusablePrompts.get(ref("/data/adult")), is(empty()));
+    }
+
+    private static QuestionRefreshPlanner.Plan plan(String changedRef) throws Exception {
+        return QuestionRefreshPlanner.fromFormXml(new StringReader(FORM)).plan(ref(changedRef));
+    }
+
+    private static FormEntryPrompt prompt(String ref) {
+        FormEntryPrompt prompt = new MockFormEntryPromptBuilder().build();
+        when(prompt.getIndex().getReference()).thenReturn(ref(ref));
+        return prompt;
+    }
+
+    private static TreeReference ref(String xpath) {
+        return XPathReference.getPathExpr(xpath).getReference();
+    }
+}
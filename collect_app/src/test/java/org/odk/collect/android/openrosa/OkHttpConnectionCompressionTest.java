@@ -0,0 +1,258 @@
+package org.odk.collect.android.openrosa;
+
+import androidx.annotation.NonNull;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.odk.collect.android.openrosa.okhttp.OkHttpConnection;
+import org.odk.collect.android.openrosa.okhttp.OkHttpOpenRosaServerClientProvider;
+import org.odk.collect.android.openrosa.support.MockWebServerRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class OkHttpConnectionCompressionTest {
+
+    @Rule
+    public MockWebServerRule mockWebServerRule = new MockWebServerRule();
+
+    private MockWebServer mockWebServer;
+    private File submissionFile;
+    private File csvAttachment;
+    private File imageAttachment;
+
+    @Before
+    public void setup() throws Exception {
+        mockWebServer = mockWebServerRule.start();
+
+        StringBuilder xml = new StringBuilder("<data>");
+        StringBuilder csv = new StringBuilder("name,label\n");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<repeat><name>name").append(i).append("</name><fruit>banana</fruit></repeat>");
+            csv.append("name").append(i).append(",Banana\n");
+        }
+        xml.append("</data>");
+
+        byte[] image = new byte[10000];
+        new Random(0).nextBytes(image);
+
+        submissionFile = createTempFile(xml.toString().getBytes(StandardCharsets.UTF_8), ".xml");
+        csvAttachment = createTempFile(csv.toString().getBytes(StandardCharsets.UTF_8), ".csv");
+        imageAttachment = createTempFile(image, ".jpg");
+    }
+
+    @Test
+    public void whenCompressionIsOn_andServerAcceptsGzip_sendsFewerBytes() throws Exception {
+        long uncompressedSize = upload(false, true).getBodySize();
+        long compressedSize = upload(true, true).getBodySize();
+
+        assertThat(compressedSize, lessThan(uncompressedSize / 3));
+    }
+
+    @Test
+    public void whenCompressionIsOn_andServerAcceptsGzip_gzipsTheWholeRequest() throws Exception {
+        RecordedRequest request = upload(true, true);
+        assertThat(request.getHeader("Content-Encoding"), equalTo("gzip"));
+
+        List<Part> parts = getParts(request.getHeader("Content-Type"), gunzip(request.getBody().readByteArray()));
+        assertThat(parts.get(0).headers, containsString("name=\"xml_submission_file\""));
+        assertThat(parts.get(0).headers, not(containsString("Content-Encoding")));
+        assertThat(parts.get(0).content, equalTo(read(submissionFile)));
+        assertThat(parts.get(1).content, equalTo(read(csvAttachment)));
+        assertThat(parts.get(2).content, equalTo(read(imageAttachment)));
+    }
+
+    @Test
+    public void whenCompressionIsOn_andServerAcceptsGzip_sendsTheCompressedLengthInsteadOfChunking() throws Exception {
+        RecordedRequest request = upload(true, true);
+
+        assertThat(request.getHeader("Transfer-Encoding"), nullValue());
+        assertThat(request.getHeader("Content-Length"), equalTo(String.valueOf(request.getBodySize())));
+    }
+
+    @Test
+    public void whenCompressionIsOn_andRequestIsMostlyMedia_sendsItAsIs() throws Exception {
+        byte[] image = new byte[500000];
+        new Random(0).nextBytes(image);
+        imageAttachment = createTempFile(image, ".jpg");
+
+        RecordedRequest request = upload(true, true);
+
+        assertThat(request.getHeader("Content-Encoding"), nullValue());
+        assertThat(getParts(request).get(2).content, equalTo(image));
+    }
+
+    @Test
+    public void whenCompressionIsOn_andServerDoesNotAcceptGzip_sendsRequestAsIs() throws Exception {
+        RecordedRequest request = upload(true, false);
+
+        assertThat(request.getHeader("Content-Encoding"), nullValue());
+        List<Part> parts = getParts(request);
+        assertThat(parts.get(0).content, equalTo(read(submissionFile)));
+        assertThat(parts.get(1).content, equalTo(read(csvAttachment)));
+    }
+
+    @Test
+    public void whenCompressionIsOn_andOnlyAnotherServerOnTheSameHostAcceptsGzip_sendsRequestAsIs() throws Exception {
+        OkHttpConnection subject = createSubject(true);
+        MockWebServer otherServer = mockWebServerRule.start();
+        otherServer.enqueue(new MockResponse().setResponseCode(204).addHeader("Accept-Encoding", "gzip"));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI otherUri = otherServer.url("/submission").uri();
+        URI uri = mockWebServer.url("/submission").uri();
+        assertThat(otherUri.getHost(), equalTo(uri.getHost()));
+
+        subject.executeHeadRequest(otherUri, null);
+        subject.uploadSubmissionFile(asList(csvAttachment, imageAttachment), submissionFile, uri, null, 10000000L);
+
+        assertThat(mockWebServer.takeRequest().getHeader("Content-Encoding"), nullValue());
+    }
+
+    @Test
+    public void whenCompressionIsOn_andServerStopsAcceptingGzip_sendsRequestAsIs() throws Exception {
+        OkHttpConnection subject = createSubject(true);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(204).addHeader("Accept-Encoding", "gzip"));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/submission").uri();
+        subject.executeHeadRequest(uri, null);
+        subject.executeHeadRequest(uri, null);
+        subject.uploadSubmissionFile(asList(csvAttachment, imageAttachment), submissionFile, uri, null, 10000000L);
+
+        mockWebServer.takeRequest();
+        mockWebServer.takeRequest();
+        assertThat(mockWebServer.takeRequest().getHeader("Content-Encoding"), nullValue());
+    }
+
+    @Test
+    public void whenCompressionIsOff_sendsRequestAsIs() throws Exception {
+        RecordedRequest request = upload(false, true);
+
+        assertThat(request.getHeader("Content-Encoding"), nullValue());
+        assertThat(getParts(request).get(0).content, equalTo(read(submissionFile)));
+    }
+
+    private RecordedRequest upload(boolean compress, boolean serverAcceptsGzip) throws Exception {
+        OkHttpConnection subject = createSubject(compress);
+
+        MockResponse headResponse = new MockResponse().setResponseCode(204);
+        if (serverAcceptsGzip) {
+            headResponse.addHeader("Accept-Encoding", "gzip");
+        }
+        mockWebServer.enqueue(headResponse);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/submission").uri();
+        subject.executeHeadRequest(uri, null);
+        subject.uploadSubmissionFile(asList(csvAttachment, imageAttachment), submissionFile, uri, null, 10000000L);
+
+        mockWebServer.takeRequest();
+        return mockWebServer.takeRequest();
+    }
+
+    private static OkHttpConnection createSubject(boolean compress) {
+        return new OkHttpConnection(
+                new OkHttpOpenRosaServerClientProvider(new OkHttpClient()),
+                new ExtensionContentTypeMapper(),
+                "Test Agent",
+                () -> compress
+        );
+    }
+
+    private static List<Part> getParts(RecordedRequest request) {
+        return getParts(request.getHeader("Content-Type"), request.getBody().readByteArray());
+    }
+
+    private static List<Part> getParts(String contentType, byte[] body) {
+        String boundary = MediaType.parse(contentType).parameter("boundary");
+
+        // ISO-8859-1 maps every byte to one char so binary part content survives the round trip
+        String[] split = new String(body, StandardCharsets.ISO_8859_1).split("--" + boundary);
+
+        List<Part> parts = new ArrayList<>();
+        for (String part : Arrays.copyOfRange(split, 1, split.length - 1)) {
+            int headersEnd = part.indexOf("\r\n\r\n");
+            parts.add(new Part(
+                    part.substring(2, headersEnd),
+                    part.substring(headersEnd + 4, part.length() - 2).getBytes(StandardCharsets.ISO_8859_1)
+            ));
+        }
+
+        return parts;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    private static File createTempFile(byte[] content, String extension) throws IOException {
+        File file = File.createTempFile("tempfile", extension);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content);
+        }
+        return file;
+    }
+
+    private static class Part {
+
+        final String headers;
+        final byte[] content;
+
+        Part(String headers, byte[] content) {
+            this.headers = headers;
+            this.content = content;
+        }
+    }
+
+    private static class ExtensionContentTypeMapper implements OpenRosaHttpInterface.FileToContentTypeMapper {
+
+        @NonNull
+        @Override
+        public String map(String fileName) {
+            if (fileName.endsWith(".xml")) {
+                return "text/xml";
+            } else if (fileName.endsWith(".csv")) {
+                return "text/csv";
+            } else {
+                return "image/jpeg";
+            }
+        }
+    }
+}
@@ -243,6 +243,93 @@ public abstract class OpenRosaPostRequestTest {
         assertThat(response.getResponseCode(), equalTo(500));
     }
 
+    @Test
+    public void whenARequestFailsAfterEarlierOnesWereAcknowledged_nextUploadResumesFromTheFailedRequest() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        File attachment1 = createTempFile("blah blah blah");
+        File attachment2 = createTempFile("blah2 blah2 blah2");
+        File submissionFile = createTempFile("<node>content</node>");
+        subject.uploadSubmissionFile(asList(attachment1, attachment2), submissionFile, uri, null, 0);
+        HttpPostResult response = subject.uploadSubmissionFile(asList(attachment1, attachment2), submissionFile, uri, null, 0);
+
+        assertThat(response.getResponseCode(), equalTo(201));
+        assertThat(mockWebServer.getRequestCount(), equalTo(3));
+
+        mockWebServer.takeRequest();
+        mockWebServer.takeRequest();
+        List<String[]> parts = splitMultiPart(mockWebServer.takeRequest());
+        assertThat(parts.size(), equalTo(2));
+        assertThat(parts.get(0)[1], containsString("name=\"xml_submission_file\""));
+        assertThat(parts.get(1)[1], containsString("name=\"" + attachment2.getName() + "\""));
+    }
+
+    @Test
+    public void whenUploadCompletes_nextUploadStartsFromTheFirstRequest() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        File attachment1 = createTempFile("blah blah blah");
+        File attachment2 = createTempFile("blah2 blah2 blah2");
+        File submissionFile = createTempFile("<node>content</node>");
+        subject.uploadSubmissionFile(asList(attachment1, attachment2), submissionFile, uri, null, 0);
+        subject.uploadSubmissionFile(asList(attachment1, attachment2), submissionFile, uri, null, 0);
+
+        assertThat(mockWebServer.getRequestCount(), equalTo(4));
+        assertThat(SubmissionUploadState.getStateFile(submissionFile).exists(), equalTo(false));
+
+        mockWebServer.takeRequest();
+        mockWebServer.takeRequest();
+        List<String[]> parts = splitMultiPart(mockWebServer.takeRequest());
+        assertThat(parts.get(1)[1], containsString("name=\"" + attachment1.getName() + "\""));
+    }
+
+    @Test
+    public void whenAttachmentsChangeAfterAFailedRequest_nextUploadStartsFromTheFirstRequest() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        File attachment1 = createTempFile("blah blah blah");
+        File attachment2 = createTempFile("blah2 blah2 blah2");
+        File submissionFile = createTempFile("<node>content</node>");
+        subject.uploadSubmissionFile(asList(attachment1, attachment2), submissionFile, uri, null, 0);
+
+        File attachment3 = createTempFile("blah3 blah3 blah3");
+        subject.uploadSubmissionFile(asList(attachment1, attachment3), submissionFile, uri, null, 0);
+
+        mockWebServer.takeRequest();
+        mockWebServer.takeRequest();
+        List<String[]> parts = splitMultiPart(mockWebServer.takeRequest());
+        assertThat(parts.get(1)[1], containsString("name=\"" + attachment1.getName() + "\""));
+    }
+
+    @Test
+    public void whenARequestFails_recordsTheFailedAttempt() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        List<File> attachments = asList(createTempFile("blah blah blah"), createTempFile("blah2 blah2 blah2"));
+        File submissionFile = createTempFile("<node>content</node>");
+        subject.uploadSubmissionFile(attachments, submissionFile, uri, null, 0);
+
+        assertThat(SubmissionUploadState.getStateFile(submissionFile).exists(), equalTo(true));
+
+        SubmissionUploadState state = SubmissionUploadState.load(submissionFile, SubmissionUploadState.getPlan(attachments, submissionFile, uri, 0));
+        assertThat(state.getAcknowledgedRequests(), equalTo(1));
+        assertThat(state.getNextFileIndex(), equalTo(1));
+        assertThat(state.getFailedAttempts(), equalTo(1));
+    }
+
     private File createTempFile(String content) throws Exception {
         return createTempFile(content, ".tmp");
     }
@@ -0,0 +1,76 @@
+package org.odk.collect.android.openrosa;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class SubmissionUploadStateTest {
+
+    private static final URI URI = java.net.URI.create("https://example.com/submission");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getPlan_whenAnAttachmentIsReplacedByOneOfTheSameSize_changes() throws IOException {
+        File submissionFile = createFile("submission.xml", "<data/>");
+        File attachment = createFile("photo.jpg", "apple");
+        List<File> attachments = singletonList(attachment);
+        String plan = SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0);
+
+        writeFile(attachment, "pears");
+        assertThat(attachment.setLastModified(attachment.lastModified() + 60_000), is(true));
+
+        assertThat(SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0), not(plan));
+    }
+
+    @Test
+    public void getPlan_whenNothingChanges_isTheSame() throws IOException {
+        File submissionFile = createFile("submission.xml", "<data/>");
+        List<File> attachments = singletonList(createFile("photo.jpg", "apple"));
+
+        assertThat(SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0),
+                is(SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0)));
+    }
+
+    @Test
+    public void load_whenPlanChanged_startsFromTheBeginning() throws IOException {
+        File submissionFile = createFile("submission.xml", "<data/>");
+        File attachment = createFile("photo.jpg", "apple");
+        List<File> attachments = singletonList(attachment);
+
+        SubmissionUploadState.load(submissionFile, SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0))
+                .acknowledgeRequest(1, 100, 10);
+        assertThat(SubmissionUploadState.load(submissionFile, SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0))
+                .getNextFileIndex(), is(1));
+
+        assertThat(attachment.setLastModified(attachment.lastModified() + 60_000), is(true));
+
+        SubmissionUploadState state = SubmissionUploadState.load(submissionFile, SubmissionUploadState.getPlan(attachments, submissionFile, URI, 0));
+        assertThat(state.getNextFileIndex(), is(0));
+        assertThat(state.getAcknowledgedRequests(), is(0));
+    }
+
+    private File createFile(String name, String contents) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        writeFile(file, contents);
+        return file;
+    }
+
+    private static void writeFile(File file, String contents) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(contents.getBytes("UTF-8"));
+        }
+    }
+}
@@ -105,8 +105,10 @@ public class InMemFormsRepository implements FormsRepository {
 
             // Allows tests to override hash
             if (form.getMD5Hash() == null) {
-                String formFilePath = form.getFormFilePath();
-                String hash = FileUtils.getMd5Hash(new File(formFilePath));
+                File formFile = new File(form.getFormFilePath());
+                builder.formFileSize(formFile.length())
+                        .formFileLastModified(formFile.lastModified());
+                String hash = FileUtils.getMd5Hash(formFile);
                 builder.md5Hash(hash);
             }
 
@@ -116,6 +118,23 @@ public class InMemFormsRepository implements FormsRepository {
         }
     }
 
+    @Override
+    public void saveAll(@NotNull List<Form> formsToSave) {
+        List<Form> snapshot = new ArrayList<>(forms);
+        long idCounterSnapshot = idCounter;
+
+        try {
+            for (Form form : formsToSave) {
+                save(form);
+            }
+        } catch (RuntimeException e) {
+            forms.clear();
+            forms.addAll(snapshot);
+            idCounter = idCounterSnapshot;
+            throw e;
+        }
+    }
+
     @Override
     public void delete(Long id) {
         Optional<Form> formToRemove = forms.stream().filter(f -> f.getId().equals(id)).findFirst();
@@ -164,6 +183,19 @@ public class InMemFormsRepository implements FormsRepository {
         }
     }
 
+    @Override
+    public void updateFileFingerprint(Long id, long fileSize, long lastModified) {
+        Form form = forms.stream().filter(f -> f.getId().equals(id)).findFirst().orElse(null);
+
+        if (form != null) {
+            forms.remove(form);
+            forms.add(new Form.Builder(form)
+                    .formFileSize(fileSize)
+                    .formFileLastModified(lastModified)
+                    .build());
+        }
+    }
+
     private void deleteFilesForForm(Form form) {
         if (form.getFormFilePath() != null) {
             new File(form.getFormFilePath()).delete();
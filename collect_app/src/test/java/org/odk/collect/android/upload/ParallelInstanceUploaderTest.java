@@ -0,0 +1,141 @@
+package org.odk.collect.android.upload;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.instances.Instance;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+@RunWith(AndroidJUnit4.class)
+public class ParallelInstanceUploaderTest {
+
+    @Test
+    public void uploadAll_uploadsEveryInstanceWithNoMoreThanParallelismAtOnce() {
+        List<Instance> instances = createInstances(10);
+        List<Long> uploadedIds = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        ParallelInstanceUploader.Stats stats = new ParallelInstanceUploader(3).uploadAll(instances, instance -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            uploadedIds.add(instance.getId());
+            inFlight.decrementAndGet();
+            return true;
+        }, (position, total) -> { }, () -> false);
+
+        assertThat(uploadedIds, containsInAnyOrder(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L));
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(3));
+        assertThat(stats.getSubmissionCount(), is(10));
+    }
+
+    @Test
+    public void uploadAll_reportsEachStartedUploadOnce() {
+        List<Integer> positions = Collections.synchronizedList(new ArrayList<>());
+
+        new ParallelInstanceUploader(2).uploadAll(createInstances(4), instance -> true, (position, total) -> {
+            assertThat(total, is(4));
+            positions.add(position);
+        }, () -> false);
+
+        assertThat(positions, containsInAnyOrder(1, 2, 3, 4));
+    }
+
+    @Test
+    public void uploadAll_whenCancelled_doesNotStartRemainingUploads() {
+        AtomicInteger uploads = new AtomicInteger();
+
+        ParallelInstanceUploader.Stats stats = new ParallelInstanceUploader(1).uploadAll(createInstances(5),
+                instance -> {
+                    uploads.incrementAndGet();
+                    return true;
+                }, (position, total) -> { }, () -> uploads.get() >= 2);
+
+        assertThat(uploads.get(), is(2));
+        assertThat(stats.getSubmissionCount(), is(2));
+    }
+
+    @Test
+    public void uploadAll_whenAnUploadThrows_uploadsTheOthers() {
+        AtomicInteger uploads = new AtomicInteger();
+
+        ParallelInstanceUploader.Stats stats = new ParallelInstanceUploader(2).uploadAll(createInstances(3), instance -> {
+            if (instance.getId() == 1L) {
+                throw new IllegalStateException();
+            }
+            uploads.incrementAndGet();
+            return true;
+        }, (position, total) -> { }, () -> false);
+
+        assertThat(uploads.get(), is(2));
+        assertThat(stats.getSubmissionCount(), is(2));
+    }
+
+    @Test
+    public void uploadAll_onlyCountsSuccessfulUploads() throws IOException {
+        List<Instance> instances = new ArrayList<>();
+        for (long id = 0; id < 3; id++) {
+            instances.add(createInstanceWithFiles(id, "submission" + id, 100));
+        }
+
+        ParallelInstanceUploader.Stats stats = new ParallelInstanceUploader(2).uploadAll(instances,
+                instance -> instance.getId() != 1L, (position, total) -> { }, () -> false);
+
+        assertThat(stats.getSubmissionCount(), is(2));
+        assertThat(stats.getBytes(), is(200L));
+    }
+
+    @Test
+    public void uploadAll_countsTheSizeOfInstancesDeletedByTheirUpload() throws IOException {
+        Instance instance = createInstanceWithFiles(0, "submission", 100);
+
+        ParallelInstanceUploader.Stats stats = new ParallelInstanceUploader(1).uploadAll(Collections.singletonList(instance), uploaded -> {
+            File instanceDir = new File(uploaded.getAbsoluteInstanceFilePath()).getParentFile();
+            for (File file : instanceDir.listFiles()) {
+                file.delete();
+            }
+            return true;
+        }, (position, total) -> { }, () -> false);
+
+        assertThat(stats.getSubmissionCount(), is(1));
+        assertThat(stats.getBytes(), is(100L));
+    }
+
+    private static Instance createInstanceWithFiles(long id, String name, int size) throws IOException {
+        File instanceDir = new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.INSTANCES), name);
+        instanceDir.mkdirs();
+        File instanceFile = new File(instanceDir, name + ".xml");
+        try (FileOutputStream output = new FileOutputStream(instanceFile)) {
+            output.write(new byte[size]);
+        }
+
+        return new Instance.Builder().id(id).instanceFilePath(instanceFile.getAbsolutePath()).build();
+    }
+
+    private static List<Instance> createInstances(int count) {
+        List<Instance> instances = new ArrayList<>();
+        for (long id = 0; id < count; id++) {
+            instances.add(new Instance.Builder().id(id).build());
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,127 @@
+package org.odk.collect.android.utilities;
+
+import com.google.common.io.Files;
+
+import org.junit.Test;
+import org.odk.collect.android.exception.EncryptionException;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class EncryptionUtilsTest {
+
+    @Test
+    public void encryptFile_writesCiphertextThatDecryptsToOriginal_andReturnsPlaintextMd5() throws Exception {
+        SecureRandom random = new SecureRandom();
+        SecretKeySpec key = new SecretKeySpec(randomBytes(random, 32), EncryptionUtils.SYMMETRIC_ALGORITHM);
+        IvParameterSpec iv = new IvParameterSpec(randomBytes(random, EncryptionUtils.IV_BYTE_LENGTH));
+
+        // Larger than the encryption buffer and not a multiple of the block size
+        byte[] contents = randomBytes(random, 200 * 1024 + 7);
+        File plaintext = File.createTempFile("attachment", ".jpg");
+        plaintext.deleteOnExit();
+        FileUtils.write(plaintext, contents);
+        File encrypted = new File(plaintext.getParentFile(), plaintext.getName() + ".enc");
+        encrypted.deleteOnExit();
+
+        Cipher encryptCipher = Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM);
+        encryptCipher.init(Cipher.ENCRYPT_MODE, key, iv);
+        String md5Hash = EncryptionUtils.encryptFile(plaintext, encrypted, encryptCipher);
+
+        assertThat(md5Hash, is(FileUtils.getMd5Hash(plaintext)));
+
+        Cipher decryptCipher = Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM);
+        decryptCipher.init(Cipher.DECRYPT_MODE, key, iv);
+        byte[] decrypted = decryptCipher.doFinal(FileUtils.read(encrypted));
+        assertThat(Arrays.equals(decrypted, contents), equalTo(true));
+    }
+
+    @Test
+    public void encryptFiles_withParallelism_writesEncFilesThatDecrypt_andReturnsHashesInFileOrder() throws Exception {
+        SecureRandom random = new SecureRandom();
+        SecretKeySpec key = new SecretKeySpec(randomBytes(random, 32), EncryptionUtils.SYMMETRIC_ALGORITHM);
+        File dir = Files.createTempDir();
+
+        List<File> files = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        List<IvParameterSpec> ivs = new ArrayList<>();
+        List<Cipher> ciphers = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            byte[] fileContents = randomBytes(random, 100 * 1024 + i);
+            File file = new File(dir, "attachment" + i + ".jpg");
+            FileUtils.write(file, fileContents);
+
+            IvParameterSpec iv = new IvParameterSpec(randomBytes(random, EncryptionUtils.IV_BYTE_LENGTH));
+            Cipher cipher = Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+
+            files.add(file);
+            contents.add(fileContents);
+            ivs.add(iv);
+            ciphers.add(cipher);
+        }
+
+        List<String> md5Hashes = EncryptionUtils.encryptFiles(files, ciphers, 4);
+
+        assertThat(md5Hashes.size(), is(files.size()));
+        for (int i = 0; i < files.size(); i++) {
+            assertThat(md5Hashes.get(i), is(FileUtils.getMd5Hash(files.get(i))));
+
+            File encrypted = new File(dir, "attachment" + i + ".jpg.enc");
+            assertThat(encrypted.exists(), is(true));
+
+            Cipher decryptCipher = Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM);
+            decryptCipher.init(Cipher.DECRYPT_MODE, key, ivs.get(i));
+            byte[] decrypted = decryptCipher.doFinal(FileUtils.read(encrypted));
+            assertThat(Arrays.equals(decrypted, contents.get(i)), equalTo(true));
+        }
+    }
+
+    @Test
+    public void encryptFiles_withParallelism_whenAFileCannotBeEncrypted_throwsEncryptionExceptionForIt() throws Exception {
+        SecureRandom random = new SecureRandom();
+        SecretKeySpec key = new SecretKeySpec(randomBytes(random, 32), EncryptionUtils.SYMMETRIC_ALGORITHM);
+        File dir = Files.createTempDir();
+
+        List<File> files = new ArrayList<>();
+        List<Cipher> ciphers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            File file = new File(dir, "attachment" + i + ".jpg");
+            if (i != 2) {
+                FileUtils.write(file, randomBytes(random, 1024));
+            }
+
+            Cipher cipher = Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(randomBytes(random, EncryptionUtils.IV_BYTE_LENGTH)));
+
+            files.add(file);
+            ciphers.add(cipher);
+        }
+
+        try {
+            EncryptionUtils.encryptFiles(files, ciphers, 3);
+            fail();
+        } catch (EncryptionException e) {
+            assertThat(e.getMessage(), containsString("attachment2.jpg"));
+        }
+    }
+
+    private static byte[] randomBytes(SecureRandom random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
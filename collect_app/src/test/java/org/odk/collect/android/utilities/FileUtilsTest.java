@@ -315,4 +315,29 @@ public class FileUtilsTest {
         assertThat(FileUtils.simplifyScopedStoragePath("/storage/emulated/0/Android/data/org.odk.collect.android/files/layers"), is("/sdcard/Android/data/org.odk.collect.android/files/layers"));
         assertThat(FileUtils.simplifyScopedStoragePath("/storage/emulated/0/Android/data/org.odk.collect.android/files/layers/countries/countries-raster.mbtiles"), is("/sdcard/Android/data/org.odk.collect.android/files/layers/countries/countries-raster.mbtiles"));
     }
+
+    @Test
+    public void declaresExternalInstances_whenFormHasInstanceWithSrc_returnsTrue() throws IOException {
+        File form = writeForm("<h:html><h:head><model>\n"
+                + "<instance><data id=\"form\"/></instance>\n"
+                + "<instance id=\"fruits\"\n    src=\"jr://file-csv/fruits.csv\"/>\n"
+                + "</model></h:head></h:html>");
+        assertThat(FileUtils.declaresExternalInstances(form), is(true));
+    }
+
+    @Test
+    public void declaresExternalInstances_whenFormOnlyHasInternalInstances_returnsFalse() throws IOException {
+        File form = writeForm("<h:html><h:head><model>\n"
+                + "<instance><data id=\"form\"/></instance>\n"
+                + "<instance id=\"fruits\"><root><item><name>apple</name></item></root></instance>\n"
+                + "</model></h:head><h:body><input ref=\"/data/src\"/></h:body></h:html>");
+        assertThat(FileUtils.declaresExternalInstances(form), is(false));
+    }
+
+    private static File writeForm(String xml) throws IOException {
+        File form = File.createTempFile("form", ".xml");
+        form.deleteOnExit();
+        FileUtils.write(form, xml.getBytes("UTF-8"));
+        return form;
+    }
 }
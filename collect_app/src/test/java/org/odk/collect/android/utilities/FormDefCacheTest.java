@@ -0,0 +1,203 @@
+package org.odk.collect.android.utilities;
+
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.javarosa.model.xform.XFormsModule;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.odk.collect.android.BuildConfig;
+import org.odk.collect.android.logic.QuestionRefreshPlanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FormDefCacheTest {
+
+    private static final String FORM_XML = "<?xml version=\"1.0\"?>\n"
+            + "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\">\n"
+            + "    <h:head>\n"
+            + "        <h:title>Cached form</h:title>\n"
+            + "        <model>\n"
+            + "            <instance>\n"
+            + "                <data id=\"cached-form\">\n"
+            + "                    <name/>\n"
+            + "                </data>\n"
+            + "            </instance>\n"
+            + "            <bind nodeset=\"/data/name\" type=\"string\"/>\n"
+            + "        </model>\n"
+            + "    </h:head>\n"
+            + "    <h:body>\n"
+            + "        <input ref=\"/data/name\">\n"
+            + "            <label>Name</label>\n"
+            + "        </input>\n"
+            + "    </h:body>\n"
+            + "</h:html>";
+
+    private File cacheDir;
+
+    @Before
+    public void setup() throws IOException {
+        PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+        PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+        new XFormsModule().registerModule();
+
+        cacheDir = Files.createTempDirectory("formdef-cache").toFile();
+        cacheDir.deleteOnExit();
+    }
+
+    @Test
+    public void readCacheFile_returnsFormDefWrittenByWriteCacheFile() throws Exception {
+        FormDef formDef = XFormUtils.getFormFromInputStream(new ByteArrayInputStream(FORM_XML.getBytes("UTF-8")));
+        File cacheFile = new File(cacheDir, "form.formdef");
+
+        FormDefCache.writeCacheFile(formDef, cacheFile);
+
+        FormDef cachedFormDef = FormDefCache.readCacheFile(cacheFile);
+        assertThat(cachedFormDef.getTitle(), is("Cached form"));
+        assertThat(cachedFormDef.getMainInstance().getRoot().getAttributeValue(null, "id"), is("cached-form"));
+    }
+
+    @Test
+    public void readCacheFile_whenPayloadIsCorrupt_returnsNullWithoutDeserializing() throws Exception {
+        FormDef formDef = XFormUtils.getFormFromInputStream(new ByteArrayInputStream(FORM_XML.getBytes("UTF-8")));
+        File cacheFile = new File(cacheDir, "form.formdef");
+        FormDefCache.writeCacheFile(formDef, cacheFile);
+
+        byte[] contents = FileUtils.read(cacheFile);
+        contents[contents.length - 1] ^= 0xFF;
+        FileUtils.write(cacheFile, contents);
+
+        assertThat(FormDefCache.readCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void readCacheFile_whenFileHasNoHeader_returnsNull() throws Exception {
+        File cacheFile = new File(cacheDir, "old.formdef");
+        FileUtils.write(cacheFile, "serialized form from an old cache".getBytes("UTF-8"));
+
+        assertThat(FormDefCache.readCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void readCacheFile_whenFileIsFromAnotherFormatVersion_returnsNull() throws Exception {
+        File cacheFile = writeCacheFile(FormDefCache.FORMAT_VERSION + 1, BuildConfig.JAVAROSA_VERSION, 4, new byte[4]);
+
+        assertThat(FormDefCache.readCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void readCacheFile_whenFileIsFromAnotherJavaRosaVersion_returnsNull() throws Exception {
+        File cacheFile = writeCacheFile(FormDefCache.FORMAT_VERSION, "0.0.0", 4, new byte[4]);
+
+        assertThat(FormDefCache.readCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void readCacheFile_whenFileIsTruncated_returnsNull() throws Exception {
+        File cacheFile = writeCacheFile(FormDefCache.FORMAT_VERSION, BuildConfig.JAVAROSA_VERSION, 1024, new byte[4]);
+
+        assertThat(FormDefCache.readCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void readPlannerCacheFile_returnsPlannerWrittenByWritePlannerCacheFile() throws Exception {
+        QuestionRefreshPlanner planner = QuestionRefreshPlanner.fromFormXml(new StringReader(FORM_XML));
+        File cacheFile = new File(cacheDir, "form.planner");
+
+        FormDefCache.writePlannerCacheFile(planner, cacheFile);
+
+        assertThat(FormDefCache.readPlannerCacheFile(cacheFile), is(notNullValue()));
+    }
+
+    @Test
+    public void readPlannerCacheFile_whenPayloadIsCorrupt_returnsNull() throws Exception {
+        QuestionRefreshPlanner planner = QuestionRefreshPlanner.fromFormXml(new StringReader(FORM_XML));
+        File cacheFile = new File(cacheDir, "form.planner");
+        FormDefCache.writePlannerCacheFile(planner, cacheFile);
+
+        byte[] contents = FileUtils.read(cacheFile);
+        contents[contents.length - 1] ^= 0xFF;
+        FileUtils.write(cacheFile, contents);
+
+        assertThat(FormDefCache.readPlannerCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void readPlannerCacheFile_whenFileIsFromAnotherJavaRosaVersion_returnsNull() throws Exception {
+        File cacheFile = writeCacheFile(FormDefCache.FORMAT_VERSION, "0.0.0", 4, new byte[4]);
+
+        assertThat(FormDefCache.readPlannerCacheFile(cacheFile), is(nullValue()));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed_alsoEvictsCachedPlanners() {
+        File oldPlanner = writeFile("old.planner", 10, 1000);
+        File formDef = writeFile("new.formdef", 10, 2000);
+        File newPlanner = writeFile("new.planner", 10, 3000);
+
+        FormDefCache.evictLeastRecentlyUsed(cacheDir, 20);
+
+        assertThat(oldPlanner.exists(), is(false));
+        assertThat(formDef.exists(), is(true));
+        assertThat(newPlanner.exists(), is(true));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed_deletesOldestCacheFilesUntilWithinLimit() {
+        File oldest = writeFile("oldest.formdef", 10, 1000);
+        File middle = writeFile("middle.formdef", 10, 2000);
+        File newest = writeFile("newest.formdef", 10, 3000);
+        File other = writeFile("other.tmp", 10, 0);
+
+        FormDefCache.evictLeastRecentlyUsed(cacheDir, 20);
+
+        assertThat(oldest.exists(), is(false));
+        assertThat(middle.exists(), is(true));
+        assertThat(newest.exists(), is(true));
+        assertThat(other.exists(), is(true));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed_whenWithinLimit_deletesNothing() {
+        File first = writeFile("first.formdef", 10, 1000);
+        File second = writeFile("second.formdef", 10, 2000);
+
+        FormDefCache.evictLeastRecentlyUsed(cacheDir, 20);
+
+        assertThat(first.exists(), is(true));
+        assertThat(second.exists(), is(true));
+    }
+
+    private File writeCacheFile(int formatVersion, String javaRosaVersion, long payloadLength, byte[] payload) throws IOException {
+        File cacheFile = new File(cacheDir, "form.formdef");
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(cacheFile))) {
+            dos.writeInt(FormDefCache.MAGIC);
+            dos.writeInt(formatVersion);
+            dos.writeUTF(javaRosaVersion);
+            dos.writeLong(payloadLength);
+            dos.writeLong(0);
+            dos.write(payload);
+        }
+        return cacheFile;
+    }
+
+    private File writeFile(String name, int length, long lastModified) {
+        File file = new File(cacheDir, name);
+        FileUtils.write(file, new byte[length]);
+        file.setLastModified(lastModified);
+        return file;
+    }
+}
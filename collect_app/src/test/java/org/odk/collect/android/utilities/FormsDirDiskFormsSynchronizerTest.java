@@ -0,0 +1,58 @@
+package org.odk.collect.android.utilities;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.database.DatabaseFormsRepository;
+import org.odk.collect.android.forms.Form;
+import org.odk.collect.android.storage.StorageInitializer;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.RobolectricHelpers;
+
+import java.io.File;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.odk.collect.android.support.FormUtils.createXFormBody;
+
+@RunWith(AndroidJUnit4.class)
+public class FormsDirDiskFormsSynchronizerTest {
+
+    private File formsDir;
+
+    @Before
+    public void setup() {
+        RobolectricHelpers.mountExternalStorage();
+        new StorageInitializer().createOdkDirsOnStorage();
+        formsDir = new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.FORMS));
+    }
+
+    @Test
+    public void synchronize_addsNewFormsAndCachesTheirFormDefs() {
+        File formFile = new File(formsDir, "one.xml");
+        FileUtils.write(formFile, createXFormBody("one", "1", "Form one").getBytes());
+
+        new FormsDirDiskFormsSynchronizer().synchronize();
+
+        List<Form> forms = new DatabaseFormsRepository().getAll();
+        assertThat(forms.size(), is(1));
+        assertThat(forms.get(0).getJrFormId(), is("one"));
+        assertThat(FormDefCache.isCached(formFile), is(true));
+        assertThat(FormDefCache.readCache(formFile).getTitle(), is("Form one"));
+    }
+
+    @Test
+    public void synchronize_whenFormFailsToParse_renamesItToBadAndDoesNotAddIt() {
+        File formFile = new File(formsDir, "broken.xml");
+        FileUtils.write(formFile, "<h:html>".getBytes());
+
+        new FormsDirDiskFormsSynchronizer().synchronize();
+
+        assertThat(new DatabaseFormsRepository().getAll().size(), is(0));
+        assertThat(new File(formsDir, "broken.xml.bad").exists(), is(true));
+    }
+}
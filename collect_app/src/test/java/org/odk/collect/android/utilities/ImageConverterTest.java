@@ -0,0 +1,23 @@
+package org.odk.collect.android.utilities;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ImageConverterTest {
+
+    @Test
+    public void calculateInSampleSize_whenTargetIsSameSize_returnsOne() {
+        assertThat(ImageConverter.calculateInSampleSize(3000, 4000, 3000, 4000), is(1));
+    }
+
+    @Test
+    public void calculateInSampleSize_neverDecodesSmallerThanTarget() {
+        // 48MP sensor scaled to a 1024px long edge
+        assertThat(ImageConverter.calculateInSampleSize(8000, 6000, 1024, 768), is(4));
+        assertThat(ImageConverter.calculateInSampleSize(8000, 6000, 1000, 750), is(8));
+        assertThat(ImageConverter.calculateInSampleSize(4000, 3000, 2000, 1500), is(2));
+        assertThat(ImageConverter.calculateInSampleSize(4000, 3000, 2001, 1500), is(1));
+    }
+}
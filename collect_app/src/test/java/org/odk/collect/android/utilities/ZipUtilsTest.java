@@ -0,0 +1,125 @@
+package org.odk.collect.android.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ZipUtilsTest {
+
+    private File mediaFolder;
+    private File manifestDir;
+
+    @Before
+    public void setup() throws IOException {
+        mediaFolder = Files.createTempDirectory("media").toFile();
+        mediaFolder.deleteOnExit();
+        manifestDir = Files.createTempDirectory("manifests").toFile();
+        manifestDir.deleteOnExit();
+    }
+
+    @Test
+    public void extractZipFiles_extractsFilesIntoMediaFolderAndDeletesArchive() throws Exception {
+        byte[] zip = createZip("fruits.csv", "apple,banana");
+        FileUtils.write(new File(mediaFolder, "data.zip"), zip);
+
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(read("fruits.csv"), is("apple,banana"));
+        assertThat(new File(mediaFolder, "data.zip").exists(), is(false));
+    }
+
+    @Test
+    public void extractZipFiles_ignoresEntriesInDirectories() throws Exception {
+        byte[] zip = createZip("nested/fruits.csv", "apple,banana");
+        FileUtils.write(new File(mediaFolder, "data.zip"), zip);
+
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(new File(mediaFolder, "fruits.csv").exists(), is(false));
+        assertThat(new File(mediaFolder, "nested").exists(), is(false));
+    }
+
+    @Test
+    public void extractZipFiles_whenArchiveHasAlreadyBeenExtracted_doesNotExtractItAgain() throws Exception {
+        byte[] zip = createZip("fruits.csv", "apple,banana");
+        FileUtils.write(new File(mediaFolder, "data.zip"), zip);
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        FileUtils.write(new File(mediaFolder, "fruits.csv"), "edited".getBytes());
+        FileUtils.write(new File(mediaFolder, "data.zip"), zip);
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(read("fruits.csv"), is("edited"));
+    }
+
+    @Test
+    public void extractZipFiles_whenArchiveHasChanged_extractsItAgain() throws Exception {
+        FileUtils.write(new File(mediaFolder, "data.zip"), createZip("fruits.csv", "apple,banana"));
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        FileUtils.write(new File(mediaFolder, "data.zip"), createZip("fruits.csv", "cherry,date"));
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(read("fruits.csv"), is("cherry,date"));
+    }
+
+    @Test
+    public void extractZipFiles_whenAnExtractedFileIsMissing_extractsArchiveAgain() throws Exception {
+        byte[] zip = createZip("fruits.csv", "apple,banana");
+        FileUtils.write(new File(mediaFolder, "data.zip"), zip);
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        new File(mediaFolder, "fruits.csv").delete();
+        FileUtils.write(new File(mediaFolder, "data.zip"), zip);
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(read("fruits.csv"), is("apple,banana"));
+    }
+
+    @Test
+    public void extractZipFiles_doesNotWriteTheManifestIntoTheMediaFolder() throws Exception {
+        FileUtils.write(new File(mediaFolder, "data.zip"), createZip("fruits.csv", "apple,banana"));
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(mediaFolder.list(), is(new String[]{"fruits.csv"}));
+        assertThat(new File(manifestDir, mediaFolder.getName() + ZipUtils.MANIFEST_FILE_EXTENSION).exists(), is(true));
+    }
+
+    @Test
+    public void extractZipFiles_whenArchiveHasTheSameSizeAndLastModifiedTime_doesNotHashOrExtractItAgain() throws Exception {
+        File zipFile = new File(mediaFolder, "data.zip");
+        FileUtils.write(zipFile, createZip("fruits.csv", "plum"));
+        zipFile.setLastModified(1000000);
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        // Same size and time but different contents: only a hash would tell them apart
+        FileUtils.write(zipFile, createZip("fruits.csv", "pear"));
+        zipFile.setLastModified(1000000);
+        ZipUtils.extractZipFiles(mediaFolder, manifestDir);
+
+        assertThat(read("fruits.csv"), is("plum"));
+    }
+
+    private String read(String fileName) {
+        return new String(FileUtils.read(new File(mediaFolder, fileName)));
+    }
+
+    private static byte[] createZip(String entryName, String contents) throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(zip)) {
+            zipOutputStream.putNextEntry(new ZipEntry(entryName));
+            zipOutputStream.write(contents.getBytes());
+            zipOutputStream.closeEntry();
+        }
+        return zip.toByteArray();
+    }
+}